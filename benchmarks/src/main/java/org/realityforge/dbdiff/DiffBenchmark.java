@@ -0,0 +1,138 @@
+package org.realityforge.dbdiff;
+
+import difflib.DiffUtils;
+import difflib.Patch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the comparison of two synthetic dumps where a percentage of the tables in the second dump
+ * differ from the first. Each stage of the unified diff (building the digest trees, aligning the trees
+ * on one or more threads and rendering the patch) is measured separately along with the structural diff.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class DiffBenchmark
+{
+  private static final int CONTEXT_SIZE = 3;
+
+  /**
+   * The number of tables in each dump.
+   */
+  @Param( { "1000", "10000", "100000" } )
+  public int objects;
+  /**
+   * The percentage of tables that differ between the dumps.
+   */
+  @Param( { "0", "1", "50" } )
+  public int drift;
+  /**
+   * The number of threads on which the digest trees are aligned, 1 aligning them on the calling thread.
+   */
+  @Param( { "1", "4" } )
+  public int threads;
+
+  private List<String> _lines1;
+  private List<String> _lines2;
+  private DigestTree _tree1;
+  private DigestTree _tree2;
+  private DumpNode _node1;
+  private DumpNode _node2;
+  private Patch _patch;
+  private ForkJoinPool _pool;
+
+  @Setup
+  public void setup()
+  {
+    _lines1 = dump( objects, 0 );
+    _lines2 = dump( objects, drift );
+    _tree1 = DigestTree.build( _lines1 );
+    _tree2 = DigestTree.build( _lines2 );
+    _node1 = DumpNode.parse( _tree1 );
+    _node2 = DumpNode.parse( _tree2 );
+    _patch = UnifiedDiff.patch( _tree1, _tree2 );
+    _pool = threads > 1 ? new ForkJoinPool( threads ) : null;
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    if ( null != _pool )
+    {
+      _pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public DigestTree buildDigestTrees()
+  {
+    DigestTree.build( _lines1 );
+    return DigestTree.build( _lines2 );
+  }
+
+  @Benchmark
+  public Patch alignDigestTrees()
+  {
+    return UnifiedDiff.patch( _tree1, _tree2, _pool );
+  }
+
+  @Benchmark
+  public List<String> renderUnifiedDiff()
+  {
+    return DiffUtils.generateUnifiedDiff( "db1", "db2", _lines1, _patch, CONTEXT_SIZE );
+  }
+
+  @Benchmark
+  public List<String> unifiedDiff()
+  {
+    return UnifiedDiff.diff( "db1", "db2", DigestTree.build( _lines1 ), DigestTree.build( _lines2 ), CONTEXT_SIZE );
+  }
+
+  @Benchmark
+  public List<DiffEntry> structuralDiff()
+  {
+    return StructuralDiff.diff( _node1, _node2 );
+  }
+
+  /**
+   * Create a dump of a schema with the specified number of tables where the percentage of tables
+   * specified by drift have a column with a different type.
+   */
+  private static List<String> dump( final int tableCount, final int drift )
+  {
+    final ArrayList<String> lines = new ArrayList<>();
+    lines.add( "Schema: x" );
+    for ( int i = 0; i < tableCount; i++ )
+    {
+      final boolean changed = i % 100 < drift;
+      lines.add( "\tTABLE: table" + i );
+      lines.add( "\t\tPRIV    : {grantor=owner, grantee=reader, privilege=SELECT, is_grantable=NO}" );
+      lines.add( "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4, is_nullable=NO}" );
+      lines.add( "\t\t\tPRIV    : {grantor=owner, grantee=reader, privilege=SELECT, is_grantable=NO}" );
+      lines.add( "\t\tCOLUMN  : Name: {ordinal_position=2, type_name=" + ( changed ? "text" : "varchar" ) +
+                 ", is_nullable=YES}" );
+      lines.add( "\t\t\tPRIV    : {grantor=owner, grantee=reader, privilege=SELECT, is_grantable=NO}" );
+      lines.add( "\t\tPK      : PK_table" + i + ": {column_name=ID, key_seq=1}" );
+      lines.add( "\t\tIX      : PK_table" + i + ": {non_unique=false, type=3, ordinal_position=1, column_name=ID}" );
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,111 @@
+package org.realityforge.dbdiff;
+
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading a schema from the metadata of a synthetic catalog, i.e. the extraction of the metadata
+ * rows into elements, and the emission of the loaded schema into a writer.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class DumpBenchmark
+{
+  private static final String SCHEMA = SyntheticCatalog.schemaName( 0 );
+
+  /**
+   * The number of tables in the schema.
+   */
+  @Param( { "1000", "10000", "100000" } )
+  public int objects;
+  @Param( { "false", "true" } )
+  public boolean bulkFetch;
+
+  private Connection _connection;
+  private DatabaseMetaData _metaData;
+  private Schema _schema;
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    final Properties properties = new Properties();
+    properties.setProperty( "tables", String.valueOf( objects ) );
+    _connection = new SyntheticCatalog( properties ).newConnection();
+    _metaData = _connection.getMetaData();
+    _schema = newDumper().loadSchema( _metaData, SCHEMA );
+  }
+
+  @Benchmark
+  public Schema loadSchema()
+    throws Exception
+  {
+    // A new dumper each time so that the values are interned from scratch
+    return newDumper().loadSchema( _metaData, SCHEMA );
+  }
+
+  @Benchmark
+  public long emitSchema()
+    throws Exception
+  {
+    final CountingWriter writer = new CountingWriter();
+    newDumper().emitSchema( writer, _schema );
+    return writer._count;
+  }
+
+  private DatabaseDumper newDumper()
+  {
+    final DatabaseDumper dumper = new DatabaseDumper( _connection, Dialect.postgresql, new String[]{ SCHEMA } );
+    dumper.setBulkFetch( bulkFetch );
+    return dumper;
+  }
+
+  /**
+   * A writer that discards the characters written, only counting them.
+   */
+  private static final class CountingWriter
+    extends Writer
+  {
+    private long _count;
+
+    @Override
+    public void write( final char[] buffer, final int offset, final int length )
+    {
+      _count += length;
+    }
+
+    @Override
+    public void write( final String text )
+    {
+      _count += text.length();
+    }
+
+    @Override
+    public void flush()
+    {
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+}
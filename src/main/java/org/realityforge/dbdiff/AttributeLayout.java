@@ -0,0 +1,110 @@
+package org.realityforge.dbdiff;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The attributes retrieved for a kind of element. The layout is shared by every element of the
+ * kind so that each element need only retain a dense array of values.
+ */
+final class AttributeLayout
+{
+  /**
+   * The metadata columns holding identifiers, type names and yes/no flags. Their values are repeated
+   * across many elements so only a single instance of each value is retained, whereas values such as
+   * remarks, defaults and sizes are rarely shared and are retained as retrieved.
+   */
+  private static final Set<String> INTERNED_KEYS =
+    new HashSet<>( Arrays.asList( "table_type", "table_name", "column_name", "type_name", "index_name",
+                                  "index_qualifier", "pk_name", "fk_name", "pktable_name", "pkcolumn_name",
+                                  "fktable_schem", "fktable_name", "fkcolumn_name", "grantor", "grantee",
+                                  "privilege", "is_grantable", "is_nullable", "is_autoincrement", "procedure_name",
+                                  "function_name", "specific_name", "supertable_name", "supertype_schem",
+                                  "supertype_name", "attr_name", "attr_type_name", "class_name", "scope_schema",
+                                  "scope_table" ) );
+
+  private final String[] _keys;
+  private final boolean[] _optional;
+  private final boolean[] _interned;
+  private final int _nameIndex;
+  private final boolean _nameIncluded;
+
+  /**
+   * Create a layout.
+   *
+   * @param keys         the metadata columns to retain. A key prefixed with '?' is optional and may be absent.
+   * @param nameKey      the key of the column that names the element or null if the element is unnamed.
+   * @param nameIncluded true if the name should also be emitted as part of the attributes.
+   */
+  AttributeLayout( final List<String> keys, final String nameKey, final boolean nameIncluded )
+  {
+    _keys = new String[ keys.size() ];
+    _optional = new boolean[ keys.size() ];
+    _interned = new boolean[ keys.size() ];
+    int nameIndex = -1;
+    for ( int i = 0; i < _keys.length; i++ )
+    {
+      final String key = keys.get( i );
+      _optional[ i ] = key.startsWith( "?" );
+      _keys[ i ] = ( _optional[ i ] ? key.substring( 1 ) : key ).toLowerCase();
+      _interned[ i ] = INTERNED_KEYS.contains( _keys[ i ] );
+      if ( _keys[ i ].equalsIgnoreCase( nameKey ) && -1 == nameIndex )
+      {
+        nameIndex = i;
+      }
+    }
+    if ( null != nameKey && -1 == nameIndex )
+    {
+      throw new IllegalArgumentException( "Name key " + nameKey + " not present in " + keys );
+    }
+    _nameIndex = nameIndex;
+    _nameIncluded = nameIncluded;
+  }
+
+  int size()
+  {
+    return _keys.length;
+  }
+
+  String getKey( final int index )
+  {
+    return _keys[ index ];
+  }
+
+  boolean isOptional( final int index )
+  {
+    return _optional[ index ];
+  }
+
+  /**
+   * Return true if the values of the attribute are repeated across elements and should be interned.
+   */
+  boolean isInterned( final int index )
+  {
+    return _interned[ index ];
+  }
+
+  int getNameIndex()
+  {
+    return _nameIndex;
+  }
+
+  boolean isNameIncluded()
+  {
+    return _nameIncluded;
+  }
+
+  int indexOf( final String key )
+  {
+    for ( int i = 0; i < _keys.length; i++ )
+    {
+      if ( _keys[ i ].equalsIgnoreCase( key ) )
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,50 @@
+package org.realityforge.dbdiff;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The properties of a database that do not change between dumps, i.e. the table types and the search
+ * string escape. They are retrieved by the first dump and then shared by every later dump of the
+ * database, whether in the same dump or a later dump by a long running process.
+ */
+final class CatalogInfo
+{
+  private volatile List<String> _tableTypes;
+  private volatile String _searchStringEscape;
+
+  /**
+   * Return the table types reported by the driver.
+   */
+  List<String> getTableTypes( final DatabaseMetaData metaData )
+    throws SQLException
+  {
+    if ( null == _tableTypes )
+    {
+      final ArrayList<String> tableTypes = new ArrayList<>();
+      try ( final ResultSet resultSet = metaData.getTableTypes() )
+      {
+        while ( resultSet.next() )
+        {
+          tableTypes.add( resultSet.getString( "table_type" ) );
+        }
+      }
+      _tableTypes = Collections.unmodifiableList( tableTypes );
+    }
+    return _tableTypes;
+  }
+
+  String getSearchStringEscape( final DatabaseMetaData metaData )
+    throws SQLException
+  {
+    if ( null == _searchStringEscape )
+    {
+      _searchStringEscape = metaData.getSearchStringEscape();
+    }
+    return _searchStringEscape;
+  }
+}
@@ -0,0 +1,114 @@
+package org.realityforge.dbdiff;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a cheap version indicator for each relation of a schema so that a watcher can detect which
+ * relations have changed since they were last dumped without dumping them. The version of a relation
+ * changes whenever the catalog rows describing the relation change. The routines and types of the
+ * schema are covered by a single version keyed by {@link #SCHEMA_OBJECTS}.
+ *
+ * <p>On postgres the version is built from the transaction ids (xmin) of the pg_class, pg_attribute,
+ * pg_attrdef, pg_index, pg_constraint and pg_description rows of the relation, while the version of the
+ * schema objects ignores the row types that postgres creates for each relation. On sql server it is built
+ * from the modify_date of the object and its child objects along with a checksum of the permissions on
+ * the object. A version may change without the dumped metadata changing, e.g. after a VACUUM FREEZE, in
+ * which case the relation is dumped again needlessly but no difference is reported.</p>
+ */
+final class CatalogVersions
+{
+  /**
+   * The key of the version of the routines and types of the schema.
+   */
+  static final String SCHEMA_OBJECTS = "";
+
+  private static final String POSTGRES_SQL =
+    "SELECT c.relname AS name, c.xmin::text || ':' || " +
+    "COALESCE((SELECT string_agg(a.xmin::text, ',' ORDER BY a.attnum) " +
+    "FROM pg_catalog.pg_attribute a WHERE a.attrelid = c.oid), '') || ':' || " +
+    "COALESCE((SELECT string_agg(d.xmin::text, ',' ORDER BY d.adnum) " +
+    "FROM pg_catalog.pg_attrdef d WHERE d.adrelid = c.oid), '') || ':' || " +
+    "COALESCE((SELECT string_agg(i.xmin::text || '/' || ic.xmin::text, ',' ORDER BY i.indexrelid) " +
+    "FROM pg_catalog.pg_index i JOIN pg_catalog.pg_class ic ON (ic.oid = i.indexrelid) " +
+    "WHERE i.indrelid = c.oid), '') || ':' || " +
+    "COALESCE((SELECT string_agg(k.xmin::text, ',' ORDER BY k.oid) " +
+    "FROM pg_catalog.pg_constraint k WHERE k.conrelid = c.oid), '') || ':' || " +
+    "COALESCE((SELECT string_agg(ds.xmin::text, ',' ORDER BY ds.objsubid) " +
+    "FROM pg_catalog.pg_description ds WHERE ds.objoid = c.oid), '') AS version " +
+    "FROM pg_catalog.pg_class c JOIN pg_catalog.pg_namespace n ON (c.relnamespace = n.oid) " +
+    "WHERE n.nspname = ? " +
+    "UNION ALL " +
+    "SELECT '' AS name, " +
+    "COALESCE((SELECT string_agg(p.xmin::text, ',' ORDER BY p.oid) " +
+    "FROM pg_catalog.pg_proc p WHERE p.pronamespace = n.oid), '') || ':' || " +
+    "COALESCE((SELECT string_agg(t.xmin::text, ',' ORDER BY t.oid) " +
+    "FROM pg_catalog.pg_type t WHERE t.typnamespace = n.oid AND t.typrelid = 0 AND (t.typelem = 0 OR " +
+    "NOT EXISTS (SELECT 1 FROM pg_catalog.pg_type e WHERE e.oid = t.typelem AND e.typrelid <> 0))), '') " +
+    "AS version " +
+    "FROM pg_catalog.pg_namespace n WHERE n.nspname = ?";
+  private static final String MSSQL_SQL =
+    "SELECT o.name, CONVERT(varchar(30), o.modify_date, 126) + ':' + " +
+    "COALESCE((SELECT CONVERT(varchar(30), MAX(c.modify_date), 126) + '/' + CAST(COUNT(*) AS varchar(10)) " +
+    "FROM sys.objects c WHERE c.parent_object_id = o.object_id), '') + ':' + " +
+    "COALESCE((SELECT CAST(CHECKSUM_AGG(CHECKSUM(p.grantee_principal_id, p.minor_id, p.permission_name, " +
+    "p.state)) AS varchar(12)) FROM sys.database_permissions p WHERE p.class = 1 AND p.major_id = o.object_id), " +
+    "'') AS version " +
+    "FROM sys.objects o JOIN sys.schemas s ON (s.schema_id = o.schema_id) " +
+    "WHERE o.type IN ('U','V') AND s.name = ? " +
+    "UNION ALL " +
+    "SELECT '' AS name, " +
+    "COALESCE((SELECT CONVERT(varchar(30), MAX(o.modify_date), 126) + '/' + CAST(COUNT(*) AS varchar(10)) " +
+    "FROM sys.objects o WHERE o.schema_id = s.schema_id AND o.type IN ('P','PC','FN','IF','TF','FS','FT')), " +
+    "'') + ':' + " +
+    "CAST((SELECT COUNT(*) FROM sys.types t WHERE t.schema_id = s.schema_id AND t.is_user_defined = 1) " +
+    "AS varchar(10)) AS version " +
+    "FROM sys.schemas s WHERE s.name = ?";
+
+  private final Connection _connection;
+  private final String _sql;
+
+  CatalogVersions( final Connection connection, final Dialect dialect )
+  {
+    _connection = connection;
+    if ( Dialect.postgresql == dialect )
+    {
+      _sql = POSTGRES_SQL;
+    }
+    else if ( Dialect.mssql == dialect )
+    {
+      _sql = MSSQL_SQL;
+    }
+    else
+    {
+      throw new IllegalStateException( "Catalog versions are not supported by the " + dialect + " dialect" );
+    }
+  }
+
+  /**
+   * Return the version of each relation in the schema keyed by relation name, along with the version of
+   * the schema objects. An empty map is returned if the schema does not exist.
+   */
+  Map<String, String> getVersions( final String schema )
+    throws SQLException
+  {
+    final HashMap<String, String> versions = new HashMap<>();
+    try ( final PreparedStatement statement = _connection.prepareStatement( _sql ) )
+    {
+      statement.setString( 1, schema );
+      statement.setString( 2, schema );
+      try ( final ResultSet resultSet = statement.executeQuery() )
+      {
+        while ( resultSet.next() )
+        {
+          versions.put( resultSet.getString( 1 ), resultSet.getString( 2 ) );
+        }
+      }
+    }
+    return versions;
+  }
+}
@@ -0,0 +1,27 @@
+package org.realityforge.dbdiff;
+
+/**
+ * A column of a table, view or other relation.
+ */
+final class Column
+  extends Element
+{
+  private static final Privilege[] NO_PRIVILEGES = new Privilege[ 0 ];
+
+  private Privilege[] _privileges = NO_PRIVILEGES;
+
+  Column( final AttributeLayout layout, final Object[] values )
+  {
+    super( layout, values );
+  }
+
+  Privilege[] getPrivileges()
+  {
+    return _privileges;
+  }
+
+  void setPrivileges( final Privilege[] privileges )
+  {
+    _privileges = privileges;
+  }
+}
@@ -0,0 +1,143 @@
+package org.realityforge.dbdiff;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The idle connections to each database retained by a long running process so that a dump can
+ * reuse the connections of an earlier dump, along with the prepared statements of the connections,
+ * rather than connecting again.
+ */
+final class ConnectionPool
+{
+  /**
+   * The number of seconds to wait for an idle connection to be validated before it is discarded.
+   */
+  private static final int VALIDATION_TIMEOUT = 5;
+
+  private final HashMap<String, ArrayDeque<Connection>> _idle = new HashMap<>();
+  private final StatementCache _statementCache = new StatementCache();
+  private boolean _closed;
+
+  /**
+   * Return the cache of the prepared statements of the connections of the pool.
+   */
+  StatementCache getStatementCache()
+  {
+    return _statementCache;
+  }
+
+  /**
+   * Return an idle valid connection to the database or null if there is none. Idle connections that are no
+   * longer valid, such as those broken by a restart of the server, are closed along with their statements.
+   */
+  Connection take( final String database )
+    throws SQLException
+  {
+    while ( true )
+    {
+      final Connection connection;
+      synchronized ( this )
+      {
+        final ArrayDeque<Connection> connections = _idle.get( database );
+        connection = null != connections ? connections.pollLast() : null;
+      }
+      if ( null == connection || isValid( connection ) )
+      {
+        return connection;
+      }
+      discard( connection );
+      close( connection );
+    }
+  }
+
+  /**
+   * Return the connection to the pool. The connection is closed if the pool has been closed.
+   */
+  void release( final String database, final Connection connection )
+    throws SQLException
+  {
+    synchronized ( this )
+    {
+      if ( !_closed )
+      {
+        _idle.computeIfAbsent( database, k -> new ArrayDeque<>() ).add( connection );
+        return;
+      }
+    }
+    discard( connection );
+    connection.close();
+  }
+
+  /**
+   * Close the prepared statements of a connection that is not returned to the pool.
+   */
+  void discard( final Connection connection )
+  {
+    _statementCache.close( connection );
+  }
+
+  /**
+   * Close the idle connections and their statements. The statements of connections in use are left open
+   * so that the dumps in progress complete, and the connections are closed as they are released.
+   */
+  void close()
+  {
+    final ArrayList<Connection> connections = new ArrayList<>();
+    synchronized ( this )
+    {
+      _closed = true;
+      for ( final ArrayDeque<Connection> idle : _idle.values() )
+      {
+        connections.addAll( idle );
+      }
+      _idle.clear();
+    }
+    for ( final Connection connection : connections )
+    {
+      discard( connection );
+      close( connection );
+    }
+  }
+
+  /**
+   * Return true if the connection is still usable. Drivers that do not implement
+   * {@link Connection#isValid(int)}, such as the postgres and jtds drivers used by this tool, are
+   * checked by running a trivial query instead.
+   */
+  private static boolean isValid( final Connection connection )
+  {
+    try
+    {
+      return connection.isValid( VALIDATION_TIMEOUT );
+    }
+    catch ( final SQLException | AbstractMethodError e )
+    {
+      try ( final Statement statement = connection.createStatement() )
+      {
+        statement.execute( "SELECT 1" );
+        return true;
+      }
+      catch ( final SQLException ignored )
+      {
+        return false;
+      }
+    }
+  }
+
+  private static void close( final Connection connection )
+  {
+    try
+    {
+      connection.close();
+    }
+    catch ( final SQLException ignored )
+    {
+      //Ignored as the connection is being abandoned
+    }
+  }
+}
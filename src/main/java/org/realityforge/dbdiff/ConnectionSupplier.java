@@ -0,0 +1,34 @@
+package org.realityforge.dbdiff;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * Supplies the connections used to dump a database, e.g. from a pooled DataSource, rather than
+ * connecting via the driver. The connections are closed once the dump completes.
+ */
+public interface ConnectionSupplier
+{
+  /**
+   * Return a connection to the database identified by the jdbc url.
+   */
+  Connection getConnection( String database )
+    throws SQLException;
+
+  /**
+   * Return a supplier that takes the connections to each database from the data source for its jdbc url.
+   */
+  static ConnectionSupplier of( final Map<String, DataSource> dataSources )
+  {
+    return database -> {
+      final DataSource dataSource = dataSources.get( database );
+      if ( null == dataSource )
+      {
+        throw new SQLException( "No data source for the database " + database );
+      }
+      return dataSource.getConnection();
+    };
+  }
+}
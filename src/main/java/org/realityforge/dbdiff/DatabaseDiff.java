@@ -1,33 +1,115 @@
 package org.realityforge.dbdiff;
 
-import difflib.DiffUtils;
-import difflib.Patch;
-import java.io.StringWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class DatabaseDiff
 {
+  /**
+   * The number of lines that a dump of a lock step comparison may produce ahead of the comparison,
+   * bounding the metadata that is retrieved after the first difference.
+   */
+  private static final int LOCK_STEP_QUEUE_CAPACITY = 1024;
+  private static final ReplayDriver REPLAY_DRIVER = new ReplayDriver();
+
   private Logger _logger;
   private Driver _driver;
+  private ConnectionSupplier _connectionSupplier;
   private String _database1;
   private String _database2;
   private final Properties _dbProperties = new Properties();
   private Dialect _dialect;
   private final ArrayList<String> _schemas = new ArrayList<>();
+  private final ObjectFilter _tableFilter = new ObjectFilter();
+  private final ObjectFilter _routineFilter = new ObjectFilter();
+  private final ObjectFilter _typeFilter = new ObjectFilter();
+  private final EnumSet<ObjectKind> _objectKinds = EnumSet.allOf( ObjectKind.class );
   private int _contextSize = 10;
+  private boolean _bulkFetch;
+  private int _connectionsPerDatabase = 1;
+  private int _targetConcurrency = 4;
+  private int _diffThreads = Runtime.getRuntime().availableProcessors();
+  private ForkJoinPool _diffPool;
+  private boolean _failFast;
+  private boolean _nativeCatalog;
+  private int _fetchSize;
+  private File _debugDumpDirectory;
+  private long _memoryBudget;
+  private File _spillDirectory;
+  private File _recordDirectory;
+  private OutputStream _output;
+  private DiffFormat _diffFormat = DiffFormat.unified;
+  private ConnectionPool _connectionPool;
+  private DumpCache _dumpCache;
+  private Map<String, CatalogInfo> _catalogInfos;
 
   public ArrayList<String> getSchemas()
   {
     return _schemas;
   }
 
+  /**
+   * Return the filter that selects the tables and views compared when dumping a database. Snapshots
+   * are compared as they were written.
+   */
+  public ObjectFilter getTableFilter()
+  {
+    return _tableFilter;
+  }
+
+  /**
+   * Return the filter that selects the procedures and functions compared when dumping a database.
+   */
+  public ObjectFilter getRoutineFilter()
+  {
+    return _routineFilter;
+  }
+
+  /**
+   * Return the filter that selects the user defined types compared when dumping a database.
+   */
+  public ObjectFilter getTypeFilter()
+  {
+    return _typeFilter;
+  }
+
+  /**
+   * Return the kinds of objects compared when dumping a database. Defaults to every kind.
+   */
+  public EnumSet<ObjectKind> getObjectKinds()
+  {
+    return _objectKinds;
+  }
+
   public Dialect getDialect()
   {
     return _dialect;
@@ -48,6 +130,251 @@ public class DatabaseDiff
     _contextSize = contextSize;
   }
 
+  public DiffFormat getDiffFormat()
+  {
+    return _diffFormat;
+  }
+
+  public void setDiffFormat( final DiffFormat diffFormat )
+  {
+    _diffFormat = diffFormat;
+  }
+
+  public boolean isBulkFetch()
+  {
+    return _bulkFetch;
+  }
+
+  public void setBulkFetch( final boolean bulkFetch )
+  {
+    _bulkFetch = bulkFetch;
+  }
+
+  public boolean isNativeCatalog()
+  {
+    return _nativeCatalog;
+  }
+
+  /**
+   * When enabled the table metadata is read directly from the system catalog of the database.
+   *
+   * @see DatabaseDumper#setNativeCatalog(boolean)
+   */
+  public void setNativeCatalog( final boolean nativeCatalog )
+  {
+    _nativeCatalog = nativeCatalog;
+  }
+
+  public int getFetchSize()
+  {
+    return _fetchSize;
+  }
+
+  /**
+   * @see DatabaseDumper#setFetchSize(int)
+   */
+  public void setFetchSize( final int fetchSize )
+  {
+    _fetchSize = fetchSize;
+  }
+
+  public boolean isFailFast()
+  {
+    return _failFast;
+  }
+
+  /**
+   * When enabled the dumps of the databases are compared line by line, in their canonical order, as
+   * they are produced and both dumps are aborted as soon as the first difference is found. Only the
+   * first differing lines are reported rather than a complete diff.
+   */
+  public void setFailFast( final boolean failFast )
+  {
+    _failFast = failFast;
+  }
+
+  public int getConnectionsPerDatabase()
+  {
+    return _connectionsPerDatabase;
+  }
+
+  /**
+   * Set the number of connections opened to each database. When more than one connection is
+   * used the schemas and the tables within each schema are dumped concurrently.
+   */
+  public void setConnectionsPerDatabase( final int connectionsPerDatabase )
+  {
+    _connectionsPerDatabase = connectionsPerDatabase;
+  }
+
+  public int getTargetConcurrency()
+  {
+    return _targetConcurrency;
+  }
+
+  /**
+   * Set the maximum number of target databases that are dumped and compared at the same time by
+   * {@link #diffTargets(List)}. Each target is dumped using the connections per database.
+   */
+  public void setTargetConcurrency( final int targetConcurrency )
+  {
+    _targetConcurrency = targetConcurrency;
+  }
+
+  public int getDiffThreads()
+  {
+    return _diffThreads;
+  }
+
+  /**
+   * Set the number of threads on which the differing schemas and objects of two dumps are diffed in a
+   * unified diff. The diff is identical regardless of the number of threads. Defaults to the number of
+   * available processors.
+   */
+  public void setDiffThreads( final int diffThreads )
+  {
+    _diffThreads = diffThreads;
+  }
+
+  /**
+   * Return the pool on which unified diffs are computed, or null if diffs are computed on the calling thread.
+   */
+  synchronized ForkJoinPool getDiffPool()
+  {
+    return _diffPool;
+  }
+
+  /**
+   * Set the pool on which unified diffs are computed so that a pool can be shared by several instances. The
+   * pool is owned, and shut down, by the caller. If no pool is set and there is more than one diff thread then
+   * {@link #diff()} and {@link #diffTargets(List)} each create a pool that is shut down when they complete.
+   */
+  synchronized void setDiffPool( final ForkJoinPool diffPool )
+  {
+    _diffPool = diffPool;
+  }
+
+  /**
+   * Perform the action with a diff pool, creating a pool that is shut down once the action completes if no
+   * pool has been set and there is more than one diff thread.
+   */
+  private <T> T withDiffPool( final Callable<T> action )
+    throws Exception
+  {
+    final ForkJoinPool pool;
+    synchronized ( this )
+    {
+      if ( null != _diffPool || _diffThreads <= 1 )
+      {
+        pool = null;
+      }
+      else
+      {
+        pool = new ForkJoinPool( _diffThreads );
+        _diffPool = pool;
+      }
+    }
+    try
+    {
+      return action.call();
+    }
+    finally
+    {
+      if ( null != pool )
+      {
+        setDiffPool( null );
+        pool.shutdown();
+      }
+    }
+  }
+
+  public File getDebugDumpDirectory()
+  {
+    return _debugDumpDirectory;
+  }
+
+  /**
+   * Set the directory in which database dumps are written when the logger is at FINE level.
+   * If not specified the dumps are written to the default temporary-file directory.
+   */
+  public void setDebugDumpDirectory( final File debugDumpDirectory )
+  {
+    _debugDumpDirectory = debugDumpDirectory;
+  }
+
+  public long getMemoryBudget()
+  {
+    return _memoryBudget;
+  }
+
+  /**
+   * Set the estimated number of bytes of heap used to hold the dumps compared by {@link #diff()}, shared
+   * equally by the dumps. When set the dumps are compared by a sort-merge diff that spills the objects that
+   * do not fit within the budget to temporary files, rather than holding both dumps and the patch in memory.
+   * The hunks are then reported in object order, as are the differences of the ndjson diff format. 0, the
+   * default, holds the dumps in memory. A budget is not supported by the structural diff format.
+   *
+   * @see SortMergeDiff
+   */
+  public void setMemoryBudget( final long memoryBudget )
+  {
+    _memoryBudget = memoryBudget;
+  }
+
+  public File getSpillDirectory()
+  {
+    return _spillDirectory;
+  }
+
+  /**
+   * Set the directory in which the sorted runs of a sort-merge diff are written. If not specified the runs
+   * are written to the default temporary-file directory.
+   */
+  public void setSpillDirectory( final File spillDirectory )
+  {
+    _spillDirectory = spillDirectory;
+  }
+
+  public File getRecordDirectory()
+  {
+    return _recordDirectory;
+  }
+
+  /**
+   * Set the directory in which the DatabaseMetaData calls made when dumping each database are recorded, or
+   * null to not record the calls. The recording of a database is written once its dump completes to a file
+   * named after the url, excluding any user and password, and is replayed by the url "jdbc:replay:" followed by
+   * the path of the file.
+   */
+  public void setRecordDirectory( final File recordDirectory )
+  {
+    _recordDirectory = recordDirectory;
+  }
+
+  /**
+   * Return the file in which the DatabaseMetaData calls made when dumping the database are recorded.
+   */
+  File getRecordFile( final String database )
+  {
+    final String name =
+      database.replaceAll( "(?i)(user|password)=[^;&]*", "" ).replaceAll( "[^A-Za-z0-9.-]+", "_" );
+    return new File( _recordDirectory, name + ".replay" );
+  }
+
+  public OutputStream getOutput()
+  {
+    return _output;
+  }
+
+  /**
+   * Set the stream to which {@link #diff()} writes the differences in the ndjson diff format. The stream
+   * is flushed but not closed once the diff completes.
+   */
+  public void setOutput( final OutputStream output )
+  {
+    _output = output;
+  }
+
   public Logger getLogger()
   {
     return _logger;
@@ -68,6 +395,20 @@ public class DatabaseDiff
     _driver = driver;
   }
 
+  public ConnectionSupplier getConnectionSupplier()
+  {
+    return _connectionSupplier;
+  }
+
+  /**
+   * Set the supplier of the connections to the databases, such as a pooled DataSource, or null to connect
+   * via the driver. A supplied connection is closed once the dump completes, returning it to its pool.
+   */
+  public void setConnectionSupplier( final ConnectionSupplier connectionSupplier )
+  {
+    _connectionSupplier = connectionSupplier;
+  }
+
   public String getDatabase1()
   {
     return _database1;
@@ -93,60 +434,884 @@ public class DatabaseDiff
     return _dbProperties;
   }
 
+  ConnectionPool getConnectionPool()
+  {
+    return _connectionPool;
+  }
+
+  /**
+   * Set the pool from which connections are taken and to which they are returned once a dump completes.
+   */
+  void setConnectionPool( final ConnectionPool connectionPool )
+  {
+    _connectionPool = connectionPool;
+  }
+
+  DumpCache getDumpCache()
+  {
+    return _dumpCache;
+  }
+
+  /**
+   * Set the cache of dumps used by {@link #diffTargets(List)}. A cached dump is used rather than dumping
+   * the database and a completed dump is added to the cache.
+   */
+  void setDumpCache( final DumpCache dumpCache )
+  {
+    _dumpCache = dumpCache;
+  }
+
+  Map<String, CatalogInfo> getCatalogInfos()
+  {
+    return _catalogInfos;
+  }
+
+  /**
+   * Set the table types and search string escapes of the databases, keyed by database, that are shared
+   * by the dumps of a long running process. The map must be safe for concurrent use.
+   */
+  void setCatalogInfos( final Map<String, CatalogInfo> catalogInfos )
+  {
+    _catalogInfos = catalogInfos;
+  }
+
+  /**
+   * Create a diff with the options, driver and connection supplier of this diff that compares the
+   * specified schemas, or the schemas of this diff if null. The diffs are returned to the caller so
+   * they are only logged when debugging.
+   */
+  DatabaseDiff copyOptions( final List<String> schemas )
+  {
+    final DatabaseDiff dd = new DatabaseDiff();
+    dd.setDriver( _driver );
+    dd.setConnectionSupplier( _connectionSupplier );
+    dd.getDbProperties().putAll( _dbProperties );
+    dd.setDialect( _dialect );
+    dd.getSchemas().addAll( null != schemas ? schemas : _schemas );
+    dd.getTableFilter().addAll( _tableFilter );
+    dd.getRoutineFilter().addAll( _routineFilter );
+    dd.getTypeFilter().addAll( _typeFilter );
+    dd.getObjectKinds().retainAll( _objectKinds );
+    dd.setContextSize( _contextSize );
+    dd.setDiffFormat( _diffFormat );
+    dd.setDiffThreads( _diffThreads );
+    dd.setBulkFetch( _bulkFetch );
+    dd.setNativeCatalog( _nativeCatalog );
+    dd.setFetchSize( _fetchSize );
+    dd.setConnectionsPerDatabase( _connectionsPerDatabase );
+    dd.setTargetConcurrency( _targetConcurrency );
+    dd.setDebugDumpDirectory( _debugDumpDirectory );
+
+    final Logger logger = Logger.getAnonymousLogger();
+    if ( null != _logger )
+    {
+      logger.setParent( _logger );
+    }
+    logger.setLevel( null != _logger && _logger.isLoggable( Level.FINE ) ? Level.ALL : Level.WARNING );
+    dd.setLogger( logger );
+    return dd;
+  }
+
   public boolean diff()
     throws Exception
   {
-    final Connection connection1 = _driver.connect( _database1, _dbProperties );
-    final Connection connection2 = _driver.connect( _database2, _dbProperties );
-
-    final List<String> diff = performDiff( connection1, connection2 );
-    if ( _logger.isLoggable( Level.INFO ) )
+    if ( DiffFormat.ndjson == _diffFormat )
     {
-      for ( final String s : diff )
+      if ( _failFast )
       {
-        _logger.log( Level.INFO, s );
+        throw new IllegalStateException( "The ndjson diff format is not supported when failing fast" );
       }
+      return performNdjsonDiff();
+    }
+    else if ( !_failFast && 0 != _memoryBudget )
+    {
+      return performSortMergeDiff();
     }
+    final List<String> diff = _failFast ? performLockStepComparison() : withDiffPool( this::performDiff );
+    logDiff( diff );
+    return !diff.isEmpty();
+  }
 
-    connection1.close();
-    connection2.close();
+  /**
+   * Compare database1 with each of the target databases. Database1 is dumped once and its dump is
+   * shared, read-only, by the comparisons with the targets, up to the target concurrency of which are
+   * dumped and compared at the same time. The differences for each target are logged together as
+   * soon as the target has been compared. A failure to dump database1 is thrown while a failure to
+   * dump a target is recorded in the result for the target.
+   *
+   * @return the result for each target in the order the targets were supplied.
+   */
+  public List<TargetResult> diffTargets( final List<String> targets )
+    throws Exception
+  {
+    return withDiffPool( () -> performDiffTargets( targets ) );
+  }
 
-    return !diff.isEmpty();
+  private List<TargetResult> performDiffTargets( final List<String> targets )
+    throws Exception
+  {
+    final DigestTree baseline = dumpTree( _database1 );
+    final DumpNode baselineNode =
+      DiffFormat.unified != _diffFormat && !_failFast ? DumpNode.parse( baseline ) : null;
+
+    final ArrayList<TargetTask> tasks = new ArrayList<>();
+    for ( final String target : targets )
+    {
+      tasks.add( new TargetTask( baseline, baselineNode, target ) );
+    }
+    final ExecutorService executor =
+      Executors.newFixedThreadPool( Math.max( 1, Math.min( _targetConcurrency, tasks.size() ) ) );
+    try
+    {
+      final ArrayList<TargetResult> results = new ArrayList<>();
+      for ( final Future<TargetResult> future : executor.invokeAll( tasks ) )
+      {
+        results.add( future.get() );
+      }
+      return results;
+    }
+    finally
+    {
+      executor.shutdownNow();
+      for ( final TargetTask task : tasks )
+      {
+        task.abort();
+      }
+    }
   }
 
-  private List<String> performDiff( final Connection connection1,
-                                    final Connection connection2 )
+  /**
+   * Dump the database into a completed digest tree, using the cached dump of the database if present.
+   */
+  private DigestTree dumpTree( final String database )
     throws Exception
   {
-    final List<String> database1 =
-      Arrays.asList( databaseSchemaToString( connection1 ).split( "\n" ) );
-    final List<String> database2 =
-      Arrays.asList( databaseSchemaToString( connection2 ).split( "\n" ) );
+    final DigestTree cached = null != _dumpCache ? _dumpCache.get( database, _schemas ) : null;
+    if ( null != cached )
+    {
+      return cached;
+    }
+    final DigestTree tree = new DigestTree();
+    new DumpTask( database, tree ).call();
+    tree.complete();
+    if ( null != _dumpCache )
+    {
+      _dumpCache.put( database, _schemas, tree );
+    }
+    return tree;
+  }
 
-    // Compute diff. Get the Patch object. Patch is the container for computed deltas.
-    final Patch patch = DiffUtils.diff( database1, database2 );
-    return DiffUtils.generateUnifiedDiff( _database1, _database2, database1, patch, _contextSize );
+  /**
+   * Log the lines of a diff at INFO level. The lines are logged together so that the diffs of
+   * targets compared concurrently are not interleaved.
+   */
+  private void logDiff( final List<String> diff )
+  {
+    if ( _logger.isLoggable( Level.INFO ) )
+    {
+      synchronized ( _logger )
+      {
+        for ( final String s : diff )
+        {
+          _logger.log( Level.INFO, s );
+        }
+      }
+    }
   }
 
-  private String databaseSchemaToString( final Connection connection )
+  /**
+   * Dump the specified database to a snapshot that can later be supplied in place of a jdbc url.
+   * The output stream is flushed but not closed.
+   */
+  public void dump( final String database, final OutputStream output )
     throws Exception
+  {
+    final ArrayList<Connection> connections = new ArrayList<>();
+    try
+    {
+      connect( database, connections );
+      try ( final SnapshotWriter snapshot = new SnapshotWriter( output ) )
+      {
+        dump( database, connections, snapshot );
+      }
+    }
+    finally
+    {
+      close( connections );
+    }
+  }
+
+  /**
+   * Open the connections used to dump the database. A recording is replayed over a single connection as
+   * the transaction snapshot shared by multiple connections is not recorded.
+   */
+  private void connect( final String database, final List<Connection> connections )
+    throws SQLException
+  {
+    if ( ReplayDriver.isReplay( database ) )
+    {
+      connections.add( REPLAY_DRIVER.connect( database, _dbProperties ) );
+      return;
+    }
+    for ( int i = 0; i < Math.max( 1, _connectionsPerDatabase ); i++ )
+    {
+      final Connection connection = null != _connectionPool ? _connectionPool.take( database ) : null;
+      connections.add( null != connection ? connection : newConnection( database ) );
+    }
+  }
+
+  /**
+   * Open a connection to the database via the connection supplier if specified, otherwise via the driver.
+   */
+  Connection newConnection( final String database )
+    throws SQLException
+  {
+    final Connection connection =
+      null != _connectionSupplier ?
+      _connectionSupplier.getConnection( database ) :
+      _driver.connect( database, _dbProperties );
+    if ( null == connection )
+    {
+      throw new SQLException( "No connection available to the database " + database );
+    }
+    return connection;
+  }
+
+  /**
+   * Return the connections to the pool if the dump completed, otherwise close them as their state is unknown.
+   */
+  private void release( final String database, final List<Connection> connections, final boolean completed )
+  {
+    if ( null != _connectionPool && completed )
+    {
+      for ( final Connection connection : connections )
+      {
+        try
+        {
+          _connectionPool.release( database, connection );
+        }
+        catch ( final SQLException ignored )
+        {
+          //Ignored as the connection is being abandoned
+        }
+      }
+    }
+    else
+    {
+      if ( null != _connectionPool )
+      {
+        for ( final Connection connection : connections )
+        {
+          _connectionPool.discard( connection );
+        }
+      }
+      close( connections );
+    }
+  }
+
+  /**
+   * Close the connections, ignoring any failure as the connections are being abandoned.
+   */
+  private static void close( final List<Connection> connections )
+  {
+    for ( final Connection connection : connections )
+    {
+      try
+      {
+        connection.close();
+      }
+      catch ( final SQLException ignored )
+      {
+        //Ignored as the connection is being abandoned
+      }
+    }
+  }
+
+  DatabaseDumper newDumper( final List<Connection> connections )
   {
     final DatabaseDumper dumper =
-      new DatabaseDumper( connection,
+      new DatabaseDumper( connections,
                           _dialect,
                           _schemas.toArray( new String[ _schemas.size() ] ) );
-    final StringWriter sw = new StringWriter();
-    dumper.dump( sw );
-    final String databaseDump = sw.toString();
+    dumper.setBulkFetch( _bulkFetch );
+    dumper.setNativeCatalog( _nativeCatalog );
+    dumper.setFetchSize( _fetchSize );
+    dumper.setTableFilter( _tableFilter );
+    dumper.setRoutineFilter( _routineFilter );
+    dumper.setTypeFilter( _typeFilter );
+    dumper.setObjectKinds( _objectKinds );
+    return dumper;
+  }
+
+  /**
+   * Dump both databases concurrently and return the lines reporting the differences in the diff format.
+   */
+  List<String> performDiff()
+    throws Exception
+  {
+    final DigestTree tree1 = new DigestTree();
+    final DigestTree tree2 = new DigestTree();
+    dumpDatabases( new DumpTask( _database1, tree1 ), new DumpTask( _database2, tree2 ) );
+    tree1.complete();
+    tree2.complete();
+    return computeDiff( _database1, _database2, tree1, null, tree2 );
+  }
+
+  /**
+   * Compare the dumps by sorting their objects within the memory budget and merging the sorted objects,
+   * logging the lines of the diff as they are produced.
+   */
+  private boolean performSortMergeDiff()
+    throws Exception
+  {
+    if ( DiffFormat.structural == _diffFormat )
+    {
+      throw new IllegalStateException( "A memory budget is not supported by the structural diff format" );
+    }
+    final long budget = _memoryBudget / 2;
+    try ( final SortMergeDiff.RecordSorter sorter1 = new SortMergeDiff.RecordSorter( budget, _spillDirectory );
+          final SortMergeDiff.RecordSorter sorter2 = new SortMergeDiff.RecordSorter( budget, _spillDirectory ) )
+    {
+      dumpDatabases( new DumpTask( _database1, sorter1 ), new DumpTask( _database2, sorter2 ) );
+      if ( _logger.isLoggable( Level.FINE ) )
+      {
+        _logger.log( Level.FINE, "Sorted runs spilled: " + sorter1.getRunCount() + " and " + sorter2.getRunCount() );
+      }
+      return SortMergeDiff.diff( _database1, _database2, sorter1, sorter2, _contextSize, line -> {
+        if ( _logger.isLoggable( Level.INFO ) )
+        {
+          _logger.log( Level.INFO, line );
+        }
+      } );
+    }
+  }
+
+  /**
+   * Compare the dumps structurally and write each difference to the output stream as a line of json as soon
+   * as it is found, once both dumps have completed. The dumps are compared in memory or, if there is a memory
+   * budget, by merging the sorted objects of the dumps. The differences written before any failure are flushed.
+   */
+  private boolean performNdjsonDiff()
+    throws Exception
+  {
+    if ( null == _output )
+    {
+      throw new IllegalStateException( "An output stream is required by the ndjson diff format" );
+    }
+    final Writer writer = new BufferedWriter( new OutputStreamWriter( _output, StandardCharsets.UTF_8 ) );
+    final NdjsonWriter ndjson = new NdjsonWriter( writer );
+    try
+    {
+      if ( 0 != _memoryBudget )
+      {
+        final long budget = _memoryBudget / 2;
+        try ( final SortMergeDiff.RecordSorter sorter1 = new SortMergeDiff.RecordSorter( budget, _spillDirectory );
+              final SortMergeDiff.RecordSorter sorter2 = new SortMergeDiff.RecordSorter( budget, _spillDirectory ) )
+        {
+          dumpDatabases( new DumpTask( _database1, sorter1 ), new DumpTask( _database2, sorter2 ) );
+          SortMergeDiff.structuralDiff( sorter1, sorter2, ndjson );
+        }
+      }
+      else
+      {
+        final DigestTree tree1 = new DigestTree();
+        final DigestTree tree2 = new DigestTree();
+        dumpDatabases( new DumpTask( _database1, tree1 ), new DumpTask( _database2, tree2 ) );
+        tree1.complete();
+        tree2.complete();
+        StructuralDiff.diff( DumpNode.parse( tree1 ), DumpNode.parse( tree2 ), ndjson );
+      }
+    }
+    catch ( final UncheckedIOException uioe )
+    {
+      throw uioe.getCause();
+    }
+    finally
+    {
+      writer.flush();
+    }
+    return 0 != ndjson.getCount();
+  }
+
+  /**
+   * Run the dump tasks concurrently and wait for both to complete, aborting both as soon as either fails.
+   */
+  private void dumpDatabases( final DumpTask task1, final DumpTask task2 )
+    throws Exception
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+    try
+    {
+      final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>( executor );
+      final Future<Void> future1 = completionService.submit( task1 );
+      final Future<Void> future2 = completionService.submit( task2 );
+
+      try
+      {
+        // Wait for both dumps, bailing out on the first one that fails
+        for ( int i = 0; i < 2; i++ )
+        {
+          completionService.take().get();
+        }
+      }
+      catch ( final ExecutionException | InterruptedException e )
+      {
+        future1.cancel( true );
+        future2.cancel( true );
+        task1.abort();
+        task2.abort();
+        if ( e instanceof ExecutionException && e.getCause() instanceof Exception )
+        {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Compare the lines of the dumps as they are produced, stopping at the first difference.
+   */
+  private List<String> performLockStepComparison()
+    throws Exception
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+    final BlockingQueue<QueuedLine> queue1 = new ArrayBlockingQueue<>( LOCK_STEP_QUEUE_CAPACITY );
+    final BlockingQueue<QueuedLine> queue2 = new ArrayBlockingQueue<>( LOCK_STEP_QUEUE_CAPACITY );
+    final DumpTask task1 = new DumpTask( _database1, toHandler( queue1 ) );
+    final DumpTask task2 = new DumpTask( _database2, toHandler( queue2 ) );
+    final Future<Void> future1 = executor.submit( toLockStepTask( task1, queue1, queue2 ) );
+    final Future<Void> future2 = executor.submit( toLockStepTask( task2, queue2, queue1 ) );
+    try
+    {
+      while ( true )
+      {
+        final String line1 = take( queue1, future1, future2 );
+        final String line2 = take( queue2, future2, future1 );
+        if ( null == line1 && null == line2 )
+        {
+          return new ArrayList<>();
+        }
+        else if ( !Objects.equals( line1, line2 ) )
+        {
+          return toFirstDifference( _database1, _database2, line1, line2 );
+        }
+      }
+    }
+    finally
+    {
+      future1.cancel( true );
+      future2.cancel( true );
+      task1.abort();
+      task2.abort();
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Return the report of the first differing lines of two dumps. A null line indicates the end of the dump.
+   */
+  private static List<String> toFirstDifference( final String name1,
+                                                 final String name2,
+                                                 final String line1,
+                                                 final String line2 )
+  {
+    final ArrayList<String> lines = new ArrayList<>();
+    lines.add( "--- " + name1 );
+    lines.add( "+++ " + name2 );
+    if ( null != line1 )
+    {
+      lines.add( "-" + line1 );
+    }
+    if ( null != line2 )
+    {
+      lines.add( "+" + line2 );
+    }
+    return lines;
+  }
+
+  private LineWriter.LineHandler toHandler( final BlockingQueue<QueuedLine> queue )
+  {
+    return line -> {
+      try
+      {
+        queue.put( new QueuedLine( QueuedLine.Kind.line, line ) );
+      }
+      catch ( final InterruptedException e )
+      {
+        throw new InterruptedIOException( "Dump cancelled" );
+      }
+    };
+  }
+
+  /**
+   * Wrap the task so that the end of the dump is marked in its queue and a failure is marked in
+   * the queue of the other dump, ensuring that the comparison never waits on a dump that has stopped.
+   */
+  private Callable<Void> toLockStepTask( final DumpTask task,
+                                         final BlockingQueue<QueuedLine> queue,
+                                         final BlockingQueue<QueuedLine> otherQueue )
+  {
+    return () -> {
+      try
+      {
+        return task.call();
+      }
+      catch ( final Exception e )
+      {
+        // If the other queue is full the comparison is not waiting on it and will reach the end of this dump
+        otherQueue.offer( QueuedLine.ABORTED );
+        throw e;
+      }
+      finally
+      {
+        queue.put( QueuedLine.END_OF_DUMP );
+      }
+    };
+  }
+
+  /**
+   * Return the next line of the dump or null if the dump is complete. If either dump failed then
+   * the failure is rethrown.
+   */
+  private String take( final BlockingQueue<QueuedLine> queue, final Future<Void> future, final Future<Void> other )
+    throws Exception
+  {
+    final QueuedLine line = queue.take();
+    switch ( line._kind )
+    {
+      case end_of_dump:
+        await( future );
+        return null;
+      case aborted:
+        await( other );
+        throw new IllegalStateException( "Dump aborted" );
+      default:
+        return line._line;
+    }
+  }
+
+  private void await( final Future<Void> future )
+    throws Exception
+  {
+    try
+    {
+      future.get();
+    }
+    catch ( final ExecutionException e )
+    {
+      if ( e.getCause() instanceof Exception )
+      {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Compute the diff of the dumps. The parsed form of the first dump may be supplied if it has
+   * already been parsed, otherwise it is parsed if required.
+   */
+  List<String> computeDiff( final String name1,
+                            final String name2,
+                            final DigestTree database1,
+                            final DumpNode node1,
+                            final DigestTree database2 )
+  {
+    if ( database1.getRoot().hasSameContent( database2.getRoot() ) )
+    {
+      return new ArrayList<>();
+    }
+    else if ( DiffFormat.ndjson == _diffFormat )
+    {
+      final ArrayList<String> lines = new ArrayList<>();
+      StructuralDiff.diff( null != node1 ? node1 : DumpNode.parse( database1 ),
+                           DumpNode.parse( database2 ),
+                           entry -> lines.add( NdjsonWriter.toJson( entry ) ) );
+      return lines;
+    }
+    else if ( DiffFormat.structural == _diffFormat )
+    {
+      final List<DiffEntry> entries =
+        StructuralDiff.diff( null != node1 ? node1 : DumpNode.parse( database1 ), DumpNode.parse( database2 ) );
+      final ArrayList<String> lines = new ArrayList<>();
+      if ( !entries.isEmpty() )
+      {
+        lines.add( "--- " + name1 );
+        lines.add( "+++ " + name2 );
+        for ( final DiffEntry entry : entries )
+        {
+          lines.addAll( entry.toLines() );
+        }
+      }
+      return lines;
+    }
+    else
+    {
+      return UnifiedDiff.diff( name1, name2, database1, database2, _contextSize, getDiffPool() );
+    }
+  }
+
+  /**
+   * Dump the database, passing each line to the handler as soon as it is produced.
+   */
+  private void dumpDatabase( final List<Connection> connections,
+                             final String database,
+                             final LineWriter.LineHandler handler )
+    throws Exception
+  {
     if ( _logger.isLoggable( Level.FINE ) )
     {
-      _logger.log( Level.FINE, "---------------------------------------------------------------" );
-      _logger.log( Level.FINE, "Database Dump: " + _database1 );
-      _logger.log( Level.FINE, "---------------------------------------------------------------" );
-      _logger.log( Level.FINE, databaseDump );
-      _logger.log( Level.FINE, "---------------------------------------------------------------" );
+      // Stream the dump to a file rather than holding another copy in memory to log
+      final File file = File.createTempFile( "dbdiff", ".dump", _debugDumpDirectory );
+      try ( final Writer debug = Files.newBufferedWriter( file.toPath(), StandardCharsets.UTF_8 ) )
+      {
+        dump( database, connections, line -> {
+          handler.handle( line );
+          debug.write( line );
+          debug.write( '\n' );
+        } );
+      }
+      _logger.log( Level.FINE, "Database Dump: " + database + " written to " + file );
+    }
+    else
+    {
+      dump( database, connections, handler );
+    }
+  }
+
+  /**
+   * Dump the database over the connections, recording the DatabaseMetaData calls if a record directory is
+   * specified and the database is not itself a recording.
+   */
+  private void dump( final String database,
+                     final List<Connection> connections,
+                     final LineWriter.LineHandler handler )
+    throws Exception
+  {
+    if ( null != _recordDirectory && _nativeCatalog )
+    {
+      // The native catalog queries bypass the DatabaseMetaData so the recording could not be replayed
+      throw new IllegalStateException( "The metadata can not be recorded when reading the native catalog" );
+    }
+    final MetaDataRecording recording =
+      null != _recordDirectory && !ReplayDriver.isReplay( database ) ? new MetaDataRecording() : null;
+    final DatabaseDumper dumper = newDumper( null != recording ? recording.record( connections ) : connections );
+    if ( null != _catalogInfos )
+    {
+      dumper.setCatalogInfo( _catalogInfos.computeIfAbsent( database, k -> new CatalogInfo() ) );
+    }
+    if ( null != _connectionPool )
+    {
+      dumper.setStatementCache( _connectionPool.getStatementCache() );
+    }
+    try ( final LineWriter writer = new LineWriter( handler ) )
+    {
+      dumper.dump( writer );
+    }
+    finally
+    {
+      if ( null == _connectionPool )
+      {
+        // The connections are closed once the dump completes
+        dumper.getStatementCache().close();
+      }
+    }
+    if ( null != recording )
+    {
+      final File file = getRecordFile( database );
+      recording.write( file );
+      _logger.log( Level.FINE, "Recorded " + recording.size() + " metadata calls of " + database + " to " + file );
     }
+  }
+
+  /**
+   * Dumps a single database on its own connections or reads the dump from a snapshot, passing
+   * each line of the dump to the handler. The connections are retained so that the dump can be
+   * aborted from another thread.
+   */
+  /**
+   * An entry in the queue of a dump in a lock step comparison. Either a line of the dump or a marker
+   * indicating that the dump has ended or that the other dump has failed.
+   */
+  private static final class QueuedLine
+  {
+    enum Kind
+    {
+      line, end_of_dump, aborted
+    }
+
+    private static final QueuedLine END_OF_DUMP = new QueuedLine( Kind.end_of_dump, null );
+    private static final QueuedLine ABORTED = new QueuedLine( Kind.aborted, null );
 
-    return databaseDump;
+    private final Kind _kind;
+    private final String _line;
+
+    QueuedLine( final Kind kind, final String line )
+    {
+      _kind = kind;
+      _line = line;
+    }
+  }
+
+  private final class DumpTask
+    implements Callable<Void>
+  {
+    private final String _database;
+    private final LineWriter.LineHandler _handler;
+    private final List<Connection> _connections = new CopyOnWriteArrayList<>();
+
+    DumpTask( final String database, final LineWriter.LineHandler handler )
+    {
+      _database = database;
+      _handler = handler;
+    }
+
+    @Override
+    public Void call()
+      throws Exception
+    {
+      if ( SnapshotReader.isSnapshot( _database ) )
+      {
+        for ( final String line : SnapshotReader.read( _database, _schemas ) )
+        {
+          _handler.handle( line );
+        }
+        return null;
+      }
+      boolean completed = false;
+      try
+      {
+        connect( _database, _connections );
+        if ( Thread.currentThread().isInterrupted() )
+        {
+          throw new InterruptedException( "Dump of " + _database + " cancelled" );
+        }
+        dumpDatabase( _connections, _database, _handler );
+        completed = true;
+        return null;
+      }
+      finally
+      {
+        release( _database, _connections, completed );
+        _connections.clear();
+      }
+    }
+
+    /**
+     * Close the connections, causing any in-flight metadata query to fail fast.
+     */
+    void abort()
+    {
+      close( _connections );
+    }
+  }
+
+  /**
+   * Dumps a target database and compares it with the dump of the baseline database. When failing
+   * fast each line is compared with the baseline as it is produced and the dump of the target is
+   * stopped at the first difference.
+   */
+  private final class TargetTask
+    implements Callable<TargetResult>, LineWriter.LineHandler
+  {
+    private final DigestTree _baseline;
+    private final DumpNode _baselineNode;
+    private final String _database;
+    private final DigestTree _tree = new DigestTree();
+    private final DumpTask _task;
+    private int _line;
+    private volatile List<String> _firstDifference;
+
+    TargetTask( final DigestTree baseline, final DumpNode baselineNode, final String database )
+    {
+      _baseline = baseline;
+      _baselineNode = baselineNode;
+      _database = database;
+      _task = new DumpTask( database, this );
+    }
+
+    @Override
+    public void handle( final String line )
+      throws IOException
+    {
+      if ( _failFast )
+      {
+        final List<String> lines = _baseline.getLines();
+        final String expected = _line < lines.size() ? lines.get( _line ) : null;
+        _line++;
+        if ( !line.equals( expected ) )
+        {
+          _firstDifference = toFirstDifference( _database1, _database, expected, line );
+          throw new InterruptedIOException( "Dump of " + _database + " stopped at the first difference" );
+        }
+      }
+      else
+      {
+        _tree.handle( line );
+      }
+    }
+
+    @Override
+    public TargetResult call()
+    {
+      try
+      {
+        final List<String> diff = compare();
+        logDiff( diff );
+        return new TargetResult( _database, diff, null );
+      }
+      catch ( final Exception e )
+      {
+        return new TargetResult( _database, new ArrayList<>(), e );
+      }
+    }
+
+    private List<String> compare()
+      throws Exception
+    {
+      final DigestTree cached = null == _dumpCache || _failFast ? null : _dumpCache.get( _database, _schemas );
+      if ( null != cached )
+      {
+        return computeDiff( _database1, _database, _baseline, _baselineNode, cached );
+      }
+      try
+      {
+        _task.call();
+      }
+      catch ( final Exception e )
+      {
+        if ( null != _firstDifference )
+        {
+          return _firstDifference;
+        }
+        throw e;
+      }
+      if ( _failFast )
+      {
+        final List<String> lines = _baseline.getLines();
+        return _line < lines.size() ?
+               toFirstDifference( _database1, _database, lines.get( _line ), null ) :
+               new ArrayList<>();
+      }
+      else
+      {
+        _tree.complete();
+        if ( null != _dumpCache )
+        {
+          _dumpCache.put( _database, _schemas, _tree );
+        }
+        return computeDiff( _database1, _database, _baseline, _baselineNode, _tree );
+      }
+    }
+
+    void abort()
+    {
+      _task.abort();
+    }
   }
 }
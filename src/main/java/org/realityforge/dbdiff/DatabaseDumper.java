@@ -1,19 +1,30 @@
 package org.realityforge.dbdiff;
 
 import java.io.Writer;
+import java.lang.reflect.Array;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public final class DatabaseDumper
 {
@@ -81,29 +92,263 @@ public final class DatabaseDumper
                    "PRECISION", "LENGTH", "SCALE", "RADIX", "NULLABLE", "REMARKS", "CHAR_OCTET_LENGTH",
                    "ORDINAL_POSITION", "IS_NULLABLE", "SPECIFIC_NAME" );
 
-  private final Connection _connection;
+  private static final AttributeLayout TABLE_LAYOUT =
+    new AttributeLayout( ALLOWABLE_TABLE_ATTRIBUTES, TABLE_NAME, true );
+  private static final AttributeLayout SUPER_TABLE_LAYOUT =
+    new AttributeLayout( ALLOWABLE_SUPER_TABLE_ATTRIBUTES, SUPER_TABLE_NAME, true );
+  private static final AttributeLayout SUPER_UDT_LAYOUT =
+    new AttributeLayout( ALLOWABLE_SUPER_UDT_ATTRIBUTES, SUPER_UDT_NAME, true );
+  private static final AttributeLayout COLUMN_LAYOUT =
+    new AttributeLayout( ALLOWABLE_COLUMN_ATTRIBUTES, COLUMN_NAME, false );
+  private static final AttributeLayout INDEX_LAYOUT =
+    new AttributeLayout( ALLOWABLE_INDEX_ATTRIBUTES, INDEX_NAME, false );
+  private static final AttributeLayout FOREIGN_KEY_LAYOUT =
+    new AttributeLayout( ALLOWABLE_FOREIGN_KEY_ATTRIBUTES, FK_NAME, false );
+  private static final AttributeLayout PRIMARY_KEY_LAYOUT =
+    new AttributeLayout( ALLOWABLE_PRIMARY_KEY_ATTRIBUTES, PK_NAME, false );
+  private static final AttributeLayout VERSION_COLUMN_LAYOUT =
+    new AttributeLayout( ALLOWABLE_VERSION_COLUMN_ATTRIBUTES, VERSION_COLUMN_NAME, true );
+  private static final AttributeLayout TABLE_PRIV_LAYOUT =
+    new AttributeLayout( ALLOWABLE_TABLE_PRIV_ATTRIBUTES, null, false );
+  private static final AttributeLayout COLUMN_PRIV_LAYOUT =
+    new AttributeLayout( ALLOWABLE_COLUMN_PRIV_ATTRIBUTES, null, false );
+  private static final AttributeLayout PROCEDURE_LAYOUT =
+    new AttributeLayout( ALLOWABLE_PROCEDURE_ATTRIBUTES, PROCEDURE_NAME, false );
+  private static final AttributeLayout PROCEDURE_COLUMN_LAYOUT =
+    new AttributeLayout( ALLOWABLE_PROCEDURE_COLUMN_ATTRIBUTES, PROCEDURE_COLUMN_NAME, false );
+  private static final AttributeLayout UDT_LAYOUT =
+    new AttributeLayout( ALLOWABLE_UDT_ATTRIBUTES, UDT_NAME, false );
+  private static final AttributeLayout UDT_ATTRIBUTE_LAYOUT =
+    new AttributeLayout( ALLOWABLE_UDT_ATTRIBUTE_ATTRIBUTES, UDT_ATTRIBUTE_NAME, false );
+  private static final AttributeLayout FUNCTION_LAYOUT =
+    new AttributeLayout( ALLOWABLE_FUNCTION_ATTRIBUTES, FUNCTION_NAME, false );
+  private static final AttributeLayout FUNCTION_COLUMN_LAYOUT =
+    new AttributeLayout( ALLOWABLE_FUNCTION_COLUMNS_ATTRIBUTES, FUNCTION_COLUMN_NAME, false );
+
+  /**
+   * The maximum number of tables loaded by a single task when dumping over multiple connections.
+   */
+  private static final int TABLE_BATCH_SIZE = 20;
+
+  private final List<Connection> _connections;
   private final Dialect _dialect;
   private final List<String> _schemas;
+  /**
+   * Canonical instances of the identifier, type name and flag values retrieved during the dump. They are
+   * repeated across many elements and only a single instance of each is retained. Cleared at the start of
+   * each dump so that a dumper reused by a watch does not retain every value ever retrieved.
+   */
+  private final Map<Object, Object> _internedValues = new ConcurrentHashMap<>();
+  private boolean _bulkFetch;
+  private boolean _nativeCatalog;
+  private int _fetchSize;
+  private ObjectFilter _tableFilter = new ObjectFilter();
+  private ObjectFilter _routineFilter = new ObjectFilter();
+  private ObjectFilter _typeFilter = new ObjectFilter();
+  private final EnumSet<ObjectKind> _objectKinds = EnumSet.allOf( ObjectKind.class );
+  private final Map<ObjectKind, TableExtractor> _tableExtractors = newTableExtractors();
+  private CatalogInfo _catalogInfo = new CatalogInfo();
+  private StatementCache _statementCache = new StatementCache();
 
   public DatabaseDumper( final Connection connection,
                          final Dialect dialect,
                          final String[] schemas )
   {
-    _connection = connection;
+    this( Collections.singletonList( connection ), dialect, schemas );
+  }
+
+  /**
+   * Create a dumper that loads schemas, and batches of tables within a schema, concurrently with one
+   * task per connection. The output is identical to a dump over a single connection. The dumper
+   * starts a transaction on each connection for the duration of the dump and, for postgres, the
+   * transactions share a single exported snapshot so that every connection sees the same state.
+   */
+  public DatabaseDumper( final List<Connection> connections,
+                         final Dialect dialect,
+                         final String[] schemas )
+  {
+    if ( connections.isEmpty() )
+    {
+      throw new IllegalArgumentException( "At least one connection must be supplied" );
+    }
+    _connections = new ArrayList<>( connections );
     _dialect = dialect;
     _schemas = Arrays.asList( schemas );
   }
 
+  public boolean isBulkFetch()
+  {
+    return _bulkFetch;
+  }
+
+  /**
+   * When enabled the per-table and per-routine metadata is retrieved once for each schema and then
+   * grouped by the owning object rather than being queried separately for every object. Kinds that the
+   * dialect can not retrieve without a table name continue to be queried per table.
+   */
+  public void setBulkFetch( final boolean bulkFetch )
+  {
+    _bulkFetch = bulkFetch;
+  }
+
+  public boolean isNativeCatalog()
+  {
+    return _nativeCatalog;
+  }
+
+  /**
+   * When enabled the columns, keys, indexes, privileges and version columns of the tables in each schema are
+   * read directly from the system catalog with a single query per kind of metadata rather than via the
+   * DatabaseMetaData of the driver. The dump is identical. Only supported for the postgresql dialect.
+   */
+  public void setNativeCatalog( final boolean nativeCatalog )
+  {
+    _nativeCatalog = nativeCatalog;
+  }
+
+  public int getFetchSize()
+  {
+    return _fetchSize;
+  }
+
+  /**
+   * Set the number of rows fetched from the database at a time when reading metadata, or 0 to use the
+   * default of the driver. The postgres driver only fetches rows incrementally via a cursor when the
+   * query is executed within a transaction, which is the case for the system catalog queries.
+   */
+  public void setFetchSize( final int fetchSize )
+  {
+    _fetchSize = fetchSize;
+  }
+
+  public ObjectFilter getTableFilter()
+  {
+    return _tableFilter;
+  }
+
+  /**
+   * Set the filter that selects the tables, views and other relations that are dumped. The filter is
+   * pushed down into the name patterns passed to the driver and, when the system catalog is read, into
+   * the catalog queries so that the metadata of excluded relations is not retrieved.
+   */
+  public void setTableFilter( final ObjectFilter tableFilter )
+  {
+    _tableFilter = tableFilter;
+  }
+
+  public ObjectFilter getRoutineFilter()
+  {
+    return _routineFilter;
+  }
+
+  /**
+   * Set the filter that selects the procedures and functions that are dumped.
+   */
+  public void setRoutineFilter( final ObjectFilter routineFilter )
+  {
+    _routineFilter = routineFilter;
+  }
+
+  public ObjectFilter getTypeFilter()
+  {
+    return _typeFilter;
+  }
+
+  /**
+   * Set the filter that selects the user defined types that are dumped.
+   */
+  public void setTypeFilter( final ObjectFilter typeFilter )
+  {
+    _typeFilter = typeFilter;
+  }
+
+  public Set<ObjectKind> getObjectKinds()
+  {
+    return Collections.unmodifiableSet( _objectKinds );
+  }
+
+  /**
+   * Set the kinds of objects that are dumped. The metadata of the other kinds is not retrieved. The
+   * elements of a table are only dumped if tables are dumped.
+   */
+  public void setObjectKinds( final Set<ObjectKind> objectKinds )
+  {
+    _objectKinds.clear();
+    _objectKinds.addAll( objectKinds );
+  }
+
+  CatalogInfo getCatalogInfo()
+  {
+    return _catalogInfo;
+  }
+
+  /**
+   * Set the table types and search string escape of the database, retrieved once and shared by the dumps
+   * of the database so that they are not retrieved for every schema, query or dump.
+   */
+  void setCatalogInfo( final CatalogInfo catalogInfo )
+  {
+    _catalogInfo = catalogInfo;
+  }
+
+  StatementCache getStatementCache()
+  {
+    return _statementCache;
+  }
+
+  /**
+   * Set the cache of the prepared system catalog queries of each connection. By default the statements are
+   * retained by the dumper, and so are reused by the schemas of a dump and by later dumps over the same
+   * connections. A pool of connections supplies its own cache so that the statements are retained along with
+   * the idle connections.
+   */
+  void setStatementCache( final StatementCache statementCache )
+  {
+    _statementCache = statementCache;
+  }
+
   public void dump( final Writer w )
     throws Exception
   {
-    final DatabaseMetaData metaData = _connection.getMetaData();
+    clearInternedValues();
+    if ( 1 == _connections.size() )
+    {
+      dumpSerially( w );
+    }
+    else
+    {
+      final List<ConnectionState> states = beginTransactions();
+      try
+      {
+        dumpConcurrently( w );
+      }
+      finally
+      {
+        endTransactions( states );
+      }
+    }
+  }
+
+  private void dumpSerially( final Writer w )
+    throws Exception
+  {
+    final DatabaseMetaData metaData = _connections.get( 0 ).getMetaData();
     final List<String> schemaSet = getSchema( metaData );
     for ( final String schema : _schemas )
     {
       if ( schemaSet.contains( schema ) )
       {
-        emitSchema( w, metaData, schema );
+        // Emit each table as it is loaded so that a reader that stops at the first difference
+        // also stops the dump before the metadata of the remaining tables is retrieved
+        final PendingSchema pending = loadSchemaTables( metaData, schema );
+        w.write( "Schema: " + schema + "\n" );
+        for ( final Table table : pending._tables )
+        {
+          loadTables( metaData, pending, Collections.singletonList( table ) );
+          emitTable( w, table );
+        }
+        loadSchemaObjects( metaData, pending );
+        emitSchemaObjects( w, pending.toSchema() );
       }
       else
       {
@@ -112,158 +357,888 @@ public final class DatabaseDumper
     }
   }
 
-  private void emitSchema( final Writer w, final DatabaseMetaData metaData, final String schema )
+  /**
+   * Load the tables of the schemas and then the batches of tables and the routines and types within
+   * each schema on a pool of connections, emitting each batch of tables in the requested order as it
+   * completes.
+   */
+  private void dumpConcurrently( final Writer w )
+    throws Exception
+  {
+    final BlockingQueue<Connection> pool = new ArrayBlockingQueue<>( _connections.size(), false, _connections );
+    final ExecutorService executor = Executors.newFixedThreadPool( _connections.size() );
+    try
+    {
+      final List<String> schemaSet = getSchema( _connections.get( 0 ).getMetaData() );
+      final ArrayList<Future<PendingSchema>> schemas = new ArrayList<>();
+      for ( final String schema : _schemas )
+      {
+        schemas.add( schemaSet.contains( schema ) ?
+                     executor.submit( () -> withConnection( pool, m -> loadSchemaTables( m, schema ) ) ) :
+                     null );
+      }
+
+      // Queue the table batches and then the routines and types of each schema as soon as the
+      // tables of the schema are known
+      final ArrayList<List<Future<List<Table>>>> batches = new ArrayList<>();
+      final ArrayList<Future<PendingSchema>> objects = new ArrayList<>();
+      for ( final Future<PendingSchema> future : schemas )
+      {
+        final ArrayList<Future<List<Table>>> schemaBatches = new ArrayList<>();
+        if ( null != future )
+        {
+          final PendingSchema pending = await( future );
+          for ( int i = 0; i < pending._tables.size(); i += TABLE_BATCH_SIZE )
+          {
+            final List<Table> tables =
+              pending._tables.subList( i, Math.min( i + TABLE_BATCH_SIZE, pending._tables.size() ) );
+            schemaBatches.add( executor.submit( () -> withConnection( pool, m -> {
+              loadTables( m, pending, tables );
+              return tables;
+            } ) ) );
+          }
+          objects.add( executor.submit( () -> withConnection( pool, m -> {
+            loadSchemaObjects( m, pending );
+            return pending;
+          } ) ) );
+        }
+        else
+        {
+          objects.add( null );
+        }
+        batches.add( schemaBatches );
+      }
+
+      for ( int i = 0; i < _schemas.size(); i++ )
+      {
+        final Future<PendingSchema> future = schemas.get( i );
+        if ( null == future )
+        {
+          w.write( "Missing Schema: " + _schemas.get( i ) + "\n" );
+        }
+        else
+        {
+          w.write( "Schema: " + _schemas.get( i ) + "\n" );
+          for ( final Future<List<Table>> batch : batches.get( i ) )
+          {
+            for ( final Table table : await( batch ) )
+            {
+              emitTable( w, table );
+            }
+          }
+          emitSchemaObjects( w, await( objects.get( i ) ).toSchema() );
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  interface ConnectionTask<T>
+  {
+    T run( DatabaseMetaData metaData )
+      throws Exception;
+  }
+
+  private <T> T withConnection( final BlockingQueue<Connection> pool, final ConnectionTask<T> task )
     throws Exception
   {
-    w.write( "Schema: " + schema + "\n" );
-    for ( final LinkedHashMap<String, Object> table : getTablesForSchema( metaData, schema ) )
+    final Connection connection = pool.take();
+    try
+    {
+      return task.run( connection.getMetaData() );
+    }
+    finally
+    {
+      pool.add( connection );
+    }
+  }
+
+  private <T> T await( final Future<T> future )
+    throws Exception
+  {
+    try
+    {
+      return future.get();
+    }
+    catch ( final ExecutionException e )
+    {
+      if ( e.getCause() instanceof Exception )
+      {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * The transaction settings of a connection prior to the dump.
+   */
+  private static final class ConnectionState
+  {
+    private final Connection _connection;
+    private final boolean _autoCommit;
+    private final int _transactionIsolation;
+
+    ConnectionState( final Connection connection )
+      throws SQLException
     {
-      final String tableName = (String) table.get( TABLE_NAME );
-      final String tableType = (String) table.get( TABLE_TYPE );
-      w.write( "\t" + tableType + ": " + tableName + "\n" );
+      _connection = connection;
+      _autoCommit = connection.getAutoCommit();
+      _transactionIsolation = connection.getTransactionIsolation();
+    }
+  }
 
-      for ( final LinkedHashMap<String, Object> priv : getSuperTables( metaData, schema, tableName ) )
+  /**
+   * Start a repeatable read transaction on each connection for postgres 9.2 and later. The first connection
+   * exports its snapshot and the other connections import it so that all of the connections see the
+   * same state of the database, just as a single connection would. Other databases can not share a snapshot
+   * between connections, so no transaction is started as it would only hold the locks taken on the catalog
+   * for the duration of the dump. The connections are restored if the transactions can not be started.
+   */
+  private List<ConnectionState> beginTransactions()
+    throws SQLException
+  {
+    final ArrayList<ConnectionState> states = new ArrayList<>();
+    if ( !supportsSnapshotExport() )
+    {
+      return states;
+    }
+    try
+    {
+      for ( final Connection connection : _connections )
+      {
+        states.add( new ConnectionState( connection ) );
+        connection.setTransactionIsolation( Connection.TRANSACTION_REPEATABLE_READ );
+        connection.setAutoCommit( false );
+      }
+      final String snapshot;
+      try ( final Statement statement = _connections.get( 0 ).createStatement();
+            final ResultSet resultSet = statement.executeQuery( "SELECT pg_export_snapshot()" ) )
       {
-        w.write( "\t\tSUPER   : " + priv.get( SUPER_TABLE_NAME ) + "\n" );
+        resultSet.next();
+        snapshot = resultSet.getString( 1 );
       }
-      for ( final LinkedHashMap<String, Object> priv : getTablePrivileges( metaData, schema, tableName ) )
+      for ( final Connection connection : _connections.subList( 1, _connections.size() ) )
       {
-        w.write( "\t\tPRIV    : " + compact( priv ) + "\n" );
+        try ( final Statement statement = connection.createStatement() )
+        {
+          statement.execute( "SET TRANSACTION SNAPSHOT '" + snapshot + "'" );
+        }
       }
-      for ( final LinkedHashMap<String, Object> v : getPrimaryKeys( metaData, schema, tableName ) )
+    }
+    catch ( final SQLException e )
+    {
+      try
       {
-        final String name = (String) v.remove( PK_NAME );
-        w.write( "\t\tPK      : " + name + ": " + compact( v ) + "\n" );
+        endTransactions( states );
       }
-      for ( final LinkedHashMap<String, Object> v : getVersionColumns( metaData, schema, tableName ) )
+      catch ( final SQLException suppressed )
       {
-        final String name = (String) v.get( VERSION_COLUMN_NAME );
-        w.write( "\t\tGEN     : " + name + ": " + compact( v ) + "\n" );
+        e.addSuppressed( suppressed );
       }
-      for ( final LinkedHashMap<String, Object> column : getColumns( metaData, schema, tableName ) )
+      throw e;
+    }
+    return states;
+  }
+
+  private boolean supportsSnapshotExport()
+    throws SQLException
+  {
+    if ( Dialect.postgresql != _dialect )
+    {
+      return false;
+    }
+    final DatabaseMetaData metaData = _connections.get( 0 ).getMetaData();
+    final int major = metaData.getDatabaseMajorVersion();
+    return major > 9 || ( 9 == major && metaData.getDatabaseMinorVersion() >= 2 );
+  }
+
+  private void endTransactions( final List<ConnectionState> states )
+    throws SQLException
+  {
+    // Every connection is restored even if restoring an earlier connection fails
+    SQLException failure = null;
+    for ( final ConnectionState state : states )
+    {
+      try
       {
-        final String columnName = (String) column.get( COLUMN_NAME );
-        column.remove( COLUMN_NAME );
-        w.write( "\t\tCOLUMN  : " + columnName + ": " + compact( column ) + "\n" );
-        final List<LinkedHashMap<String, Object>> privileges =
-          getColumnPrivileges( metaData, schema, tableName, columnName );
-        for ( final LinkedHashMap<String, Object> priv : privileges )
+        if ( !state._connection.isClosed() )
         {
-          w.write( "\t\t\tPRIV    : " + compact( priv ) + "\n" );
+          state._connection.rollback();
+          state._connection.setAutoCommit( state._autoCommit );
+          state._connection.setTransactionIsolation( state._transactionIsolation );
         }
       }
-      for ( final LinkedHashMap<String, Object> fk : getImportedKeys( metaData, schema, tableName ) )
+      catch ( final SQLException e )
       {
-        final String fkName = (String) fk.get( FK_NAME );
-        fk.remove( FK_NAME );
-        w.write( "\t\tFK      : " + fkName + ": " + compact( fk ) + "\n" );
+        if ( null == failure )
+        {
+          failure = e;
+        }
+        else
+        {
+          failure.addSuppressed( e );
+        }
       }
-      for ( final LinkedHashMap<String, Object> v : getIndexInfo( metaData, schema, tableName ) )
+    }
+    if ( null != failure )
+    {
+      throw failure;
+    }
+  }
+
+  void emitSchema( final Writer w, final Schema schema )
+    throws Exception
+  {
+    w.write( "Schema: " + schema.getName() + "\n" );
+    for ( final Table table : schema.getTables() )
+    {
+      emitTable( w, table );
+    }
+    emitSchemaObjects( w, schema );
+  }
+
+  void emitTable( final Writer w, final Table table )
+    throws Exception
+  {
+    w.write( "\t" + table.getType() + ": " + table.getName() + "\n" );
+
+    for ( final String superTable : table.getSuperTables() )
+    {
+      w.write( "\t\tSUPER   : " + superTable + "\n" );
+    }
+    for ( final Privilege priv : table.getPrivileges() )
+    {
+      w.write( "\t\tPRIV    : " + priv.attributesToString() + "\n" );
+    }
+    for ( final Element v : table.getPrimaryKeys() )
+    {
+      w.write( "\t\tPK      : " + v.getName() + ": " + v.attributesToString() + "\n" );
+    }
+    for ( final Element v : table.getVersionColumns() )
+    {
+      w.write( "\t\tGEN     : " + v.getName() + ": " + v.attributesToString() + "\n" );
+    }
+    for ( final Column column : table.getColumns() )
+    {
+      w.write( "\t\tCOLUMN  : " + column.getName() + ": " + column.attributesToString() + "\n" );
+      for ( final Privilege priv : column.getPrivileges() )
       {
-        final String name = (String) v.remove( INDEX_NAME );
-        w.write( "\t\tIX      : " + name + ": " + compact( v ) + "\n" );
+        w.write( "\t\t\tPRIV    : " + priv.attributesToString() + "\n" );
       }
     }
-    for ( final LinkedHashMap<String, Object> v : getProceduresForSchema( metaData, schema ) )
+    for ( final ForeignKey fk : table.getForeignKeys() )
+    {
+      w.write( "\t\tFK      : " + fk.getName() + ": " + fk.attributesToString() + "\n" );
+    }
+    for ( final Index v : table.getIndexes() )
     {
-      final String key = (String) v.remove( PROCEDURE_NAME );
-      w.write( "\tPROC    : " + key + ": " + compact( v ) + "\n" );
+      w.write( "\t\tIX      : " + v.getName() + ": " + v.attributesToString() + "\n" );
+    }
+  }
 
-      for ( final LinkedHashMap<String, Object> c : getProcedureColumns( metaData, schema, key ) )
+  /**
+   * Emit the routines and user defined types of the schema.
+   */
+  void emitSchemaObjects( final Writer w, final Schema schema )
+    throws Exception
+  {
+    for ( final Routine v : schema.getProcedures() )
+    {
+      w.write( "\tPROC    : " + v.getName() + ": " + v.attributesToString() + "\n" );
+      for ( final Element c : v.getParameters() )
       {
-        final String name = (String) c.remove( PROCEDURE_COLUMN_NAME );
-        w.write( "\t\tPARAM   : " + name + ": " + compact( c ) + "\n" );
+        w.write( "\t\tPARAM   : " + c.getName() + ": " + c.attributesToString() + "\n" );
       }
     }
-    for ( final LinkedHashMap<String, Object> v : getUDTsForSchema( metaData, schema ) )
+    for ( final UDT v : schema.getUDTs() )
     {
-      final String key = (String) v.remove( UDT_NAME );
-      w.write( "\tUDT     : " + key + ": " + compact( v ) + "\n" );
-      for ( final LinkedHashMap<String, Object> types : getSuperTypes( metaData, schema, key ) )
+      w.write( "\tUDT     : " + v.getName() + ": " + v.attributesToString() + "\n" );
+      for ( final String superType : v.getSuperTypes() )
       {
-        w.write( "\t\tSUPER   : " + types.get( SUPER_UDT_NAME ) + "\n" );
+        w.write( "\t\tSUPER   : " + superType + "\n" );
       }
-      for ( final LinkedHashMap<String, Object> c : getAttributesColumns( metaData, schema, key ) )
+      for ( final Element c : v.getAttributes() )
       {
-        final String name = (String) c.remove( UDT_ATTRIBUTE_NAME );
-        w.write( "\t\tATTR    : " + name + ": " + compact( c ) + "\n" );
+        w.write( "\t\tATTR    : " + c.getName() + ": " + c.attributesToString() + "\n" );
       }
     }
-    for ( final LinkedHashMap<String, Object> v : getFunctionsForSchema( metaData, schema ) )
+    for ( final Routine v : schema.getFunctions() )
     {
-      final String key = (String) v.remove( FUNCTION_NAME );
-      w.write( "\tFUNC    : " + key + ": " + compact( v ) + "\n" );
-      for ( final LinkedHashMap<String, Object> c : getFunctionColumns( metaData, schema, key ) )
+      w.write( "\tFUNC    : " + v.getName() + ": " + v.attributesToString() + "\n" );
+      for ( final Element c : v.getParameters() )
       {
-        final String name = (String) c.remove( FUNCTION_COLUMN_NAME );
-        w.write( "\t\tPARAM   : " + name + ": " + compact( c ) + "\n" );
+        w.write( "\t\tPARAM   : " + c.getName() + ": " + c.attributesToString() + "\n" );
       }
     }
   }
 
-  private LinkedHashMap compact( final LinkedHashMap<String, Object> column )
+  Schema loadSchema( final DatabaseMetaData metaData, final String schema )
+    throws Exception
   {
-    final ArrayList<String> keys = new ArrayList<>();
-    keys.addAll( column.keySet() );
-    for ( final String key : keys )
+    final PendingSchema pending = loadSchemaTables( metaData, schema );
+    loadTables( metaData, pending, pending._tables );
+    loadSchemaObjects( metaData, pending );
+    return pending.toSchema();
+  }
+
+  /**
+   * Load the tables of the schema with the specified names, retrieving the metadata of each table
+   * individually. The names of tables that do not exist are ignored. Used to refresh the tables of a
+   * schema that has changed since the schema was loaded.
+   */
+  List<Table> loadTables( final DatabaseMetaData metaData, final String schema, final Collection<String> names )
+    throws Exception
+  {
+    final PendingSchema pending = new PendingSchema( schema );
+    pending._tables = new ArrayList<>();
+    for ( final Table table : getTablesForSchema( metaData, schema ) )
+    {
+      if ( names.contains( table.getName() ) )
+      {
+        pending._tables.add( table );
+      }
+    }
+    loadTables( metaData, pending, pending._tables );
+    return pending._tables;
+  }
+
+  /**
+   * Load the tables of the schema and the table metadata that is retrieved for the schema at once, if
+   * tables are enabled. The details of each table are loaded separately via {@link #loadTables} so that
+   * the tables of a large schema can be loaded in batches and emitted as they are loaded.
+   */
+  private PendingSchema loadSchemaTables( final DatabaseMetaData metaData, final String schema )
+    throws Exception
+  {
+    if ( _nativeCatalog && Dialect.postgresql != _dialect )
+    {
+      throw new IllegalStateException( "Native catalog extraction is not supported for the " + _dialect + " dialect" );
+    }
+    final PendingSchema pending = new PendingSchema( schema );
+    pending._tables = new ArrayList<>();
+    pending._procedures = new ArrayList<>();
+    pending._udts = new ArrayList<>();
+    pending._functions = new ArrayList<>();
+
+    if ( _objectKinds.contains( ObjectKind.tables ) )
     {
-      if ( null == column.get( key ) )
+      pending._tables = getTablesForSchema( metaData, schema );
+      if ( !pending._tables.isEmpty() )
       {
-        column.remove( key );
+        for ( final TableExtractor extractor : getTableExtractors() )
+        {
+          extractor.prefetch( metaData, pending );
+        }
       }
     }
-    return column;
+    return pending;
   }
 
-  private List<LinkedHashMap<String, Object>> getTablePrivileges( final DatabaseMetaData metaData,
-                                                                  final String schema,
-                                                                  final String tablename )
+  /**
+   * Load the routines and the user defined types of the schema, retrieving only the enabled kinds of object.
+   */
+  private void loadSchemaObjects( final DatabaseMetaData metaData, final PendingSchema pending )
+    throws Exception
+  {
+    final String schema = pending._name;
+    if ( _objectKinds.contains( ObjectKind.routines ) )
+    {
+      final Map<String, List<Element>> procedureColumns =
+        _bulkFetch ? getProcedureColumnsForSchema( metaData, schema ) : null;
+      pending._procedures = getProceduresForSchema( metaData, schema );
+      for ( final Routine procedure : pending._procedures )
+      {
+        final String key = procedure.getName();
+        procedure.setParameters( toArray( lookup( procedureColumns,
+                                                  key,
+                                                  () -> getProcedureColumns( metaData, schema, key ) ),
+                                          Element.class ) );
+      }
+
+      pending._functions = getFunctionsForSchema( metaData, schema );
+      final Map<String, List<Element>> functionColumns =
+        _bulkFetch && !pending._functions.isEmpty() ? getFunctionColumnsForSchema( metaData, schema ) : null;
+      for ( final Routine function : pending._functions )
+      {
+        final String key = function.getName();
+        function.setParameters( toArray( lookup( functionColumns,
+                                                 key,
+                                                 () -> getFunctionColumns( metaData, schema, key ) ),
+                                         Element.class ) );
+      }
+    }
+
+    if ( _objectKinds.contains( ObjectKind.types ) )
+    {
+      final Map<String, List<Element>> attributes =
+        _bulkFetch ? getAttributesColumnsForSchema( metaData, schema ) : null;
+      pending._udts = getUDTsForSchema( metaData, schema );
+      for ( final UDT udt : pending._udts )
+      {
+        final String key = udt.getName();
+        udt.setSuperTypes( toArray( getSuperTypes( metaData, schema, key ), String.class ) );
+        udt.setAttributes( toArray( lookup( attributes, key, () -> getAttributesColumns( metaData, schema, key ) ),
+                                    Element.class ) );
+      }
+    }
+  }
+
+  /**
+   * Retrieves one kind of table element. An extractor may retrieve the elements of every table in the
+   * schema at once, when bulk fetching or reading from the system catalog, and otherwise retrieves the
+   * elements as each table is loaded.
+   */
+  private interface TableExtractor
+  {
+    /**
+     * Retrieve the elements of every table in the schema, if supported, before any table is loaded.
+     */
+    void prefetch( DatabaseMetaData metaData, PendingSchema pending )
+      throws Exception;
+
+    void extract( DatabaseMetaData metaData, PendingSchema pending, Table table )
+      throws Exception;
+  }
+
+  /**
+   * Return the extractors of the enabled kinds of table element, in an order where the columns are
+   * extracted before their privileges.
+   */
+  private List<TableExtractor> getTableExtractors()
+  {
+    final ArrayList<TableExtractor> extractors = new ArrayList<>();
+    for ( final ObjectKind kind : _objectKinds )
+    {
+      final TableExtractor extractor = _tableExtractors.get( kind );
+      if ( null != extractor )
+      {
+        extractors.add( extractor );
+      }
+    }
+    return extractors;
+  }
+
+  private Map<ObjectKind, TableExtractor> newTableExtractors()
+  {
+    final EnumMap<ObjectKind, TableExtractor> extractors = new EnumMap<>( ObjectKind.class );
+    extractors.put( ObjectKind.columns, new TableExtractor()
+    {
+      @Override
+      public void prefetch( final DatabaseMetaData metaData, final PendingSchema pending )
+        throws Exception
+      {
+        if ( _nativeCatalog )
+        {
+          final PostgresCatalog catalog = pending.getPostgresCatalog( metaData );
+          pending._columns =
+            group( f -> catalog.getColumns( pending._name, f ), TABLE_NAME, COLUMN_LAYOUT, Column::new );
+        }
+        else if ( _bulkFetch )
+        {
+          pending._columns = getColumnsForSchema( metaData, pending._name );
+        }
+      }
+
+      @Override
+      public void extract( final DatabaseMetaData metaData, final PendingSchema pending, final Table table )
+        throws Exception
+      {
+        final String name = table.getName();
+        table.setColumns( toArray( lookup( pending._columns,
+                                           name,
+                                           () -> getColumns( metaData, pending._name, name ) ),
+                                   Column.class ) );
+      }
+    } );
+    extractors.put( ObjectKind.primary_keys, new TableExtractor()
+    {
+      @Override
+      public void prefetch( final DatabaseMetaData metaData, final PendingSchema pending )
+        throws Exception
+      {
+        if ( _nativeCatalog )
+        {
+          final PostgresCatalog catalog = pending.getPostgresCatalog( metaData );
+          pending._primaryKeys =
+            group( f -> catalog.getPrimaryKeys( pending._name, f ), TABLE_NAME, PRIMARY_KEY_LAYOUT, Element::new );
+        }
+        else if ( _bulkFetch )
+        {
+          pending._primaryKeys = getPrimaryKeysForSchema( metaData, pending._name );
+        }
+      }
+
+      @Override
+      public void extract( final DatabaseMetaData metaData, final PendingSchema pending, final Table table )
+        throws Exception
+      {
+        final String name = table.getName();
+        table.setPrimaryKeys( toArray( lookup( pending._primaryKeys,
+                                               name,
+                                               () -> getPrimaryKeys( metaData, pending._name, name ) ),
+                                       Element.class ) );
+      }
+    } );
+    extractors.put( ObjectKind.foreign_keys, new TableExtractor()
+    {
+      @Override
+      public void prefetch( final DatabaseMetaData metaData, final PendingSchema pending )
+        throws Exception
+      {
+        if ( _nativeCatalog )
+        {
+          final PostgresCatalog catalog = pending.getPostgresCatalog( metaData );
+          pending._importedKeys = group( f -> catalog.getImportedKeys( pending._name, f ),
+                                         "FKTABLE_NAME",
+                                         FOREIGN_KEY_LAYOUT,
+                                         ForeignKey::new );
+        }
+        else if ( _bulkFetch )
+        {
+          pending._importedKeys = getImportedKeysForSchema( metaData, pending._name );
+        }
+      }
+
+      @Override
+      public void extract( final DatabaseMetaData metaData, final PendingSchema pending, final Table table )
+        throws Exception
+      {
+        final String name = table.getName();
+        table.setForeignKeys( toArray( lookup( pending._importedKeys,
+                                               name,
+                                               () -> getImportedKeys( metaData, pending._name, name ) ),
+                                       ForeignKey.class ) );
+      }
+    } );
+    extractors.put( ObjectKind.indexes, new TableExtractor()
+    {
+      @Override
+      public void prefetch( final DatabaseMetaData metaData, final PendingSchema pending )
+        throws Exception
+      {
+        if ( _nativeCatalog )
+        {
+          final PostgresCatalog catalog = pending.getPostgresCatalog( metaData );
+          pending._indexes =
+            group( f -> catalog.getIndexInfo( pending._name, f ), TABLE_NAME, INDEX_LAYOUT, Index::new );
+        }
+      }
+
+      @Override
+      public void extract( final DatabaseMetaData metaData, final PendingSchema pending, final Table table )
+        throws Exception
+      {
+        final String name = table.getName();
+        table.setIndexes( toArray( lookup( pending._indexes,
+                                           name,
+                                           () -> getIndexInfo( metaData, pending._name, name ) ),
+                                   Index.class ) );
+      }
+    } );
+    extractors.put( ObjectKind.version_columns, new TableExtractor()
+    {
+      @Override
+      public void prefetch( final DatabaseMetaData metaData, final PendingSchema pending )
+        throws Exception
+      {
+        if ( _nativeCatalog )
+        {
+          final PostgresCatalog catalog = pending.getPostgresCatalog( metaData );
+          final List<Element> versionColumns =
+            collect( catalog::getVersionColumns, VERSION_COLUMN_LAYOUT, Element::new );
+          pending._versionColumns = new HashMap<>();
+          for ( final Table table : pending._tables )
+          {
+            pending._versionColumns.put( table.getName(), versionColumns );
+          }
+        }
+      }
+
+      @Override
+      public void extract( final DatabaseMetaData metaData, final PendingSchema pending, final Table table )
+        throws Exception
+      {
+        final String name = table.getName();
+        table.setVersionColumns( toArray( lookup( pending._versionColumns,
+                                                  name,
+                                                  () -> getVersionColumns( metaData, pending._name, name ) ),
+                                          Element.class ) );
+      }
+    } );
+    extractors.put( ObjectKind.super_tables, new TableExtractor()
+    {
+      @Override
+      public void prefetch( final DatabaseMetaData metaData, final PendingSchema pending )
+      {
+        // Super tables can only be retrieved per table
+      }
+
+      @Override
+      public void extract( final DatabaseMetaData metaData, final PendingSchema pending, final Table table )
+        throws Exception
+      {
+        table.setSuperTables( toArray( getSuperTables( metaData, pending._name, table.getName() ), String.class ) );
+      }
+    } );
+    extractors.put( ObjectKind.privileges, new TableExtractor()
+    {
+      @Override
+      public void prefetch( final DatabaseMetaData metaData, final PendingSchema pending )
+        throws Exception
+      {
+        final String schema = pending._name;
+        if ( _nativeCatalog )
+        {
+          final PostgresCatalog catalog = pending.getPostgresCatalog( metaData );
+          pending._tablePrivileges =
+            group( f -> catalog.getTablePrivileges( schema, f ), TABLE_NAME, TABLE_PRIV_LAYOUT, Privilege::new );
+          pending._columnPrivileges = groupColumnPrivileges( f -> catalog.getColumnPrivileges( schema, f ) );
+        }
+        else if ( _bulkFetch )
+        {
+          pending._tablePrivileges = getTablePrivilegesForSchema( metaData, schema );
+        }
+      }
+
+      @Override
+      public void extract( final DatabaseMetaData metaData, final PendingSchema pending, final Table table )
+        throws Exception
+      {
+        final String schema = pending._name;
+        final String name = table.getName();
+        table.setPrivileges( toArray( lookup( pending._tablePrivileges,
+                                              name,
+                                              () -> getTablePrivileges( metaData, schema, name ) ),
+                                      Privilege.class ) );
+        final Column[] columns = table.getColumns();
+        final Map<String, List<Privilege>> columnPrivileges =
+          0 == columns.length ?
+          Collections.emptyMap() :
+          getColumnPrivileges( metaData, pending, name, table.getType() );
+        for ( final Column column : columns )
+        {
+          final List<Privilege> privileges = columnPrivileges.getOrDefault( column.getName(), Collections.emptyList() );
+          column.setPrivileges( toArray( privileges, Privilege.class ) );
+        }
+      }
+    } );
+    return extractors;
+  }
+
+  /**
+   * Group the column privilege rows by table name and then by column name.
+   */
+  private Map<String, Map<String, List<Privilege>>> groupColumnPrivileges( final RowSource rows )
+    throws Exception
+  {
+    final HashMap<String, Map<String, List<Privilege>>> privileges = new HashMap<>();
+    rows.each( ( columns, values ) -> {
+      final int tableIndex = columns.indexOf( TABLE_NAME, false );
+      final int columnIndex = columns.indexOf( COLUMN_NAME, false );
+      final int[] indexes = columns.indexesOf( COLUMN_PRIV_LAYOUT );
+      return () -> {
+        final String table = cast( values.get( tableIndex ) );
+        final String column = cast( values.get( columnIndex ) );
+        privileges.computeIfAbsent( table, k -> new HashMap<>() )
+          .computeIfAbsent( column, k -> new ArrayList<>() )
+          .add( new Privilege( COLUMN_PRIV_LAYOUT, toValues( values, COLUMN_PRIV_LAYOUT, indexes ) ) );
+      };
+    } );
+    return privileges;
+  }
+
+  private void loadTables( final DatabaseMetaData metaData, final PendingSchema pending, final List<Table> tables )
+    throws Exception
+  {
+    final List<TableExtractor> extractors = getTableExtractors();
+    for ( final Table table : tables )
+    {
+      for ( final TableExtractor extractor : extractors )
+      {
+        checkInterrupted();
+        extractor.extract( metaData, pending, table );
+      }
+    }
+  }
+
+  /**
+   * Stop loading the tables once the dump is cancelled rather than retrieving the metadata of the
+   * remaining tables, as the driver may not respond to the interrupt until the next query completes.
+   */
+  private static void checkInterrupted()
+    throws InterruptedException
+  {
+    if ( Thread.currentThread().isInterrupted() )
+    {
+      throw new InterruptedException( "The dump was cancelled" );
+    }
+  }
+
+  /**
+   * A schema whose tables may not have been completely loaded. The bulk fetched table metadata is
+   * retained until all of the tables are loaded and is only read after the schema objects are loaded.
+   */
+  private final class PendingSchema
+  {
+    private final String _name;
+    private Map<String, List<Privilege>> _tablePrivileges;
+    private Map<String, List<Element>> _primaryKeys;
+    private Map<String, List<Column>> _columns;
+    private Map<String, List<ForeignKey>> _importedKeys;
+    private Map<String, Map<String, List<Privilege>>> _columnPrivileges;
+    private Map<String, List<Index>> _indexes;
+    private Map<String, List<Element>> _versionColumns;
+    private List<Table> _tables;
+    private List<Routine> _procedures;
+    private List<UDT> _udts;
+    private List<Routine> _functions;
+
+    private PostgresCatalog _postgresCatalog;
+
+    PendingSchema( final String name )
+    {
+      _name = name;
+    }
+
+    PostgresCatalog getPostgresCatalog( final DatabaseMetaData metaData )
+      throws SQLException
+    {
+      if ( null == _postgresCatalog )
+      {
+        _postgresCatalog = new PostgresCatalog( metaData.getConnection(), _statementCache, _fetchSize, _tableFilter );
+      }
+      return _postgresCatalog;
+    }
+
+    Schema toSchema()
+    {
+      return new Schema( _name,
+                         toArray( _tables, Table.class ),
+                         toArray( _procedures, Routine.class ),
+                         toArray( _udts, UDT.class ),
+                         toArray( _functions, Routine.class ) );
+    }
+  }
+
+  private List<String> toNames( final List<Element> elements )
+  {
+    final ArrayList<String> names = new ArrayList<>( elements.size() );
+    for ( final Element element : elements )
+    {
+      names.add( element.getName() );
+    }
+    return names;
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private <T> T[] toArray( final List<T> elements, final Class<T> type )
+  {
+    return elements.toArray( (T[]) Array.newInstance( type, elements.size() ) );
+  }
+
+  interface MetaDataQuery<T>
+  {
+    List<T> query()
+      throws Exception;
+  }
+
+  /**
+   * Return the elements for the named object from the bulk fetched elements, or query the
+   * elements directly if the elements were not fetched in bulk.
+   */
+  private <T> List<T> lookup( final Map<String, List<T>> elements, final String name, final MetaDataQuery<T> query )
+    throws Exception
+  {
+    if ( null == elements )
+    {
+      return query.query();
+    }
+    else
+    {
+      return elements.getOrDefault( name, Collections.emptyList() );
+    }
+  }
+
+  private List<Privilege> getTablePrivileges( final DatabaseMetaData metaData,
+                                              final String schema,
+                                              final String tablename )
     throws Exception
   {
     final ResultSet columnResultSet = metaData.getTablePrivileges( null, schema, tablename );
-    return extractFromRow( columnResultSet, ALLOWABLE_TABLE_PRIV_ATTRIBUTES );
+    return extractFromRow( columnResultSet, TABLE_PRIV_LAYOUT, Privilege::new );
   }
 
-  private List<LinkedHashMap<String, Object>> getColumnPrivileges( final DatabaseMetaData metaData,
-                                                                   final String schema,
-                                                                   final String tableName,
-                                                                   final String columnName )
+  private Map<String, List<Privilege>> getTablePrivilegesForSchema( final DatabaseMetaData metaData,
+                                                                    final String schema )
     throws Exception
   {
-    final ResultSet columnResultSet = metaData.getColumnPrivileges( null, schema, tableName, columnName );
-    return extractFromRow( columnResultSet, ALLOWABLE_COLUMN_PRIV_ATTRIBUTES );
+    final String pattern = _tableFilter.getNamePattern( _catalogInfo.getSearchStringEscape( metaData ), "%" );
+    final ResultSet resultSet = metaData.getTablePrivileges( null, schema, pattern );
+    return extractGroupedFromRow( resultSet, TABLE_NAME, TABLE_PRIV_LAYOUT, Privilege::new );
   }
 
-  private List<LinkedHashMap<String, Object>> getPrimaryKeys( final DatabaseMetaData metaData,
-                                                              final String schema,
-                                                              final String tablename )
+  /**
+   * Return the column privileges for every column in the table, grouped by column name.
+   * Neither driver will return column privileges without an exact table name so this is
+   * the coarsest granularity at which they can be retrieved, unless they were read from
+   * the system catalog.
+   */
+  private Map<String, List<Privilege>> getColumnPrivileges( final DatabaseMetaData metaData,
+                                                            final PendingSchema pending,
+                                                            final String tableName,
+                                                            final String tableType )
+    throws Exception
+  {
+    if ( Dialect.postgresql == _dialect && !"TABLE".equals( tableType ) )
+    {
+      // The postgres driver only reports column privileges for ordinary tables
+      return Collections.emptyMap();
+    }
+    else if ( null != pending._columnPrivileges )
+    {
+      return pending._columnPrivileges.getOrDefault( tableName, Collections.emptyMap() );
+    }
+    else
+    {
+      final ResultSet columnResultSet = metaData.getColumnPrivileges( null, pending._name, tableName, null );
+      return extractGroupedFromRow( columnResultSet, COLUMN_NAME, COLUMN_PRIV_LAYOUT, Privilege::new );
+    }
+  }
+
+  private List<Element> getPrimaryKeys( final DatabaseMetaData metaData,
+                                        final String schema,
+                                        final String tablename )
     throws Exception
   {
     final ResultSet columnResultSet = metaData.getPrimaryKeys( null, schema, tablename );
-    return extractFromRow( columnResultSet, ALLOWABLE_PRIMARY_KEY_ATTRIBUTES );
+    return extractFromRow( columnResultSet, PRIMARY_KEY_LAYOUT, Element::new );
   }
 
-  private List<LinkedHashMap<String, Object>> getVersionColumns( final DatabaseMetaData metaData,
-                                                                 final String schema,
-                                                                 final String tablename )
+  private List<Element> getVersionColumns( final DatabaseMetaData metaData,
+                                           final String schema,
+                                           final String tablename )
     throws Exception
   {
     final ResultSet columnResultSet = metaData.getVersionColumns( null, schema, tablename );
-    return extractFromRow( columnResultSet, ALLOWABLE_VERSION_COLUMN_ATTRIBUTES );
+    return extractFromRow( columnResultSet, VERSION_COLUMN_LAYOUT, Element::new );
   }
 
-  private List<LinkedHashMap<String, Object>> getImportedKeys( final DatabaseMetaData metaData,
-                                                               final String schema,
-                                                               final String tablename )
+  private List<ForeignKey> getImportedKeys( final DatabaseMetaData metaData,
+                                            final String schema,
+                                            final String tablename )
     throws Exception
   {
     final ResultSet columnResultSet = metaData.getImportedKeys( null, schema, tablename );
-    return extractFromRow( columnResultSet, ALLOWABLE_FOREIGN_KEY_ATTRIBUTES );
+    return extractFromRow( columnResultSet, FOREIGN_KEY_LAYOUT, ForeignKey::new );
   }
 
-  private List<LinkedHashMap<String, Object>> getSuperTables( final DatabaseMetaData metaData,
-                                                              final String schema,
-                                                              final String tableName )
+  private List<String> getSuperTables( final DatabaseMetaData metaData,
+                                       final String schema,
+                                       final String tableName )
     throws Exception
   {
     if ( Dialect.postgresql == _dialect )
@@ -273,13 +1248,13 @@ public final class DatabaseDumper
     else
     {
       final ResultSet columnResultSet = metaData.getSuperTables( null, schema, tableName );
-      return extractFromRow( columnResultSet, ALLOWABLE_SUPER_TABLE_ATTRIBUTES );
+      return toNames( extractFromRow( columnResultSet, SUPER_TABLE_LAYOUT, Element::new ) );
     }
   }
 
-  private List<LinkedHashMap<String, Object>> getSuperTypes( final DatabaseMetaData metaData,
-                                                             final String schema,
-                                                             final String udtName )
+  private List<String> getSuperTypes( final DatabaseMetaData metaData,
+                                      final String schema,
+                                      final String udtName )
     throws Exception
   {
     if ( Dialect.postgresql == _dialect )
@@ -289,75 +1264,166 @@ public final class DatabaseDumper
     else
     {
       final ResultSet columnResultSet = metaData.getSuperTypes( null, schema, udtName );
-      return extractFromRow( columnResultSet, ALLOWABLE_SUPER_UDT_ATTRIBUTES );
+      return toNames( extractFromRow( columnResultSet, SUPER_UDT_LAYOUT, Element::new ) );
     }
   }
 
-  private List<LinkedHashMap<String, Object>> getColumns( final DatabaseMetaData metaData,
-                                                          final String schema,
-                                                          final String tablename )
+  private List<Column> getColumns( final DatabaseMetaData metaData,
+                                   final String schema,
+                                   final String tablename )
     throws Exception
   {
     final ResultSet columnResultSet = metaData.getColumns( null, schema, tablename, null );
-    return extractFromRow( columnResultSet, ALLOWABLE_COLUMN_ATTRIBUTES );
+    return extractFromRow( columnResultSet, COLUMN_LAYOUT, Column::new );
   }
 
-  private List<LinkedHashMap<String, Object>> getIndexInfo( final DatabaseMetaData metaData,
-                                                            final String schema,
-                                                            final String tableName )
+  private List<Index> getIndexInfo( final DatabaseMetaData metaData,
+                                    final String schema,
+                                    final String tableName )
     throws Exception
   {
     final ResultSet columnResultSet = metaData.getIndexInfo( null, schema, tableName, false, true );
-    return extractFromRow( columnResultSet, ALLOWABLE_INDEX_ATTRIBUTES );
+    return extractFromRow( columnResultSet, INDEX_LAYOUT, Index::new );
   }
 
-  private List<LinkedHashMap<String, Object>> getTablesForSchema( final DatabaseMetaData metaData,
+  private Map<String, List<Element>> getPrimaryKeysForSchema( final DatabaseMetaData metaData,
+                                                              final String schema )
+    throws Exception
+  {
+    if ( Dialect.postgresql == _dialect )
+    {
+      final ResultSet resultSet = metaData.getPrimaryKeys( null, schema, null );
+      return extractGroupedFromRow( resultSet, TABLE_NAME, PRIMARY_KEY_LAYOUT, Element::new );
+    }
+    else
+    {
+      // sp_pkeys requires a table name
+      return null;
+    }
+  }
+
+  private Map<String, List<ForeignKey>> getImportedKeysForSchema( final DatabaseMetaData metaData,
+                                                                  final String schema )
+    throws Exception
+  {
+    if ( Dialect.postgresql == _dialect )
+    {
+      final ResultSet resultSet = metaData.getImportedKeys( null, schema, null );
+      return extractGroupedFromRow( resultSet, "FKTABLE_NAME", FOREIGN_KEY_LAYOUT, ForeignKey::new );
+    }
+    else
+    {
+      // sp_fkeys requires a table name
+      return null;
+    }
+  }
+
+  private Map<String, List<Column>> getColumnsForSchema( final DatabaseMetaData metaData,
+                                                         final String schema )
+    throws Exception
+  {
+    final String pattern = _tableFilter.getNamePattern( _catalogInfo.getSearchStringEscape( metaData ), "%" );
+    final ResultSet resultSet = metaData.getColumns( null, schema, pattern, null );
+    return extractGroupedFromRow( resultSet, TABLE_NAME, COLUMN_LAYOUT, Column::new );
+  }
+
+  private Map<String, List<Element>> getProcedureColumnsForSchema( final DatabaseMetaData metaData,
+                                                                   final String schema )
+    throws Exception
+  {
+    final String pattern = _routineFilter.getNamePattern( _catalogInfo.getSearchStringEscape( metaData ), "%" );
+    final ResultSet resultSet = metaData.getProcedureColumns( null, schema, pattern, null );
+    return extractGroupedFromRow( resultSet, PROCEDURE_NAME, PROCEDURE_COLUMN_LAYOUT, Element::new );
+  }
+
+  private Map<String, List<Element>> getAttributesColumnsForSchema( final DatabaseMetaData metaData,
+                                                                    final String schema )
+    throws Exception
+  {
+    if ( Dialect.postgresql == _dialect )
+    {
+      return Collections.emptyMap();
+    }
+    else
+    {
+      final String pattern = _typeFilter.getNamePattern( _catalogInfo.getSearchStringEscape( metaData ), "%" );
+      final ResultSet resultSet = metaData.getAttributes( null, schema, pattern, "%" );
+      return extractGroupedFromRow( resultSet, UDT_NAME, UDT_ATTRIBUTE_LAYOUT, Element::new );
+    }
+  }
+
+  private Map<String, List<Element>> getFunctionColumnsForSchema( final DatabaseMetaData metaData,
                                                                   final String schema )
     throws Exception
+  {
+    if ( Dialect.postgresql == _dialect )
+    {
+      return Collections.emptyMap();
+    }
+    else
+    {
+      final String pattern = _routineFilter.getNamePattern( _catalogInfo.getSearchStringEscape( metaData ), "%" );
+      final ResultSet resultSet = metaData.getFunctionColumns( null, schema, pattern, null );
+      return extractGroupedFromRow( resultSet, FUNCTION_NAME, FUNCTION_COLUMN_LAYOUT, Element::new );
+    }
+  }
+
+  private List<Table> getTablesForSchema( final DatabaseMetaData metaData,
+                                          final String schema )
+    throws Exception
   {
     final List<String> tableTypes = getTableTypes( metaData );
-    final ResultSet tablesResultSet =
-      metaData.getTables( null, schema, null, tableTypes.toArray( new String[ tableTypes.size() ] ) );
-    final List<LinkedHashMap<String, Object>> linkedHashMaps =
-      extractFromRow( tablesResultSet, ALLOWABLE_TABLE_ATTRIBUTES );
-    linkedHashMaps.sort( ( lhs, rhs ) -> {
-      final String left = (String) lhs.get( TABLE_TYPE ) + lhs.get( TABLE_NAME );
-      final String right = (String) rhs.get( TABLE_TYPE ) + rhs.get( TABLE_NAME );
+    final String[] types = tableTypes.toArray( new String[ tableTypes.size() ] );
+    final List<Table> elements =
+      select( metaData,
+              _tableFilter,
+              pattern -> extractFromRow( metaData.getTables( null, schema, pattern, types ),
+                                         TABLE_LAYOUT,
+                                         Table::new ) );
+    elements.sort( ( lhs, rhs ) -> {
+      final String left = lhs.getType() + lhs.getName();
+      final String right = rhs.getType() + rhs.getName();
       return left.compareTo( right );
     } );
-    return linkedHashMaps;
+    return elements;
   }
 
-  private List<LinkedHashMap<String, Object>> getProceduresForSchema( final DatabaseMetaData metaData,
-                                                                      final String schema )
+  private List<Routine> getProceduresForSchema( final DatabaseMetaData metaData,
+                                                final String schema )
     throws Exception
   {
-    final List<LinkedHashMap<String, Object>> linkedHashMaps =
-      extractFromRow( metaData.getProcedures( null, schema, null ), ALLOWABLE_PROCEDURE_ATTRIBUTES );
-    linkedHashMaps.sort( ( lhs, rhs ) -> {
-      final String left = (String) lhs.get( PROCEDURE_NAME );
-      final String right = (String) rhs.get( PROCEDURE_NAME );
+    final List<Routine> elements =
+      select( metaData,
+              _routineFilter,
+              pattern -> extractFromRow( metaData.getProcedures( null, schema, pattern ),
+                                         PROCEDURE_LAYOUT,
+                                         Routine::new ) );
+    elements.sort( ( lhs, rhs ) -> {
+      final String left = lhs.getName();
+      final String right = rhs.getName();
       return left.compareTo( right );
     } );
-    return linkedHashMaps;
+    return elements;
   }
 
-  private List<LinkedHashMap<String, Object>> getUDTsForSchema( final DatabaseMetaData metaData,
-                                                                final String schema )
+  private List<UDT> getUDTsForSchema( final DatabaseMetaData metaData,
+                                      final String schema )
     throws Exception
   {
-    final List<LinkedHashMap<String, Object>> linkedHashMaps =
-      extractFromRow( metaData.getUDTs( null, schema, null, null ), ALLOWABLE_UDT_ATTRIBUTES );
-    linkedHashMaps.sort( ( lhs, rhs ) -> {
-      final String left = (String) lhs.get( UDT_NAME );
-      final String right = (String) rhs.get( UDT_NAME );
+    final List<UDT> elements =
+      select( metaData,
+              _typeFilter,
+              pattern -> extractFromRow( metaData.getUDTs( null, schema, pattern, null ), UDT_LAYOUT, UDT::new ) );
+    elements.sort( ( lhs, rhs ) -> {
+      final String left = lhs.getName();
+      final String right = rhs.getName();
       return left.compareTo( right );
     } );
-    return linkedHashMaps;
+    return elements;
   }
 
-  private List<LinkedHashMap<String, Object>> getFunctionsForSchema( final DatabaseMetaData metaData,
-                                                                     final String schema )
+  private List<Routine> getFunctionsForSchema( final DatabaseMetaData metaData,
+                                               final String schema )
     throws Exception
   {
     if ( Dialect.postgresql == _dialect || Dialect.mssql == _dialect )
@@ -366,20 +1432,24 @@ public final class DatabaseDumper
     }
     else
     {
-      final List<LinkedHashMap<String, Object>> linkedHashMaps =
-        extractFromRow( metaData.getFunctions( null, schema, null ), ALLOWABLE_FUNCTION_ATTRIBUTES );
-      linkedHashMaps.sort( ( lhs, rhs ) -> {
-        final String left = (String) lhs.get( FUNCTION_NAME );
-        final String right = (String) rhs.get( FUNCTION_NAME );
+      final List<Routine> elements =
+        select( metaData,
+                _routineFilter,
+                pattern -> extractFromRow( metaData.getFunctions( null, schema, pattern ),
+                                           FUNCTION_LAYOUT,
+                                           Routine::new ) );
+      elements.sort( ( lhs, rhs ) -> {
+        final String left = lhs.getName();
+        final String right = rhs.getName();
         return left.compareTo( right );
       } );
-      return linkedHashMaps;
+      return elements;
     }
   }
 
-  private List<LinkedHashMap<String, Object>> getFunctionColumns( final DatabaseMetaData metaData,
-                                                                  final String schema,
-                                                                  final String udtType )
+  private List<Element> getFunctionColumns( final DatabaseMetaData metaData,
+                                            final String schema,
+                                            final String udtType )
     throws Exception
   {
     if ( Dialect.postgresql == _dialect )
@@ -389,13 +1459,13 @@ public final class DatabaseDumper
     else
     {
       final ResultSet columnResultSet = metaData.getFunctionColumns( null, schema, udtType, null );
-      return extractFromRow( columnResultSet, ALLOWABLE_FUNCTION_COLUMNS_ATTRIBUTES );
+      return extractFromRow( columnResultSet, FUNCTION_COLUMN_LAYOUT, Element::new );
     }
   }
 
-  private List<LinkedHashMap<String, Object>> getAttributesColumns( final DatabaseMetaData metaData,
-                                                                    final String schema,
-                                                                    final String udtType )
+  private List<Element> getAttributesColumns( final DatabaseMetaData metaData,
+                                              final String schema,
+                                              final String udtType )
     throws Exception
   {
     if ( Dialect.postgresql == _dialect )
@@ -405,20 +1475,55 @@ public final class DatabaseDumper
     else
     {
       final ResultSet columnResultSet = metaData.getAttributes( null, schema, udtType, null );
-      return extractFromRow( columnResultSet, ALLOWABLE_UDT_ATTRIBUTE_ATTRIBUTES );
+      return extractFromRow( columnResultSet, UDT_ATTRIBUTE_LAYOUT, Element::new );
     }
   }
 
-  private List<LinkedHashMap<String, Object>> getProcedureColumns( final DatabaseMetaData metaData,
-                                                                   final String schema,
-                                                                   final String procedureName )
+  private List<Element> getProcedureColumns( final DatabaseMetaData metaData,
+                                             final String schema,
+                                             final String procedureName )
     throws Exception
   {
     final ResultSet columnResultSet = metaData.getProcedureColumns( null, schema, procedureName, null );
-    return extractFromRow( columnResultSet, ALLOWABLE_PROCEDURE_COLUMN_ATTRIBUTES );
+    return extractFromRow( columnResultSet, PROCEDURE_COLUMN_LAYOUT, Element::new );
   }
 
-  private List<String> getSchema( final DatabaseMetaData metaData )
+  interface NamePatternQuery<T>
+  {
+    List<T> query( String namePattern )
+      throws Exception;
+  }
+
+  /**
+   * Return the elements selected by the filter, issuing the query once for each name pattern that the
+   * filter is pushed down into. The elements returned by a query are discarded if they were returned by
+   * a previous query, which retains the overloads of a routine as they are all returned by the same query.
+   */
+  private <T extends Element> List<T> select( final DatabaseMetaData metaData,
+                                              final ObjectFilter filter,
+                                              final NamePatternQuery<T> query )
+    throws Exception
+  {
+    final ArrayList<T> elements = new ArrayList<>();
+    final HashSet<String> names = new HashSet<>();
+    for ( final String pattern : filter.getNamePatterns( _catalogInfo.getSearchStringEscape( metaData ) ) )
+    {
+      final ArrayList<String> queried = new ArrayList<>();
+      for ( final T element : query.query( pattern ) )
+      {
+        final String name = element.getName();
+        if ( !names.contains( name ) && filter.matches( name ) )
+        {
+          elements.add( element );
+        }
+        queried.add( name );
+      }
+      names.addAll( queried );
+    }
+    return elements;
+  }
+
+  List<String> getSchema( final DatabaseMetaData metaData )
     throws Exception
   {
     return extractFromRow( metaData.getSchemas(), "table_schem" );
@@ -427,113 +1532,214 @@ public final class DatabaseDumper
   private List<String> getTableTypes( final DatabaseMetaData metaData )
     throws Exception
   {
-    final List<String> supportedTypes = extractFromRow( metaData.getTableTypes(), TABLE_TYPE );
+    final List<String> supportedTypes = new ArrayList<>( _catalogInfo.getTableTypes( metaData ) );
     supportedTypes.removeIf( type -> !ALLOWABLE_TABLE_TYPES.contains( type ) );
+    if ( !_objectKinds.contains( ObjectKind.indexes ) )
+    {
+      // The postgres driver also reports indexes as relations
+      supportedTypes.remove( "INDEX" );
+    }
     return supportedTypes;
   }
 
   private <T> List<T> extractFromRow( final ResultSet resultSet, final String key )
     throws Exception
   {
-    return map( resultSet, row -> extract( row, key ) );
+    final ArrayList<T> results = new ArrayList<>();
+    each( resultSet, ( columns, values ) -> {
+      final int index = columns.indexOf( key, false );
+      return () -> results.add( cast( values.get( index ) ) );
+    } );
+    return results;
+  }
+
+  interface ElementFactory<T extends Element>
+  {
+    T create( AttributeLayout layout, Object[] values );
+  }
+
+  private <T extends Element> List<T> extractFromRow( final ResultSet resultSet,
+                                                      final AttributeLayout layout,
+                                                      final ElementFactory<T> factory )
+    throws Exception
+  {
+    return collect( f -> each( resultSet, f ), layout, factory );
   }
 
-  private List<LinkedHashMap<String, Object>> extractFromRow( final ResultSet resultSet,
-                                                              final List<String> keys )
+  /**
+   * Extract the rows from the result set and group them by the value of the group key,
+   * retaining the order in which the rows were returned within each group.
+   */
+  private <T extends Element> Map<String, List<T>> extractGroupedFromRow( final ResultSet resultSet,
+                                                                          final String groupKey,
+                                                                          final AttributeLayout layout,
+                                                                          final ElementFactory<T> factory )
     throws Exception
   {
-    return map( resultSet, row -> {
-      final LinkedHashMap<String, Object> tuple = new LinkedHashMap<>();
-      for ( final String key : keys )
-      {
-        final String accessKey;
-        final boolean optional;
-        if ( key.startsWith( "?" ) )
-        {
-          accessKey = key.substring( 1 );
-          optional = true;
-        }
-        else
-        {
-          accessKey = key;
-          optional = false;
-        }
-        tuple.put( accessKey.toLowerCase(), extract( row, accessKey, optional ) );
-      }
-      return tuple;
-    } );
+    return group( f -> each( resultSet, f ), groupKey, layout, factory );
   }
 
-  @SuppressWarnings( "unchecked" )
-  private <T> T extract( final Map<String, Object> row, final String key )
+  private <T extends Element> List<T> collect( final RowSource rows,
+                                               final AttributeLayout layout,
+                                               final ElementFactory<T> factory )
+    throws Exception
   {
-    return extract( row, key, false );
+    final ArrayList<T> results = new ArrayList<>();
+    stream( rows, null, layout, factory, ( group, element ) -> results.add( element ) );
+    return results;
   }
 
-  @SuppressWarnings( "unchecked" )
-  private <T> T extract( final Map<String, Object> row, final String key, final boolean optional )
+  /**
+   * Group the elements of the rows by the value of the group key, retaining the order in which
+   * the rows were read within each group.
+   */
+  private <T extends Element> Map<String, List<T>> group( final RowSource rows,
+                                                          final String groupKey,
+                                                          final AttributeLayout layout,
+                                                          final ElementFactory<T> factory )
+    throws Exception
   {
-    if ( row.containsKey( key.toLowerCase() ) )
-    {
-      return (T) row.get( key.toLowerCase() );
-    }
-    else if ( row.containsKey( key.toUpperCase() ) )
+    final HashMap<String, List<T>> groups = new HashMap<>();
+    stream( rows,
+            groupKey,
+            layout,
+            factory,
+            ( group, element ) -> groups.computeIfAbsent( group, k -> new ArrayList<>() ).add( element ) );
+    return groups;
+  }
+
+  interface ElementConsumer<T extends Element>
+  {
+    void accept( String group, T element );
+  }
+
+  /**
+   * Pass an element for each row, along with the value of the group key if any, to the consumer
+   * as the row is read.
+   */
+  private <T extends Element> void stream( final RowSource rows,
+                                           final String groupKey,
+                                           final AttributeLayout layout,
+                                           final ElementFactory<T> factory,
+                                           final ElementConsumer<T> consumer )
+    throws Exception
+  {
+    rows.each( ( columns, values ) -> {
+      final int groupIndex = null == groupKey ? 0 : columns.indexOf( groupKey, false );
+      final int[] indexes = columns.indexesOf( layout );
+      return () -> {
+        final String group = 0 == groupIndex ? null : cast( values.get( groupIndex ) );
+        consumer.accept( group, factory.create( layout, toValues( values, layout, indexes ) ) );
+      };
+    } );
+  }
+
+  /**
+   * Return the values of the columns at the indexes, where an index of 0 is a missing optional column,
+   * interning the values of the attributes that are repeated across elements.
+   */
+  private Object[] toValues( final RowValues values, final AttributeLayout layout, final int[] indexes )
+    throws SQLException
+  {
+    final Object[] results = new Object[ indexes.length ];
+    for ( int i = 0; i < results.length; i++ )
     {
-      return (T) row.get( key.toUpperCase() );
+      if ( 0 != indexes[ i ] )
+      {
+        final Object value = values.get( indexes[ i ] );
+        results[ i ] = layout.isInterned( i ) ? intern( value ) : value;
+      }
     }
-    else if ( !optional )
+    return results;
+  }
+
+  /**
+   * Discard the interned values so that they are only retained for a single dump or refresh.
+   */
+  void clearInternedValues()
+  {
+    _internedValues.clear();
+  }
+
+  private Object intern( final Object value )
+  {
+    if ( null == value )
     {
-      throw new IllegalStateException( "Unexpected null value for key " + key + " when accessing " + row );
+      return null;
     }
     else
     {
-      return null;
+      final Object existing = _internedValues.putIfAbsent( value, value );
+      return null == existing ? value : existing;
     }
   }
 
   interface RowHandler
   {
-    void handle( Map<String, Object> row );
+    void handle()
+      throws SQLException;
   }
 
-  private void each( final ResultSet resultSet, final RowHandler handler )
-    throws Exception
+  /**
+   * The values of the current row, looked up by the 1-based index of the column.
+   */
+  interface RowValues
   {
-    for ( final Map<String, Object> row : toList( resultSet ) )
-    {
-      handler.handle( row );
-    }
+    Object get( int index )
+      throws SQLException;
+  }
+
+  interface RowHandlerFactory
+  {
+    RowHandler create( ResultSetColumns columns, RowValues values )
+      throws SQLException;
   }
 
-  interface MapHandler<T>
+  /**
+   * A source of rows, such as a result set or a system catalog query, that invokes the handler created by
+   * the factory for each row as it is read.
+   */
+  interface RowSource
   {
-    T handle( Map<String, Object> row );
+    void each( RowHandlerFactory factory )
+      throws Exception;
   }
 
-  private <T> List<T> map( final ResultSet resultSet, final MapHandler<T> handler )
+  private void each( final ResultSet resultSet, final RowHandlerFactory factory )
     throws Exception
   {
-    final ArrayList<T> results = new ArrayList<>();
-    each( resultSet, row -> results.add( handler.handle( row ) ) );
-    return results;
+    if ( _fetchSize > 0 )
+    {
+      resultSet.setFetchSize( _fetchSize );
+    }
+    readRows( resultSet, factory );
   }
 
-  private List<Map<String, Object>> toList( final ResultSet resultSet )
+  /**
+   * Invoke a handler for each row of the result set and then close the result set. The handler is
+   * created when the first row is read so that the columns are only resolved once per result set, and
+   * only when there are rows to read.
+   */
+  static void readRows( final ResultSet resultSet, final RowHandlerFactory factory )
     throws SQLException
   {
-    final ResultSetMetaData md = resultSet.getMetaData();
-    final int columns = md.getColumnCount();
-    final ArrayList<Map<String, Object>> list = new ArrayList<>();
-    while ( resultSet.next() )
+    try ( final ResultSet rs = resultSet )
     {
-      final HashMap<String, Object> row = new HashMap<>();
-      for ( int i = 1; i <= columns; ++i )
+      RowHandler handler = null;
+      while ( rs.next() )
       {
-        row.put( md.getColumnName( i ), resultSet.getObject( i ) );
+        if ( null == handler )
+        {
+          handler = factory.create( new ResultSetColumns( rs.getMetaData() ), rs::getObject );
+        }
+        handler.handle();
       }
-      list.add( row );
     }
+  }
 
-    return list;
+  @SuppressWarnings( "unchecked" )
+  private <T> T cast( final Object value )
+  {
+    return (T) value;
   }
 }
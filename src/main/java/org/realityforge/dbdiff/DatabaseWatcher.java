@@ -0,0 +1,345 @@
+package org.realityforge.dbdiff;
+
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches two databases for drift. Both databases are dumped once and the dump of each table and
+ * of the routines and types of each schema is retained. Each poll then reads the catalog version
+ * of every relation via {@link CatalogVersions} and only dumps the tables whose version changed,
+ * or the entire schema if its routines or types changed, before diffing just those objects. A
+ * drift event is logged whenever an object starts to differ, differs in a new way or stops differing.
+ */
+public final class DatabaseWatcher
+{
+  private final DatabaseDiff _configuration;
+  private final WatchedDatabase _database1;
+  private final WatchedDatabase _database2;
+  /**
+   * The diff of each object that currently differs between the databases.
+   */
+  private final HashMap<String, List<String>> _drift = new HashMap<>();
+
+  /**
+   * @param configuration the databases, schemas, options and logger of the watcher.
+   */
+  public DatabaseWatcher( final DatabaseDiff configuration )
+  {
+    if ( Dialect.postgresql != configuration.getDialect() && Dialect.mssql != configuration.getDialect() )
+    {
+      throw new IllegalStateException( "Watching is not supported by the " + configuration.getDialect() +
+                                       " dialect" );
+    }
+    _configuration = configuration;
+    _database1 = new WatchedDatabase( configuration.getDatabase1() );
+    _database2 = new WatchedDatabase( configuration.getDatabase2() );
+  }
+
+  /**
+   * Poll the databases at the specified interval until the thread is interrupted. A failure during
+   * a poll is logged and the databases are reconnected and dumped again on the next poll.
+   *
+   * @param interval the number of milliseconds between polls.
+   */
+  public void watch( final long interval )
+    throws InterruptedException
+  {
+    try
+    {
+      while ( true )
+      {
+        try
+        {
+          poll();
+        }
+        catch ( final InterruptedException ie )
+        {
+          throw ie;
+        }
+        catch ( final Exception e )
+        {
+          _configuration.getLogger().log( Level.WARNING, "Error polling databases: " + e );
+          close();
+        }
+        Thread.sleep( interval );
+      }
+    }
+    finally
+    {
+      close();
+    }
+  }
+
+  /**
+   * Refresh the objects that changed in either database since the last poll and log the change in drift
+   * of each of the objects. The first poll dumps both databases.
+   *
+   * @return the number of drift events logged.
+   */
+  public int poll()
+    throws Exception
+  {
+    final TreeSet<String> changed = new TreeSet<>();
+    changed.addAll( _database1.refresh() );
+    changed.addAll( _database2.refresh() );
+    final Logger logger = _configuration.getLogger();
+    int events = 0;
+    for ( final String key : changed )
+    {
+      final List<String> diff = diff( key );
+      final List<String> previous = diff.isEmpty() ? _drift.remove( key ) : _drift.put( key, diff );
+      final String event;
+      if ( diff.isEmpty() )
+      {
+        event = null == previous ? null : "Drift resolved in " + describe( key );
+      }
+      else if ( null == previous )
+      {
+        event = "Drift detected in " + describe( key );
+      }
+      else
+      {
+        event = previous.equals( diff ) ? null : "Drift changed in " + describe( key );
+      }
+      if ( null != event )
+      {
+        events++;
+        if ( logger.isLoggable( Level.INFO ) )
+        {
+          logger.log( Level.INFO, event );
+          for ( final String line : diff )
+          {
+            logger.log( Level.INFO, line );
+          }
+        }
+      }
+    }
+    return events;
+  }
+
+  /**
+   * Close the connections to the databases. The databases are reconnected and dumped again if polled.
+   */
+  public void close()
+  {
+    _database1.close();
+    _database2.close();
+  }
+
+  private List<String> diff( final String key )
+  {
+    final List<String> lines1 = _database1.getLines( key );
+    final List<String> lines2 = _database2.getLines( key );
+    if ( lines1.equals( lines2 ) )
+    {
+      return Collections.emptyList();
+    }
+    return _configuration.computeDiff( _configuration.getDatabase1(),
+                                       _configuration.getDatabase2(),
+                                       DigestTree.build( lines1 ),
+                                       null,
+                                       DigestTree.build( lines2 ) );
+  }
+
+  private static String toKey( final String schema, final String object )
+  {
+    return schema + "\t" + object;
+  }
+
+  private static String describe( final String key )
+  {
+    final int separator = key.indexOf( '\t' );
+    final String schema = key.substring( 0, separator );
+    final String object = key.substring( separator + 1 );
+    return CatalogVersions.SCHEMA_OBJECTS.equals( object ) ? "schema " + schema : schema + "." + object;
+  }
+
+  interface Emitter
+  {
+    void emit( Writer writer )
+      throws Exception;
+  }
+
+  /**
+   * The retained dump of a database along with the catalog versions of the relations when they were dumped.
+   * The dump of each table and of the schema objects is retained as separate lines, each preceded by the
+   * schema line so that the lines can be diffed as a dump. A missing schema is retained as the lines of the
+   * schema objects.
+   */
+  private final class WatchedDatabase
+  {
+    private final String _database;
+    private Connection _connection;
+    private DatabaseDumper _dumper;
+    private CatalogVersions _catalogVersions;
+    private final HashMap<String, Map<String, String>> _versions = new HashMap<>();
+    private final HashMap<String, List<String>> _objects = new HashMap<>();
+
+    WatchedDatabase( final String database )
+    {
+      _database = database;
+    }
+
+    List<String> getLines( final String key )
+    {
+      return _objects.getOrDefault( key, Collections.emptyList() );
+    }
+
+    /**
+     * Dump the objects that changed since the last refresh and return the keys of the objects.
+     */
+    Set<String> refresh()
+      throws Exception
+    {
+      if ( null == _connection )
+      {
+        _connection = _configuration.newConnection( _database );
+        _dumper = _configuration.newDumper( Collections.singletonList( _connection ) );
+        _catalogVersions = new CatalogVersions( _connection, _configuration.getDialect() );
+        _versions.clear();
+      }
+      // The objects are retained as lines so the values interned by the previous refresh are not needed
+      _dumper.clearInternedValues();
+      final DatabaseMetaData metaData = _connection.getMetaData();
+      final HashSet<String> changed = new HashSet<>();
+      // The schemas of the database are retrieved at most once per refresh
+      List<String> schemas = null;
+      for ( final String schema : _configuration.getSchemas() )
+      {
+        // Read the versions before dumping so that a concurrent change is picked up by the next poll
+        final Map<String, String> versions = _catalogVersions.getVersions( schema );
+        final Map<String, String> previous = _versions.put( schema, versions );
+        if ( null == previous ||
+             !Objects.equals( previous.get( CatalogVersions.SCHEMA_OBJECTS ),
+                              versions.get( CatalogVersions.SCHEMA_OBJECTS ) ) )
+        {
+          if ( null == schemas )
+          {
+            schemas = _dumper.getSchema( metaData );
+          }
+          loadSchema( metaData, schema, schemas.contains( schema ), changed );
+        }
+        else
+        {
+          final HashSet<String> tables = new HashSet<>();
+          for ( final Map.Entry<String, String> entry : versions.entrySet() )
+          {
+            if ( !entry.getValue().equals( previous.get( entry.getKey() ) ) )
+            {
+              tables.add( entry.getKey() );
+            }
+          }
+          for ( final String table : previous.keySet() )
+          {
+            if ( !versions.containsKey( table ) )
+            {
+              tables.add( table );
+            }
+          }
+          if ( !tables.isEmpty() )
+          {
+            loadTables( metaData, schema, tables, changed );
+          }
+        }
+      }
+      return changed;
+    }
+
+    private void loadSchema( final DatabaseMetaData metaData,
+                             final String schema,
+                             final boolean exists,
+                             final Set<String> changed )
+      throws Exception
+    {
+      final String prefix = toKey( schema, "" );
+      final Iterator<String> keys = _objects.keySet().iterator();
+      while ( keys.hasNext() )
+      {
+        final String key = keys.next();
+        if ( key.startsWith( prefix ) )
+        {
+          changed.add( key );
+          keys.remove();
+        }
+      }
+      if ( exists )
+      {
+        final Schema model = _dumper.loadSchema( metaData, schema );
+        for ( final Table table : model.getTables() )
+        {
+          put( schema, table.getName(), w -> _dumper.emitTable( w, table ), changed );
+        }
+        put( schema, CatalogVersions.SCHEMA_OBJECTS, w -> _dumper.emitSchemaObjects( w, model ), changed );
+      }
+      else
+      {
+        final String key = toKey( schema, CatalogVersions.SCHEMA_OBJECTS );
+        _objects.put( key, Collections.singletonList( "Missing Schema: " + schema ) );
+        changed.add( key );
+      }
+    }
+
+    private void loadTables( final DatabaseMetaData metaData,
+                             final String schema,
+                             final Set<String> tables,
+                             final Set<String> changed )
+      throws Exception
+    {
+      for ( final String table : tables )
+      {
+        final String key = toKey( schema, table );
+        _objects.remove( key );
+        changed.add( key );
+      }
+      for ( final Table table : _dumper.loadTables( metaData, schema, tables ) )
+      {
+        put( schema, table.getName(), w -> _dumper.emitTable( w, table ), changed );
+      }
+    }
+
+    private void put( final String schema, final String object, final Emitter emitter, final Set<String> changed )
+      throws Exception
+    {
+      final ArrayList<String> lines = new ArrayList<>();
+      lines.add( "Schema: " + schema );
+      try ( final LineWriter writer = new LineWriter( lines::add ) )
+      {
+        emitter.emit( writer );
+      }
+      final String key = toKey( schema, object );
+      _objects.put( key, lines );
+      changed.add( key );
+    }
+
+    void close()
+    {
+      if ( null != _connection )
+      {
+        _dumper.getStatementCache().close();
+        try
+        {
+          _connection.close();
+        }
+        catch ( final SQLException ignored )
+        {
+          //Ignored as the connection is being abandoned
+        }
+        _connection = null;
+      }
+    }
+  }
+}
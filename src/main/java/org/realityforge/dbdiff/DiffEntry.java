@@ -0,0 +1,119 @@
+package org.realityforge.dbdiff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A difference in a single object between two databases.
+ */
+public final class DiffEntry
+{
+  public enum Type
+  {
+    ADDED, REMOVED, CHANGED
+  }
+
+  /**
+   * The change in value of an attribute of an object. A null value indicates the attribute is absent.
+   */
+  public static final class AttributeDelta
+  {
+    private final String _name;
+    private final String _oldValue;
+    private final String _newValue;
+
+    public AttributeDelta( final String name, final String oldValue, final String newValue )
+    {
+      _name = name;
+      _oldValue = oldValue;
+      _newValue = newValue;
+    }
+
+    public String getName()
+    {
+      return _name;
+    }
+
+    public String getOldValue()
+    {
+      return _oldValue;
+    }
+
+    public String getNewValue()
+    {
+      return _newValue;
+    }
+
+    @Override
+    public String toString()
+    {
+      return _name + ": " + _oldValue + " -> " + _newValue;
+    }
+  }
+
+  private final Type _type;
+  private final String _kind;
+  private final List<String> _path;
+  private final List<AttributeDelta> _deltas;
+
+  public DiffEntry( final Type type, final String kind, final List<String> path, final List<AttributeDelta> deltas )
+  {
+    _type = type;
+    _kind = kind;
+    _path = Collections.unmodifiableList( new ArrayList<>( path ) );
+    _deltas = Collections.unmodifiableList( new ArrayList<>( deltas ) );
+  }
+
+  public Type getType()
+  {
+    return _type;
+  }
+
+  /**
+   * Return the kind of object. i.e. "Schema", "TABLE", "COLUMN", "IX" etc.
+   */
+  public String getKind()
+  {
+    return _kind;
+  }
+
+  /**
+   * Return the labels of the object and its ancestors, outermost first. i.e. ["Schema: x", "TABLE: t", "COLUMN: ID"]
+   */
+  public List<String> getPath()
+  {
+    return _path;
+  }
+
+  /**
+   * Return the attribute level changes. Only populated for changed objects.
+   */
+  public List<AttributeDelta> getDeltas()
+  {
+    return _deltas;
+  }
+
+  /**
+   * Render the entry as lines of text. The first line identifies the object and is prefixed by
+   * '+', '-' or '~' for added, removed and changed objects. Each attribute delta follows on a
+   * separate indented line.
+   */
+  public List<String> toLines()
+  {
+    final ArrayList<String> lines = new ArrayList<>();
+    final char prefix = Type.ADDED == _type ? '+' : Type.REMOVED == _type ? '-' : '~';
+    lines.add( prefix + String.join( " / ", _path ) );
+    for ( final AttributeDelta delta : _deltas )
+    {
+      lines.add( "\t" + delta );
+    }
+    return lines;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.join( "\n", toLines() );
+  }
+}
@@ -0,0 +1,6 @@
+package org.realityforge.dbdiff;
+
+public enum DiffFormat
+{
+  unified, structural, ndjson
+}
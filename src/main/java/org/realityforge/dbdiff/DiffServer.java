@@ -0,0 +1,379 @@
+package org.realityforge.dbdiff;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Serves diff requests over HTTP from a long running process so that the process start, the loading
+ * of the driver and the connection to each database are not paid for every comparison. Connections
+ * are returned to a pool once a dump completes and the dumps are cached until their time to live
+ * expires or they are invalidated, so repeated comparisons against the same baseline only dump the
+ * targets that are not cached.
+ *
+ * <p>The server accepts the following requests, with the parameters supplied in the query string or
+ * as a url encoded form body, and responds with a json document. Each request must be a POST with the
+ * header "Authorization: Bearer token", where token is the token of the server, so that a web page can
+ * not make requests on behalf of the user. Only the databases served, i.e. those configured when the
+ * server is created, may be compared so the credentials of the configuration are never sent to another
+ * database:</p>
+ *
+ * <ul>
+ * <li>/diff?baseline=url&amp;target=url[&amp;target=url...][&amp;schema=name...][&amp;refresh=true]
+ * compares the baseline with each target. The schemas default to those of the configuration and refresh
+ * discards any cached dump of the databases before the comparison.</li>
+ * <li>/invalidate[?database=url...] discards the cached dumps of the databases or of all databases.</li>
+ * </ul>
+ */
+public final class DiffServer
+{
+  private final DatabaseDiff _configuration;
+  private final Set<String> _databases;
+  private final String _token;
+  private final ConnectionPool _connectionPool = new ConnectionPool();
+  private final DumpCache _dumpCache;
+  private final ConcurrentHashMap<String, CatalogInfo> _catalogInfos = new ConcurrentHashMap<>();
+  private HttpServer _server;
+  private ExecutorService _executor;
+  private ForkJoinPool _diffPool;
+
+  /**
+   * @param configuration the options, driver and logger used for each comparison.
+   * @param cacheTimeToLive the number of milliseconds a dump is cached or 0 to disable caching.
+   * @param databases the databases that may be compared.
+   * @param token the token that authorizes requests or null to generate a random token.
+   */
+  public DiffServer( final DatabaseDiff configuration,
+                     final long cacheTimeToLive,
+                     final Collection<String> databases,
+                     final String token )
+  {
+    if ( databases.isEmpty() )
+    {
+      throw new IllegalArgumentException( "At least one database must be served" );
+    }
+    if ( null != token && token.isEmpty() )
+    {
+      throw new IllegalArgumentException( "The token must not be empty" );
+    }
+    _configuration = configuration;
+    _databases = Collections.unmodifiableSet( new HashSet<>( databases ) );
+    _token = null != token ? token : newToken();
+    _dumpCache = new DumpCache( cacheTimeToLive );
+  }
+
+  /**
+   * Return the token that must be supplied as a bearer token by each request.
+   */
+  public String getToken()
+  {
+    return _token;
+  }
+
+  public synchronized void start( final InetSocketAddress address )
+    throws IOException
+  {
+    if ( null != _server )
+    {
+      throw new IllegalStateException( "Server already started" );
+    }
+    _server = HttpServer.create( address, 0 );
+    _server.createContext( "/diff", exchange -> handle( exchange, this::diff ) );
+    _server.createContext( "/invalidate", exchange -> handle( exchange, this::invalidate ) );
+    _executor = Executors.newCachedThreadPool();
+    _server.setExecutor( _executor );
+    // The unified diffs of all requests share a pool sized by the diff threads of the configuration
+    _diffPool = _configuration.getDiffThreads() > 1 ? new ForkJoinPool( _configuration.getDiffThreads() ) : null;
+    _server.start();
+  }
+
+  /**
+   * Return the port on which the server is listening.
+   */
+  public synchronized int getPort()
+  {
+    if ( null == _server )
+    {
+      throw new IllegalStateException( "Server not started" );
+    }
+    return _server.getAddress().getPort();
+  }
+
+  /**
+   * Stop accepting requests, shut down the diff pool and close the idle connections.
+   */
+  public synchronized void stop()
+  {
+    if ( null != _server )
+    {
+      _server.stop( 0 );
+      _executor.shutdownNow();
+      _server = null;
+      _executor = null;
+    }
+    if ( null != _diffPool )
+    {
+      _diffPool.shutdown();
+      _diffPool = null;
+    }
+    _connectionPool.close();
+  }
+
+  interface RequestHandler
+  {
+    /**
+     * Return the json response to the request or throw an IllegalArgumentException if the request is invalid.
+     */
+    String handle( Map<String, List<String>> parameters )
+      throws Exception;
+  }
+
+  private void handle( final HttpExchange exchange, final RequestHandler handler )
+    throws IOException
+  {
+    try
+    {
+      int status = 200;
+      String response;
+      if ( !"POST".equals( exchange.getRequestMethod() ) )
+      {
+        status = 405;
+        response = toError( "Requests must use the POST method" );
+        exchange.getResponseHeaders().set( "Allow", "POST" );
+      }
+      else if ( !isAuthorized( exchange ) )
+      {
+        status = 401;
+        response = toError( "The token of the server must be supplied as a bearer token" );
+        exchange.getResponseHeaders().set( "WWW-Authenticate", "Bearer" );
+      }
+      else
+      {
+        try
+        {
+          response = handler.handle( parameters( exchange ) );
+        }
+        catch ( final IllegalArgumentException iae )
+        {
+          status = 400;
+          response = toError( String.valueOf( iae.getMessage() ) );
+        }
+        catch ( final Exception e )
+        {
+          status = 500;
+          response = toError( String.valueOf( e ) );
+        }
+      }
+      final byte[] bytes = response.getBytes( StandardCharsets.UTF_8 );
+      exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+      exchange.sendResponseHeaders( status, bytes.length );
+      try ( final OutputStream output = exchange.getResponseBody() )
+      {
+        output.write( bytes );
+      }
+    }
+    finally
+    {
+      exchange.close();
+    }
+  }
+
+  private static String toError( final String message )
+  {
+    return "{\"error\":" + NdjsonWriter.quote( message ) + "}";
+  }
+
+  /**
+   * Return true if the request supplies the token of the server. The comparison takes the same time
+   * regardless of where the supplied token differs.
+   */
+  private boolean isAuthorized( final HttpExchange exchange )
+  {
+    final String authorization = exchange.getRequestHeaders().getFirst( "Authorization" );
+    final String prefix = "Bearer ";
+    return null != authorization &&
+           authorization.startsWith( prefix ) &&
+           MessageDigest.isEqual( authorization.substring( prefix.length() ).getBytes( StandardCharsets.UTF_8 ),
+                                  _token.getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  private static String newToken()
+  {
+    final byte[] bytes = new byte[ 16 ];
+    new SecureRandom().nextBytes( bytes );
+    final StringBuilder sb = new StringBuilder();
+    for ( final byte b : bytes )
+    {
+      sb.append( String.format( "%02x", b ) );
+    }
+    return sb.toString();
+  }
+
+  private String diff( final Map<String, List<String>> parameters )
+    throws Exception
+  {
+    final List<String> baseline = parameters.getOrDefault( "baseline", Collections.emptyList() );
+    final List<String> targets = parameters.getOrDefault( "target", Collections.emptyList() );
+    if ( 1 != baseline.size() || targets.isEmpty() )
+    {
+      throw new IllegalArgumentException( "A single baseline and at least one target must be supplied" );
+    }
+    checkServed( baseline.get( 0 ) );
+    for ( final String database : targets )
+    {
+      checkServed( database );
+    }
+    final DatabaseDiff dd = newDatabaseDiff( parameters.get( "schema" ) );
+    dd.setDatabase1( baseline.get( 0 ) );
+    if ( parameters.getOrDefault( "refresh", Collections.emptyList() ).contains( "true" ) )
+    {
+      _dumpCache.invalidate( baseline.get( 0 ) );
+      for ( final String target : targets )
+      {
+        _dumpCache.invalidate( target );
+      }
+    }
+
+    final List<TargetResult> results = dd.diffTargets( targets );
+    boolean different = false;
+    boolean failed = false;
+    final StringBuilder sb = new StringBuilder();
+    sb.append( "{\"baseline\":" ).append( NdjsonWriter.quote( baseline.get( 0 ) ) ).append( ",\"results\":[" );
+    for ( int i = 0; i < results.size(); i++ )
+    {
+      final TargetResult result = results.get( i );
+      different |= result.isDifferent();
+      failed |= result.isFailed();
+      sb.append( 0 == i ? "" : "," ).append( "{\"database\":" );
+      sb.append( NdjsonWriter.quote( result.getDatabase() ) );
+      if ( result.isFailed() )
+      {
+        sb.append( ",\"status\":\"failed\",\"error\":" );
+        sb.append( NdjsonWriter.quote( String.valueOf( result.getFailure() ) ) );
+      }
+      else
+      {
+        sb.append( ",\"status\":" ).append( result.isDifferent() ? "\"different\"" : "\"identical\"" );
+        sb.append( ",\"diff\":[" );
+        final List<String> diff = result.getDiff();
+        for ( int j = 0; j < diff.size(); j++ )
+        {
+          sb.append( 0 == j ? "" : "," ).append( NdjsonWriter.quote( diff.get( j ) ) );
+        }
+        sb.append( "]" );
+      }
+      sb.append( "}" );
+    }
+    sb.append( "],\"different\":" ).append( different ).append( ",\"failed\":" ).append( failed ).append( "}" );
+    return sb.toString();
+  }
+
+  /**
+   * Ensure the database is served, i.e. that the credentials of the configuration may be sent to it.
+   */
+  private void checkServed( final String database )
+  {
+    if ( !_databases.contains( database ) )
+    {
+      throw new IllegalArgumentException( "The database " + database + " is not served" );
+    }
+  }
+
+  private String invalidate( final Map<String, List<String>> parameters )
+  {
+    final List<String> databases = parameters.get( "database" );
+    int count = 0;
+    if ( null == databases )
+    {
+      count = _dumpCache.invalidateAll();
+    }
+    else
+    {
+      for ( final String database : databases )
+      {
+        count += _dumpCache.invalidate( database );
+      }
+    }
+    return "{\"invalidated\":" + count + "}";
+  }
+
+  /**
+   * Create a diff with the options of the configuration that shares the connections and dumps of the server.
+   */
+  private DatabaseDiff newDatabaseDiff( final List<String> schemas )
+  {
+    final DatabaseDiff dd = _configuration.copyOptions( schemas );
+    synchronized ( this )
+    {
+      dd.setDiffPool( _diffPool );
+    }
+    dd.setConnectionPool( _connectionPool );
+    dd.setDumpCache( _dumpCache );
+    dd.setCatalogInfos( _catalogInfos );
+    return dd;
+  }
+
+  private static Map<String, List<String>> parameters( final HttpExchange exchange )
+    throws IOException
+  {
+    final LinkedHashMap<String, List<String>> parameters = new LinkedHashMap<>();
+    parseParameters( parameters, exchange.getRequestURI().getRawQuery() );
+    if ( "POST".equals( exchange.getRequestMethod() ) )
+    {
+      parseParameters( parameters, new String( readFully( exchange.getRequestBody() ), StandardCharsets.UTF_8 ) );
+    }
+    return parameters;
+  }
+
+  private static void parseParameters( final Map<String, List<String>> parameters, final String encoded )
+    throws IOException
+  {
+    if ( null != encoded )
+    {
+      for ( final String parameter : encoded.split( "&" ) )
+      {
+        if ( !parameter.isEmpty() )
+        {
+          final int separator = parameter.indexOf( '=' );
+          final String key = -1 == separator ? parameter : parameter.substring( 0, separator );
+          final String value = -1 == separator ? "" : parameter.substring( separator + 1 );
+          parameters.computeIfAbsent( URLDecoder.decode( key, "UTF-8" ), k -> new ArrayList<>() )
+            .add( URLDecoder.decode( value, "UTF-8" ) );
+        }
+      }
+    }
+  }
+
+  private static byte[] readFully( final InputStream input )
+    throws IOException
+  {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[ 4096 ];
+    int count;
+    while ( -1 != ( count = input.read( buffer ) ) )
+    {
+      output.write( buffer, 0, count );
+    }
+    return output.toByteArray();
+  }
+}
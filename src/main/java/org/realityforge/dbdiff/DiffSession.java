@@ -0,0 +1,148 @@
+package org.realityforge.dbdiff;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares databases on behalf of a long running process, such as a service, that performs many
+ * comparisons. A session is safe for concurrent use as each comparison is performed by its own copy
+ * of the configuration. The connections are either taken from a {@link ConnectionSupplier}, such as a
+ * pooled DataSource, and closed once each dump completes, or created via the driver of the configuration
+ * and retained by the session for reuse by later comparisons along with the prepared statements of the
+ * system catalog queries of each connection. The table types and search string escape of each database
+ * are retrieved once per session. The unified diffs of all comparisons share a pool sized by the diff threads
+ * of the configuration. The pool is shut down and the idle connections closed when the session is closed.
+ */
+public final class DiffSession
+  implements AutoCloseable
+{
+  private final DatabaseDiff _configuration;
+  private final ConnectionPool _connectionPool;
+  private final ForkJoinPool _diffPool;
+  private final ConcurrentHashMap<String, CatalogInfo> _catalogInfos = new ConcurrentHashMap<>();
+  private volatile boolean _closed;
+
+  /**
+   * Create a session that connects via the driver of the configuration and reuses the connections.
+   *
+   * @param configuration the options, driver and logger used for each comparison. The options are copied so
+   *                      later changes to the configuration do not affect the session.
+   */
+  public DiffSession( final DatabaseDiff configuration )
+  {
+    this( configuration, null );
+  }
+
+  /**
+   * Create a session that takes the connections from the supplier, or connects via the driver of the
+   * configuration if the supplier is null.
+   */
+  public DiffSession( final DatabaseDiff configuration, final ConnectionSupplier connectionSupplier )
+  {
+    _configuration = configuration.copyOptions( null );
+    if ( null != connectionSupplier )
+    {
+      _configuration.setConnectionSupplier( connectionSupplier );
+    }
+    if ( null == _configuration.getConnectionSupplier() && null == _configuration.getDriver() )
+    {
+      throw new IllegalArgumentException( "A driver or connection supplier must be specified" );
+    }
+    // A supplier manages the lifetime of its connections, i.e. closing a pooled connection returns it to the pool
+    _connectionPool = null == _configuration.getConnectionSupplier() ? new ConnectionPool() : null;
+    _diffPool = _configuration.getDiffThreads() > 1 ? new ForkJoinPool( _configuration.getDiffThreads() ) : null;
+  }
+
+  /**
+   * Compare the databases, dumping both concurrently.
+   *
+   * @return the lines reporting the differences in the diff format, empty if the databases match.
+   */
+  public List<String> diff( final String database1, final String database2 )
+    throws Exception
+  {
+    final DatabaseDiff dd = newDatabaseDiff( null );
+    dd.setDatabase1( database1 );
+    dd.setDatabase2( database2 );
+    return dd.performDiff();
+  }
+
+  /**
+   * Compare the baseline database with each of the targets.
+   *
+   * @see DatabaseDiff#diffTargets(List)
+   */
+  public List<TargetResult> diffTargets( final String baseline, final List<String> targets )
+    throws Exception
+  {
+    final DatabaseDiff dd = newDatabaseDiff( null );
+    dd.setDatabase1( baseline );
+    return dd.diffTargets( targets );
+  }
+
+  /**
+   * Compare the specified schemas of the baseline database with each of the targets.
+   */
+  public List<TargetResult> diffTargets( final String baseline, final List<String> targets, final List<String> schemas )
+    throws Exception
+  {
+    final DatabaseDiff dd = newDatabaseDiff( schemas );
+    dd.setDatabase1( baseline );
+    return dd.diffTargets( targets );
+  }
+
+  public boolean isClosed()
+  {
+    return _closed;
+  }
+
+  /**
+   * Return the pool on which the unified diffs of the session are computed, or null if they are computed on
+   * the calling thread.
+   */
+  ForkJoinPool getDiffPool()
+  {
+    return _diffPool;
+  }
+
+  /**
+   * Return the cache of the prepared statements of the connections retained by the session, or null if the
+   * connections are taken from a supplier.
+   */
+  StatementCache getStatementCache()
+  {
+    return null != _connectionPool ? _connectionPool.getStatementCache() : null;
+  }
+
+  /**
+   * Shut down the diff pool and close the idle connections retained by the session. Comparisons in progress
+   * complete and then close their connections while new comparisons are rejected.
+   */
+  @Override
+  public void close()
+  {
+    _closed = true;
+    if ( null != _diffPool )
+    {
+      _diffPool.shutdown();
+    }
+    if ( null != _connectionPool )
+    {
+      _connectionPool.close();
+    }
+  }
+
+  private DatabaseDiff newDatabaseDiff( final List<String> schemas )
+  {
+    if ( _closed )
+    {
+      throw new IllegalStateException( "The session is closed" );
+    }
+    final DatabaseDiff dd = _configuration.copyOptions( schemas );
+    dd.setDiffPool( _diffPool );
+    dd.setConnectionPool( _connectionPool );
+    dd.setCatalogInfos( _catalogInfos );
+    return dd;
+  }
+}
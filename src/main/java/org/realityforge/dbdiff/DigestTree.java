@@ -0,0 +1,189 @@
+package org.realityforge.dbdiff;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The lines of a database dump along with a tree of content digests. Each line is a node, the
+ * depth of tab indentation determines the parent and the digest of a node covers its line and
+ * the digests of its children. Identical schemas, tables and table sections can be recognised
+ * by comparing digests without comparing their lines.
+ *
+ * <p>The tree is built incrementally as lines are handled, so the digests of a dump are calculated
+ * while the dump is being retrieved and a node's digest is finalized as soon as its last
+ * descendant has been handled.</p>
+ */
+final class DigestTree
+  implements LineWriter.LineHandler
+{
+  static final class Node
+  {
+    private final int _line;
+    private int _end;
+    private byte[] _digest;
+    private List<Node> _children = Collections.emptyList();
+
+    Node( final int line )
+    {
+      _line = line;
+    }
+
+    /**
+     * Return the index of the line from which the node was created or -1 for the root node.
+     */
+    int getLine()
+    {
+      return _line;
+    }
+
+    /**
+     * Return the index after the last line of the node and its descendants.
+     */
+    int getEnd()
+    {
+      return _end;
+    }
+
+    byte[] getDigest()
+    {
+      return _digest;
+    }
+
+    List<Node> getChildren()
+    {
+      return _children;
+    }
+
+    /**
+     * Return true if the node and all of its descendants are identical to the other node.
+     */
+    boolean hasSameContent( final Node other )
+    {
+      return Arrays.equals( _digest, other._digest );
+    }
+
+    private void addChild( final Node child )
+    {
+      if ( _children.isEmpty() )
+      {
+        _children = new ArrayList<>();
+      }
+      _children.add( child );
+    }
+  }
+
+  private final ArrayList<String> _lines = new ArrayList<>();
+  private final Node _root = new Node( -1 );
+  private final ArrayList<Node> _stack = new ArrayList<>();
+  /**
+   * One digest per level of the stack. The digest of a level accumulates the line of the node at
+   * that level followed by the digests of its children as they are completed.
+   */
+  private final ArrayList<MessageDigest> _digests = new ArrayList<>();
+  private boolean _complete;
+
+  DigestTree()
+  {
+    _stack.add( _root );
+    _digests.add( newMessageDigest() );
+  }
+
+  static DigestTree build( final List<String> lines )
+  {
+    final DigestTree tree = new DigestTree();
+    for ( final String line : lines )
+    {
+      tree.handle( line );
+    }
+    tree.complete();
+    return tree;
+  }
+
+  @Override
+  public void handle( final String line )
+  {
+    if ( _complete )
+    {
+      throw new IllegalStateException( "Line added to completed digest tree" );
+    }
+    int depth = 0;
+    while ( depth < line.length() && '\t' == line.charAt( depth ) )
+    {
+      depth++;
+    }
+    // Guard against malformed input that skips a level of indentation
+    depth = Math.min( depth, _stack.size() - 1 );
+    while ( _stack.size() > depth + 1 )
+    {
+      completeNode();
+    }
+    final Node node = new Node( _lines.size() );
+    _lines.add( line );
+    _stack.get( depth ).addChild( node );
+    _stack.add( node );
+    if ( _digests.size() < _stack.size() )
+    {
+      _digests.add( newMessageDigest() );
+    }
+    final MessageDigest digest = _digests.get( _stack.size() - 1 );
+    digest.reset();
+    digest.update( line.getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  /**
+   * Finalize the digests of the nodes that are still open. No further lines may be handled.
+   */
+  void complete()
+  {
+    if ( !_complete )
+    {
+      while ( _stack.size() > 1 )
+      {
+        completeNode();
+      }
+      _root._end = _lines.size();
+      _root._digest = _digests.get( 0 ).digest();
+      _complete = true;
+    }
+  }
+
+  private void completeNode()
+  {
+    final int level = _stack.size() - 1;
+    final Node node = _stack.remove( level );
+    node._end = _lines.size();
+    node._digest = _digests.get( level ).digest();
+    _digests.get( level - 1 ).update( node._digest );
+  }
+
+  List<String> getLines()
+  {
+    return _lines;
+  }
+
+  Node getRoot()
+  {
+    if ( !_complete )
+    {
+      throw new IllegalStateException( "Digest tree accessed before completion" );
+    }
+    return _root;
+  }
+
+  private static MessageDigest newMessageDigest()
+  {
+    try
+    {
+      return MessageDigest.getInstance( "SHA-1" );
+    }
+    catch ( final NoSuchAlgorithmException e )
+    {
+      throw new IllegalStateException( "SHA-1 digest unavailable", e );
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package org.realityforge.dbdiff;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The dumps of databases retained between comparisons by a long running process. A dump is keyed
+ * by the database and the schemas that were dumped, and expires once it is older than the time to live.
+ */
+final class DumpCache
+{
+  private static final class Entry
+  {
+    private final String _database;
+    private final DigestTree _tree;
+    private final long _expiresAt;
+
+    Entry( final String database, final DigestTree tree, final long expiresAt )
+    {
+      _database = database;
+      _tree = tree;
+      _expiresAt = expiresAt;
+    }
+  }
+
+  private final long _timeToLive;
+  private final ConcurrentHashMap<String, Entry> _entries = new ConcurrentHashMap<>();
+
+  /**
+   * @param timeToLive the number of milliseconds a dump is retained.
+   */
+  DumpCache( final long timeToLive )
+  {
+    _timeToLive = timeToLive;
+  }
+
+  /**
+   * Return the completed dump of the schemas of the database or null if not cached or expired.
+   */
+  DigestTree get( final String database, final List<String> schemas )
+  {
+    final String key = toKey( database, schemas );
+    final Entry entry = _entries.get( key );
+    if ( null == entry )
+    {
+      return null;
+    }
+    else if ( System.currentTimeMillis() >= entry._expiresAt )
+    {
+      _entries.remove( key, entry );
+      return null;
+    }
+    else
+    {
+      return entry._tree;
+    }
+  }
+
+  /**
+   * Cache the completed dump of the schemas of the database, discarding any expired dumps so that the
+   * dumps of databases that are no longer compared are not retained.
+   */
+  void put( final String database, final List<String> schemas, final DigestTree tree )
+  {
+    if ( _timeToLive > 0 )
+    {
+      final long now = System.currentTimeMillis();
+      _entries.values().removeIf( entry -> now >= entry._expiresAt );
+      _entries.put( toKey( database, schemas ), new Entry( database, tree, now + _timeToLive ) );
+    }
+  }
+
+  /**
+   * Return the number of dumps retained, including any that have expired but not yet been discarded.
+   */
+  int size()
+  {
+    return _entries.size();
+  }
+
+  /**
+   * Discard the dumps of the database, regardless of the schemas dumped, and return the number discarded.
+   */
+  int invalidate( final String database )
+  {
+    int count = 0;
+    final Iterator<Map.Entry<String, Entry>> iterator = _entries.entrySet().iterator();
+    while ( iterator.hasNext() )
+    {
+      if ( iterator.next().getValue()._database.equals( database ) )
+      {
+        iterator.remove();
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Discard all of the dumps and return the number discarded.
+   */
+  int invalidateAll()
+  {
+    final int count = _entries.size();
+    _entries.clear();
+    return count;
+  }
+
+  private static String toKey( final String database, final List<String> schemas )
+  {
+    return database + "\n" + String.join( "\n", schemas );
+  }
+}
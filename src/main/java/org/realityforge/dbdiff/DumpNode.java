@@ -0,0 +1,201 @@
+package org.realityforge.dbdiff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A node in the tree parsed from the textual database dump. Each line of the dump is a node
+ * and the depth of tab indentation determines the parent. i.e. "Schema: x" lines are children
+ * of the root, tables and routines are children of schemas and columns, indexes etc. are children
+ * of tables. Each node retains the digest of its subtree so identical subtrees can be skipped.
+ */
+final class DumpNode
+{
+  private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile( "(?:^|, )([a-z_]+)=" );
+
+  private final String _kind;
+  private final String _name;
+  private final String _attributes;
+  private final String _key;
+  private final List<DumpNode> _children = new ArrayList<>();
+  private byte[] _digest;
+
+  private DumpNode( final String kind, final String name, final String attributes, final String key )
+  {
+    _kind = kind;
+    _name = name;
+    _attributes = attributes;
+    _key = key;
+  }
+
+  /**
+   * Parse the lines of a dump into a tree. Lines reporting a missing schema are omitted so that
+   * a missing schema is reported as a removed or added schema.
+   */
+  static DumpNode parse( final List<String> lines )
+  {
+    return parse( DigestTree.build( lines ) );
+  }
+
+  /**
+   * Parse the lines of a digest tree, retaining the digest of each node.
+   */
+  static DumpNode parse( final DigestTree tree )
+  {
+    final DumpNode root = new DumpNode( "", null, null, "" );
+    root._digest = tree.getRoot().getDigest();
+    addChildren( root, tree.getRoot(), tree.getLines(), 0, new HashMap<>() );
+    return root;
+  }
+
+  private static void addChildren( final DumpNode parent,
+                                   final DigestTree.Node node,
+                                   final List<String> lines,
+                                   final int depth,
+                                   final Map<String, Integer> occurrences )
+  {
+    for ( final DigestTree.Node child : node.getChildren() )
+    {
+      final String line = lines.get( child.getLine() );
+      if ( line.isEmpty() || line.startsWith( "Missing Schema: " ) )
+      {
+        // Any lines nested under an omitted line are retained as siblings of the omitted line
+        addChildren( parent, child, lines, depth + 1, occurrences );
+        continue;
+      }
+      final DumpNode dumpNode = parseLine( line.substring( depth ), occurrences );
+      dumpNode._digest = child.getDigest();
+      parent._children.add( dumpNode );
+      if ( !child.getChildren().isEmpty() )
+      {
+        addChildren( dumpNode, child, lines, depth + 1, new HashMap<>() );
+      }
+    }
+  }
+
+  /**
+   * Parse a line of the form "KIND: name: {attributes}", "KIND: name" or "KIND: {attributes}".
+   * Several lines may share a kind and name (i.e. one line per column of an index) so the key
+   * includes the occurrence count of the kind and name amongst the siblings.
+   */
+  private static DumpNode parseLine( final String text, final Map<String, Integer> occurrences )
+  {
+    final int kindEnd = text.indexOf( ':' );
+    if ( -1 == kindEnd )
+    {
+      return new DumpNode( text, null, null, text + "#" + nextOccurrence( occurrences, text ) );
+    }
+    final String kind = text.substring( 0, kindEnd ).trim();
+    final String remainder = text.substring( Math.min( text.length(), kindEnd + 2 ) );
+    final String name;
+    final String attributes;
+    if ( remainder.startsWith( "{" ) )
+    {
+      name = null;
+      attributes = remainder;
+    }
+    else
+    {
+      final int attributesStart = remainder.indexOf( ": {" );
+      if ( -1 == attributesStart )
+      {
+        name = remainder;
+        attributes = null;
+      }
+      else
+      {
+        name = remainder.substring( 0, attributesStart );
+        attributes = remainder.substring( attributesStart + 2 );
+      }
+    }
+    // Nodes without a name (i.e. privileges) are identified by their attributes
+    final String identity = kind + ":" + ( null != name ? name : attributes );
+    return new DumpNode( kind, name, attributes, identity + "#" + nextOccurrence( occurrences, identity ) );
+  }
+
+  private static int nextOccurrence( final Map<String, Integer> occurrences, final String identity )
+  {
+    final int occurrence = occurrences.getOrDefault( identity, 0 );
+    occurrences.put( identity, occurrence + 1 );
+    return occurrence;
+  }
+
+  String getKind()
+  {
+    return _kind;
+  }
+
+  String getName()
+  {
+    return _name;
+  }
+
+  String getAttributes()
+  {
+    return _attributes;
+  }
+
+  String getKey()
+  {
+    return _key;
+  }
+
+  /**
+   * Return true if the node and all of its descendants are identical to the other node.
+   */
+  boolean hasSameContent( final DumpNode other )
+  {
+    return Arrays.equals( _digest, other._digest );
+  }
+
+  List<DumpNode> getChildren()
+  {
+    return Collections.unmodifiableList( _children );
+  }
+
+  /**
+   * Return a short human readable label for the node. i.e. "COLUMN: ID" or "PRIV: {grantee=...}"
+   */
+  String getLabel()
+  {
+    return _kind + ": " + ( null != _name ? _name : _attributes );
+  }
+
+  /**
+   * Parse the attributes from the textual representation of a map, i.e. "{a=1, b=2}".
+   * Keys are lower case identifiers so a value is only split where ", " is followed by such
+   * an identifier and "=".
+   */
+  Map<String, String> parseAttributes()
+  {
+    final LinkedHashMap<String, String> results = new LinkedHashMap<>();
+    if ( null != _attributes && _attributes.length() >= 2 )
+    {
+      final String text = _attributes.substring( 1, _attributes.length() - 1 );
+      final Matcher matcher = ATTRIBUTE_PATTERN.matcher( text );
+      String key = null;
+      int valueStart = 0;
+      while ( matcher.find() )
+      {
+        if ( null != key )
+        {
+          results.put( key, text.substring( valueStart, matcher.start() ) );
+        }
+        key = matcher.group( 1 );
+        valueStart = matcher.end();
+      }
+      if ( null != key )
+      {
+        results.put( key, text.substring( valueStart ) );
+      }
+    }
+    return results;
+  }
+}
@@ -0,0 +1,68 @@
+package org.realityforge.dbdiff;
+
+/**
+ * An element of the database schema as described by the database metadata.
+ * The element retains the values of the attributes described by the layout.
+ */
+class Element
+{
+  private final AttributeLayout _layout;
+  private final Object[] _values;
+
+  Element( final AttributeLayout layout, final Object[] values )
+  {
+    assert layout.size() == values.length;
+    _layout = layout;
+    _values = values;
+  }
+
+  final AttributeLayout getLayout()
+  {
+    return _layout;
+  }
+
+  final String getName()
+  {
+    final int nameIndex = _layout.getNameIndex();
+    return -1 == nameIndex ? null : (String) _values[ nameIndex ];
+  }
+
+  final Object getValue( final String key )
+  {
+    final int index = _layout.indexOf( key );
+    return -1 == index ? null : _values[ index ];
+  }
+
+  /**
+   * Return the non-null attributes in the form "{key=value, key=value}".
+   * The name is omitted unless the layout specifies that it is included.
+   */
+  final String attributesToString()
+  {
+    final StringBuilder sb = new StringBuilder();
+    sb.append( '{' );
+    final int nameIndex = _layout.isNameIncluded() ? -1 : _layout.getNameIndex();
+    boolean first = true;
+    for ( int i = 0; i < _values.length; i++ )
+    {
+      final Object value = _values[ i ];
+      if ( null != value && i != nameIndex )
+      {
+        if ( !first )
+        {
+          sb.append( ", " );
+        }
+        first = false;
+        sb.append( _layout.getKey( i ) ).append( '=' ).append( value );
+      }
+    }
+    sb.append( '}' );
+    return sb.toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return getName() + ": " + attributesToString();
+  }
+}
@@ -0,0 +1,13 @@
+package org.realityforge.dbdiff;
+
+/**
+ * A column of a foreign key imported by a table.
+ */
+final class ForeignKey
+  extends Element
+{
+  ForeignKey( final AttributeLayout layout, final Object[] values )
+  {
+    super( layout, values );
+  }
+}
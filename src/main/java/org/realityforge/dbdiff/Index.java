@@ -0,0 +1,13 @@
+package org.realityforge.dbdiff;
+
+/**
+ * A column of an index on a table.
+ */
+final class Index
+  extends Element
+{
+  Index( final AttributeLayout layout, final Object[] values )
+  {
+    super( layout, values );
+  }
+}
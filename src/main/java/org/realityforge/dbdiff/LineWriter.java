@@ -0,0 +1,87 @@
+package org.realityforge.dbdiff;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer that splits the characters written to it into lines and passes each
+ * line to a handler as soon as it is complete. This allows a dump to be consumed
+ * incrementally without buffering the entire dump as a single string.
+ */
+final class LineWriter
+  extends Writer
+{
+  interface LineHandler
+  {
+    void handle( String line )
+      throws IOException;
+  }
+
+  private final LineHandler _handler;
+  private final StringBuilder _line = new StringBuilder();
+
+  LineWriter( final LineHandler handler )
+  {
+    _handler = handler;
+  }
+
+  @Override
+  public void write( final char[] buffer, final int offset, final int length )
+    throws IOException
+  {
+    final int end = offset + length;
+    int start = offset;
+    for ( int i = offset; i < end; i++ )
+    {
+      if ( '\n' == buffer[ i ] )
+      {
+        _line.append( buffer, start, i - start );
+        emitLine();
+        start = i + 1;
+      }
+    }
+    _line.append( buffer, start, end - start );
+  }
+
+  @Override
+  public void write( final String text, final int offset, final int length )
+    throws IOException
+  {
+    final int end = offset + length;
+    int start = offset;
+    int index;
+    while ( -1 != ( index = text.indexOf( '\n', start ) ) && index < end )
+    {
+      _line.append( text, start, index );
+      emitLine();
+      start = index + 1;
+    }
+    _line.append( text, start, end );
+  }
+
+  @Override
+  public void flush()
+  {
+  }
+
+  /**
+   * Emit any trailing characters that were not terminated by a newline.
+   */
+  @Override
+  public void close()
+    throws IOException
+  {
+    if ( 0 != _line.length() )
+    {
+      emitLine();
+    }
+  }
+
+  private void emitLine()
+    throws IOException
+  {
+    final String line = _line.toString();
+    _line.setLength( 0 );
+    _handler.handle( line );
+  }
+}
@@ -1,7 +1,14 @@
 package org.realityforge.dbdiff;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.sql.Driver;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
@@ -24,6 +31,28 @@ public class Main
   private static final int DATABASE_PROPERTY_OPT = 'D';
   private static final int SCHEMA_OPT = 's';
   private static final int CONTEXT_SIZE_OPT = 4;
+  private static final int BULK_FETCH_OPT = 5;
+  private static final int DIFF_FORMAT_OPT = 6;
+  private static final int DUMP_OPT = 7;
+  private static final int CONNECTIONS_OPT = 8;
+  private static final int NATIVE_CATALOG_OPT = 9;
+  private static final int FETCH_SIZE_OPT = 10;
+  private static final int TARGET_CONCURRENCY_OPT = 11;
+  private static final int SERVE_OPT = 12;
+  private static final int CACHE_TTL_OPT = 13;
+  private static final int WATCH_OPT = 14;
+  private static final int INCLUDE_TABLE_OPT = 15;
+  private static final int EXCLUDE_TABLE_OPT = 16;
+  private static final int INCLUDE_ROUTINE_OPT = 17;
+  private static final int EXCLUDE_ROUTINE_OPT = 18;
+  private static final int INCLUDE_TYPE_OPT = 19;
+  private static final int EXCLUDE_TYPE_OPT = 20;
+  private static final int ONLY_OPT = 21;
+  private static final int SKIP_OPT = 22;
+  private static final int MEMORY_BUDGET_OPT = 23;
+  private static final int SPILL_DIRECTORY_OPT = 24;
+  private static final int DIFF_THREADS_OPT = 25;
+  private static final int RECORD_METADATA_OPT = 26;
 
   private static final CLOptionDescriptor[] OPTIONS = new CLOptionDescriptor[]{
     new CLOptionDescriptor( "database-driver",
@@ -42,10 +71,122 @@ public class Main
                             CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
                             SCHEMA_OPT,
                             "A schema to analyze." ),
+    new CLOptionDescriptor( "include-table",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            INCLUDE_TABLE_OPT,
+                            "Only compare the tables and views whose name matches the pattern. The pattern is a " +
+                            "glob using '*' and '?' or a regular expression prefixed with 'regex:'." ),
+    new CLOptionDescriptor( "exclude-table",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            EXCLUDE_TABLE_OPT,
+                            "Do not compare the tables and views whose name matches the pattern." ),
+    new CLOptionDescriptor( "include-routine",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            INCLUDE_ROUTINE_OPT,
+                            "Only compare the procedures and functions whose name matches the pattern." ),
+    new CLOptionDescriptor( "exclude-routine",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            EXCLUDE_ROUTINE_OPT,
+                            "Do not compare the procedures and functions whose name matches the pattern." ),
+    new CLOptionDescriptor( "include-type",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            INCLUDE_TYPE_OPT,
+                            "Only compare the user defined types whose name matches the pattern." ),
+    new CLOptionDescriptor( "exclude-type",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            EXCLUDE_TYPE_OPT,
+                            "Do not compare the user defined types whose name matches the pattern." ),
+    new CLOptionDescriptor( "only",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            ONLY_OPT,
+                            "A comma separated list of the kinds of objects to compare. The metadata of other kinds " +
+                            "is not retrieved. Kinds = " + Arrays.asList( ObjectKind.values() ) ),
+    new CLOptionDescriptor( "skip",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            SKIP_OPT,
+                            "A comma separated list of the kinds of objects not to compare." ),
     new CLOptionDescriptor( "context-size",
                             CLOptionDescriptor.ARGUMENT_REQUIRED,
                             CONTEXT_SIZE_OPT,
                             "The number of context lines in the diff." ),
+    new CLOptionDescriptor( "format",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            DIFF_FORMAT_OPT,
+                            "The format of the reported differences. One of unified (default), structural or " +
+                            "ndjson. The ndjson format writes a json object per changed object to standard " +
+                            "output as soon as it is found, once both databases have been dumped. It only " +
+                            "supports comparing two databases and is not supported when quiet." ),
+    new CLOptionDescriptor( "bulk-fetch",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            BULK_FETCH_OPT,
+                            "Retrieve table and routine metadata once per schema rather than once per object." ),
+    new CLOptionDescriptor( "native-catalog",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            NATIVE_CATALOG_OPT,
+                            "Read table metadata directly from the system catalog with a few queries per schema " +
+                            "rather than via the driver. Only supported by the postgresql dialect." ),
+    new CLOptionDescriptor( "connections",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            CONNECTIONS_OPT,
+                            "The number of connections opened to each database. Schemas and tables are dumped " +
+                            "concurrently when more than one connection is used. Defaults to 1." ),
+    new CLOptionDescriptor( "fetch-size",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            FETCH_SIZE_OPT,
+                            "The number of metadata rows fetched from the database at a time. Defaults to the " +
+                            "driver default." ),
+    new CLOptionDescriptor( "diff-threads",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            DIFF_THREADS_OPT,
+                            "The number of threads on which the differing schemas and objects are diffed. The " +
+                            "output is identical for any number of threads. Defaults to the number of processors." ),
+    new CLOptionDescriptor( "memory-budget",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            MEMORY_BUDGET_OPT,
+                            "The number of megabytes of heap used to hold the dumps of the two databases. The " +
+                            "objects that do not fit are sorted and spilled to temporary files and the dumps " +
+                            "are compared by merging the sorted objects. Defaults to holding the dumps in memory." ),
+    new CLOptionDescriptor( "spill-directory",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            SPILL_DIRECTORY_OPT,
+                            "The directory in which objects are spilled when a memory budget is specified. " +
+                            "Defaults to the temporary-file directory." ),
+    new CLOptionDescriptor( "record-metadata",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            RECORD_METADATA_OPT,
+                            "Record the DatabaseMetaData calls made when dumping each database to a file in the " +
+                            "specified directory, named after the jdbc url. A recording is replayed without a " +
+                            "database by supplying 'jdbc:replay:' followed by the path of the file as the url. Not " +
+                            "supported with native-catalog." ),
+    new CLOptionDescriptor( "target-concurrency",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            TARGET_CONCURRENCY_OPT,
+                            "The maximum number of target databases dumped and compared at the same time when " +
+                            "the first database is compared with more than one target. Defaults to 4." ),
+    new CLOptionDescriptor( "dump",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            DUMP_OPT,
+                            "Write a snapshot of the database to the specified file ('-' for standard output) " +
+                            "rather than performing a diff. A snapshot may be supplied in place of a jdbc url " +
+                            "and '-- -' reads a snapshot from standard input." ),
+    new CLOptionDescriptor( "serve",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            SERVE_OPT,
+                            "Run as a server that accepts diff requests over HTTP on the specified port of the " +
+                            "loopback interface rather than performing a single diff. Only the databases " +
+                            "supplied may be compared and each request must be a POST with the bearer token " +
+                            "logged on start. Connections are reused and dumps are cached between requests." ),
+    new CLOptionDescriptor( "cache-ttl",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            CACHE_TTL_OPT,
+                            "The number of seconds a server caches the dump of a database. 0 disables the " +
+                            "cache. Defaults to 300." ),
+    new CLOptionDescriptor( "watch",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            WATCH_OPT,
+                            "Keep watching the databases for drift, polling the catalog versions of the relations " +
+                            "every specified number of seconds and only dumping and diffing the objects that " +
+                            "changed. Supported by the postgresql and mssql dialects." ),
     new CLOptionDescriptor( "help",
                             CLOptionDescriptor.ARGUMENT_DISALLOWED,
                             HELP_OPT,
@@ -53,7 +194,8 @@ public class Main
     new CLOptionDescriptor( "quiet",
                             CLOptionDescriptor.ARGUMENT_DISALLOWED,
                             QUIET_OPT,
-                            "Do not output unless an error occurs, just return 0 on no difference.",
+                            "Do not output unless an error occurs, just return 0 on no difference. The " +
+                            "comparison stops at the first difference.",
                             new int[]{ VERBOSE_OPT } ),
     new CLOptionDescriptor( "verbose",
                             CLOptionDescriptor.ARGUMENT_DISALLOWED,
@@ -69,6 +211,17 @@ public class Main
   private static final int ERROR_OTHER_EXIT_CODE = 4;
 
   private static String c_databaseDriver;
+  private static String c_dumpFile;
+  private static int c_servePort = -1;
+  private static int c_cacheTimeToLive = 300;
+  private static int c_watchInterval;
+  private static final EnumSet<ObjectKind> c_onlyKinds = EnumSet.noneOf( ObjectKind.class );
+  private static final EnumSet<ObjectKind> c_skipKinds = EnumSet.noneOf( ObjectKind.class );
+  /**
+   * The databases after the second database. When present the first database is compared with the
+   * second database and each of these databases.
+   */
+  private static final ArrayList<String> c_additionalTargets = new ArrayList<>();
   private static final DatabaseDiff c_diffTool = new DatabaseDiff();
   private static final Logger c_logger = Logger.getAnonymousLogger();
 
@@ -81,22 +234,50 @@ public class Main
       return;
     }
 
-    if ( c_logger.isLoggable( Level.FINE ) )
+    if ( null != c_databaseDriver )
     {
-      c_logger.log( Level.INFO, "Performing difference between databases" );
+      final Driver driver = loadDatabaseDriver();
+      if ( null == driver )
+      {
+        System.exit( ERROR_BAD_DRIVER_EXIT_CODE );
+        return;
+      }
+      c_diffTool.setDriver( driver );
     }
 
-    final Driver driver = loadDatabaseDriver();
-    if ( null == driver )
+    if ( null != c_dumpFile )
     {
-      System.exit( ERROR_BAD_DRIVER_EXIT_CODE );
+      dumpDatabase();
+      return;
+    }
+
+    if ( -1 != c_servePort )
+    {
+      serve();
+      return;
+    }
+
+    if ( 0 != c_watchInterval )
+    {
+      watch();
+      return;
+    }
+
+    if ( !c_additionalTargets.isEmpty() )
+    {
+      diffTargets();
       return;
     }
 
-    c_diffTool.setDriver( driver );
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      c_logger.log( Level.INFO, "Performing difference between databases" );
+    }
+
     boolean difference;
     try
     {
+      c_diffTool.setOutput( System.out );
       difference = c_diffTool.diff();
     }
     catch ( final Throwable t )
@@ -124,6 +305,139 @@ public class Main
     }
   }
 
+  /**
+   * Compare the first database with each of the targets, reporting the result of each target. The
+   * exit code is an error if any target could not be compared, otherwise a difference if any target
+   * differs from the first database.
+   */
+  private static void diffTargets()
+  {
+    final ArrayList<String> targets = new ArrayList<>();
+    targets.add( c_diffTool.getDatabase2() );
+    targets.addAll( c_additionalTargets );
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      c_logger.log( Level.INFO, "Performing difference between " + c_diffTool.getDatabase1() + " and " +
+                                targets.size() + " databases" );
+    }
+
+    final List<TargetResult> results;
+    try
+    {
+      results = c_diffTool.diffTargets( targets );
+    }
+    catch ( final Throwable t )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + "Error performing diff: " + t );
+      System.exit( ERROR_OTHER_EXIT_CODE );
+      return;
+    }
+
+    int exitCode = NO_DIFFERENCE_EXIT_CODE;
+    for ( final TargetResult result : results )
+    {
+      if ( result.isFailed() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "Error performing diff of " + result.getDatabase() + ": " +
+                                    result.getFailure() );
+        exitCode = ERROR_OTHER_EXIT_CODE;
+      }
+      else if ( result.isDifferent() )
+      {
+        if ( c_logger.isLoggable( Level.INFO ) )
+        {
+          c_logger.log( Level.SEVERE, "Error: " + "Difference found in " + result.getDatabase() );
+        }
+        exitCode = ERROR_OTHER_EXIT_CODE == exitCode ? exitCode : DIFFERENCE_EXIT_CODE;
+      }
+      else if ( c_logger.isLoggable( Level.INFO ) )
+      {
+        c_logger.log( Level.INFO, "No difference found in " + result.getDatabase() );
+      }
+    }
+    System.exit( exitCode );
+  }
+
+  /**
+   * Start the server and return, leaving the server threads to process requests until the process is stopped.
+   */
+  private static void serve()
+  {
+    final ArrayList<String> databases = new ArrayList<>();
+    databases.add( c_diffTool.getDatabase1() );
+    if ( null != c_diffTool.getDatabase2() )
+    {
+      databases.add( c_diffTool.getDatabase2() );
+    }
+    databases.addAll( c_additionalTargets );
+    final DiffServer server = new DiffServer( c_diffTool, c_cacheTimeToLive * 1000L, databases, null );
+    try
+    {
+      server.start( new InetSocketAddress( InetAddress.getLoopbackAddress(), c_servePort ) );
+    }
+    catch ( final Throwable t )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + "Error starting server: " + t );
+      System.exit( ERROR_OTHER_EXIT_CODE );
+      return;
+    }
+    Runtime.getRuntime().addShutdownHook( new Thread( server::stop ) );
+    if ( c_logger.isLoggable( Level.INFO ) )
+    {
+      c_logger.log( Level.INFO, "Accepting diff requests of " + databases.size() + " databases on port " +
+                                server.getPort() + " with the bearer token " + server.getToken() );
+    }
+  }
+
+  /**
+   * Watch the databases for drift until the process is stopped.
+   */
+  private static void watch()
+  {
+    if ( c_logger.isLoggable( Level.INFO ) )
+    {
+      c_logger.log( Level.INFO, "Watching for drift between databases every " + c_watchInterval + " seconds" );
+    }
+    try
+    {
+      new DatabaseWatcher( c_diffTool ).watch( c_watchInterval * 1000L );
+    }
+    catch ( final Throwable t )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + "Error watching databases: " + t );
+      System.exit( ERROR_OTHER_EXIT_CODE );
+    }
+  }
+
+  private static void dumpDatabase()
+  {
+    if ( c_logger.isLoggable( Level.FINE ) )
+    {
+      c_logger.log( Level.INFO, "Writing snapshot of " + c_diffTool.getDatabase1() + " to " + c_dumpFile );
+    }
+    try
+    {
+      if ( SnapshotReader.STANDARD_STREAM.equals( c_dumpFile ) )
+      {
+        c_diffTool.dump( c_diffTool.getDatabase1(), System.out );
+      }
+      else
+      {
+        try ( final OutputStream output = new FileOutputStream( c_dumpFile ) )
+        {
+          c_diffTool.dump( c_diffTool.getDatabase1(), output );
+        }
+      }
+    }
+    catch ( final Throwable t )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + "Error performing dump: " + t );
+      System.exit( ERROR_OTHER_EXIT_CODE );
+      return;
+    }
+    System.exit( NO_DIFFERENCE_EXIT_CODE );
+  }
+
   private static void setupLogger()
   {
     c_logger.setUseParentHandlers( false );
@@ -177,8 +491,7 @@ public class Main
           }
           else
           {
-            c_logger.log( Level.SEVERE, "Error: " + "Unexpected 3rd test argument: " + option.getArgument() );
-            return false;
+            c_additionalTargets.add( option.getArgument() );
           }
           break;
         case CONTEXT_SIZE_OPT:
@@ -186,11 +499,166 @@ public class Main
           c_diffTool.setContextSize( Integer.parseInt( option.getArgument() ) );
           break;
         }
+        case DIFF_FORMAT_OPT:
+        {
+          try
+          {
+            c_diffTool.setDiffFormat( DiffFormat.valueOf( option.getArgument() ) );
+          }
+          catch ( final IllegalArgumentException e )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "Unsupported diff format: " + option.getArgument() +
+                                        ". Supported formats = " + Arrays.asList( DiffFormat.values() ) );
+            return false;
+          }
+          break;
+        }
+        case CONNECTIONS_OPT:
+        {
+          final int connections = Integer.parseInt( option.getArgument() );
+          if ( connections < 1 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The number of connections must be at least 1" );
+            return false;
+          }
+          c_diffTool.setConnectionsPerDatabase( connections );
+          break;
+        }
+        case FETCH_SIZE_OPT:
+        {
+          final int fetchSize = Integer.parseInt( option.getArgument() );
+          if ( fetchSize < 0 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The fetch size must not be negative" );
+            return false;
+          }
+          c_diffTool.setFetchSize( fetchSize );
+          break;
+        }
+        case DIFF_THREADS_OPT:
+        {
+          final int diffThreads = Integer.parseInt( option.getArgument() );
+          if ( diffThreads < 1 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The number of diff threads must be at least 1" );
+            return false;
+          }
+          c_diffTool.setDiffThreads( diffThreads );
+          break;
+        }
+        case MEMORY_BUDGET_OPT:
+        {
+          final int memoryBudget = Integer.parseInt( option.getArgument() );
+          if ( memoryBudget < 1 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The memory budget must be at least 1 megabyte" );
+            return false;
+          }
+          c_diffTool.setMemoryBudget( memoryBudget * 1024L * 1024L );
+          break;
+        }
+        case SPILL_DIRECTORY_OPT:
+        {
+          final File directory = new File( option.getArgument() );
+          if ( !directory.isDirectory() )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The spill directory does not exist: " + directory );
+            return false;
+          }
+          c_diffTool.setSpillDirectory( directory );
+          break;
+        }
+        case RECORD_METADATA_OPT:
+        {
+          c_diffTool.setRecordDirectory( new File( option.getArgument() ) );
+          break;
+        }
+        case TARGET_CONCURRENCY_OPT:
+        {
+          final int targetConcurrency = Integer.parseInt( option.getArgument() );
+          if ( targetConcurrency < 1 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The target concurrency must be at least 1" );
+            return false;
+          }
+          c_diffTool.setTargetConcurrency( targetConcurrency );
+          break;
+        }
+        case SERVE_OPT:
+        {
+          final int port = Integer.parseInt( option.getArgument() );
+          if ( port < 0 || port > 65535 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "Invalid port: " + option.getArgument() );
+            return false;
+          }
+          c_servePort = port;
+          break;
+        }
+        case WATCH_OPT:
+        {
+          final int watchInterval = Integer.parseInt( option.getArgument() );
+          if ( watchInterval < 1 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The watch interval must be at least 1 second" );
+            return false;
+          }
+          c_watchInterval = watchInterval;
+          break;
+        }
+        case CACHE_TTL_OPT:
+        {
+          final int cacheTimeToLive = Integer.parseInt( option.getArgument() );
+          if ( cacheTimeToLive < 0 )
+          {
+            c_logger.log( Level.SEVERE, "Error: " + "The cache time to live must not be negative" );
+            return false;
+          }
+          c_cacheTimeToLive = cacheTimeToLive;
+          break;
+        }
+        case DUMP_OPT:
+        {
+          c_dumpFile = option.getArgument();
+          break;
+        }
+        case BULK_FETCH_OPT:
+        {
+          c_diffTool.setBulkFetch( true );
+          break;
+        }
+        case NATIVE_CATALOG_OPT:
+        {
+          c_diffTool.setNativeCatalog( true );
+          break;
+        }
         case SCHEMA_OPT:
         {
           c_diffTool.getSchemas().add( option.getArgument() );
           break;
         }
+        case ONLY_OPT:
+        case SKIP_OPT:
+        {
+          if ( !addObjectKinds( ONLY_OPT == option.getId() ? c_onlyKinds : c_skipKinds, option.getArgument() ) )
+          {
+            return false;
+          }
+          break;
+        }
+        case INCLUDE_TABLE_OPT:
+        case EXCLUDE_TABLE_OPT:
+        case INCLUDE_ROUTINE_OPT:
+        case EXCLUDE_ROUTINE_OPT:
+        case INCLUDE_TYPE_OPT:
+        case EXCLUDE_TYPE_OPT:
+        {
+          if ( !addFilterPattern( option.getId(), option.getArgument() ) )
+          {
+            return false;
+          }
+          break;
+        }
         case DATABASE_PROPERTY_OPT:
         {
           c_diffTool.getDbProperties().setProperty( option.getArgument(), option.getArgument( 1 ) );
@@ -224,6 +692,8 @@ public class Main
         case QUIET_OPT:
         {
           c_logger.setLevel( Level.WARNING );
+          // Only the exit code is reported so stop at the first difference
+          c_diffTool.setFailFast( true );
           break;
         }
         case HELP_OPT:
@@ -234,33 +704,222 @@ public class Main
 
       }
     }
-    if ( null == c_databaseDriver )
+    if ( !c_onlyKinds.isEmpty() )
+    {
+      c_diffTool.getObjectKinds().retainAll( c_onlyKinds );
+    }
+    c_diffTool.getObjectKinds().removeAll( c_skipKinds );
+    if ( -1 != c_servePort )
+    {
+      if ( null != c_dumpFile || null == c_diffTool.getDatabase1() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "The jdbc urls of the databases to serve must be supplied" );
+        return false;
+      }
+      if ( SnapshotReader.STANDARD_STREAM.equals( c_diffTool.getDatabase1() ) ||
+           SnapshotReader.STANDARD_STREAM.equals( c_diffTool.getDatabase2() ) ||
+           c_additionalTargets.contains( SnapshotReader.STANDARD_STREAM ) )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "A snapshot can not be read from standard input when serving" );
+        return false;
+      }
+      if ( null == c_databaseDriver || null == c_diffTool.getDialect() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "Database driver and dialect must be specified when serving" );
+        return false;
+      }
+      return true;
+    }
+    if ( 0 != c_watchInterval )
+    {
+      if ( null != c_dumpFile || null == c_diffTool.getDatabase2() || !c_additionalTargets.isEmpty() ||
+           SnapshotReader.isSnapshot( c_diffTool.getDatabase1() ) ||
+           SnapshotReader.isSnapshot( c_diffTool.getDatabase2() ) ||
+           ReplayDriver.isReplay( c_diffTool.getDatabase1() ) ||
+           ReplayDriver.isReplay( c_diffTool.getDatabase2() ) )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "Two jdbc urls must be supplied for the databases to watch" );
+        return false;
+      }
+      if ( Dialect.postgresql != c_diffTool.getDialect() && Dialect.mssql != c_diffTool.getDialect() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "Watching is only supported by the postgresql and mssql dialects" );
+        return false;
+      }
+    }
+    if ( 0 != c_diffTool.getMemoryBudget() )
+    {
+      if ( null != c_dumpFile || 0 != c_watchInterval || !c_additionalTargets.isEmpty() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "A memory budget is only supported when comparing two databases" );
+        return false;
+      }
+      if ( DiffFormat.structural == c_diffTool.getDiffFormat() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "A memory budget is not supported by the structural diff format" );
+        return false;
+      }
+    }
+    if ( DiffFormat.ndjson == c_diffTool.getDiffFormat() )
+    {
+      if ( 0 != c_watchInterval || !c_additionalTargets.isEmpty() )
+      {
+        c_logger.log( Level.SEVERE,
+                      "Error: " + "The ndjson diff format is only supported when comparing two databases" );
+        return false;
+      }
+      if ( c_diffTool.isFailFast() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "The ndjson diff format is not supported when quiet" );
+        return false;
+      }
+    }
+    if ( null != c_dumpFile )
+    {
+      if ( null == c_diffTool.getDatabase1() || null != c_diffTool.getDatabase2() || !c_additionalTargets.isEmpty() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "A single jdbc url must be supplied for the database to dump" );
+        return false;
+      }
+      if ( SnapshotReader.isSnapshot( c_diffTool.getDatabase1() ) )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "The database to dump must be a jdbc url" );
+        return false;
+      }
+    }
+    else
+    {
+      if ( null == c_diffTool.getDatabase1() || null == c_diffTool.getDatabase2() )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "Two jdbc urls or snapshots must be supplied for the databases to check differences" );
+        return false;
+      }
+      final ArrayList<String> databases = new ArrayList<>();
+      databases.add( c_diffTool.getDatabase1() );
+      databases.add( c_diffTool.getDatabase2() );
+      databases.addAll( c_additionalTargets );
+      if ( databases.indexOf( SnapshotReader.STANDARD_STREAM ) !=
+           databases.lastIndexOf( SnapshotReader.STANDARD_STREAM ) )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "Only one snapshot may be read from standard input" );
+        return false;
+      }
+    }
+    final ArrayList<String> databases = new ArrayList<>();
+    databases.add( c_diffTool.getDatabase1() );
+    if ( null != c_diffTool.getDatabase2() )
+    {
+      databases.add( c_diffTool.getDatabase2() );
+    }
+    databases.addAll( c_additionalTargets );
+    boolean connectionRequired = false;
+    boolean driverRequired = false;
+    boolean replayed = false;
+    for ( final String database : databases )
+    {
+      connectionRequired |= !SnapshotReader.isSnapshot( database );
+      driverRequired |= !SnapshotReader.isSnapshot( database ) && !ReplayDriver.isReplay( database );
+      replayed |= ReplayDriver.isReplay( database );
+    }
+    if ( replayed && c_diffTool.isNativeCatalog() )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + "The native catalog is not recorded and can not be replayed" );
+      return false;
+    }
+    if ( null != c_diffTool.getRecordDirectory() && c_diffTool.isNativeCatalog() )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + "The metadata can not be recorded when reading the native catalog" );
+      return false;
+    }
+    if ( driverRequired && null == c_databaseDriver )
     {
       c_logger.log( Level.SEVERE, "Error: " + "Database driver must be specified" );
       return false;
     }
-    if ( null == c_diffTool.getDialect() )
+    if ( connectionRequired && null == c_diffTool.getDialect() )
     {
       c_logger.log( Level.SEVERE, "Error: " + "Database dialect must be specified" );
       return false;
     }
-    if ( null == c_diffTool.getDatabase1() || null == c_diffTool.getDatabase2() )
+    if ( connectionRequired && c_diffTool.isNativeCatalog() && Dialect.postgresql != c_diffTool.getDialect() )
     {
-      c_logger.log( Level.SEVERE, "Error: " + "Two jdbc urls must supplied for the databases to check differences" );
+      c_logger.log( Level.SEVERE, "Error: " + "Native catalog extraction is not supported for the " +
+                                  c_diffTool.getDialect() + " dialect" );
       return false;
     }
     if ( c_logger.isLoggable( Level.FINE ) )
     {
       c_logger.log( Level.INFO, "Database 1: " + c_diffTool.getDatabase1() );
       c_logger.log( Level.INFO, "Database 2: " + c_diffTool.getDatabase2() );
+      for ( int i = 0; i < c_additionalTargets.size(); i++ )
+      {
+        c_logger.log( Level.INFO, "Database " + ( i + 3 ) + ": " + c_additionalTargets.get( i ) );
+      }
       c_logger.log( Level.INFO, "Database Dialect: " + c_diffTool.getDialect() );
       c_logger.log( Level.INFO, "Database Properties: " + c_diffTool.getDbProperties() );
       c_logger.log( Level.INFO, "Schemas: " + c_diffTool.getSchemas() );
+      c_logger.log( Level.INFO, "Table Filter: " + c_diffTool.getTableFilter() );
+      c_logger.log( Level.INFO, "Routine Filter: " + c_diffTool.getRoutineFilter() );
+      c_logger.log( Level.INFO, "Type Filter: " + c_diffTool.getTypeFilter() );
+      c_logger.log( Level.INFO, "Object Kinds: " + c_diffTool.getObjectKinds() );
     }
 
     return true;
   }
 
+  /**
+   * Add the comma separated kinds to the set. The elements of a table, such as columns, imply that
+   * tables are also compared.
+   */
+  private static boolean addObjectKinds( final EnumSet<ObjectKind> kinds, final String argument )
+  {
+    for ( final String name : argument.split( "," ) )
+    {
+      final ObjectKind kind;
+      try
+      {
+        kind = ObjectKind.valueOf( name.trim().replace( '-', '_' ) );
+      }
+      catch ( final IllegalArgumentException e )
+      {
+        c_logger.log( Level.SEVERE, "Error: " + "Unsupported object kind: " + name +
+                                    ". Supported kinds = " + Arrays.asList( ObjectKind.values() ) );
+        return false;
+      }
+      kinds.add( kind );
+      if ( c_onlyKinds == kinds && ObjectKind.routines != kind && ObjectKind.types != kind )
+      {
+        kinds.add( ObjectKind.tables );
+      }
+    }
+    return true;
+  }
+
+  private static boolean addFilterPattern( final int optionId, final String pattern )
+  {
+    final ObjectFilter filter =
+      INCLUDE_TABLE_OPT == optionId || EXCLUDE_TABLE_OPT == optionId ? c_diffTool.getTableFilter() :
+      INCLUDE_ROUTINE_OPT == optionId || EXCLUDE_ROUTINE_OPT == optionId ? c_diffTool.getRoutineFilter() :
+      c_diffTool.getTypeFilter();
+    try
+    {
+      if ( INCLUDE_TABLE_OPT == optionId || INCLUDE_ROUTINE_OPT == optionId || INCLUDE_TYPE_OPT == optionId )
+      {
+        filter.include( pattern );
+      }
+      else
+      {
+        filter.exclude( pattern );
+      }
+      return true;
+    }
+    catch ( final IllegalArgumentException e )
+    {
+      c_logger.log( Level.SEVERE, "Error: " + e.getMessage() );
+      return false;
+    }
+  }
+
   /**
    * Print out a usage statement
    */
@@ -272,7 +931,15 @@ public class Main
 
     msg.append( "java " );
     msg.append( Main.class.getName() );
-    msg.append( " [options] database1JDBCurl database2JDBCurl" );
+    msg.append( " [options] database1JDBCurl|snapshot database2JDBCurl|snapshot [database3JDBCurl|snapshot...]" );
+    msg.append( lineSeparator );
+    msg.append( "java " );
+    msg.append( Main.class.getName() );
+    msg.append( " [options] --dump snapshot databaseJDBCurl" );
+    msg.append( lineSeparator );
+    msg.append( "java " );
+    msg.append( Main.class.getName() );
+    msg.append( " [options] --serve port databaseJDBCurl|snapshot [databaseJDBCurl|snapshot...]" );
     msg.append( lineSeparator );
     msg.append( "Options: " );
     msg.append( lineSeparator );
@@ -0,0 +1,618 @@
+package org.realityforge.dbdiff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The DatabaseMetaData calls made while dumping a database, keyed by the method and its arguments,
+ * along with the values and rows they returned. A recording is captured by dumping over connections
+ * returned by {@link #record(List)} and is served without a database by {@link #replay()}, so
+ * that a slow crawl can be repeated for profiling, benchmarks and reproducing bugs. Only the calls made
+ * via DatabaseMetaData are recorded, so a replayed database can not be dumped via the native catalog.
+ * A recording is laid out as:
+ *
+ * <pre>
+ * header: magic "DBDIFFMD", int version
+ * calls:  deflated (int count, (string key, value)*)
+ * value:  tag, followed by the value for the tag or, for rows, int column count, string name*,
+ *         int row count, value*
+ * </pre>
+ */
+final class MetaDataRecording
+{
+  static final byte[] MAGIC = "DBDIFFMD".getBytes( StandardCharsets.US_ASCII );
+  static final int VERSION = 1;
+
+  private static final int NULL_TAG = 'N';
+  private static final int STRING_TAG = 'S';
+  private static final int BOOLEAN_TAG = 'Z';
+  private static final int SHORT_TAG = 'H';
+  private static final int INT_TAG = 'I';
+  private static final int LONG_TAG = 'J';
+  private static final int DOUBLE_TAG = 'D';
+  private static final int DECIMAL_TAG = 'B';
+  private static final int ROWS_TAG = 'R';
+  /**
+   * The value recorded for a call that returned null, as the calls are retained in a concurrent map.
+   */
+  private static final Object NULL_RESULT = new Object();
+
+  /**
+   * The rows of a result set returned by a DatabaseMetaData call.
+   */
+  static final class Rows
+  {
+    private final List<String> _columns;
+    private final List<Object[]> _rows;
+
+    Rows( final List<String> columns, final List<Object[]> rows )
+    {
+      _columns = columns;
+      _rows = rows;
+    }
+
+    /**
+     * Read and close the result set.
+     */
+    static Rows read( final ResultSet resultSet )
+      throws SQLException
+    {
+      try ( final ResultSet rs = resultSet )
+      {
+        final ResultSetMetaData metaData = rs.getMetaData();
+        final ArrayList<String> columns = new ArrayList<>();
+        for ( int i = 1; i <= metaData.getColumnCount(); i++ )
+        {
+          columns.add( metaData.getColumnName( i ) );
+        }
+        final ArrayList<Object[]> rows = new ArrayList<>();
+        while ( rs.next() )
+        {
+          final Object[] row = new Object[ columns.size() ];
+          for ( int i = 0; i < row.length; i++ )
+          {
+            row[ i ] = rs.getObject( i + 1 );
+          }
+          rows.add( row );
+        }
+        return new Rows( columns, rows );
+      }
+    }
+
+    /**
+     * Return a new result set positioned before the first row.
+     */
+    ResultSet newResultSet()
+    {
+      final ResultSetMetaData metaData = proxy( ResultSetMetaData.class, ( method, args ) -> {
+        switch ( method.getName() )
+        {
+          case "getColumnCount":
+            return _columns.size();
+          case "getColumnName":
+          case "getColumnLabel":
+            return _columns.get( (Integer) args[ 0 ] - 1 );
+          default:
+            throw new SQLFeatureNotSupportedException( "Recorded result sets do not support " + method.getName() );
+        }
+      } );
+      final int[] position = new int[]{ -1 };
+      final Object[] last = new Object[ 1 ];
+      final boolean[] closed = new boolean[ 1 ];
+      return proxy( ResultSet.class, ( method, args ) -> {
+        switch ( method.getName() )
+        {
+          case "next":
+            return ++position[ 0 ] < _rows.size();
+          case "getObject":
+            last[ 0 ] = value( position[ 0 ], args[ 0 ] );
+            return last[ 0 ];
+          case "getString":
+            last[ 0 ] = value( position[ 0 ], args[ 0 ] );
+            return null != last[ 0 ] ? last[ 0 ].toString() : null;
+          case "getInt":
+            last[ 0 ] = value( position[ 0 ], args[ 0 ] );
+            return null != last[ 0 ] ? ( (Number) last[ 0 ] ).intValue() : 0;
+          case "wasNull":
+            return null == last[ 0 ];
+          case "getMetaData":
+            return metaData;
+          case "close":
+            closed[ 0 ] = true;
+            return null;
+          case "isClosed":
+            return closed[ 0 ];
+          case "setFetchSize":
+            return null;
+          default:
+            throw new SQLFeatureNotSupportedException( "Recorded result sets do not support " + method.getName() );
+        }
+      } );
+    }
+
+    private Object value( final int position, final Object column )
+      throws SQLException
+    {
+      if ( position < 0 || position >= _rows.size() )
+      {
+        throw new SQLException( "The result set is not positioned on a row" );
+      }
+      final int index = column instanceof Integer ? (Integer) column : indexOf( column.toString() );
+      if ( index < 1 || index > _columns.size() )
+      {
+        throw new SQLException( "Unknown column " + column );
+      }
+      return _rows.get( position )[ index - 1 ];
+    }
+
+    private int indexOf( final String name )
+    {
+      for ( int i = 0; i < _columns.size(); i++ )
+      {
+        if ( _columns.get( i ).equalsIgnoreCase( name ) )
+        {
+          return i + 1;
+        }
+      }
+      return 0;
+    }
+  }
+
+  private final Map<String, Object> _calls = new ConcurrentHashMap<>();
+  private final String _source;
+
+  MetaDataRecording()
+  {
+    this( null );
+  }
+
+  private MetaDataRecording( final String source )
+  {
+    _source = source;
+  }
+
+  /**
+   * Return the number of distinct calls recorded.
+   */
+  int size()
+  {
+    return _calls.size();
+  }
+
+  /**
+   * Return connections that pass every call through to the specified connections and record the
+   * DatabaseMetaData calls. The connections may be used concurrently.
+   */
+  List<Connection> record( final List<Connection> connections )
+  {
+    final ArrayList<Connection> recording = new ArrayList<>();
+    for ( final Connection connection : connections )
+    {
+      recording.add( record( connection ) );
+    }
+    return recording;
+  }
+
+  private Connection record( final Connection connection )
+  {
+    final Connection[] proxy = new Connection[ 1 ];
+    final DatabaseMetaData[] metaData = new DatabaseMetaData[ 1 ];
+    proxy[ 0 ] = proxy( Connection.class, ( method, args ) -> {
+      if ( "getMetaData".equals( method.getName() ) )
+      {
+        if ( null == metaData[ 0 ] )
+        {
+          final DatabaseMetaData delegate = connection.getMetaData();
+          metaData[ 0 ] = proxy( DatabaseMetaData.class, ( m, a ) -> {
+            if ( "getConnection".equals( m.getName() ) )
+            {
+              return proxy[ 0 ];
+            }
+            final Object result = invoke( delegate, m, a );
+            if ( result instanceof ResultSet )
+            {
+              final Rows rows = Rows.read( (ResultSet) result );
+              _calls.put( key( m, a ), rows );
+              return rows.newResultSet();
+            }
+            else if ( null == result || isRecordable( result ) )
+            {
+              _calls.put( key( m, a ), null == result ? NULL_RESULT : result );
+            }
+            return result;
+          } );
+        }
+        return metaData[ 0 ];
+      }
+      return invoke( connection, method, args );
+    } );
+    return proxy[ 0 ];
+  }
+
+  /**
+   * Return a connection whose DatabaseMetaData serves the recorded calls. Transactions are accepted
+   * and ignored while any attempt to execute a statement fails.
+   */
+  Connection replay()
+  {
+    final Connection[] connection = new Connection[ 1 ];
+    final boolean[] autoCommit = new boolean[]{ true };
+    final int[] transactionIsolation = new int[]{ Connection.TRANSACTION_READ_COMMITTED };
+    final boolean[] closed = new boolean[ 1 ];
+    final DatabaseMetaData metaData = proxy( DatabaseMetaData.class, ( method, args ) -> {
+      if ( "getConnection".equals( method.getName() ) )
+      {
+        return connection[ 0 ];
+      }
+      final String key = key( method, args );
+      final Object result = _calls.get( key );
+      if ( null == result )
+      {
+        throw new SQLException( "The call " + key + " was not recorded in " + _source );
+      }
+      return result instanceof Rows ? ( (Rows) result ).newResultSet() : NULL_RESULT == result ? null : result;
+    } );
+    connection[ 0 ] = proxy( Connection.class, ( method, args ) -> {
+      switch ( method.getName() )
+      {
+        case "getMetaData":
+          return metaData;
+        case "getAutoCommit":
+          return autoCommit[ 0 ];
+        case "setAutoCommit":
+          autoCommit[ 0 ] = (Boolean) args[ 0 ];
+          return null;
+        case "getTransactionIsolation":
+          return transactionIsolation[ 0 ];
+        case "setTransactionIsolation":
+          transactionIsolation[ 0 ] = (Integer) args[ 0 ];
+          return null;
+        case "isClosed":
+          return closed[ 0 ];
+        case "isValid":
+          return !closed[ 0 ];
+        case "close":
+          closed[ 0 ] = true;
+          return null;
+        case "commit":
+        case "rollback":
+        case "clearWarnings":
+        case "getWarnings":
+          return null;
+        default:
+          throw new SQLFeatureNotSupportedException( "The replay of " + _source + " only supports DatabaseMetaData " +
+                                                     "calls and does not support " + method.getName() );
+      }
+    } );
+    return connection[ 0 ];
+  }
+
+  /**
+   * Write the recording to the file, replacing any existing file.
+   */
+  void write( final File file )
+    throws IOException
+  {
+    final File directory = file.getAbsoluteFile().getParentFile();
+    if ( null != directory )
+    {
+      Files.createDirectories( directory.toPath() );
+    }
+    try ( final OutputStream output = Files.newOutputStream( file.toPath() ) )
+    {
+      write( output );
+    }
+  }
+
+  /**
+   * Write the recording to the stream. The stream is flushed but not closed.
+   */
+  void write( final OutputStream output )
+    throws IOException
+  {
+    output.write( MAGIC );
+    new DataOutputStream( output ).writeInt( VERSION );
+    final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+    try
+    {
+      final DeflaterOutputStream deflated = new DeflaterOutputStream( output, deflater );
+      final DataOutputStream data = new DataOutputStream( new BufferedOutputStream( deflated ) );
+      // Write the calls in key order so that recordings of the same database are identical
+      final TreeMap<String, Object> calls = new TreeMap<>( _calls );
+      data.writeInt( calls.size() );
+      for ( final Map.Entry<String, Object> entry : calls.entrySet() )
+      {
+        writeString( data, entry.getKey() );
+        writeValue( data, NULL_RESULT == entry.getValue() ? null : entry.getValue() );
+      }
+      data.flush();
+      deflated.finish();
+      output.flush();
+    }
+    finally
+    {
+      deflater.end();
+    }
+  }
+
+  static MetaDataRecording read( final File file )
+    throws IOException
+  {
+    try ( final InputStream input = Files.newInputStream( file.toPath() ) )
+    {
+      return read( input, file.toString() );
+    }
+  }
+
+  static MetaDataRecording read( final InputStream input, final String source )
+    throws IOException
+  {
+    final DataInputStream header = new DataInputStream( input );
+    final byte[] magic = new byte[ MAGIC.length ];
+    header.readFully( magic );
+    if ( !Arrays.equals( MAGIC, magic ) )
+    {
+      throw new IOException( source + " is not a dbdiff metadata recording" );
+    }
+    final int version = header.readInt();
+    if ( version > VERSION )
+    {
+      throw new IOException( "Unsupported metadata recording version " + version +
+                             ". Maximum supported version is " + VERSION );
+    }
+    final DataInputStream data = new DataInputStream( new BufferedInputStream( new InflaterInputStream( input ) ) );
+    final MetaDataRecording recording = new MetaDataRecording( source );
+    final int count = data.readInt();
+    for ( int i = 0; i < count; i++ )
+    {
+      final String key = readString( data );
+      final Object value = readValue( data );
+      recording._calls.put( key, null == value ? NULL_RESULT : value );
+    }
+    return recording;
+  }
+
+  /**
+   * Return the key of the call, i.e. the method name followed by the arguments as json values.
+   */
+  static String key( final Method method, final Object[] args )
+  {
+    final StringBuilder sb = new StringBuilder( method.getName() ).append( '(' );
+    if ( null != args )
+    {
+      for ( int i = 0; i < args.length; i++ )
+      {
+        sb.append( 0 == i ? "" : "," ).append( toKey( args[ i ] ) );
+      }
+    }
+    return sb.append( ')' ).toString();
+  }
+
+  private static String toKey( final Object value )
+  {
+    if ( value instanceof Object[] )
+    {
+      final StringBuilder sb = new StringBuilder( "[" );
+      final Object[] values = (Object[]) value;
+      for ( int i = 0; i < values.length; i++ )
+      {
+        sb.append( 0 == i ? "" : "," ).append( toKey( values[ i ] ) );
+      }
+      return sb.append( ']' ).toString();
+    }
+    else if ( value instanceof int[] )
+    {
+      return Arrays.toString( (int[]) value ).replace( " ", "" );
+    }
+    else
+    {
+      return value instanceof String ? NdjsonWriter.quote( (String) value ) : String.valueOf( value );
+    }
+  }
+
+  private static boolean isRecordable( final Object value )
+  {
+    return value instanceof String ||
+           value instanceof Boolean ||
+           value instanceof Short ||
+           value instanceof Integer ||
+           value instanceof Long ||
+           value instanceof Double ||
+           value instanceof BigDecimal;
+  }
+
+  private static void writeValue( final DataOutputStream output, final Object value )
+    throws IOException
+  {
+    if ( null == value )
+    {
+      output.writeByte( NULL_TAG );
+    }
+    else if ( value instanceof Rows )
+    {
+      final Rows rows = (Rows) value;
+      output.writeByte( ROWS_TAG );
+      output.writeInt( rows._columns.size() );
+      for ( final String column : rows._columns )
+      {
+        writeString( output, column );
+      }
+      output.writeInt( rows._rows.size() );
+      for ( final Object[] row : rows._rows )
+      {
+        for ( final Object column : row )
+        {
+          writeValue( output, column );
+        }
+      }
+    }
+    else if ( value instanceof Boolean )
+    {
+      output.writeByte( BOOLEAN_TAG );
+      output.writeBoolean( (Boolean) value );
+    }
+    else if ( value instanceof Short )
+    {
+      output.writeByte( SHORT_TAG );
+      output.writeShort( (Short) value );
+    }
+    else if ( value instanceof Integer )
+    {
+      output.writeByte( INT_TAG );
+      output.writeInt( (Integer) value );
+    }
+    else if ( value instanceof Long )
+    {
+      output.writeByte( LONG_TAG );
+      output.writeLong( (Long) value );
+    }
+    else if ( value instanceof Double )
+    {
+      output.writeByte( DOUBLE_TAG );
+      output.writeDouble( (Double) value );
+    }
+    else if ( value instanceof BigDecimal )
+    {
+      output.writeByte( DECIMAL_TAG );
+      writeString( output, value.toString() );
+    }
+    else
+    {
+      // Any other type is dumped via its string form
+      output.writeByte( STRING_TAG );
+      writeString( output, value.toString() );
+    }
+  }
+
+  private static Object readValue( final DataInputStream input )
+    throws IOException
+  {
+    final int tag = input.readUnsignedByte();
+    switch ( tag )
+    {
+      case NULL_TAG:
+        return null;
+      case STRING_TAG:
+        return readString( input );
+      case BOOLEAN_TAG:
+        return input.readBoolean();
+      case SHORT_TAG:
+        return input.readShort();
+      case INT_TAG:
+        return input.readInt();
+      case LONG_TAG:
+        return input.readLong();
+      case DOUBLE_TAG:
+        return input.readDouble();
+      case DECIMAL_TAG:
+        return new BigDecimal( readString( input ) );
+      case ROWS_TAG:
+      {
+        final int columnCount = input.readInt();
+        final ArrayList<String> columns = new ArrayList<>( columnCount );
+        for ( int i = 0; i < columnCount; i++ )
+        {
+          columns.add( readString( input ) );
+        }
+        final int rowCount = input.readInt();
+        final ArrayList<Object[]> rows = new ArrayList<>( rowCount );
+        for ( int i = 0; i < rowCount; i++ )
+        {
+          final Object[] row = new Object[ columnCount ];
+          for ( int j = 0; j < columnCount; j++ )
+          {
+            row[ j ] = readValue( input );
+          }
+          rows.add( row );
+        }
+        return new Rows( columns, rows );
+      }
+      default:
+        throw new IOException( "Corrupt metadata recording: unexpected tag " + tag );
+    }
+  }
+
+  /**
+   * Write the string as a length prefixed sequence of UTF-8 bytes as DataOutput.writeUTF is limited to 64KiB.
+   */
+  private static void writeString( final DataOutputStream output, final String value )
+    throws IOException
+  {
+    final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+    output.writeInt( bytes.length );
+    output.write( bytes );
+  }
+
+  private static String readString( final DataInputStream input )
+    throws IOException
+  {
+    final byte[] bytes = new byte[ input.readInt() ];
+    input.readFully( bytes );
+    return new String( bytes, StandardCharsets.UTF_8 );
+  }
+
+  private static Object invoke( final Object target, final Method method, final Object[] args )
+    throws Throwable
+  {
+    try
+    {
+      return method.invoke( target, args );
+    }
+    catch ( final InvocationTargetException ite )
+    {
+      throw ite.getCause();
+    }
+  }
+
+  interface Handler
+  {
+    Object invoke( Method method, Object[] args )
+      throws Throwable;
+  }
+
+  /**
+   * Return a proxy of the interface whose calls are passed to the handler. The methods of Object are
+   * invoked on the handler so that each proxy is only equal to itself.
+   */
+  private static <T> T proxy( final Class<T> type, final Handler handler )
+  {
+    final InvocationHandler invocationHandler = ( proxy, method, args ) -> {
+      if ( Object.class == method.getDeclaringClass() )
+      {
+        return invoke( handler, method, args );
+      }
+      return handler.invoke( method, args );
+    };
+    return type.cast( Proxy.newProxyInstance( MetaDataRecording.class.getClassLoader(),
+                                              new Class<?>[]{ type },
+                                              invocationHandler ) );
+  }
+}
@@ -0,0 +1,142 @@
+package org.realityforge.dbdiff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Writes each difference to a writer as soon as it is found, as a json object on a single line
+ * (newline delimited json). i.e.
+ *
+ * <pre>
+ * {"change":"changed","kind":"COLUMN","name":"x.t.ID","side":"both",
+ *  "path":["Schema: x","TABLE: t","COLUMN: ID"],"deltas":[{"attribute":"type_name","from":"int4","to":"int8"}]}
+ * </pre>
+ *
+ * <p>The change is one of added, removed or changed and the side is the database containing the
+ * object, one of first, second or both. The name is the names of the object and its named ancestors
+ * joined by '.', so objects identified by their attributes, such as privileges, share the name of
+ * their parent. The deltas are only present for changed objects. As the writer is a consumer a
+ * failure to write is thrown as an UncheckedIOException.</p>
+ */
+final class NdjsonWriter
+  implements Consumer<DiffEntry>
+{
+  private final Writer _writer;
+  private int _count;
+
+  NdjsonWriter( final Writer writer )
+  {
+    _writer = writer;
+  }
+
+  /**
+   * Return the number of differences written.
+   */
+  int getCount()
+  {
+    return _count;
+  }
+
+  @Override
+  public void accept( final DiffEntry entry )
+  {
+    try
+    {
+      _writer.write( toJson( entry ) );
+      _writer.write( '\n' );
+      _count++;
+    }
+    catch ( final IOException ioe )
+    {
+      throw new UncheckedIOException( ioe );
+    }
+  }
+
+  static String toJson( final DiffEntry entry )
+  {
+    final StringBuilder sb = new StringBuilder();
+    final String side =
+      DiffEntry.Type.ADDED == entry.getType() ? "second" : DiffEntry.Type.REMOVED == entry.getType() ? "first" : "both";
+    sb.append( "{\"change\":" ).append( quote( entry.getType().name().toLowerCase() ) );
+    sb.append( ",\"kind\":" ).append( quote( entry.getKind() ) );
+    final ArrayList<String> names = new ArrayList<>();
+    for ( final String label : entry.getPath() )
+    {
+      final int separator = label.indexOf( ": " );
+      final String name = -1 == separator ? label : label.substring( separator + 2 );
+      if ( !name.startsWith( "{" ) )
+      {
+        names.add( name );
+      }
+    }
+    sb.append( ",\"name\":" ).append( quote( String.join( ".", names ) ) );
+    sb.append( ",\"side\":" ).append( quote( side ) );
+    sb.append( ",\"path\":[" );
+    for ( int i = 0; i < entry.getPath().size(); i++ )
+    {
+      sb.append( 0 == i ? "" : "," ).append( quote( entry.getPath().get( i ) ) );
+    }
+    sb.append( "]" );
+    if ( DiffEntry.Type.CHANGED == entry.getType() )
+    {
+      sb.append( ",\"deltas\":[" );
+      for ( int i = 0; i < entry.getDeltas().size(); i++ )
+      {
+        final DiffEntry.AttributeDelta delta = entry.getDeltas().get( i );
+        sb.append( 0 == i ? "" : "," ).append( "{\"attribute\":" ).append( quote( delta.getName() ) );
+        sb.append( ",\"from\":" ).append( quote( delta.getOldValue() ) );
+        sb.append( ",\"to\":" ).append( quote( delta.getNewValue() ) ).append( "}" );
+      }
+      sb.append( "]" );
+    }
+    return sb.append( "}" ).toString();
+  }
+
+  /**
+   * Return the value as a json string, or null if the value is null.
+   */
+  static String quote( final String value )
+  {
+    if ( null == value )
+    {
+      return "null";
+    }
+    final StringBuilder sb = new StringBuilder( value.length() + 2 );
+    sb.append( '"' );
+    for ( int i = 0; i < value.length(); i++ )
+    {
+      final char c = value.charAt( i );
+      switch ( c )
+      {
+        case '"':
+          sb.append( "\\\"" );
+          break;
+        case '\\':
+          sb.append( "\\\\" );
+          break;
+        case '\n':
+          sb.append( "\\n" );
+          break;
+        case '\r':
+          sb.append( "\\r" );
+          break;
+        case '\t':
+          sb.append( "\\t" );
+          break;
+        default:
+          if ( c < 0x20 )
+          {
+            sb.append( String.format( "\\u%04x", (int) c ) );
+          }
+          else
+          {
+            sb.append( c );
+          }
+      }
+    }
+    return sb.append( '"' ).toString();
+  }
+}
@@ -0,0 +1,287 @@
+package org.realityforge.dbdiff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Selects objects by name using include and exclude patterns. An object is selected if it matches
+ * any include pattern, or there are no include patterns, and it matches no exclude pattern. Patterns
+ * are globs in which '*' matches any sequence of characters and '?' matches a single character, unless
+ * prefixed with "regex:" in which case the remainder is a java regular expression that must match the
+ * entire name. A "glob:" prefix is also accepted. Names are matched case sensitively.
+ *
+ * <p>The dumper pushes the filter down to the database where the semantics allow so that objects
+ * excluded by the filter are not retrieved. The include globs are translated into the name patterns
+ * accepted by DatabaseMetaData and the globs are translated into LIKE conditions when reading the
+ * system catalog. Regular expressions are only applied after the names have been retrieved.</p>
+ */
+public final class ObjectFilter
+{
+  private static final String GLOB_PREFIX = "glob:";
+  private static final String REGEX_PREFIX = "regex:";
+  /**
+   * The escape character of the LIKE conditions generated by {@link #toCondition}. A backslash is avoided
+   * as its interpretation within a string literal depends upon the configuration of a postgres database.
+   */
+  private static final String LIKE_ESCAPE = "!";
+
+  private final ArrayList<String> _includes = new ArrayList<>();
+  private final ArrayList<String> _excludes = new ArrayList<>();
+  private final ArrayList<Pattern> _includePatterns = new ArrayList<>();
+  private final ArrayList<Pattern> _excludePatterns = new ArrayList<>();
+
+  /**
+   * Add a pattern that selects objects. Throws an IllegalArgumentException if the pattern is invalid.
+   */
+  public void include( final String pattern )
+  {
+    _includePatterns.add( compile( pattern ) );
+    _includes.add( pattern );
+  }
+
+  /**
+   * Add a pattern that excludes objects. Throws an IllegalArgumentException if the pattern is invalid.
+   */
+  public void exclude( final String pattern )
+  {
+    _excludePatterns.add( compile( pattern ) );
+    _excludes.add( pattern );
+  }
+
+  public List<String> getIncludes()
+  {
+    return Collections.unmodifiableList( _includes );
+  }
+
+  public List<String> getExcludes()
+  {
+    return Collections.unmodifiableList( _excludes );
+  }
+
+  /**
+   * Add the include and exclude patterns of the other filter to this filter.
+   */
+  public void addAll( final ObjectFilter other )
+  {
+    for ( final String pattern : other._includes )
+    {
+      include( pattern );
+    }
+    for ( final String pattern : other._excludes )
+    {
+      exclude( pattern );
+    }
+  }
+
+  /**
+   * Return true if the filter selects every object.
+   */
+  public boolean isEmpty()
+  {
+    return _includes.isEmpty() && _excludes.isEmpty();
+  }
+
+  public boolean matches( final String name )
+  {
+    boolean included = _includePatterns.isEmpty();
+    for ( final Pattern pattern : _includePatterns )
+    {
+      if ( pattern.matcher( name ).matches() )
+      {
+        included = true;
+        break;
+      }
+    }
+    if ( included )
+    {
+      for ( final Pattern pattern : _excludePatterns )
+      {
+        if ( pattern.matcher( name ).matches() )
+        {
+          return false;
+        }
+      }
+    }
+    return included;
+  }
+
+  /**
+   * Return the DatabaseMetaData name patterns that together retrieve every object selected by the filter,
+   * using the specified search string escape. A single null pattern, matching every name, is returned if
+   * there are no include patterns or an include pattern can not be expressed as a name pattern. The
+   * objects retrieved must still be matched against the filter as exclusions are not expressed.
+   */
+  List<String> getNamePatterns( final String escape )
+  {
+    final ArrayList<String> patterns = new ArrayList<>();
+    for ( final String include : _includes )
+    {
+      final String glob = toGlob( include );
+      if ( null == glob || null == escape || escape.isEmpty() )
+      {
+        return Collections.singletonList( null );
+      }
+      final String pattern = toLikePattern( glob, escape );
+      if ( null == pattern )
+      {
+        return Collections.singletonList( null );
+      }
+      if ( !patterns.contains( pattern ) )
+      {
+        patterns.add( pattern );
+      }
+    }
+    return patterns.isEmpty() ? Collections.singletonList( null ) : patterns;
+  }
+
+  /**
+   * Return the DatabaseMetaData name pattern if the filter can be expressed as a single name pattern,
+   * otherwise the specified default pattern.
+   */
+  String getNamePattern( final String escape, final String defaultPattern )
+  {
+    final List<String> patterns = getNamePatterns( escape );
+    final String pattern = 1 == patterns.size() ? patterns.get( 0 ) : null;
+    return null == pattern ? defaultPattern : pattern;
+  }
+
+  /**
+   * Return a sql condition, starting with " AND ", that restricts the column to the names selected by the
+   * globs of the filter and add the values of its parameters to the list. The condition selects a superset
+   * of the objects selected by the filter. The exclusions are only included if the comparison is case
+   * sensitive, as a case insensitive LIKE could otherwise exclude objects that the filter selects. An
+   * empty string is returned if the filter can not be expressed as a condition.
+   */
+  String toCondition( final String column, final boolean caseSensitive, final List<String> parameters )
+  {
+    final StringBuilder sb = new StringBuilder();
+    final ArrayList<String> includes = new ArrayList<>();
+    for ( final String include : _includes )
+    {
+      final String glob = toGlob( include );
+      final String pattern = null == glob ? null : toLikePattern( glob, LIKE_ESCAPE );
+      if ( null == pattern )
+      {
+        includes.clear();
+        break;
+      }
+      includes.add( pattern );
+    }
+    if ( !includes.isEmpty() )
+    {
+      sb.append( " AND (" );
+      for ( int i = 0; i < includes.size(); i++ )
+      {
+        sb.append( 0 == i ? "" : " OR " ).append( column ).append( " LIKE ? ESCAPE '" + LIKE_ESCAPE + "'" );
+        parameters.add( includes.get( i ) );
+      }
+      sb.append( ")" );
+    }
+    if ( caseSensitive )
+    {
+      for ( final String exclude : _excludes )
+      {
+        final String glob = toGlob( exclude );
+        final String pattern = null == glob ? null : toLikePattern( glob, LIKE_ESCAPE );
+        if ( null != pattern )
+        {
+          sb.append( " AND " ).append( column ).append( " NOT LIKE ? ESCAPE '" + LIKE_ESCAPE + "'" );
+          parameters.add( pattern );
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[includes=" + _includes + ", excludes=" + _excludes + "]";
+  }
+
+  private static Pattern compile( final String pattern )
+  {
+    final String glob = toGlob( pattern );
+    try
+    {
+      return Pattern.compile( null != glob ? toRegex( glob ) : pattern.substring( REGEX_PREFIX.length() ) );
+    }
+    catch ( final PatternSyntaxException pse )
+    {
+      throw new IllegalArgumentException( "Invalid pattern " + pattern + ": " + pse.getDescription(), pse );
+    }
+  }
+
+  /**
+   * Return the glob of the pattern or null if the pattern is a regular expression.
+   */
+  private static String toGlob( final String pattern )
+  {
+    if ( pattern.startsWith( REGEX_PREFIX ) )
+    {
+      return null;
+    }
+    return pattern.startsWith( GLOB_PREFIX ) ? pattern.substring( GLOB_PREFIX.length() ) : pattern;
+  }
+
+  private static String toRegex( final String glob )
+  {
+    final StringBuilder sb = new StringBuilder();
+    int start = 0;
+    for ( int i = 0; i < glob.length(); i++ )
+    {
+      final char c = glob.charAt( i );
+      if ( '*' == c || '?' == c )
+      {
+        if ( start < i )
+        {
+          sb.append( Pattern.quote( glob.substring( start, i ) ) );
+        }
+        sb.append( '*' == c ? ".*" : "." );
+        start = i + 1;
+      }
+    }
+    if ( start < glob.length() )
+    {
+      sb.append( Pattern.quote( glob.substring( start ) ) );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Translate the glob into a LIKE pattern with the specified escape, or return null if the glob contains a
+   * '[' which is a wildcard in some dialects of LIKE.
+   */
+  private static String toLikePattern( final String glob, final String escape )
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < glob.length(); i++ )
+    {
+      final char c = glob.charAt( i );
+      if ( '*' == c )
+      {
+        sb.append( '%' );
+      }
+      else if ( '?' == c )
+      {
+        sb.append( '_' );
+      }
+      else if ( '[' == c )
+      {
+        return null;
+      }
+      else
+      {
+        if ( '%' == c || '_' == c || escape.indexOf( c ) >= 0 )
+        {
+          sb.append( escape );
+        }
+        sb.append( c );
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,12 @@
+package org.realityforge.dbdiff;
+
+/**
+ * The kinds of objects that are dumped and compared. The columns, keys, indexes, super tables and
+ * privileges are elements of a table and are only dumped when tables are dumped. The privileges
+ * include the privileges on the columns of a table and the indexes include the index relations that
+ * are reported as tables by some drivers.
+ */
+public enum ObjectKind
+{
+  tables, columns, primary_keys, foreign_keys, indexes, version_columns, super_tables, privileges, routines, types
+}
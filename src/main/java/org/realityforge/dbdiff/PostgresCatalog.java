@@ -0,0 +1,473 @@
+package org.realityforge.dbdiff;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.TypeInfo;
+
+/**
+ * Reads the table metadata of a postgres schema directly from pg_catalog with one set-based query per
+ * kind of metadata rather than via the driver's DatabaseMetaData, which requires a query per table for
+ * indexes and column privileges. Each method passes rows with the same (lower case) column names and the
+ * same values as the equivalent DatabaseMetaData method of the postgresql 9.1 driver to a handler as they
+ * are read, so that the resulting dump is identical, including the driver's interpretation of the ACL columns.
+ */
+final class PostgresCatalog
+{
+  /**
+   * Replaced by the condition that restricts the relations of a query to those selected by the table filter.
+   */
+  private static final String TABLE_FILTER = "/*table_filter*/";
+  private static final String COLUMNS_SQL =
+    "SELECT * FROM (" +
+    "SELECT c.relname, a.attname, a.atttypid, a.attnotnull, a.atttypmod, " +
+    "row_number() OVER (PARTITION BY a.attrelid ORDER BY a.attnum) AS attnum, " +
+    "pg_catalog.pg_get_expr(def.adbin, def.adrelid) AS adsrc, dsc.description, t.typbasetype, t.typtype " +
+    "FROM pg_catalog.pg_namespace n " +
+    "JOIN pg_catalog.pg_class c ON (c.relnamespace = n.oid) " +
+    "JOIN pg_catalog.pg_attribute a ON (a.attrelid = c.oid) " +
+    "JOIN pg_catalog.pg_type t ON (a.atttypid = t.oid) " +
+    "LEFT JOIN pg_catalog.pg_attrdef def ON (a.attrelid = def.adrelid AND a.attnum = def.adnum) " +
+    "LEFT JOIN pg_catalog.pg_description dsc ON (c.oid = dsc.objoid AND a.attnum = dsc.objsubid) " +
+    "WHERE a.attnum > 0 AND NOT a.attisdropped AND n.nspname = ?" + TABLE_FILTER +
+    ") c ORDER BY relname, attnum";
+  private static final String TABLE_ACL_SQL =
+    "SELECT c.relname, u.usename, c.relacl::text AS relacl " +
+    "FROM pg_catalog.pg_namespace n " +
+    "JOIN pg_catalog.pg_class c ON (c.relnamespace = n.oid) " +
+    "JOIN pg_catalog.pg_user u ON (u.usesysid = c.relowner) " +
+    "WHERE c.relkind = 'r' AND n.nspname = ?" + TABLE_FILTER + " " +
+    "ORDER BY c.relname";
+  private static final String COLUMN_ACL_SQL =
+    "SELECT c.relname, u.usename, c.relacl::text AS relacl, a.attname " +
+    "FROM pg_catalog.pg_namespace n " +
+    "JOIN pg_catalog.pg_class c ON (c.relnamespace = n.oid) " +
+    "JOIN pg_catalog.pg_user u ON (u.usesysid = c.relowner) " +
+    "JOIN pg_catalog.pg_attribute a ON (a.attrelid = c.oid) " +
+    "WHERE c.relkind = 'r' AND a.attnum > 0 AND NOT a.attisdropped AND n.nspname = ?" + TABLE_FILTER + " " +
+    "ORDER BY c.relname, a.attname";
+  private static final String PRIMARY_KEYS_SQL =
+    "SELECT ct.relname AS TABLE_NAME, a.attname AS COLUMN_NAME, (i.keys).n AS KEY_SEQ, ci.relname AS PK_NAME " +
+    "FROM pg_catalog.pg_class ct " +
+    "JOIN pg_catalog.pg_attribute a ON (ct.oid = a.attrelid) " +
+    "JOIN pg_catalog.pg_namespace n ON (ct.relnamespace = n.oid) " +
+    "JOIN (SELECT i.indexrelid, i.indrelid, i.indisprimary, " +
+    "information_schema._pg_expandarray(i.indkey) AS keys FROM pg_catalog.pg_index i) i " +
+    "ON (a.attnum = (i.keys).x AND a.attrelid = i.indrelid) " +
+    "JOIN pg_catalog.pg_class ci ON (ci.oid = i.indexrelid) " +
+    "WHERE i.indisprimary AND n.nspname = ?" + TABLE_FILTER + " " +
+    "ORDER BY table_name, pk_name, key_seq";
+  private static final String IMPORTED_KEYS_SQL =
+    "SELECT pkn.nspname AS PKTABLE_SCHEM, pkc.relname AS PKTABLE_NAME, pka.attname AS PKCOLUMN_NAME, " +
+    "fkn.nspname AS FKTABLE_SCHEM, fkc.relname AS FKTABLE_NAME, fka.attname AS FKCOLUMN_NAME, " +
+    "pos.n AS KEY_SEQ, " +
+    "CASE con.confupdtype " + toRuleCases() + " ELSE NULL END AS UPDATE_RULE, " +
+    "CASE con.confdeltype " + toRuleCases() + " ELSE NULL END AS DELETE_RULE, " +
+    "con.conname AS FK_NAME, pkic.relname AS PK_NAME, " +
+    "CASE WHEN con.condeferrable AND con.condeferred THEN " + DatabaseMetaData.importedKeyInitiallyDeferred +
+    " WHEN con.condeferrable THEN " + DatabaseMetaData.importedKeyInitiallyImmediate +
+    " ELSE " + DatabaseMetaData.importedKeyNotDeferrable + " END AS DEFERRABILITY " +
+    "FROM pg_catalog.pg_constraint con " +
+    "JOIN pg_catalog.pg_class fkc ON (con.conrelid = fkc.oid) " +
+    "JOIN pg_catalog.pg_namespace fkn ON (fkn.oid = fkc.relnamespace) " +
+    "JOIN pg_catalog.pg_class pkc ON (con.confrelid = pkc.oid) " +
+    "JOIN pg_catalog.pg_namespace pkn ON (pkn.oid = pkc.relnamespace) " +
+    "JOIN pg_catalog.generate_series(1, current_setting('max_index_keys')::int) pos(n) " +
+    "ON (pos.n <= pg_catalog.array_upper(con.conkey, 1)) " +
+    "JOIN pg_catalog.pg_attribute fka ON (fka.attrelid = fkc.oid AND fka.attnum = con.conkey[pos.n]) " +
+    "JOIN pg_catalog.pg_attribute pka ON (pka.attrelid = pkc.oid AND pka.attnum = con.confkey[pos.n]) " +
+    "JOIN pg_catalog.pg_depend dep ON (dep.objid = con.oid " +
+    "AND dep.classid = 'pg_catalog.pg_constraint'::pg_catalog.regclass::oid " +
+    "AND dep.refclassid = 'pg_catalog.pg_class'::pg_catalog.regclass::oid) " +
+    "JOIN pg_catalog.pg_class pkic ON (pkic.oid = dep.refobjid AND pkic.relkind = 'i') " +
+    "WHERE con.contype = 'f' AND fkn.nspname = ?" + TABLE_FILTER + " " +
+    "ORDER BY fkc.relname, pkn.nspname, pkc.relname, pos.n, con.conname";
+  private static final String INDEX_INFO_SQL =
+    "SELECT ct.relname AS TABLE_NAME, NOT i.indisunique AS NON_UNIQUE, NULL AS INDEX_QUALIFIER, " +
+    "ci.relname AS INDEX_NAME, " +
+    "CASE i.indisclustered WHEN true THEN " + DatabaseMetaData.tableIndexClustered +
+    " ELSE CASE am.amname WHEN 'hash' THEN " + DatabaseMetaData.tableIndexHashed +
+    " ELSE " + DatabaseMetaData.tableIndexOther + " END END AS TYPE, " +
+    "(i.keys).n AS ORDINAL_POSITION, " +
+    "pg_catalog.pg_get_indexdef(ci.oid, (i.keys).n, false) AS COLUMN_NAME, " +
+    "CASE am.amcanorder WHEN true THEN CASE i.indoption[(i.keys).n - 1] & 1 " +
+    "WHEN 1 THEN 'D' ELSE 'A' END ELSE NULL END AS ASC_OR_DESC, " +
+    "ci.reltuples AS CARDINALITY, ci.relpages AS PAGES, " +
+    "pg_catalog.pg_get_expr(i.indpred, i.indrelid) AS FILTER_CONDITION " +
+    "FROM pg_catalog.pg_class ct " +
+    "JOIN pg_catalog.pg_namespace n ON (ct.relnamespace = n.oid) " +
+    "JOIN (SELECT i.indexrelid, i.indrelid, i.indoption, i.indisunique, i.indisclustered, i.indpred, " +
+    "information_schema._pg_expandarray(i.indkey) AS keys FROM pg_catalog.pg_index i) i " +
+    "ON (ct.oid = i.indrelid) " +
+    "JOIN pg_catalog.pg_class ci ON (ci.oid = i.indexrelid) " +
+    "JOIN pg_catalog.pg_am am ON (ci.relam = am.oid) " +
+    "WHERE n.nspname = ?" + TABLE_FILTER + " " +
+    "ORDER BY TABLE_NAME, NON_UNIQUE, TYPE, INDEX_NAME, ORDINAL_POSITION";
+  /**
+   * The privileges that the driver assumes the owner holds when the ACL is null.
+   */
+  private static final String DEFAULT_OWNER_PRIVILEGES = "arwdRxt";
+  /**
+   * The names of the values passed for each column, in the order they are assigned.
+   */
+  private static final String[] COLUMN_KEYS =
+    { "table_name", "column_name", "data_type", "type_name", "column_size", "buffer_length", "decimal_digits",
+      "num_prec_radix", "nullable", "remarks", "column_def", "sql_data_type", "sql_datetime_sub",
+      "char_octet_length", "ordinal_position", "is_nullable", "scope_schema", "scope_table", "source_data_type",
+      "is_autoincrement" };
+  private static final String[] TABLE_PRIVILEGE_KEYS =
+    { "table_name", "grantor", "grantee", "privilege", "is_grantable" };
+  private static final String[] COLUMN_PRIVILEGE_KEYS =
+    { "table_name", "grantor", "grantee", "privilege", "is_grantable", "column_name" };
+  private static final String[] VERSION_COLUMN_KEYS =
+    { "scope", "column_name", "data_type", "type_name", "column_size", "buffer_length", "decimal_digits",
+      "pseudo_column" };
+
+  private final Connection _connection;
+  private final StatementCache _statementCache;
+  private final int _fetchSize;
+  private final ObjectFilter _tableFilter;
+  private final TypeInfo _typeInfo;
+
+  PostgresCatalog( final Connection connection,
+                   final StatementCache statementCache,
+                   final int fetchSize,
+                   final ObjectFilter tableFilter )
+    throws SQLException
+  {
+    if ( !( connection instanceof BaseConnection ) )
+    {
+      throw new IllegalStateException( "Native catalog extraction requires a connection from the postgresql " +
+                                       "driver but the connection is a " + connection.getClass().getName() );
+    }
+    final DatabaseMetaData metaData = connection.getMetaData();
+    final int major = metaData.getDatabaseMajorVersion();
+    if ( major < 8 || ( 8 == major && metaData.getDatabaseMinorVersion() < 4 ) )
+    {
+      throw new IllegalStateException( "Native catalog extraction requires postgres 8.4 or later but the " +
+                                       "database version is " + metaData.getDatabaseProductVersion() );
+    }
+    _connection = connection;
+    _statementCache = statementCache;
+    _fetchSize = fetchSize;
+    _tableFilter = tableFilter;
+    _typeInfo = ( (BaseConnection) connection ).getTypeInfo();
+  }
+
+  /**
+   * Pass the columns of every relation in the schema to the handler. The types are mapped in the same way as
+   * DatabaseMetaData.getColumns.
+   */
+  void getColumns( final String schema, final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    query( COLUMNS_SQL, "c.relname", schema, ( columns, values ) -> {
+      final int relname = columns.indexOf( "relname", false );
+      final int attname = columns.indexOf( "attname", false );
+      final int atttypid = columns.indexOf( "atttypid", false );
+      final int atttypmod = columns.indexOf( "atttypmod", false );
+      final int attnotnull = columns.indexOf( "attnotnull", false );
+      final int attnum = columns.indexOf( "attnum", false );
+      final int adsrc = columns.indexOf( "adsrc", false );
+      final int description = columns.indexOf( "description", false );
+      final int typbasetype = columns.indexOf( "typbasetype", false );
+      final int typtype = columns.indexOf( "typtype", false );
+      final Object[] column = new Object[ COLUMN_KEYS.length ];
+      final DatabaseDumper.RowHandler handler =
+        factory.create( new ResultSetColumns( COLUMN_KEYS ), index -> column[ index - 1 ] );
+      return () -> {
+        final int typeOid = toInt( values.get( atttypid ) );
+        final int typeMod = toInt( values.get( atttypmod ) );
+        final String type = String.valueOf( values.get( typtype ) );
+        final String defaultValue = (String) values.get( adsrc );
+        final boolean notNull = Boolean.TRUE.equals( values.get( attnotnull ) );
+        final boolean sequence = null != defaultValue && defaultValue.contains( "nextval(" );
+        final String pgType = _typeInfo.getPGType( typeOid );
+        final int sqlType =
+          "c".equals( type ) ? Types.STRUCT : "d".equals( type ) ? Types.DISTINCT : _typeInfo.getSQLType( typeOid );
+        final String typeName =
+          sequence && "int4".equals( pgType ) ? "serial" : sequence && "int8".equals( pgType ) ? "bigserial" : pgType;
+        final int precision = _typeInfo.getPrecision( typeOid, typeMod );
+        final int columnSize = 0 != precision ? precision : _typeInfo.getDisplaySize( typeOid, typeMod );
+        final int baseTypeOid = toInt( values.get( typbasetype ) );
+
+        column[ 0 ] = values.get( relname );
+        column[ 1 ] = values.get( attname );
+        column[ 2 ] = sqlType;
+        column[ 3 ] = typeName;
+        column[ 4 ] = columnSize;
+        column[ 5 ] = null;
+        column[ 6 ] = _typeInfo.getScale( typeOid, typeMod );
+        column[ 7 ] = "bit".equals( pgType ) || "varbit".equals( pgType ) ? 2 : 10;
+        column[ 8 ] = notNull ? DatabaseMetaData.columnNoNulls : DatabaseMetaData.columnNullable;
+        column[ 9 ] = values.get( description );
+        column[ 10 ] = defaultValue;
+        column[ 11 ] = null;
+        column[ 12 ] = null;
+        column[ 13 ] = String.valueOf( columnSize );
+        column[ 14 ] = toInt( values.get( attnum ) );
+        column[ 15 ] = notNull ? "NO" : "YES";
+        column[ 16 ] = null;
+        column[ 17 ] = null;
+        column[ 18 ] = 0 == baseTypeOid ? null : _typeInfo.getSQLType( baseTypeOid );
+        column[ 19 ] = sequence ? "YES" : "NO";
+        handler.handle();
+      };
+    } );
+  }
+
+  /**
+   * Pass the privileges of the ordinary tables in the schema, as described by
+   * DatabaseMetaData.getTablePrivileges, to the handler.
+   */
+  void getTablePrivileges( final String schema, final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    query( TABLE_ACL_SQL, "c.relname", schema, ( columns, values ) -> {
+      final int relname = columns.indexOf( "relname", false );
+      final int usename = columns.indexOf( "usename", false );
+      final int relacl = columns.indexOf( "relacl", false );
+      final Object[] privilege = new Object[ TABLE_PRIVILEGE_KEYS.length ];
+      final DatabaseDumper.RowHandler handler =
+        factory.create( new ResultSetColumns( TABLE_PRIVILEGE_KEYS ), index -> privilege[ index - 1 ] );
+      return () -> {
+        privilege[ 0 ] = values.get( relname );
+        handlePrivileges( handler, privilege, (String) values.get( usename ), (String) values.get( relacl ) );
+      };
+    } );
+  }
+
+  /**
+   * Pass the privileges of the columns of the ordinary tables in the schema to the handler. Like
+   * DatabaseMetaData.getColumnPrivileges the privileges are derived from the table ACL.
+   */
+  void getColumnPrivileges( final String schema, final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    query( COLUMN_ACL_SQL, "c.relname", schema, ( columns, values ) -> {
+      final int relname = columns.indexOf( "relname", false );
+      final int attname = columns.indexOf( "attname", false );
+      final int usename = columns.indexOf( "usename", false );
+      final int relacl = columns.indexOf( "relacl", false );
+      final Object[] privilege = new Object[ COLUMN_PRIVILEGE_KEYS.length ];
+      final DatabaseDumper.RowHandler handler =
+        factory.create( new ResultSetColumns( COLUMN_PRIVILEGE_KEYS ), index -> privilege[ index - 1 ] );
+      return () -> {
+        privilege[ 0 ] = values.get( relname );
+        privilege[ 5 ] = values.get( attname );
+        handlePrivileges( handler, privilege, (String) values.get( usename ), (String) values.get( relacl ) );
+      };
+    } );
+  }
+
+  void getPrimaryKeys( final String schema, final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    query( PRIMARY_KEYS_SQL, "ct.relname", schema, factory );
+  }
+
+  void getImportedKeys( final String schema, final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    query( IMPORTED_KEYS_SQL, "fkc.relname", schema, factory );
+  }
+
+  void getIndexInfo( final String schema, final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    query( INDEX_INFO_SQL, "ct.relname", schema, factory );
+  }
+
+  /**
+   * Pass the version columns reported for every relation to the handler. The driver reports the ctid
+   * pseudo column for any relation without querying the database.
+   */
+  void getVersionColumns( final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    final Object[] row =
+      { null, "ctid", _typeInfo.getSQLType( "tid" ), "tid", null, null, null, DatabaseMetaData.versionColumnPseudo };
+    factory.create( new ResultSetColumns( VERSION_COLUMN_KEYS ), index -> row[ index - 1 ] ).handle();
+  }
+
+  /**
+   * Execute the query for the relations of the schema that are selected by the table filter, where the
+   * column is the name of the relation in the query, and pass each row to the handler as it is read. The
+   * statement is prepared once per connection and retained in the statement cache.
+   */
+  private void query( final String sql,
+                      final String column,
+                      final String schema,
+                      final DatabaseDumper.RowHandlerFactory factory )
+    throws SQLException
+  {
+    final ArrayList<String> parameters = new ArrayList<>();
+    final String condition = _tableFilter.toCondition( column, true, parameters );
+    // The driver only fetches the rows incrementally via a cursor when within a transaction
+    final boolean beginTransaction = _fetchSize > 0 && _connection.getAutoCommit();
+    if ( beginTransaction )
+    {
+      _connection.setAutoCommit( false );
+    }
+    try
+    {
+      final PreparedStatement statement =
+        _statementCache.prepare( _connection, sql.replace( TABLE_FILTER, condition ) );
+      statement.setFetchSize( _fetchSize );
+      statement.setString( 1, schema );
+      for ( int i = 0; i < parameters.size(); i++ )
+      {
+        statement.setString( i + 2, parameters.get( i ) );
+      }
+      DatabaseDumper.readRows( statement.executeQuery(), factory );
+    }
+    finally
+    {
+      if ( beginTransaction )
+      {
+        _connection.setAutoCommit( true );
+      }
+    }
+  }
+
+  /**
+   * Pass a privilege to the handler for each privilege and grantee in the ACL of the relation, ordered by
+   * privilege and then by the order in which the grantees appear in the ACL. The owner is the grantor of
+   * every privilege. The privilege array starts with the table name, which is retained.
+   */
+  private void handlePrivileges( final DatabaseDumper.RowHandler handler,
+                                 final Object[] privilege,
+                                 final String owner,
+                                 final String acl )
+    throws SQLException
+  {
+    for ( final Map.Entry<String, List<String>> entry : parseACL( acl, owner ).entrySet() )
+    {
+      for ( final String grantee : entry.getValue() )
+      {
+        privilege[ 1 ] = owner;
+        privilege[ 2 ] = grantee;
+        privilege[ 3 ] = entry.getKey();
+        privilege[ 4 ] = owner.equals( grantee ) ? "YES" : "NO";
+        handler.handle();
+      }
+    }
+  }
+
+  /**
+   * Parse an ACL such as "{postgres=arwdDxt/postgres,reader=r/postgres}" into the grantees of each
+   * privilege, sorted by privilege name. This deliberately mirrors the driver, which interprets every
+   * character after the last '=' of an entry (including the "/grantor" suffix) as a privilege.
+   */
+  static Map<String, List<String>> parseACL( final String aclArray, final String owner )
+  {
+    final String acl = null == aclArray ? "{" + owner + "=" + DEFAULT_OWNER_PRIVILEGES + "}" : aclArray;
+    final TreeMap<String, List<String>> privileges = new TreeMap<>();
+    for ( final String entry : parseACLArray( acl ) )
+    {
+      final int equalIndex = entry.lastIndexOf( '=' );
+      if ( -1 == equalIndex )
+      {
+        continue;
+      }
+      final String name = 0 == equalIndex ? "PUBLIC" : entry.substring( 0, equalIndex );
+      for ( final char c : entry.substring( equalIndex + 1 ).toCharArray() )
+      {
+        privileges.computeIfAbsent( toPrivilege( c ), k -> new ArrayList<>() ).add( name );
+      }
+    }
+    return privileges;
+  }
+
+  private static List<String> parseACLArray( final String acl )
+  {
+    final ArrayList<String> entries = new ArrayList<>();
+    if ( acl.isEmpty() )
+    {
+      return entries;
+    }
+    boolean inQuotes = false;
+    // Skip the leading "{"
+    int beginIndex = 1;
+    char previous = ' ';
+    for ( int i = beginIndex; i < acl.length(); i++ )
+    {
+      final char c = acl.charAt( i );
+      if ( '"' == c && '\\' != previous )
+      {
+        inQuotes = !inQuotes;
+      }
+      else if ( ',' == c && !inQuotes )
+      {
+        entries.add( acl.substring( beginIndex, i ) );
+        beginIndex = i + 1;
+      }
+      previous = c;
+    }
+    // Skip the trailing "}"
+    entries.add( acl.substring( beginIndex, acl.length() - 1 ) );
+    for ( int i = 0; i < entries.size(); i++ )
+    {
+      final String entry = entries.get( i );
+      if ( entry.startsWith( "\"" ) && entry.endsWith( "\"" ) )
+      {
+        entries.set( i, entry.substring( 1, entry.length() - 1 ) );
+      }
+    }
+    return entries;
+  }
+
+  private static String toPrivilege( final char c )
+  {
+    switch ( c )
+    {
+      case 'a':
+        return "INSERT";
+      case 'r':
+        return "SELECT";
+      case 'w':
+        return "UPDATE";
+      case 'd':
+        return "DELETE";
+      case 'D':
+        return "TRUNCATE";
+      case 'R':
+        return "RULE";
+      case 'x':
+        return "REFERENCES";
+      case 't':
+        return "TRIGGER";
+      case 'X':
+        return "EXECUTE";
+      case 'U':
+        return "USAGE";
+      case 'C':
+        return "CREATE";
+      case 'T':
+        return "CREATE TEMP";
+      default:
+        return "UNKNOWN";
+    }
+  }
+
+  private static String toRuleCases()
+  {
+    return " WHEN 'c' THEN " + DatabaseMetaData.importedKeyCascade +
+           " WHEN 'n' THEN " + DatabaseMetaData.importedKeySetNull +
+           " WHEN 'd' THEN " + DatabaseMetaData.importedKeySetDefault +
+           " WHEN 'r' THEN " + DatabaseMetaData.importedKeyRestrict +
+           " WHEN 'a' THEN " + DatabaseMetaData.importedKeyNoAction;
+  }
+
+  private static int toInt( final Object value )
+  {
+    return null == value ? 0 : ( (Number) value ).intValue();
+  }
+}
@@ -0,0 +1,13 @@
+package org.realityforge.dbdiff;
+
+/**
+ * A privilege granted on a table or column.
+ */
+final class Privilege
+  extends Element
+{
+  Privilege( final AttributeLayout layout, final Object[] values )
+  {
+    super( layout, values );
+  }
+}
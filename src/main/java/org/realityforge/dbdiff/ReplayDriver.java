@@ -0,0 +1,85 @@
+package org.realityforge.dbdiff;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A driver that serves the DatabaseMetaData calls captured in a {@link MetaDataRecording} rather than
+ * connecting to a database. The url is "jdbc:replay:" followed by the path of the recording, e.g.
+ * "jdbc:replay:/tmp/recordings/jdbc_postgresql_db.replay". The properties are ignored.
+ */
+final class ReplayDriver
+  implements Driver
+{
+  static final String URL_PREFIX = "jdbc:replay:";
+
+  /**
+   * Return true if the database reference is the url of a recording.
+   */
+  static boolean isReplay( final String database )
+  {
+    return null != database && database.startsWith( URL_PREFIX );
+  }
+
+  @Override
+  public Connection connect( final String url, final Properties info )
+    throws SQLException
+  {
+    if ( !acceptsURL( url ) )
+    {
+      return null;
+    }
+    try
+    {
+      return MetaDataRecording.read( new File( url.substring( URL_PREFIX.length() ) ) ).replay();
+    }
+    catch ( final IOException ioe )
+    {
+      throw new SQLException( "Unable to read the metadata recording " + url, ioe );
+    }
+  }
+
+  @Override
+  public boolean acceptsURL( final String url )
+  {
+    return isReplay( url );
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo( final String url, final Properties info )
+  {
+    return new DriverPropertyInfo[ 0 ];
+  }
+
+  @Override
+  public int getMajorVersion()
+  {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion()
+  {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant()
+  {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger()
+    throws SQLFeatureNotSupportedException
+  {
+    throw new SQLFeatureNotSupportedException();
+  }
+}
@@ -0,0 +1,75 @@
+package org.realityforge.dbdiff;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * The position of each column of a result set, looked up by key. The drivers differ in the case of
+ * the column names they report so a key matches a column named with either the lower or upper case
+ * form of the key. The positions are resolved once per result set rather than once per row.
+ */
+final class ResultSetColumns
+{
+  private final HashMap<String, Integer> _indexes = new HashMap<>();
+
+  ResultSetColumns( final ResultSetMetaData metaData )
+    throws SQLException
+  {
+    final int count = metaData.getColumnCount();
+    for ( int i = 1; i <= count; ++i )
+    {
+      _indexes.putIfAbsent( metaData.getColumnName( i ), i );
+    }
+  }
+
+  /**
+   * Create the columns of rows that are derived from a result set rather than read directly from it.
+   */
+  ResultSetColumns( final String[] names )
+  {
+    for ( int i = 0; i < names.length; ++i )
+    {
+      _indexes.putIfAbsent( names[ i ], i + 1 );
+    }
+  }
+
+  /**
+   * Return the 1-based index of the column for the key, or 0 if the key is optional and no column matches.
+   */
+  int indexOf( final String key, final boolean optional )
+  {
+    final Integer lower = _indexes.get( key.toLowerCase() );
+    if ( null != lower )
+    {
+      return lower;
+    }
+    final Integer upper = _indexes.get( key.toUpperCase() );
+    if ( null != upper )
+    {
+      return upper;
+    }
+    else if ( !optional )
+    {
+      throw new IllegalStateException( "Unexpected null value for key " + key + " when accessing columns " +
+                                       _indexes.keySet() );
+    }
+    else
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * Return the index of the column for each key in the layout, or 0 for optional keys without a column.
+   */
+  int[] indexesOf( final AttributeLayout layout )
+  {
+    final int[] indexes = new int[ layout.size() ];
+    for ( int i = 0; i < indexes.length; i++ )
+    {
+      indexes[ i ] = indexOf( layout.getKey( i ), layout.isOptional( i ) );
+    }
+    return indexes;
+  }
+}
@@ -0,0 +1,27 @@
+package org.realityforge.dbdiff;
+
+/**
+ * A stored procedure or function and its parameters.
+ */
+final class Routine
+  extends Element
+{
+  private static final Element[] NO_PARAMETERS = new Element[ 0 ];
+
+  private Element[] _parameters = NO_PARAMETERS;
+
+  Routine( final AttributeLayout layout, final Object[] values )
+  {
+    super( layout, values );
+  }
+
+  Element[] getParameters()
+  {
+    return _parameters;
+  }
+
+  void setParameters( final Element[] parameters )
+  {
+    _parameters = parameters;
+  }
+}
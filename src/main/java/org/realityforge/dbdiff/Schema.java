@@ -0,0 +1,51 @@
+package org.realityforge.dbdiff;
+
+/**
+ * The elements of a database schema in the order in which they are emitted.
+ */
+final class Schema
+{
+  private final String _name;
+  private final Table[] _tables;
+  private final Routine[] _procedures;
+  private final UDT[] _udts;
+  private final Routine[] _functions;
+
+  Schema( final String name,
+          final Table[] tables,
+          final Routine[] procedures,
+          final UDT[] udts,
+          final Routine[] functions )
+  {
+    _name = name;
+    _tables = tables;
+    _procedures = procedures;
+    _udts = udts;
+    _functions = functions;
+  }
+
+  String getName()
+  {
+    return _name;
+  }
+
+  Table[] getTables()
+  {
+    return _tables;
+  }
+
+  Routine[] getProcedures()
+  {
+    return _procedures;
+  }
+
+  UDT[] getUDTs()
+  {
+    return _udts;
+  }
+
+  Routine[] getFunctions()
+  {
+    return _functions;
+  }
+}
@@ -0,0 +1,229 @@
+package org.realityforge.dbdiff;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the lines of a database dump from a snapshot written by {@link SnapshotWriter}.
+ * Files are memory mapped and only the blocks of the requested schemas are decompressed.
+ * The standard input is read sequentially as it can not be mapped.
+ */
+final class SnapshotReader
+{
+  /**
+   * The name used to identify the standard input or output rather than a file.
+   */
+  static final String STANDARD_STREAM = "-";
+
+  private SnapshotReader()
+  {
+  }
+
+  /**
+   * Return true if the database reference identifies a snapshot rather than a jdbc url.
+   */
+  static boolean isSnapshot( final String database )
+  {
+    return !database.startsWith( "jdbc:" );
+  }
+
+  /**
+   * Read the dump lines for the specified schemas, in the order specified.
+   * If no schemas are specified then all the schemas in the snapshot are read.
+   */
+  static List<String> read( final String source, final List<String> schemas )
+    throws IOException
+  {
+    if ( STANDARD_STREAM.equals( source ) )
+    {
+      return readStream( System.in, schemas );
+    }
+    else
+    {
+      return readFile( new File( source ), schemas );
+    }
+  }
+
+  static List<String> readStream( final InputStream input, final List<String> schemas )
+    throws IOException
+  {
+    final DataInputStream data = new DataInputStream( new BufferedInputStream( input ) );
+    readHeader( data );
+    final LinkedHashMap<String, List<String>> lines = new LinkedHashMap<>();
+    while ( true )
+    {
+      final int tag = data.readUnsignedByte();
+      if ( SnapshotWriter.INDEX_TAG == tag )
+      {
+        // The index is only of use when the blocks can be accessed randomly
+        break;
+      }
+      else if ( SnapshotWriter.BLOCK_TAG != tag )
+      {
+        throw new IOException( "Corrupt snapshot: unexpected tag " + tag );
+      }
+      final String schema = data.readUTF();
+      data.readUTF();
+      final byte[] block = new byte[ data.readInt() ];
+      data.readFully( block );
+      if ( schemas.isEmpty() || schemas.contains( schema ) )
+      {
+        inflate( block, lines.computeIfAbsent( schema, k -> new ArrayList<>() ) );
+      }
+    }
+    return toDump( lines, schemas );
+  }
+
+  static List<String> readFile( final File file, final List<String> schemas )
+    throws IOException
+  {
+    try ( final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) )
+    {
+      final long size = channel.size();
+      final int headerLength = SnapshotWriter.MAGIC.length + 4;
+      if ( size < headerLength + SnapshotWriter.TRAILER_LENGTH )
+      {
+        throw new IOException( "Corrupt snapshot: " + file + " is truncated" );
+      }
+      // Map the whole file where possible, otherwise map each region as it is accessed
+      final ByteBuffer mapping =
+        size <= Integer.MAX_VALUE ? channel.map( FileChannel.MapMode.READ_ONLY, 0, size ) : null;
+
+      readHeader( toDataInput( read( channel, mapping, 0, headerLength ) ) );
+
+      final DataInputStream trailer =
+        toDataInput( read( channel, mapping, size - SnapshotWriter.TRAILER_LENGTH, SnapshotWriter.TRAILER_LENGTH ) );
+      final long indexOffset = trailer.readLong();
+      final byte[] trailerMagic = new byte[ SnapshotWriter.TRAILER_MAGIC.length ];
+      trailer.readFully( trailerMagic );
+      if ( !Arrays.equals( SnapshotWriter.TRAILER_MAGIC, trailerMagic ) ||
+           indexOffset < headerLength ||
+           indexOffset >= size - SnapshotWriter.TRAILER_LENGTH )
+      {
+        throw new IOException( "Corrupt snapshot: " + file + " has an invalid trailer" );
+      }
+
+      final DataInputStream index =
+        toDataInput( read( channel,
+                           mapping,
+                           indexOffset,
+                           (int) ( size - SnapshotWriter.TRAILER_LENGTH - indexOffset ) ) );
+      if ( SnapshotWriter.INDEX_TAG != index.readUnsignedByte() )
+      {
+        throw new IOException( "Corrupt snapshot: " + file + " has an invalid index" );
+      }
+      final LinkedHashMap<String, List<String>> lines = new LinkedHashMap<>();
+      final int count = index.readInt();
+      for ( int i = 0; i < count; i++ )
+      {
+        final String schema = index.readUTF();
+        index.readUTF();
+        final long offset = index.readLong();
+        final int length = index.readInt();
+        if ( schemas.isEmpty() || schemas.contains( schema ) )
+        {
+          inflate( read( channel, mapping, offset, length ), lines.computeIfAbsent( schema, k -> new ArrayList<>() ) );
+        }
+      }
+      return toDump( lines, schemas );
+    }
+  }
+
+  private static byte[] read( final FileChannel channel, final ByteBuffer mapping, final long offset, final int length )
+    throws IOException
+  {
+    final ByteBuffer region;
+    if ( null != mapping )
+    {
+      region = mapping.duplicate();
+      region.position( (int) offset );
+      region.limit( (int) offset + length );
+    }
+    else
+    {
+      region = channel.map( FileChannel.MapMode.READ_ONLY, offset, length );
+    }
+    final byte[] bytes = new byte[ region.remaining() ];
+    region.get( bytes );
+    return bytes;
+  }
+
+  private static DataInputStream toDataInput( final byte[] bytes )
+  {
+    return new DataInputStream( new ByteArrayInputStream( bytes ) );
+  }
+
+  private static void readHeader( final DataInputStream data )
+    throws IOException
+  {
+    final byte[] magic = new byte[ SnapshotWriter.MAGIC.length ];
+    data.readFully( magic );
+    if ( !Arrays.equals( SnapshotWriter.MAGIC, magic ) )
+    {
+      throw new IOException( "Not a dbdiff snapshot" );
+    }
+    final int version = data.readInt();
+    if ( version > SnapshotWriter.VERSION )
+    {
+      throw new IOException( "Unsupported snapshot version " + version +
+                             ". Maximum supported version is " + SnapshotWriter.VERSION );
+    }
+  }
+
+  private static void inflate( final byte[] block, final List<String> lines )
+    throws IOException
+  {
+    final char[] buffer = new char[ 8192 ];
+    try ( final Reader reader =
+            new InputStreamReader( new InflaterInputStream( new ByteArrayInputStream( block ) ),
+                                   StandardCharsets.UTF_8 );
+          final LineWriter writer = new LineWriter( lines::add ) )
+    {
+      int count;
+      while ( -1 != ( count = reader.read( buffer ) ) )
+      {
+        writer.write( buffer, 0, count );
+      }
+    }
+  }
+
+  private static List<String> toDump( final Map<String, List<String>> lines, final List<String> schemas )
+  {
+    if ( schemas.isEmpty() )
+    {
+      final ArrayList<String> results = new ArrayList<>();
+      lines.values().forEach( results::addAll );
+      return results;
+    }
+    else
+    {
+      final ArrayList<String> results = new ArrayList<>();
+      for ( final String schema : schemas )
+      {
+        final List<String> schemaLines = lines.get( schema );
+        if ( null == schemaLines )
+        {
+          throw new IllegalStateException( "Snapshot does not contain schema " + schema );
+        }
+        results.addAll( schemaLines );
+      }
+      return results;
+    }
+  }
+}
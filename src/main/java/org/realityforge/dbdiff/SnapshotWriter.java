@@ -0,0 +1,180 @@
+package org.realityforge.dbdiff;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes the lines of a database dump to a snapshot. A snapshot is laid out as:
+ *
+ * <pre>
+ * header:  magic "DBDIFFSN", int version
+ * blocks:  'B', UTF schema, UTF key, int length, deflated lines
+ * index:   'I', int count, (UTF schema, UTF key, long offset, int length)*
+ * trailer: long index offset, magic "DBDIFFIX"
+ * </pre>
+ *
+ * Each block contains a schema header line or a top level object (table, routine, type) and its
+ * children. The blocks are written as the dump is produced and the index is written at the end so
+ * that a snapshot can be streamed to a pipe while readers of a file can locate blocks via the trailer.
+ */
+final class SnapshotWriter
+  implements LineWriter.LineHandler, Closeable
+{
+  static final byte[] MAGIC = "DBDIFFSN".getBytes( StandardCharsets.US_ASCII );
+  static final byte[] TRAILER_MAGIC = "DBDIFFIX".getBytes( StandardCharsets.US_ASCII );
+  static final int VERSION = 1;
+  static final int BLOCK_TAG = 'B';
+  static final int INDEX_TAG = 'I';
+  static final int TRAILER_LENGTH = 8 + TRAILER_MAGIC.length;
+
+  private static final class IndexEntry
+  {
+    private final String _schema;
+    private final String _key;
+    private final long _offset;
+    private final int _length;
+
+    IndexEntry( final String schema, final String key, final long offset, final int length )
+    {
+      _schema = schema;
+      _key = key;
+      _offset = offset;
+      _length = length;
+    }
+  }
+
+  private final CountingOutputStream _counter;
+  private final DataOutputStream _output;
+  private final ArrayList<IndexEntry> _index = new ArrayList<>();
+  private final ByteArrayOutputStream _block = new ByteArrayOutputStream();
+  private final Deflater _deflater = new Deflater( Deflater.BEST_SPEED );
+  private String _schema;
+  private String _key;
+  private boolean _blockStarted;
+
+  SnapshotWriter( final OutputStream output )
+    throws IOException
+  {
+    _counter = new CountingOutputStream( new BufferedOutputStream( output ) );
+    _output = new DataOutputStream( _counter );
+    _output.write( MAGIC );
+    _output.writeInt( VERSION );
+  }
+
+  @Override
+  public void handle( final String line )
+    throws IOException
+  {
+    if ( !line.startsWith( "\t" ) )
+    {
+      // A "Schema: x" or "Missing Schema: x" line starts a new schema
+      writeBlock();
+      _schema = line.substring( line.indexOf( ':' ) + 2 );
+      _key = "";
+    }
+    else if ( !line.startsWith( "\t\t" ) )
+    {
+      writeBlock();
+      _key = line.trim();
+    }
+    _block.write( line.getBytes( StandardCharsets.UTF_8 ) );
+    _block.write( '\n' );
+    _blockStarted = true;
+  }
+
+  /**
+   * Write the last block, the index and the trailer. The underlying stream is flushed but not closed.
+   */
+  @Override
+  public void close()
+    throws IOException
+  {
+    writeBlock();
+    final long indexOffset = _counter.getCount();
+    _output.writeByte( INDEX_TAG );
+    _output.writeInt( _index.size() );
+    for ( final IndexEntry entry : _index )
+    {
+      _output.writeUTF( entry._schema );
+      _output.writeUTF( entry._key );
+      _output.writeLong( entry._offset );
+      _output.writeInt( entry._length );
+    }
+    _output.writeLong( indexOffset );
+    _output.write( TRAILER_MAGIC );
+    _output.flush();
+    _deflater.end();
+  }
+
+  private void writeBlock()
+    throws IOException
+  {
+    if ( !_blockStarted )
+    {
+      return;
+    }
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    _deflater.reset();
+    try ( final DeflaterOutputStream deflater = new DeflaterOutputStream( compressed, _deflater ) )
+    {
+      _block.writeTo( deflater );
+    }
+    _output.writeByte( BLOCK_TAG );
+    _output.writeUTF( _schema );
+    _output.writeUTF( _key );
+    _output.writeInt( compressed.size() );
+    final long offset = _counter.getCount();
+    compressed.writeTo( _output );
+    _index.add( new IndexEntry( _schema, _key, offset, compressed.size() ) );
+    _block.reset();
+    _blockStarted = false;
+  }
+
+  private static final class CountingOutputStream
+    extends OutputStream
+  {
+    private final OutputStream _output;
+    private long _count;
+
+    CountingOutputStream( final OutputStream output )
+    {
+      _output = output;
+    }
+
+    long getCount()
+    {
+      return _count;
+    }
+
+    @Override
+    public void write( final int b )
+      throws IOException
+    {
+      _output.write( b );
+      _count++;
+    }
+
+    @Override
+    public void write( final byte[] b, final int offset, final int length )
+      throws IOException
+    {
+      _output.write( b, offset, length );
+      _count += length;
+    }
+
+    @Override
+    public void flush()
+      throws IOException
+    {
+      _output.flush();
+    }
+  }
+}
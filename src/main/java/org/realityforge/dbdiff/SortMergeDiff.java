@@ -0,0 +1,653 @@
+package org.realityforge.dbdiff;
+
+import difflib.DiffUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Produces a unified diff of two dumps within a bounded amount of memory. Each dump is split into
+ * records, a record being a schema line or an object of a schema with its descendant lines, and
+ * the records are sorted by schema, object type and name. Records are buffered until the memory
+ * budget of the dump is exhausted and are then spilled to a temporary file as a sorted run. Once
+ * the dumps are complete the runs of each dump are merged and the records of the dumps are compared
+ * in a single streaming pass, so that only the records with the same key are held in memory and
+ * only the records that differ are diffed line by line.
+ *
+ * <p>The hunks are ordered by record rather than by line. The line numbers of a hunk are relative
+ * to the start of the dumps and the hunk is headed by the schema line of the record. The records
+ * may instead be compared structurally, producing the entries of a structural diff.</p>
+ */
+final class SortMergeDiff
+{
+  /**
+   * The maximum number of runs merged at once. Further passes merge the runs produced by earlier passes.
+   */
+  private static final int MAX_MERGE_WIDTH = 64;
+  /**
+   * The estimated number of bytes of heap used by a record and by a line in addition to their characters.
+   */
+  private static final int RECORD_OVERHEAD = 64;
+  private static final int LINE_OVERHEAD = 48;
+  private static final Pattern HUNK_HEADER = Pattern.compile( "@@ -(\\d+),(\\d+) \\+(\\d+),(\\d+) @@" );
+  private static final Comparator<Record> ORDER =
+    Comparator.comparing( Record::getKey ).thenComparingInt( Record::getLine );
+
+  private SortMergeDiff()
+  {
+  }
+
+  /**
+   * Compare the sorted records of the dumps and pass the lines of the diff to the output.
+   *
+   * @return true if the dumps differ.
+   */
+  static boolean diff( final String name1,
+                       final String name2,
+                       final RecordSorter database1,
+                       final RecordSorter database2,
+                       final int contextSize,
+                       final LineWriter.LineHandler output )
+    throws IOException
+  {
+    return merge( database1, database2, new GroupHandler()
+    {
+      private boolean _different;
+
+      @Override
+      public void handle( final String key,
+                          final List<String> lines1,
+                          final List<String> lines2,
+                          final int start1,
+                          final int start2 )
+        throws IOException
+      {
+        if ( !_different )
+        {
+          output.handle( "--- " + name1 );
+          output.handle( "+++ " + name2 );
+          _different = true;
+        }
+        diffLines( output, lines1, lines2, start1, start2, contextSize, "Schema: " + toSchema( key ) );
+      }
+    } );
+  }
+
+  /**
+   * Compare the sorted records of the dumps structurally and pass the entries to the consumer. The entries
+   * are the same as those of a structural diff of the entire dumps, in the order of the records.
+   *
+   * @return true if the dumps differ.
+   */
+  static boolean structuralDiff( final RecordSorter database1,
+                                 final RecordSorter database2,
+                                 final Consumer<DiffEntry> entries )
+    throws IOException
+  {
+    return merge( database1, database2, new GroupHandler()
+    {
+      private String _schema;
+      private boolean _present;
+
+      @Override
+      public void handle( final String key,
+                          final List<String> lines1,
+                          final List<String> lines2,
+                          final int start1,
+                          final int start2 )
+      {
+        final String schema = toSchema( key );
+        if ( key.length() == schema.length() + 1 )
+        {
+          // The schema line. The objects of a schema missing from either database are not compared
+          _schema = schema;
+          _present = isSchema( lines1 ) && isSchema( lines2 );
+          StructuralDiff.diff( DumpNode.parse( lines1 ), DumpNode.parse( lines2 ), entries );
+        }
+        else if ( !schema.equals( _schema ) || _present )
+        {
+          // The schema line is identical in both databases when it is not reported
+          StructuralDiff.diff( DumpNode.parse( inSchema( schema, lines1 ) ),
+                               DumpNode.parse( inSchema( schema, lines2 ) ),
+                               entries );
+        }
+      }
+    } );
+  }
+
+  private static boolean isSchema( final List<String> lines )
+  {
+    return !lines.isEmpty() && lines.get( 0 ).startsWith( "Schema: " );
+  }
+
+  private static List<String> inSchema( final String schema, final List<String> lines )
+  {
+    final ArrayList<String> result = new ArrayList<>( lines.size() + 1 );
+    result.add( "Schema: " + schema );
+    result.addAll( lines );
+    return result;
+  }
+
+  /**
+   * Merge the sorted records of the dumps and pass the records with the same key to the handler if they differ.
+   *
+   * @return true if the dumps differ.
+   */
+  private static boolean merge( final RecordSorter database1,
+                                final RecordSorter database2,
+                                final GroupHandler handler )
+    throws IOException
+  {
+    try ( final RecordSource source1 = database1.sort(); final RecordSource source2 = database2.sort() )
+    {
+      boolean different = false;
+      // The index after the last line of the records compared so far, where a missing record is positioned
+      int end1 = 0;
+      int end2 = 0;
+      Record record1 = source1.next();
+      Record record2 = source2.next();
+      final ArrayList<Record> group1 = new ArrayList<>();
+      final ArrayList<Record> group2 = new ArrayList<>();
+      while ( null != record1 || null != record2 )
+      {
+        final String key =
+          null == record2 || ( null != record1 && record1.getKey().compareTo( record2.getKey() ) <= 0 ) ?
+          record1.getKey() :
+          record2.getKey();
+        group1.clear();
+        group2.clear();
+        while ( null != record1 && record1.getKey().equals( key ) )
+        {
+          group1.add( record1 );
+          record1 = source1.next();
+        }
+        while ( null != record2 && record2.getKey().equals( key ) )
+        {
+          group2.add( record2 );
+          record2 = source2.next();
+        }
+        final List<String> lines1 = toLines( group1 );
+        final List<String> lines2 = toLines( group2 );
+        if ( !lines1.equals( lines2 ) )
+        {
+          different = true;
+          handler.handle( key,
+                          lines1,
+                          lines2,
+                          group1.isEmpty() ? end1 : group1.get( 0 ).getLine(),
+                          group2.isEmpty() ? end2 : group2.get( 0 ).getLine() );
+        }
+        end1 = group1.isEmpty() ? end1 : group1.get( group1.size() - 1 ).getEnd();
+        end2 = group2.isEmpty() ? end2 : group2.get( group2.size() - 1 ).getEnd();
+      }
+      return different;
+    }
+  }
+
+  private static List<String> toLines( final List<Record> records )
+  {
+    if ( 1 == records.size() )
+    {
+      return records.get( 0 ).getLines();
+    }
+    final ArrayList<String> lines = new ArrayList<>();
+    for ( final Record record : records )
+    {
+      lines.addAll( record.getLines() );
+    }
+    return lines;
+  }
+
+  /**
+   * Diff the lines of the records and pass the hunks to the output, renumbered relative to the start of the dumps.
+   */
+  private static void diffLines( final LineWriter.LineHandler output,
+                                 final List<String> lines1,
+                                 final List<String> lines2,
+                                 final int offset1,
+                                 final int offset2,
+                                 final int contextSize,
+                                 final String heading )
+    throws IOException
+  {
+    final List<String> diff =
+      DiffUtils.generateUnifiedDiff( "", "", lines1, DiffUtils.diff( lines1, lines2 ), contextSize );
+    // Skip the file headers
+    for ( final String line : diff.subList( 2, diff.size() ) )
+    {
+      final Matcher matcher = HUNK_HEADER.matcher( line );
+      if ( matcher.matches() )
+      {
+        output.handle( "@@ -" + ( Integer.parseInt( matcher.group( 1 ) ) + offset1 ) + "," + matcher.group( 2 ) +
+                       " +" + ( Integer.parseInt( matcher.group( 3 ) ) + offset2 ) + "," + matcher.group( 4 ) +
+                       " @@ " + heading );
+      }
+      else
+      {
+        output.handle( line );
+      }
+    }
+  }
+
+  private static String toSchema( final String key )
+  {
+    return key.substring( 0, key.indexOf( '\t' ) );
+  }
+
+  /**
+   * A schema line or an object of a schema along with its descendant lines.
+   */
+  static final class Record
+  {
+    private final String _key;
+    private final int _line;
+    private final ArrayList<String> _lines;
+
+    Record( final String key, final int line, final ArrayList<String> lines )
+    {
+      _key = key;
+      _line = line;
+      _lines = lines;
+    }
+
+    /**
+     * Return the schema followed by a tab and the type and name of the object, or just the schema
+     * and a tab for a schema line.
+     */
+    String getKey()
+    {
+      return _key;
+    }
+
+    /**
+     * Return the index of the first line of the record in the dump.
+     */
+    int getLine()
+    {
+      return _line;
+    }
+
+    /**
+     * Return the index after the last line of the record in the dump.
+     */
+    int getEnd()
+    {
+      return _line + _lines.size();
+    }
+
+    List<String> getLines()
+    {
+      return _lines;
+    }
+  }
+
+  /**
+   * Receives the lines of the records with the same key that differ between the dumps, along with the
+   * index of the first line of the records in each dump.
+   */
+  private interface GroupHandler
+  {
+    void handle( String key, List<String> lines1, List<String> lines2, int start1, int start2 )
+      throws IOException;
+  }
+
+  /**
+   * A source of records in sorted order. Null is returned once the records are exhausted.
+   */
+  interface RecordSource
+    extends Closeable
+  {
+    Record next()
+      throws IOException;
+  }
+
+  /**
+   * Splits the lines of a dump into records and sorts the records, holding at most the memory budget of
+   * records in memory and spilling the remainder to temporary files as sorted runs. A record that is larger
+   * than the budget is still held in memory while it is read. The sorter must be closed to delete the runs.
+   */
+  static final class RecordSorter
+    implements LineWriter.LineHandler, Closeable
+  {
+    private final long _memoryBudget;
+    private final File _directory;
+    private final ArrayList<Record> _records = new ArrayList<>();
+    private final ArrayList<File> _runs = new ArrayList<>();
+    private long _size;
+    private int _lineCount;
+    private String _schema = "";
+    private String _key;
+    private int _line;
+    private ArrayList<String> _lines;
+
+    /**
+     * @param memoryBudget the estimated number of bytes of records held in memory.
+     * @param directory    the directory in which the runs are written or null for the default temporary-file
+     *                     directory.
+     */
+    RecordSorter( final long memoryBudget, final File directory )
+    {
+      _memoryBudget = memoryBudget;
+      _directory = directory;
+    }
+
+    /**
+     * Return the number of sorted runs spilled to temporary files.
+     */
+    int getRunCount()
+    {
+      return _runs.size();
+    }
+
+    @Override
+    public void handle( final String line )
+      throws IOException
+    {
+      int depth = 0;
+      while ( depth < line.length() && '\t' == line.charAt( depth ) )
+      {
+        depth++;
+      }
+      if ( null == _lines || depth <= 1 )
+      {
+        completeRecord();
+        if ( 0 == depth )
+        {
+          final int separator = line.indexOf( ": " );
+          _schema = -1 == separator ? line : line.substring( separator + 2 );
+        }
+        _key = _schema + "\t" + ( 0 == depth ? "" : toObject( line.substring( depth ) ) );
+        _line = _lineCount;
+        _lines = new ArrayList<>();
+        _size += RECORD_OVERHEAD + 2L * _key.length();
+      }
+      _lines.add( line );
+      _size += LINE_OVERHEAD + 2L * line.length();
+      _lineCount++;
+    }
+
+    /**
+     * Return the type and name of the object described by the line, omitting the attributes of the object.
+     */
+    private static String toObject( final String line )
+    {
+      final int separator = line.indexOf( ": " );
+      final int end = -1 == separator ? -1 : line.indexOf( ": ", separator + 2 );
+      return -1 == end ? line : line.substring( 0, end );
+    }
+
+    private void completeRecord()
+      throws IOException
+    {
+      if ( null != _lines )
+      {
+        _records.add( new Record( _key, _line, _lines ) );
+        _lines = null;
+        if ( _size > _memoryBudget )
+        {
+          spill();
+        }
+      }
+    }
+
+    /**
+     * Write the buffered records to a new run in sorted order.
+     */
+    private void spill()
+      throws IOException
+    {
+      _records.sort( ORDER );
+      final File run = newRun();
+      try ( final DataOutputStream output = openRun( run ) )
+      {
+        for ( final Record record : _records )
+        {
+          write( output, record );
+        }
+      }
+      _records.clear();
+      _size = 0;
+    }
+
+    /**
+     * Return the records of the dump in sorted order, merging the runs if any records were spilled.
+     * The dump must be complete.
+     */
+    RecordSource sort()
+      throws IOException
+    {
+      completeRecord();
+      if ( _runs.isEmpty() )
+      {
+        _records.sort( ORDER );
+        final Iterator<Record> records = _records.iterator();
+        return new RecordSource()
+        {
+          @Override
+          public Record next()
+          {
+            return records.hasNext() ? records.next() : null;
+          }
+
+          @Override
+          public void close()
+          {
+          }
+        };
+      }
+      if ( !_records.isEmpty() )
+      {
+        spill();
+      }
+      while ( _runs.size() > MAX_MERGE_WIDTH )
+      {
+        final ArrayList<File> runs = new ArrayList<>( _runs.subList( 0, MAX_MERGE_WIDTH ) );
+        final File merged = newRun();
+        try ( final RecordSource source = merge( runs ); final DataOutputStream output = openRun( merged ) )
+        {
+          Record record;
+          while ( null != ( record = source.next() ) )
+          {
+            write( output, record );
+          }
+        }
+        for ( final File run : runs )
+        {
+          Files.delete( run.toPath() );
+        }
+        _runs.removeAll( runs );
+      }
+      return merge( _runs );
+    }
+
+    /**
+     * Delete the runs of the dump.
+     */
+    @Override
+    public void close()
+      throws IOException
+    {
+      for ( final File run : _runs )
+      {
+        Files.deleteIfExists( run.toPath() );
+      }
+      _runs.clear();
+    }
+
+    private File newRun()
+      throws IOException
+    {
+      final File run = File.createTempFile( "dbdiff", ".run", _directory );
+      _runs.add( run );
+      return run;
+    }
+
+    private static DataOutputStream openRun( final File run )
+      throws IOException
+    {
+      return new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( run.toPath() ) ) );
+    }
+
+    private static RecordSource merge( final List<File> runs )
+      throws IOException
+    {
+      final PriorityQueue<RunReader> readers =
+        new PriorityQueue<>( runs.size(), Comparator.comparing( RunReader::peek, ORDER ) );
+      final ArrayList<RunReader> opened = new ArrayList<>();
+      try
+      {
+        for ( final File run : runs )
+        {
+          final RunReader reader = new RunReader( run );
+          opened.add( reader );
+          if ( null != reader.peek() )
+          {
+            readers.add( reader );
+          }
+        }
+      }
+      catch ( final IOException ioe )
+      {
+        for ( final RunReader reader : opened )
+        {
+          reader.close();
+        }
+        throw ioe;
+      }
+      return new RecordSource()
+      {
+        @Override
+        public Record next()
+          throws IOException
+        {
+          final RunReader reader = readers.poll();
+          if ( null == reader )
+          {
+            return null;
+          }
+          final Record record = reader.next();
+          if ( null != reader.peek() )
+          {
+            readers.add( reader );
+          }
+          return record;
+        }
+
+        @Override
+        public void close()
+          throws IOException
+        {
+          for ( final RunReader reader : opened )
+          {
+            reader.close();
+          }
+        }
+      };
+    }
+
+    private static void write( final DataOutputStream output, final Record record )
+      throws IOException
+    {
+      writeString( output, record.getKey() );
+      output.writeInt( record.getLine() );
+      output.writeInt( record.getLines().size() );
+      for ( final String line : record.getLines() )
+      {
+        writeString( output, line );
+      }
+    }
+
+    /**
+     * Write the string as a length prefixed sequence of UTF-8 bytes as DataOutput.writeUTF is limited to 64KiB.
+     */
+    private static void writeString( final DataOutputStream output, final String value )
+      throws IOException
+    {
+      final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+      output.writeInt( bytes.length );
+      output.write( bytes );
+    }
+  }
+
+  /**
+   * Reads the records of a run, reading ahead by one record so that runs can be ordered by their next record.
+   */
+  private static final class RunReader
+    implements Closeable
+  {
+    private final DataInputStream _input;
+    private Record _next;
+
+    RunReader( final File run )
+      throws IOException
+    {
+      _input = new DataInputStream( new BufferedInputStream( Files.newInputStream( run.toPath() ) ) );
+      _next = read();
+    }
+
+    Record peek()
+    {
+      return _next;
+    }
+
+    Record next()
+      throws IOException
+    {
+      final Record record = _next;
+      _next = read();
+      return record;
+    }
+
+    private Record read()
+      throws IOException
+    {
+      final String key;
+      try
+      {
+        key = readString();
+      }
+      catch ( final EOFException eofe )
+      {
+        return null;
+      }
+      final int line = _input.readInt();
+      final int count = _input.readInt();
+      final ArrayList<String> lines = new ArrayList<>( count );
+      for ( int i = 0; i < count; i++ )
+      {
+        lines.add( readString() );
+      }
+      return new Record( key, line, lines );
+    }
+
+    private String readString()
+      throws IOException
+    {
+      final byte[] bytes = new byte[ _input.readInt() ];
+      _input.readFully( bytes );
+      return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      _input.close();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package org.realityforge.dbdiff;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The prepared statements of the system catalog queries, retained for each connection so that a query is
+ * prepared once per connection rather than each time it is executed. The statements of a connection are
+ * closed when the connection is discarded, and all of the statements are closed when the cache is closed.
+ */
+final class StatementCache
+{
+  private final IdentityHashMap<Connection, Map<String, PreparedStatement>> _statements = new IdentityHashMap<>();
+
+  /**
+   * Return the prepared statement for the sql on the connection, preparing it if it has not been prepared.
+   */
+  PreparedStatement prepare( final Connection connection, final String sql )
+    throws SQLException
+  {
+    final Map<String, PreparedStatement> statements;
+    synchronized ( this )
+    {
+      statements = _statements.computeIfAbsent( connection, k -> new HashMap<>() );
+    }
+    // A connection is only used by a single dump at a time
+    final PreparedStatement existing = statements.get( sql );
+    if ( null != existing && !existing.isClosed() )
+    {
+      return existing;
+    }
+    final PreparedStatement statement = connection.prepareStatement( sql );
+    statements.put( sql, statement );
+    return statement;
+  }
+
+  /**
+   * Return the statements retained for all of the connections.
+   */
+  synchronized List<PreparedStatement> getStatements()
+  {
+    final ArrayList<PreparedStatement> statements = new ArrayList<>();
+    for ( final Map<String, PreparedStatement> s : _statements.values() )
+    {
+      statements.addAll( s.values() );
+    }
+    return statements;
+  }
+
+  /**
+   * Close the statements of the connection.
+   */
+  void close( final Connection connection )
+  {
+    final Map<String, PreparedStatement> statements;
+    synchronized ( this )
+    {
+      statements = _statements.remove( connection );
+    }
+    if ( null != statements )
+    {
+      closeAll( statements.values() );
+    }
+  }
+
+  /**
+   * Close the statements of every connection.
+   */
+  void close()
+  {
+    final List<PreparedStatement> statements;
+    synchronized ( this )
+    {
+      statements = getStatements();
+      _statements.clear();
+    }
+    closeAll( statements );
+  }
+
+  private static void closeAll( final Iterable<PreparedStatement> statements )
+  {
+    for ( final PreparedStatement statement : statements )
+    {
+      try
+      {
+        statement.close();
+      }
+      catch ( final SQLException ignored )
+      {
+        //Ignored as the statement is being abandoned
+      }
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package org.realityforge.dbdiff;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Compares two dump trees by matching objects on their keys rather than by comparing lines.
+ * Objects at each level are matched using a hash join so the comparison is linear in the
+ * number of objects. Objects are reported in the order they appear in the first database
+ * followed by the objects that only appear in the second database. Matched objects whose
+ * digests are identical are not compared any further.
+ */
+final class StructuralDiff
+{
+  private StructuralDiff()
+  {
+  }
+
+  static List<DiffEntry> diff( final DumpNode database1, final DumpNode database2 )
+  {
+    final ArrayList<DiffEntry> entries = new ArrayList<>();
+    diff( database1, database2, entries::add );
+    return entries;
+  }
+
+  /**
+   * Compare the trees, passing each entry to the consumer as soon as it is found.
+   */
+  static void diff( final DumpNode database1, final DumpNode database2, final Consumer<DiffEntry> entries )
+  {
+    if ( !database1.hasSameContent( database2 ) )
+    {
+      diffChildren( entries, new ArrayList<>(), database1, database2 );
+    }
+  }
+
+  private static void diffChildren( final Consumer<DiffEntry> entries,
+                                    final ArrayList<String> path,
+                                    final DumpNode node1,
+                                    final DumpNode node2 )
+  {
+    final LinkedHashMap<String, DumpNode> children2 = new LinkedHashMap<>();
+    for ( final DumpNode child : node2.getChildren() )
+    {
+      children2.put( child.getKey(), child );
+    }
+    for ( final DumpNode child1 : node1.getChildren() )
+    {
+      final DumpNode child2 = children2.remove( child1.getKey() );
+      path.add( child1.getLabel() );
+      if ( null == child2 )
+      {
+        entries.accept( new DiffEntry( DiffEntry.Type.REMOVED, child1.getKind(), path, new ArrayList<>() ) );
+      }
+      else if ( !child1.hasSameContent( child2 ) )
+      {
+        if ( !Objects.equals( child1.getAttributes(), child2.getAttributes() ) )
+        {
+          entries.accept( new DiffEntry( DiffEntry.Type.CHANGED, child1.getKind(), path, deltas( child1, child2 ) ) );
+        }
+        diffChildren( entries, path, child1, child2 );
+      }
+      path.remove( path.size() - 1 );
+    }
+    for ( final DumpNode child2 : children2.values() )
+    {
+      path.add( child2.getLabel() );
+      entries.accept( new DiffEntry( DiffEntry.Type.ADDED, child2.getKind(), path, new ArrayList<>() ) );
+      path.remove( path.size() - 1 );
+    }
+  }
+
+  private static List<DiffEntry.AttributeDelta> deltas( final DumpNode node1, final DumpNode node2 )
+  {
+    final Map<String, String> attributes1 = node1.parseAttributes();
+    final Map<String, String> attributes2 = node2.parseAttributes();
+    final LinkedHashSet<String> names = new LinkedHashSet<>( attributes1.keySet() );
+    names.addAll( attributes2.keySet() );
+    final ArrayList<DiffEntry.AttributeDelta> deltas = new ArrayList<>();
+    for ( final String name : names )
+    {
+      final String value1 = attributes1.get( name );
+      final String value2 = attributes2.get( name );
+      if ( !Objects.equals( value1, value2 ) )
+      {
+        deltas.add( new DiffEntry.AttributeDelta( name, value1, value2 ) );
+      }
+    }
+    return deltas;
+  }
+}
@@ -0,0 +1,103 @@
+package org.realityforge.dbdiff;
+
+/**
+ * A table, view, index, sequence or other relation and the elements that it contains.
+ */
+final class Table
+  extends Element
+{
+  private static final String[] NO_NAMES = new String[ 0 ];
+  private static final Privilege[] NO_PRIVILEGES = new Privilege[ 0 ];
+  private static final Element[] NO_ELEMENTS = new Element[ 0 ];
+  private static final Column[] NO_COLUMNS = new Column[ 0 ];
+  private static final ForeignKey[] NO_FOREIGN_KEYS = new ForeignKey[ 0 ];
+  private static final Index[] NO_INDEXES = new Index[ 0 ];
+
+  private String[] _superTables = NO_NAMES;
+  private Privilege[] _privileges = NO_PRIVILEGES;
+  private Element[] _primaryKeys = NO_ELEMENTS;
+  private Element[] _versionColumns = NO_ELEMENTS;
+  private Column[] _columns = NO_COLUMNS;
+  private ForeignKey[] _foreignKeys = NO_FOREIGN_KEYS;
+  private Index[] _indexes = NO_INDEXES;
+
+  Table( final AttributeLayout layout, final Object[] values )
+  {
+    super( layout, values );
+  }
+
+  String getType()
+  {
+    return (String) getValue( "table_type" );
+  }
+
+  String[] getSuperTables()
+  {
+    return _superTables;
+  }
+
+  void setSuperTables( final String[] superTables )
+  {
+    _superTables = superTables;
+  }
+
+  Privilege[] getPrivileges()
+  {
+    return _privileges;
+  }
+
+  void setPrivileges( final Privilege[] privileges )
+  {
+    _privileges = privileges;
+  }
+
+  Element[] getPrimaryKeys()
+  {
+    return _primaryKeys;
+  }
+
+  void setPrimaryKeys( final Element[] primaryKeys )
+  {
+    _primaryKeys = primaryKeys;
+  }
+
+  Element[] getVersionColumns()
+  {
+    return _versionColumns;
+  }
+
+  void setVersionColumns( final Element[] versionColumns )
+  {
+    _versionColumns = versionColumns;
+  }
+
+  Column[] getColumns()
+  {
+    return _columns;
+  }
+
+  void setColumns( final Column[] columns )
+  {
+    _columns = columns;
+  }
+
+  ForeignKey[] getForeignKeys()
+  {
+    return _foreignKeys;
+  }
+
+  void setForeignKeys( final ForeignKey[] foreignKeys )
+  {
+    _foreignKeys = foreignKeys;
+  }
+
+  Index[] getIndexes()
+  {
+    return _indexes;
+  }
+
+  void setIndexes( final Index[] indexes )
+  {
+    _indexes = indexes;
+  }
+}
@@ -0,0 +1,54 @@
+package org.realityforge.dbdiff;
+
+import java.util.List;
+
+/**
+ * The outcome of comparing the baseline database with one of several target databases.
+ */
+public final class TargetResult
+{
+  private final String _database;
+  private final List<String> _diff;
+  private final Throwable _failure;
+
+  TargetResult( final String database, final List<String> diff, final Throwable failure )
+  {
+    _database = database;
+    _diff = diff;
+    _failure = failure;
+  }
+
+  public String getDatabase()
+  {
+    return _database;
+  }
+
+  /**
+   * Return true if the target differs from the baseline. Always false if the comparison failed.
+   */
+  public boolean isDifferent()
+  {
+    return !_diff.isEmpty();
+  }
+
+  /**
+   * Return the lines reporting the differences between the baseline and the target, in the diff format.
+   */
+  public List<String> getDiff()
+  {
+    return _diff;
+  }
+
+  /**
+   * Return the reason the target could not be compared or null if the comparison completed.
+   */
+  public Throwable getFailure()
+  {
+    return _failure;
+  }
+
+  public boolean isFailed()
+  {
+    return null != _failure;
+  }
+}
@@ -0,0 +1,39 @@
+package org.realityforge.dbdiff;
+
+/**
+ * A user defined type, its super types and attributes.
+ */
+final class UDT
+  extends Element
+{
+  private static final String[] NO_NAMES = new String[ 0 ];
+  private static final Element[] NO_ATTRIBUTES = new Element[ 0 ];
+
+  private String[] _superTypes = NO_NAMES;
+  private Element[] _attributes = NO_ATTRIBUTES;
+
+  UDT( final AttributeLayout layout, final Object[] values )
+  {
+    super( layout, values );
+  }
+
+  String[] getSuperTypes()
+  {
+    return _superTypes;
+  }
+
+  void setSuperTypes( final String[] superTypes )
+  {
+    _superTypes = superTypes;
+  }
+
+  Element[] getAttributes()
+  {
+    return _attributes;
+  }
+
+  void setAttributes( final Element[] attributes )
+  {
+    _attributes = attributes;
+  }
+}
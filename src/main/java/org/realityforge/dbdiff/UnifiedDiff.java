@@ -0,0 +1,288 @@
+package org.realityforge.dbdiff;
+
+import difflib.ChangeDelta;
+import difflib.Chunk;
+import difflib.DeleteDelta;
+import difflib.Delta;
+import difflib.DiffUtils;
+import difflib.InsertDelta;
+import difflib.Patch;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Produces a unified diff of two dumps by comparing the digests of the dump trees top-down.
+ * Children are paired by their line, i.e. the kind and name of the object, identical pairs are
+ * skipped without looking at their lines and the pairs that differ are expanded, so only the lines
+ * of the children that are unpaired are diffed line by line.
+ *
+ * <p>When a pool is supplied the aligned schemas and objects, and the runs of lines that differ
+ * within them, are diffed as separate fork/join tasks. The deltas of the tasks are joined in dump
+ * order so the diff is identical to the diff produced on a single thread.</p>
+ */
+final class UnifiedDiff
+{
+  private UnifiedDiff()
+  {
+  }
+
+  static List<String> diff( final String name1,
+                            final String name2,
+                            final DigestTree database1,
+                            final DigestTree database2,
+                            final int contextSize )
+  {
+    return diff( name1, name2, database1, database2, contextSize, null );
+  }
+
+  /**
+   * Return the unified diff of the dumps, diffing the sections of the dumps on the pool if supplied,
+   * otherwise on the calling thread.
+   */
+  static List<String> diff( final String name1,
+                            final String name2,
+                            final DigestTree database1,
+                            final DigestTree database2,
+                            final int contextSize,
+                            final ForkJoinPool pool )
+  {
+    if ( database1.getRoot().hasSameContent( database2.getRoot() ) )
+    {
+      return Collections.emptyList();
+    }
+    final Patch patch = patch( database1, database2, pool );
+    return DiffUtils.generateUnifiedDiff( name1, name2, database1.getLines(), patch, contextSize );
+  }
+
+  static Patch patch( final DigestTree database1, final DigestTree database2 )
+  {
+    return patch( database1, database2, null );
+  }
+
+  /**
+   * Return the line level patch that transforms the lines of the first dump into the lines of the second,
+   * diffing the sections of the dumps on the pool if supplied, otherwise on the calling thread.
+   */
+  static Patch patch( final DigestTree database1, final DigestTree database2, final ForkJoinPool pool )
+  {
+    final ChildrenDiff task =
+      new ChildrenDiff( database1.getLines(), database2.getLines(), database1.getRoot(), database2.getRoot(),
+                        null != pool );
+    final Patch patch = new Patch();
+    for ( final Delta delta : null == pool ? task.invoke() : pool.invoke( task ) )
+    {
+      patch.addDelta( delta );
+    }
+    return patch;
+  }
+
+  /**
+   * Return the deltas of the tasks in order, forking the tasks if parallel and otherwise running them in turn.
+   */
+  private static List<Delta> run( final List<ForkJoinTask<List<Delta>>> tasks, final boolean parallel )
+  {
+    if ( parallel )
+    {
+      ForkJoinTask.invokeAll( tasks );
+    }
+    final ArrayList<Delta> deltas = new ArrayList<>();
+    for ( final ForkJoinTask<List<Delta>> task : tasks )
+    {
+      deltas.addAll( parallel ? task.join() : task.invoke() );
+    }
+    return deltas;
+  }
+
+  /**
+   * Pairs the children of two nodes and diffs the children that differ.
+   */
+  private static final class ChildrenDiff
+    extends RecursiveTask<List<Delta>>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> _lines1;
+    private final List<String> _lines2;
+    private final DigestTree.Node _node1;
+    private final DigestTree.Node _node2;
+    private final boolean _parallel;
+
+    ChildrenDiff( final List<String> lines1,
+                  final List<String> lines2,
+                  final DigestTree.Node node1,
+                  final DigestTree.Node node2,
+                  final boolean parallel )
+    {
+      _lines1 = lines1;
+      _lines2 = lines2;
+      _node1 = node1;
+      _node2 = node2;
+      _parallel = parallel;
+    }
+
+    @Override
+    protected List<Delta> compute()
+    {
+      final List<DigestTree.Node> children1 = _node1.getChildren();
+      final List<DigestTree.Node> children2 = _node2.getChildren();
+      final int[] pairs = pair( _lines1, _lines2, children1, children2 );
+      final ArrayList<ForkJoinTask<List<Delta>>> tasks = new ArrayList<>();
+      int position1 = 0;
+      int position2 = 0;
+      for ( int i = 0; i <= children1.size(); i++ )
+      {
+        // The end of the children is treated as a final pair so that trailing unpaired children are diffed
+        final int j = i < children1.size() ? pairs[ i ] : children2.size();
+        if ( -1 != j )
+        {
+          if ( position1 < i || position2 < j )
+          {
+            // Only the lines of the unpaired children between two pairs are diffed line by line
+            final int start1 = startOf( _node1, children1, position1 );
+            final int end1 = position1 == i ? start1 : children1.get( i - 1 ).getEnd();
+            final int start2 = startOf( _node2, children2, position2 );
+            final int end2 = position2 == j ? start2 : children2.get( j - 1 ).getEnd();
+            tasks.add( new LinesDiff( _lines1.subList( start1, end1 ),
+                                      _lines2.subList( start2, end2 ),
+                                      start1,
+                                      start2 ) );
+          }
+          if ( i < children1.size() && !children1.get( i ).hasSameContent( children2.get( j ) ) )
+          {
+            // The same object with different descendants so only expand the descendants
+            tasks.add( new ChildrenDiff( _lines1, _lines2, children1.get( i ), children2.get( j ), _parallel ) );
+          }
+          position1 = i + 1;
+          position2 = j + 1;
+        }
+      }
+      return run( tasks, _parallel );
+    }
+  }
+
+  /**
+   * Pair the children that have the same line, i.e. the same kind of object with the same name, via a hash
+   * join, pairing the n-th occurrence of a line in the first children with the n-th occurrence in the second.
+   * Only the longest sequence of pairs that are in the same order in both children is retained so that the
+   * pairs do not cross. Return the index of the paired second child for each first child, or -1 if unpaired.
+   */
+  private static int[] pair( final List<String> lines1,
+                             final List<String> lines2,
+                             final List<DigestTree.Node> children1,
+                             final List<DigestTree.Node> children2 )
+  {
+    final HashMap<String, ArrayDeque<Integer>> positions = new HashMap<>();
+    for ( int j = 0; j < children2.size(); j++ )
+    {
+      positions.computeIfAbsent( lines2.get( children2.get( j ).getLine() ), k -> new ArrayDeque<>() ).add( j );
+    }
+    final int[] candidates = new int[ children1.size() ];
+    for ( int i = 0; i < candidates.length; i++ )
+    {
+      final ArrayDeque<Integer> matches = positions.get( lines1.get( children1.get( i ).getLine() ) );
+      candidates[ i ] = null == matches || matches.isEmpty() ? -1 : matches.poll();
+    }
+
+    // The longest increasing sequence of candidates, where tails[ k ] is the index of the candidate that
+    // ends the sequence of length k + 1 with the smallest second index
+    final int[] tails = new int[ candidates.length ];
+    final int[] previous = new int[ candidates.length ];
+    int length = 0;
+    for ( int i = 0; i < candidates.length; i++ )
+    {
+      if ( -1 != candidates[ i ] )
+      {
+        int low = 0;
+        int high = length;
+        while ( low < high )
+        {
+          final int middle = ( low + high ) >>> 1;
+          if ( candidates[ tails[ middle ] ] < candidates[ i ] )
+          {
+            low = middle + 1;
+          }
+          else
+          {
+            high = middle;
+          }
+        }
+        previous[ i ] = 0 == low ? -1 : tails[ low - 1 ];
+        tails[ low ] = i;
+        if ( low == length )
+        {
+          length++;
+        }
+      }
+    }
+    final int[] pairs = new int[ candidates.length ];
+    Arrays.fill( pairs, -1 );
+    for ( int i = 0 == length ? -1 : tails[ length - 1 ]; -1 != i; i = previous[ i ] )
+    {
+      pairs[ i ] = candidates[ i ];
+    }
+    return pairs;
+  }
+
+  /**
+   * Return the index of the first line of the child at the position or, if the position is after
+   * the last child, the index after the last line of the parent.
+   */
+  private static int startOf( final DigestTree.Node parent, final List<DigestTree.Node> children, final int position )
+  {
+    return position < children.size() ? children.get( position ).getLine() : parent.getEnd();
+  }
+
+  /**
+   * Diffs the lines of differing subtrees and returns the deltas relative to the start of the entire dumps.
+   */
+  private static final class LinesDiff
+    extends RecursiveTask<List<Delta>>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> _lines1;
+    private final List<String> _lines2;
+    private final int _offset1;
+    private final int _offset2;
+
+    LinesDiff( final List<String> lines1, final List<String> lines2, final int offset1, final int offset2 )
+    {
+      _lines1 = lines1;
+      _lines2 = lines2;
+      _offset1 = offset1;
+      _offset2 = offset2;
+    }
+
+    @Override
+    protected List<Delta> compute()
+    {
+      final ArrayList<Delta> deltas = new ArrayList<>();
+      for ( final Delta delta : DiffUtils.diff( _lines1, _lines2 ).getDeltas() )
+      {
+        final Chunk original =
+          new Chunk( _offset1 + delta.getOriginal().getPosition(), delta.getOriginal().getLines() );
+        final Chunk revised = new Chunk( _offset2 + delta.getRevised().getPosition(), delta.getRevised().getLines() );
+        switch ( delta.getType() )
+        {
+          case INSERT:
+            deltas.add( new InsertDelta( original, revised ) );
+            break;
+          case DELETE:
+            deltas.add( new DeleteDelta( original, revised ) );
+            break;
+          default:
+            deltas.add( new ChangeDelta( original, revised ) );
+            break;
+        }
+      }
+      return deltas;
+    }
+  }
+}
@@ -4,6 +4,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Properties;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Formatter;
@@ -11,12 +12,21 @@ import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import org.postgresql.Driver;
+import org.testng.annotations.BeforeMethod;
 import static org.testng.Assert.*;
 
 public abstract class AbstractDatabaseDiffTest
 {
   private final boolean _emitDiff = System.getProperty( "test.emit.diff", "false" ).equalsIgnoreCase( "true" );
   private ArrayList<String> _output = new ArrayList<>();
+  private DiffFormat _diffFormat;
+  private int _connectionsPerDatabase;
+  private boolean _failFast;
+  private boolean _nativeCatalog;
+  private int _fetchSize;
+  private ObjectFilter _tableFilter;
+  private EnumSet<ObjectKind> _objectKinds;
+  private ConnectionSupplier _connectionSupplier;
 
   final class CollectorFormatter
     extends Formatter
@@ -36,6 +46,62 @@ public abstract class AbstractDatabaseDiffTest
     }
   }
 
+  @BeforeMethod
+  public final void resetOptions()
+  {
+    _diffFormat = DiffFormat.unified;
+    _connectionsPerDatabase = 1;
+    _failFast = false;
+    _nativeCatalog = false;
+    _fetchSize = 0;
+    _tableFilter = new ObjectFilter();
+    _objectKinds = EnumSet.allOf( ObjectKind.class );
+    _connectionSupplier = null;
+  }
+
+  protected final void setDiffFormat( final DiffFormat diffFormat )
+  {
+    _diffFormat = diffFormat;
+  }
+
+  protected final void setConnectionsPerDatabase( final int connectionsPerDatabase )
+  {
+    _connectionsPerDatabase = connectionsPerDatabase;
+  }
+
+  protected final void setFailFast( final boolean failFast )
+  {
+    _failFast = failFast;
+  }
+
+  protected final void setNativeCatalog( final boolean nativeCatalog )
+  {
+    _nativeCatalog = nativeCatalog;
+  }
+
+  protected final void setFetchSize( final int fetchSize )
+  {
+    _fetchSize = fetchSize;
+  }
+
+  /**
+   * Connect via the supplier rather than the driver.
+   */
+  protected final void setConnectionSupplier( final ConnectionSupplier connectionSupplier )
+  {
+    _connectionSupplier = connectionSupplier;
+  }
+
+  protected final ObjectFilter getTableFilter()
+  {
+    return _tableFilter;
+  }
+
+  protected final EnumSet<ObjectKind> getObjectKinds()
+  {
+    return _objectKinds;
+  }
+
   protected abstract Dialect getDialect();
 
   protected abstract Driver getDriver();
@@ -67,6 +133,18 @@ public abstract class AbstractDatabaseDiffTest
     fail( "Failed to match output " + regex + " in:" );
   }
 
+  protected final void assertNoDiffOutput( final String regex )
+  {
+    final Pattern pattern = Pattern.compile( regex );
+    for ( final String line : _output )
+    {
+      if ( pattern.matcher( line ).matches() )
+      {
+        fail( "Unexpected output " + line + " matching " + regex );
+      }
+    }
+  }
+
   protected final void assertDiffOutput( final String... regexs )
   {
     int line = 0;
@@ -151,13 +229,29 @@ public abstract class AbstractDatabaseDiffTest
     tearDownDatabases();
   }
 
+  /**
+   * Create the databases from the ddl and return a watcher of the schema that logs to the diff output.
+   */
+  protected final DatabaseWatcher newWatcher( final String schema, final String ddl1, final String ddl2 )
+    throws Exception
+  {
+    purgeDiffOutput();
+    setupDatabases();
+    executeSQL( ddl1, getDatabase1() );
+    executeSQL( ddl2, getDatabase2() );
+    final DatabaseDiff dd = newDatabaseDiff();
+    dd.setLogger( newLogger() );
+    dd.getSchemas().add( schema );
+    return new DatabaseWatcher( dd );
+  }
+
   protected abstract void setupDatabases()
     throws Exception;
 
   protected abstract void tearDownDatabases()
     throws Exception;
 
-  private void purgeDiffOutput()
+  protected final void purgeDiffOutput()
   {
     _output.clear();
   }
@@ -166,9 +260,17 @@ public abstract class AbstractDatabaseDiffTest
   {
     final DatabaseDiff dd = new DatabaseDiff();
     dd.setDialect( getDialect() );
-    dd.setDriver( getDriver() );
+    dd.setDriver( null == _connectionSupplier ? getDriver() : null );
+    dd.setConnectionSupplier( _connectionSupplier );
     dd.setDatabase1( getDatabase1() );
     dd.setDatabase2( getDatabase2() );
+    dd.setDiffFormat( _diffFormat );
+    dd.setConnectionsPerDatabase( _connectionsPerDatabase );
+    dd.setFailFast( _failFast );
+    dd.setNativeCatalog( _nativeCatalog );
+    dd.setFetchSize( _fetchSize );
+    dd.getTableFilter().addAll( _tableFilter );
+    dd.getObjectKinds().retainAll( _objectKinds );
     return dd;
   }
 
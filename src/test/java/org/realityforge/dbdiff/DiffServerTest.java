@@ -0,0 +1,228 @@
+package org.realityforge.dbdiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class DiffServerTest
+{
+  private static final String BASELINE = "jdbc:synthetic:tables=50";
+  private static final String DRIFTED = "jdbc:synthetic:tables=50;drift=10";
+  private static final String INVALID = "jdbc:synthetic:tables=x";
+  private static final String TOKEN = "secret";
+
+  private final AtomicInteger _connects = new AtomicInteger();
+  private DiffServer _server;
+
+  @AfterMethod
+  public void stopServer()
+  {
+    if ( null != _server )
+    {
+      _server.stop();
+      _server = null;
+    }
+  }
+
+  @Test
+  public void diffReturnsResultPerTarget()
+    throws Exception
+  {
+    startServer( 60000 );
+    final String response =
+      request( "/diff?baseline=" + encode( BASELINE ) + "&target=" + encode( BASELINE ) +
+               "&target=" + encode( DRIFTED ) + "&target=" + encode( INVALID ) );
+    assertTrue( response.startsWith( "{\"baseline\":\"" + BASELINE + "\",\"results\":[" +
+                                     "{\"database\":\"" + BASELINE + "\",\"status\":\"identical\",\"diff\":[]}," +
+                                     "{\"database\":\"" + DRIFTED + "\",\"status\":\"different\",\"diff\":[" ),
+                response );
+    assertTrue( response.contains( "\"+\\t\\tCOLUMN  : Column1: {" ), response );
+    assertTrue( response.contains( "{\"database\":\"" + INVALID + "\",\"status\":\"failed\",\"error\":" ),
+                response );
+    assertTrue( response.endsWith( "],\"different\":true,\"failed\":true}" ), response );
+  }
+
+  @Test
+  public void dumpsAreCachedAndConnectionsReused()
+    throws Exception
+  {
+    startServer( 60000 );
+    final String diff = "/diff?baseline=" + encode( BASELINE ) + "&target=" + encode( DRIFTED );
+    final String response = request( diff );
+    assertEquals( _connects.get(), 2 );
+
+    // Both dumps are cached so no connection is required
+    assertEquals( request( diff ), response );
+    assertEquals( _connects.get(), 2 );
+
+    // Refreshing dumps both databases again on the idle connections
+    assertEquals( request( diff + "&refresh=true" ), response );
+    assertEquals( _connects.get(), 2 );
+
+    assertEquals( request( "/invalidate?database=" + encode( BASELINE ) ), "{\"invalidated\":1}" );
+    assertEquals( request( "/invalidate" ), "{\"invalidated\":1}" );
+  }
+
+  @Test
+  public void dumpsAreNotCachedWithoutTimeToLive()
+    throws Exception
+  {
+    startServer( 0 );
+    final String diff = "/diff?baseline=" + encode( BASELINE ) + "&target=" + encode( BASELINE );
+    assertEquals( request( diff ), request( diff ) );
+    assertEquals( request( "/invalidate" ), "{\"invalidated\":0}" );
+  }
+
+  @Test
+  public void invalidRequest()
+    throws Exception
+  {
+    startServer( 60000 );
+    final HttpURLConnection connection = open( "/diff?baseline=" + encode( BASELINE ), "POST", TOKEN );
+    assertEquals( connection.getResponseCode(), 400 );
+    assertEquals( read( connection.getErrorStream() ),
+                  "{\"error\":\"A single baseline and at least one target must be supplied\"}" );
+  }
+
+  @Test
+  public void onlyServedDatabasesCompared()
+    throws Exception
+  {
+    startServer( 60000 );
+    final String other = "jdbc:synthetic:tables=50;user=reader";
+    final HttpURLConnection connection =
+      open( "/diff?baseline=" + encode( BASELINE ) + "&target=" + encode( other ), "POST", TOKEN );
+    assertEquals( connection.getResponseCode(), 400 );
+    assertEquals( read( connection.getErrorStream() ), "{\"error\":\"The database " + other + " is not served\"}" );
+    assertEquals( _connects.get(), 0 );
+  }
+
+  @Test
+  public void requestsRequirePostAndToken()
+    throws Exception
+  {
+    startServer( 60000 );
+    final String diff = "/diff?baseline=" + encode( BASELINE ) + "&target=" + encode( DRIFTED );
+    final HttpURLConnection get = open( diff, "GET", TOKEN );
+    assertEquals( get.getResponseCode(), 405 );
+    assertEquals( get.getHeaderField( "Allow" ), "POST" );
+    assertEquals( open( diff, "POST", null ).getResponseCode(), 401 );
+    assertEquals( open( diff, "POST", "guess" ).getResponseCode(), 401 );
+    assertEquals( open( "/invalidate", "POST", "guess" ).getResponseCode(), 401 );
+    assertEquals( _connects.get(), 0 );
+  }
+
+  @Test
+  public void expiredDumpsDiscardedWhenDumpsAdded()
+    throws Exception
+  {
+    final DumpCache cache = new DumpCache( 1 );
+    final List<String> schemas = Collections.singletonList( SyntheticCatalog.schemaName( 0 ) );
+    cache.put( BASELINE, schemas, new DigestTree() );
+    Thread.sleep( 5 );
+    cache.put( DRIFTED, schemas, new DigestTree() );
+    assertEquals( cache.size(), 1 );
+  }
+
+  private void startServer( final long cacheTimeToLive )
+    throws IOException
+  {
+    _connects.set( 0 );
+    final SyntheticDriver driver = new SyntheticDriver()
+    {
+      @Override
+      public Connection connect( final String url, final Properties info )
+        throws SQLException
+      {
+        _connects.incrementAndGet();
+        return super.connect( url, info );
+      }
+    };
+    final DatabaseDiff configuration = new DatabaseDiff();
+    configuration.setDriver( driver );
+    configuration.setDialect( Dialect.postgresql );
+    configuration.getSchemas().add( SyntheticCatalog.schemaName( 0 ) );
+    configuration.setLogger( Logger.getAnonymousLogger() );
+    _server = new DiffServer( configuration, cacheTimeToLive, Arrays.asList( BASELINE, DRIFTED, INVALID ), TOKEN );
+    _server.start( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+  }
+
+  private String request( final String path )
+    throws IOException
+  {
+    final HttpURLConnection connection = open( path, "POST", TOKEN );
+    assertEquals( connection.getResponseCode(), 200 );
+    return read( connection.getInputStream() );
+  }
+
+  /**
+   * Open a request for the path, supplying the query string of a POST as the form body.
+   */
+  private HttpURLConnection open( final String path, final String method, final String token )
+    throws IOException
+  {
+    final int separator = path.indexOf( '?' );
+    final boolean post = "POST".equals( method );
+    final String file = post && -1 != separator ? path.substring( 0, separator ) : path;
+    final URL url = new URL( "http://127.0.0.1:" + _server.getPort() + file );
+    final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod( method );
+    if ( null != token )
+    {
+      connection.setRequestProperty( "Authorization", "Bearer " + token );
+    }
+    if ( post )
+    {
+      connection.setDoOutput( true );
+      connection.setRequestProperty( "Content-Type", "application/x-www-form-urlencoded" );
+      try ( final OutputStream output = connection.getOutputStream() )
+      {
+        if ( -1 != separator )
+        {
+          output.write( path.substring( separator + 1 ).getBytes( StandardCharsets.UTF_8 ) );
+        }
+      }
+    }
+    return connection;
+  }
+
+  private static String read( final InputStream input )
+    throws IOException
+  {
+    try ( final InputStream in = input )
+    {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[ 4096 ];
+      int count;
+      while ( -1 != ( count = in.read( buffer ) ) )
+      {
+        output.write( buffer, 0, count );
+      }
+      return new String( output.toByteArray(), StandardCharsets.UTF_8 );
+    }
+  }
+
+  private static String encode( final String value )
+    throws IOException
+  {
+    return URLEncoder.encode( value, "UTF-8" );
+  }
+}
@@ -0,0 +1,193 @@
+package org.realityforge.dbdiff;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class DiffSessionTest
+{
+  private static final String BASELINE = "jdbc:synthetic:tables=50";
+  private static final String DRIFTED = "jdbc:synthetic:tables=50;drift=10";
+
+  private final AtomicInteger _connects = new AtomicInteger();
+  private final AtomicInteger _closes = new AtomicInteger();
+  private final AtomicInteger _tableTypeQueries = new AtomicInteger();
+
+  @Test
+  public void connectionsReusedAcrossDiffs()
+    throws Exception
+  {
+    final DatabaseDiff configuration = newConfiguration();
+    configuration.setDiffThreads( 2 );
+    final DiffSession session = new DiffSession( configuration );
+    final List<String> diff = session.diff( BASELINE, DRIFTED );
+    assertTrue( diff.contains( "--- " + BASELINE ), String.valueOf( diff ) );
+    assertEquals( _connects.get(), 2 );
+    assertEquals( session.diff( BASELINE, DRIFTED ), diff );
+    assertEquals( _connects.get(), 2 );
+    // Both sides of a diff of a database against itself are dumped at once, on separate connections
+    assertTrue( session.diff( DRIFTED, DRIFTED ).isEmpty() );
+    assertEquals( _connects.get(), 3 );
+    assertTrue( session.diff( DRIFTED, DRIFTED ).isEmpty() );
+    assertEquals( _connects.get(), 3 );
+
+    final List<TargetResult> results = session.diffTargets( BASELINE, Arrays.asList( BASELINE, DRIFTED ) );
+    assertFalse( results.get( 0 ).isDifferent() );
+    assertTrue( results.get( 1 ).isDifferent() );
+    assertEquals( _connects.get(), 3 );
+
+    session.close();
+    assertTrue( session.isClosed() );
+    assertTrue( session.getDiffPool().isShutdown() );
+    try
+    {
+      session.diff( BASELINE, DRIFTED );
+      fail( "Expected a closed session to reject a diff" );
+    }
+    catch ( final IllegalStateException ise )
+    {
+      assertEquals( ise.getMessage(), "The session is closed" );
+    }
+  }
+
+  @Test
+  public void concurrentDiffsWithSuppliedConnections()
+    throws Exception
+  {
+    final HashMap<String, DataSource> dataSources = new HashMap<>();
+    dataSources.put( BASELINE, newDataSource( BASELINE ) );
+    dataSources.put( DRIFTED, newDataSource( DRIFTED ) );
+    final DatabaseDiff configuration = newConfiguration();
+    configuration.setDriver( null );
+    try ( final DiffSession session = new DiffSession( configuration, ConnectionSupplier.of( dataSources ) ) )
+    {
+      final List<String> expected = session.diff( BASELINE, DRIFTED );
+      assertFalse( expected.isEmpty() );
+      final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+      try
+      {
+        final ArrayList<Future<List<String>>> diffs = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+          diffs.add( executor.submit( () -> session.diff( BASELINE, DRIFTED ) ) );
+        }
+        for ( final Future<List<String>> diff : diffs )
+        {
+          assertEquals( diff.get(), expected );
+        }
+      }
+      finally
+      {
+        executor.shutdownNow();
+      }
+      // Each supplied connection is closed, returning it to its pool, once the dump completes
+      assertEquals( _connects.get(), 18 );
+      assertEquals( _closes.get(), 18 );
+      // The table types of each database are only retrieved by the first diff
+      assertEquals( _tableTypeQueries.get(), 2 );
+
+      try
+      {
+        session.diff( BASELINE, "jdbc:synthetic:tables=1" );
+        fail( "Expected a diff of a database without a data source to fail" );
+      }
+      catch ( final SQLException sqle )
+      {
+        assertEquals( sqle.getMessage(), "No data source for the database jdbc:synthetic:tables=1" );
+      }
+    }
+  }
+
+  private DatabaseDiff newConfiguration()
+  {
+    _connects.set( 0 );
+    final SyntheticDriver driver = new SyntheticDriver()
+    {
+      @Override
+      public Connection connect( final String url, final Properties info )
+        throws SQLException
+      {
+        _connects.incrementAndGet();
+        return super.connect( url, info );
+      }
+    };
+    final DatabaseDiff configuration = new DatabaseDiff();
+    configuration.setDriver( driver );
+    configuration.setDialect( Dialect.postgresql );
+    configuration.getSchemas().add( SyntheticCatalog.schemaName( 0 ) );
+    configuration.setLogger( Logger.getAnonymousLogger() );
+    return configuration;
+  }
+
+  /**
+   * Return a data source whose connections count the times they are closed and the table type queries.
+   */
+  private DataSource newDataSource( final String database )
+  {
+    final SyntheticDriver driver = new SyntheticDriver();
+    return proxy( DataSource.class, null, ( method, args ) -> {
+      if ( !"getConnection".equals( method.getName() ) )
+      {
+        throw new UnsupportedOperationException( method.getName() );
+      }
+      _connects.incrementAndGet();
+      final Connection connection = driver.connect( database, null );
+      final DatabaseMetaData metaData = connection.getMetaData();
+      final DatabaseMetaData counting = proxy( DatabaseMetaData.class, metaData, ( m, a ) -> {
+        if ( "getTableTypes".equals( m.getName() ) )
+        {
+          _tableTypeQueries.incrementAndGet();
+        }
+        return m.invoke( metaData, a );
+      } );
+      return proxy( Connection.class, connection, ( m, a ) -> {
+        if ( "close".equals( m.getName() ) )
+        {
+          _closes.incrementAndGet();
+        }
+        return "getMetaData".equals( m.getName() ) ? counting : m.invoke( connection, a );
+      } );
+    } );
+  }
+
+  interface Handler
+  {
+    Object invoke( Method method, Object[] args )
+      throws Exception;
+  }
+
+  private static <T> T proxy( final Class<T> type, final Object delegate, final Handler handler )
+  {
+    return type.cast( Proxy.newProxyInstance( DiffSessionTest.class.getClassLoader(),
+                                              new Class<?>[]{ type },
+                                              ( proxy, method, args ) -> {
+                                                try
+                                                {
+                                                  return Object.class == method.getDeclaringClass() ?
+                                                         method.invoke( null != delegate ? delegate : handler,
+                                                                        args ) :
+                                                         handler.invoke( method, args );
+                                                }
+                                                catch ( final InvocationTargetException ite )
+                                                {
+                                                  throw ite.getCause();
+                                                }
+                                              } ) );
+  }
+}
@@ -0,0 +1,192 @@
+package org.realityforge.dbdiff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class MetaDataRecordingTest
+{
+  private static final String DATABASE = "jdbc:synthetic:tables=120;routines=3;grants=2";
+  private static final String DRIFTED = "jdbc:synthetic:tables=120;routines=3;grants=2;drift=1";
+
+  private final ArrayList<String> _output = new ArrayList<>();
+
+  @Test
+  public void recordedDumpReplayedWithoutDatabase()
+    throws Exception
+  {
+    final File directory = Files.createTempDirectory( "dbdiff" ).toFile();
+    try
+    {
+      final DatabaseDiff recorder = newDatabaseDiff( DATABASE, DRIFTED );
+      recorder.setRecordDirectory( directory );
+      recorder.setConnectionsPerDatabase( 3 );
+      assertTrue( recorder.diff() );
+      final ArrayList<String> expected = new ArrayList<>( _output );
+      final File recording = recorder.getRecordFile( DATABASE );
+      assertEquals( recording.getName(), "jdbc_synthetic_tables_120_routines_3_grants_2.replay" );
+      assertTrue( recording.isFile() );
+      assertTrue( recorder.getRecordFile( DRIFTED ).isFile() );
+
+      // The recording is replayed by a driver that only accepts replay urls
+      final DatabaseDiff replay = newDatabaseDiff( ReplayDriver.URL_PREFIX + recording, DRIFTED );
+      replay.setConnectionsPerDatabase( 3 );
+      assertTrue( replay.diff() );
+      // The same diff, other than the name of the first database
+      assertEquals( _output.get( 0 ), "--- " + ReplayDriver.URL_PREFIX + recording );
+      assertEquals( _output.subList( 1, _output.size() ), expected.subList( 1, expected.size() ) );
+
+      final DatabaseDiff identical =
+        newDatabaseDiff( ReplayDriver.URL_PREFIX + recording, ReplayDriver.URL_PREFIX + recording );
+      assertFalse( identical.diff() );
+
+      // Bulk fetch makes calls that were not recorded
+      final DatabaseDiff bulk = newDatabaseDiff( ReplayDriver.URL_PREFIX + recording, DATABASE );
+      bulk.setBulkFetch( true );
+      try
+      {
+        bulk.diff();
+        fail( "Expected the replay of unrecorded calls to fail" );
+      }
+      catch ( final SQLException sqle )
+      {
+        assertTrue( sqle.getMessage().startsWith( "The call getColumns(null,\"schema0\",\"%\",null) was not recorded" ),
+                    sqle.getMessage() );
+      }
+
+      // The native catalog queries bypass the DatabaseMetaData so can not be recorded
+      final DatabaseDiff nativeCatalog = newDatabaseDiff( DATABASE, DRIFTED );
+      nativeCatalog.setRecordDirectory( directory );
+      nativeCatalog.setNativeCatalog( true );
+      try
+      {
+        nativeCatalog.diff();
+        fail( "Expected recording the native catalog to be rejected" );
+      }
+      catch ( final IllegalStateException ise )
+      {
+        assertEquals( ise.getMessage(), "The metadata can not be recorded when reading the native catalog" );
+      }
+    }
+    finally
+    {
+      for ( final File file : directory.listFiles() )
+      {
+        Files.delete( file.toPath() );
+      }
+      Files.delete( directory.toPath() );
+    }
+  }
+
+  @Test
+  public void recordingWrittenAndRead()
+    throws Exception
+  {
+    final MetaDataRecording recording = new MetaDataRecording();
+    final Connection connection =
+      recording.record( Collections.singletonList( new SyntheticCatalog( new Properties() ).newConnection() ) )
+        .get( 0 );
+    final DatabaseMetaData metaData = connection.getMetaData();
+    assertSame( metaData.getConnection(), connection );
+    assertEquals( metaData.getSearchStringEscape(), "\\" );
+    assertEquals( metaData.getDatabaseMajorVersion(), 9 );
+    final List<List<Object>> columns = rows( metaData.getColumns( null, "schema0", "table1", null ) );
+    final List<List<Object>> schemas = rows( metaData.getSchemas() );
+    assertFalse( columns.isEmpty() );
+    assertEquals( recording.size(), 4 );
+
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    recording.write( output );
+    final MetaDataRecording replayed =
+      MetaDataRecording.read( new ByteArrayInputStream( output.toByteArray() ), "memory" );
+    assertEquals( replayed.size(), 4 );
+    final DatabaseMetaData replayedMetaData = replayed.replay().getMetaData();
+    assertEquals( replayedMetaData.getSearchStringEscape(), "\\" );
+    assertEquals( replayedMetaData.getDatabaseMajorVersion(), 9 );
+    assertEquals( rows( replayedMetaData.getColumns( null, "schema0", "table1", null ) ), columns );
+    assertEquals( rows( replayedMetaData.getSchemas() ), schemas );
+    try
+    {
+      replayedMetaData.getColumns( null, "schema0", "table2", null );
+      fail( "Expected an unrecorded call to fail" );
+    }
+    catch ( final SQLException sqle )
+    {
+      assertEquals( sqle.getMessage(),
+                    "The call getColumns(null,\"schema0\",\"table2\",null) was not recorded in memory" );
+    }
+  }
+
+  private List<List<Object>> rows( final ResultSet resultSet )
+    throws SQLException
+  {
+    final ArrayList<List<Object>> rows = new ArrayList<>();
+    try ( final ResultSet rs = resultSet )
+    {
+      final int count = rs.getMetaData().getColumnCount();
+      while ( rs.next() )
+      {
+        final ArrayList<Object> row = new ArrayList<>();
+        for ( int i = 1; i <= count; i++ )
+        {
+          row.add( rs.getMetaData().getColumnName( i ) );
+          row.add( rs.getObject( i ) );
+        }
+        rows.add( row );
+      }
+    }
+    return rows;
+  }
+
+  private DatabaseDiff newDatabaseDiff( final String database1, final String database2 )
+  {
+    _output.clear();
+    final DatabaseDiff dd = new DatabaseDiff();
+    dd.setDialect( Dialect.postgresql );
+    dd.setDriver( new SyntheticDriver() );
+    dd.setDatabase1( database1 );
+    dd.setDatabase2( database2 );
+    dd.getSchemas().add( SyntheticCatalog.schemaName( 0 ) );
+    dd.setLogger( newLogger() );
+    return dd;
+  }
+
+  private Logger newLogger()
+  {
+    final Logger logger = Logger.getAnonymousLogger();
+    logger.setUseParentHandlers( false );
+    logger.addHandler( new Handler()
+    {
+      @Override
+      public void publish( final LogRecord record )
+      {
+        _output.add( record.getMessage() );
+      }
+
+      @Override
+      public void flush()
+      {
+      }
+
+      @Override
+      public void close()
+      {
+      }
+    } );
+    return logger;
+  }
+}
@@ -0,0 +1,76 @@
+package org.realityforge.dbdiff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class ObjectFilterTest
+{
+  @Test
+  public void emptyFilterMatchesEverything()
+  {
+    final ObjectFilter filter = new ObjectFilter();
+    assertTrue( filter.isEmpty() );
+    assertTrue( filter.matches( "anything" ) );
+    assertEquals( filter.getNamePatterns( "\\" ), Collections.singletonList( null ) );
+    assertEquals( filter.toCondition( "c.relname", true, new ArrayList<>() ), "" );
+  }
+
+  @Test
+  public void globsAndRegularExpressions()
+  {
+    final ObjectFilter filter = new ObjectFilter();
+    filter.include( "tbl_*" );
+    filter.include( "glob:Audit?" );
+    filter.exclude( "regex:.*_(archive|[0-9]+)" );
+    assertTrue( filter.matches( "tbl_Person" ) );
+    assertTrue( filter.matches( "Audit1" ) );
+    assertFalse( filter.matches( "Audit12" ) );
+    assertFalse( filter.matches( "tblXPerson" ) );
+    assertFalse( filter.matches( "TBL_Person" ) );
+    assertFalse( filter.matches( "tbl_Person_archive" ) );
+    assertFalse( filter.matches( "tbl_Person_2014" ) );
+  }
+
+  @Test
+  public void globsPushedDownAsNamePatterns()
+  {
+    final ObjectFilter filter = new ObjectFilter();
+    filter.include( "tbl_*" );
+    filter.include( "100%?" );
+    filter.exclude( "*_archive" );
+    assertEquals( filter.getNamePatterns( "\\" ), Arrays.asList( "tbl\\_%", "100\\%_" ) );
+    assertEquals( filter.getNamePattern( "\\", "%" ), "%" );
+
+    final ArrayList<String> parameters = new ArrayList<>();
+    assertEquals( filter.toCondition( "c.relname", true, parameters ),
+                  " AND (c.relname LIKE ? ESCAPE '!' OR c.relname LIKE ? ESCAPE '!')" +
+                  " AND c.relname NOT LIKE ? ESCAPE '!'" );
+    assertEquals( parameters, Arrays.asList( "tbl!_%", "100!%_", "%!_archive" ) );
+
+    parameters.clear();
+    assertEquals( filter.toCondition( "o.name", false, parameters ),
+                  " AND (o.name LIKE ? ESCAPE '!' OR o.name LIKE ? ESCAPE '!')" );
+    assertEquals( parameters, Arrays.asList( "tbl!_%", "100!%_" ) );
+  }
+
+  @Test
+  public void regularExpressionIncludesAreNotPushedDown()
+  {
+    final ObjectFilter filter = new ObjectFilter();
+    filter.include( "tbl_*" );
+    filter.include( "regex:Audit[0-9]+" );
+    filter.exclude( "regex:.*_archive" );
+    assertEquals( filter.getNamePatterns( "\\" ), Collections.singletonList( null ) );
+    assertEquals( filter.getNamePattern( "\\", "%" ), "%" );
+    assertEquals( filter.toCondition( "c.relname", true, new ArrayList<>() ), "" );
+  }
+
+  @Test( expectedExceptions = IllegalArgumentException.class )
+  public void invalidRegularExpression()
+  {
+    new ObjectFilter().exclude( "regex:tbl_(" );
+  }
+}
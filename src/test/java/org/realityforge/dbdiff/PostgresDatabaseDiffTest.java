@@ -1,8 +1,24 @@
 package org.realityforge.dbdiff;
 
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.logging.Logger;
 import org.postgresql.Driver;
 import org.testng.annotations.Test;
+import static org.testng.Assert.*;
 
 @SuppressWarnings( "UnnecessaryLocalVariable" )
 public class PostgresDatabaseDiffTest
@@ -118,6 +134,49 @@ public class PostgresDatabaseDiffTest
                       "\\+\t\tCOLUMN  \\: ID\\: .* is_nullable=YES, nullable=1}" );
   }
 
+  @Test
+  public void emptySimpleTableWithChangedColumnNullTypeStructuralFormat()
+    throws Exception
+  {
+    final String schema = "x";
+    final String table = "myTable";
+    final String ddl1 =
+      s( schema( schema ),
+         table( schema,
+                table,
+                column( "ID", "integer NOT NULL" ) ) );
+    final String ddl2 =
+      s( schema( schema ),
+         table( schema,
+                table,
+                column( "ID", "integer" ) ) );
+    setDiffFormat( DiffFormat.structural );
+    assertNotMatch( schema, ddl1, ddl2 );
+    assertDiffOutput( "^~Schema\\: x / TABLE\\: myTable / COLUMN\\: ID$",
+                      "^\tis_nullable\\: NO -> YES$",
+                      "^\tnullable\\: 0 -> 1$" );
+  }
+
+  @Test
+  public void emptySimpleTableWithChangedColumnNullTypeFailFast()
+    throws Exception
+  {
+    final String schema = "x";
+    final String ddl1 =
+      s( schema( schema ),
+         table( schema, "myTable", column( "ID", "integer NOT NULL" ) ),
+         table( schema, "otherTable", column( "ID", "integer NOT NULL" ) ) );
+    final String ddl2 =
+      s( schema( schema ),
+         table( schema, "myTable", column( "ID", "integer" ) ),
+         table( schema, "otherTable", column( "ID", "integer" ) ) );
+    setFailFast( true );
+    assertNotMatch( schema, ddl1, ddl2 );
+    assertDiffOutput( "\\-\t\tCOLUMN  \\: ID\\: .* is_nullable=NO, nullable=0}",
+                      "\\+\t\tCOLUMN  \\: ID\\: .* is_nullable=YES, nullable=1}" );
+    assertNoDiffOutput( ".*otherTable.*" );
+  }
+
   @Test
   public void emptySimpleTableWithChangedColumnScale()
     throws Exception
@@ -208,6 +267,591 @@ public class PostgresDatabaseDiffTest
                       "\\+\t\tIX      \\: IX_MyIndex\\: .*" );
   }
 
+  @Test
+  public void emptySimpleTableWithDifferentIndexNativeCatalog()
+    throws Exception
+  {
+    final String schema = "x";
+    final String table = "myTable";
+    final String ddl1 =
+      s( schema( schema ),
+         table( schema,
+                table,
+                column( "ID", "integer[]" ),
+                pkInlineConstraint( "PK_" + table, "ID" ) ),
+         index( schema, table, "IX_MyIndex", null, "ID" ) );
+    final String ddl2 =
+      s( schema( schema ),
+         table( schema,
+                table,
+                column( "ID", "integer[]" ),
+                pkInlineConstraint( "PK_" + table, "ID" ) ),
+         index( schema, table, "IX_MyIndex", "GIN", "ID" ) );
+    setNativeCatalog( true );
+    assertNotMatch( schema, ddl1, ddl2 );
+    assertDiffOutput( "\\-\t\tCOLUMN  \\: ID\\: .* data_type=2003,.*",
+                      "\\+\t\tCOLUMN  \\: ID\\: .* data_type=4,.*",
+                      "\\-\t\tIX      \\: IX_MyIndex\\: .* asc_or_desc=A, .*",
+                      "\\+\t\tIX      \\: IX_MyIndex\\: .*" );
+    assertNoDiffOutput( "^[-+].*PK_myTable.*" );
+  }
+
+  @Test
+  public void nativeCatalogDumpMatchesDriverDump()
+    throws Exception
+  {
+    final String schema = "x";
+    final String ddl = richSchema();
+    setupDatabases();
+    try
+    {
+      executeSQL( ddl, getDatabase1() );
+      final List<String> expected = dump( getDatabase1(), schema, dumper -> {
+      } );
+      assertTrue( expected.contains( "\tTABLE: child_item" ), String.valueOf( expected ) );
+      for ( final String prefix : Arrays.asList( "\t\tFK      : FK_Child_Parent: ",
+                                                 "\t\tIX      : IX_Child_Lower: ",
+                                                 "\t\tPK      : PK_Child: ",
+                                                 "\t\t\tPRIV    : " ) )
+      {
+        assertTrue( expected.stream().anyMatch( line -> line.startsWith( prefix ) ), prefix + " in " + expected );
+      }
+      assertEquals( dump( getDatabase1(), schema, dumper -> dumper.setNativeCatalog( true ) ), expected );
+    }
+    finally
+    {
+      tearDownDatabases();
+    }
+  }
+
+  @Test
+  public void bulkFetchDumpMatchesPerTableDump()
+    throws Exception
+  {
+    final String schema = "x";
+    final String ddl = s( richSchema(), table( schema, "a_b", column( "ID", "integer" ) ) );
+    setupDatabases();
+    try
+    {
+      executeSQL( s( ddl, table( schema, "aXb", column( "Name", "text" ) ) ), getDatabase1() );
+      executeSQL( ddl, getDatabase2() );
+      final List<String> perTable = dump( getDatabase1(), schema, dumper -> {
+      } );
+      final List<String> bulk = dump( getDatabase1(), schema, dumper -> dumper.setBulkFetch( true ) );
+      final String table = "\tTABLE: a_b";
+      assertEquals( withoutTable( bulk, table ), withoutTable( perTable, table ) );
+
+      // The per-table queries treat the table name as a LIKE pattern so the name a_b also matches aXb and
+      // the columns and privileges of aXb are reported for a_b. The bulk fetch only reports those of a_b.
+      final List<String> expected = tableLines( dump( getDatabase2(), schema, dumper -> {
+      } ), table );
+      assertEquals( tableLines( bulk, table ), expected );
+      final List<String> perTableLines = tableLines( perTable, table );
+      assertTrue( perTableLines.stream().anyMatch( line -> line.startsWith( "\t\tCOLUMN  : Name: " ) ) );
+      assertNotEquals( perTableLines, expected );
+    }
+    finally
+    {
+      tearDownDatabases();
+    }
+  }
+
+  @Test
+  public void nativeCatalogStatementsReusedBySession()
+    throws Exception
+  {
+    final String schema = "x";
+    setupDatabases();
+    try
+    {
+      executeSQL( richSchema(), getDatabase1() );
+      executeSQL( richSchema(), getDatabase2() );
+      final DatabaseDiff configuration = new DatabaseDiff();
+      configuration.setDriver( getDriver() );
+      configuration.setDialect( getDialect() );
+      configuration.getDbProperties().putAll( getDbProperties() );
+      configuration.setNativeCatalog( true );
+      configuration.getSchemas().add( schema );
+      configuration.setLogger( Logger.getAnonymousLogger() );
+      final DiffSession session = new DiffSession( configuration );
+      final List<PreparedStatement> statements;
+      try
+      {
+        assertTrue( session.diff( getDatabase1(), getDatabase2() ).isEmpty() );
+        statements = session.getStatementCache().getStatements();
+        // The columns, privileges, column privileges, primary keys, foreign keys and indexes of each database
+        assertEquals( statements.size(), 12 );
+        assertTrue( session.diff( getDatabase1(), getDatabase2() ).isEmpty() );
+        assertEquals( new HashSet<>( session.getStatementCache().getStatements() ), new HashSet<>( statements ) );
+      }
+      finally
+      {
+        session.close();
+      }
+      assertTrue( session.getStatementCache().getStatements().isEmpty() );
+      for ( final PreparedStatement statement : statements )
+      {
+        assertTrue( statement.isClosed() );
+      }
+    }
+    finally
+    {
+      tearDownDatabases();
+    }
+  }
+
+  @Test
+  public void pooledConnectionsValidatedAndInUseStatementsKeptOpen()
+    throws Exception
+  {
+    setupDatabases();
+    try
+    {
+      final String database = getDatabase1();
+      final ConnectionPool pool = new ConnectionPool();
+      final StatementCache cache = pool.getStatementCache();
+      final Connection idle = getDriver().connect( database, getDbProperties() );
+      final Connection broken = getDriver().connect( database, getDbProperties() );
+      final Connection inUse = getDriver().connect( database, getDbProperties() );
+      final PreparedStatement idleStatement = cache.prepare( idle, "SELECT 1" );
+      final PreparedStatement brokenStatement = cache.prepare( broken, "SELECT 1" );
+      final PreparedStatement inUseStatement = cache.prepare( inUse, "SELECT 1" );
+      pool.release( database, idle );
+      pool.release( database, broken );
+
+      // Terminate the backend of the idle connection as a restart of the server would
+      final int pid = queryInt( broken, "SELECT pg_backend_pid()" );
+      queryInt( inUse, "SELECT CASE WHEN pg_terminate_backend( " + pid + " ) THEN 1 ELSE 0 END" );
+      while ( 0 != queryInt( inUse, "SELECT count(*) FROM pg_stat_activity WHERE pid = " + pid ) )
+      {
+        Thread.sleep( 10 );
+      }
+      assertSame( pool.take( database ), idle );
+      assertTrue( brokenStatement.isClosed() );
+      assertTrue( broken.isClosed() );
+      assertNull( pool.take( database ) );
+      pool.release( database, idle );
+
+      // Closing the pool only closes the statements of the idle connections
+      pool.close();
+      assertTrue( idleStatement.isClosed() );
+      assertTrue( idle.isClosed() );
+      assertFalse( inUseStatement.isClosed() );
+      try ( final ResultSet resultSet = inUseStatement.executeQuery() )
+      {
+        assertTrue( resultSet.next() );
+      }
+      pool.release( database, inUse );
+      assertTrue( inUseStatement.isClosed() );
+      assertTrue( inUse.isClosed() );
+    }
+    finally
+    {
+      tearDownDatabases();
+    }
+  }
+
+  private int queryInt( final Connection connection, final String sql )
+    throws SQLException
+  {
+    try ( final Statement statement = connection.createStatement();
+          final ResultSet resultSet = statement.executeQuery( sql ) )
+    {
+      resultSet.next();
+      return resultSet.getInt( 1 );
+    }
+  }
+
+  @Test
+  public void connectionsRestoredWhenRollbackFails()
+    throws Exception
+  {
+    setupDatabases();
+    final ArrayList<Connection> connections = new ArrayList<>();
+    try
+    {
+      for ( int i = 0; i < 3; i++ )
+      {
+        connections.add( getDriver().connect( getDatabase1(), getDbProperties() ) );
+      }
+      final Connection delegate = connections.get( 0 );
+      // The rollback of the first connection fails
+      final Connection failing =
+        (Connection) Proxy.newProxyInstance( getClass().getClassLoader(),
+                                             new Class<?>[]{ Connection.class },
+                                             ( proxy, method, args ) -> {
+                                               if ( "rollback".equals( method.getName() ) )
+                                               {
+                                                 throw new SQLException( "Rollback failed" );
+                                               }
+                                               try
+                                               {
+                                                 return method.invoke( delegate, args );
+                                               }
+                                               catch ( final InvocationTargetException ite )
+                                               {
+                                                 throw ite.getCause();
+                                               }
+                                             } );
+      final DatabaseDumper dumper =
+        new DatabaseDumper( Arrays.asList( failing, connections.get( 1 ), connections.get( 2 ) ),
+                            getDialect(),
+                            new String[]{ "public" } );
+      try
+      {
+        dumper.dump( new StringWriter() );
+        fail( "Expected the failed rollback to be reported" );
+      }
+      catch ( final SQLException sqle )
+      {
+        assertEquals( sqle.getMessage(), "Rollback failed" );
+      }
+      for ( final Connection connection : connections.subList( 1, 3 ) )
+      {
+        assertTrue( connection.getAutoCommit() );
+        assertEquals( connection.getTransactionIsolation(), Connection.TRANSACTION_READ_COMMITTED );
+      }
+    }
+    finally
+    {
+      for ( final Connection connection : connections )
+      {
+        connection.close();
+      }
+      tearDownDatabases();
+    }
+  }
+
+  @Test
+  public void multipleTablesDumpedConcurrently()
+    throws Exception
+  {
+    final String schema = "x";
+    final String[] tables1 = new String[ 50 ];
+    final String[] tables2 = new String[ 50 ];
+    for ( int i = 0; i < tables1.length; i++ )
+    {
+      final String table = "myTable" + i;
+      tables1[ i ] = table( schema, table, column( "ID", "integer NOT NULL" ) );
+      tables2[ i ] = table( schema, table, column( "ID", 42 == i ? "integer" : "integer NOT NULL" ) );
+    }
+    setConnectionsPerDatabase( 3 );
+    assertNotMatch( schema, s( schema( schema ), s( tables1 ) ), s( schema( schema ), s( tables2 ) ) );
+    assertDiffOutput( "^ \tTABLE\\: myTable42$",
+                      "\\-\t\tCOLUMN  \\: ID\\: .* is_nullable=NO, nullable=0}",
+                      "\\+\t\tCOLUMN  \\: ID\\: .* is_nullable=YES, nullable=1}" );
+  }
+
+  @Test
+  public void multipleTablesFetchedIncrementally()
+    throws Exception
+  {
+    final String schema = "x";
+    final String[] tables1 = new String[ 10 ];
+    final String[] tables2 = new String[ 10 ];
+    for ( int i = 0; i < tables1.length; i++ )
+    {
+      final String table = "myTable" + i;
+      tables1[ i ] = table( schema, table, column( "ID", "integer NOT NULL" ), column( "Name", "varchar(10)" ) );
+      tables2[ i ] =
+        table( schema, table, column( "ID", "integer NOT NULL" ), column( "Name", 7 == i ? "text" : "varchar(10)" ) );
+    }
+    setFetchSize( 3 );
+    setNativeCatalog( true );
+    assertNotMatch( schema, s( schema( schema ), s( tables1 ) ), s( schema( schema ), s( tables2 ) ) );
+    assertDiffOutput( "\\-\t\tCOLUMN  \\: Name\\: .* type_name=varchar, .*",
+                      "\\+\t\tCOLUMN  \\: Name\\: .* type_name=text, .*" );
+  }
+
+  @Test
+  public void nativeCatalogRowsStreamed()
+    throws Exception
+  {
+    final String schema = "x";
+    final String[] tables = new String[ 10 ];
+    for ( int i = 0; i < tables.length; i++ )
+    {
+      tables[ i ] = table( schema, "myTable" + i, column( "ID", "integer" ), column( "Name", "varchar(10)" ) );
+    }
+    setupDatabases();
+    try
+    {
+      executeSQL( s( schema( schema ), s( tables ) ), getDatabase1() );
+      try ( final Connection connection = getDriver().connect( getDatabase1(), getDbProperties() ) )
+      {
+        // The portal of the query that counts the cursors is itself listed
+        final int portals = countOpenCursors( connection );
+        final PostgresCatalog catalog = new PostgresCatalog( connection, new StatementCache(), 3, new ObjectFilter() );
+        final ArrayList<String> names = new ArrayList<>();
+        final ArrayList<Integer> openCursors = new ArrayList<>();
+        catalog.getColumns( schema, ( columns, values ) -> {
+          final int table = columns.indexOf( "table_name", false );
+          return () -> {
+            names.add( (String) values.get( table ) );
+            openCursors.add( countOpenCursors( connection ) );
+          };
+        } );
+        assertEquals( names.size(), 20 );
+        assertEquals( names.get( 0 ), "myTable0" );
+        // The rows are handled as each batch of 3 is fetched via the cursor, which remains open until the
+        // final partial batch is fetched, rather than after all of the rows have been read
+        assertEquals( openCursors.subList( 0, 18 ), Collections.nCopies( 18, portals + 1 ) );
+        assertEquals( openCursors.subList( 18, 20 ), Collections.nCopies( 2, portals ) );
+        assertEquals( countOpenCursors( connection ), portals );
+      }
+    }
+    finally
+    {
+      tearDownDatabases();
+    }
+  }
+
+  /**
+   * Return the ddl of the schema x with many kinds of types, columns, keys, indexes and privileges.
+   */
+  private String richSchema()
+  {
+    final String schema = "x";
+    return s( schema( schema ),
+              "CREATE DOMAIN x.\"Positive\" AS integer CHECK (VALUE > 0)",
+              "CREATE TYPE x.pair AS (a integer, b text)",
+              table( schema,
+                     "Parent",
+                     column( "ID", "serial" ),
+                     column( "Name", "varchar(20) NOT NULL DEFAULT 'x'" ),
+                     column( "Amount", "numeric(10,2)" ),
+                     column( "Quantity", "x.\"Positive\"" ),
+                     column( "Created", "timestamp DEFAULT now()" ),
+                     column( "Flags", "bit(3)" ),
+                     column( "Tags", "text[]" ),
+                     pkInlineConstraint( "PK_Parent", "ID" ) ),
+              table( schema,
+                     "child_item",
+                     column( "ID", "bigserial" ),
+                     column( "ParentID", "integer NOT NULL" ),
+                     column( "Code", "char(4)" ),
+                     column( "Position", "smallint" ),
+                     pkInlineConstraint( "PK_Child", "ID", "ParentID" ),
+                     "CONSTRAINT \"FK_Child_Parent\" FOREIGN KEY (\"ParentID\") REFERENCES x.\"Parent\" (\"ID\") " +
+                     "ON DELETE CASCADE DEFERRABLE INITIALLY DEFERRED" ),
+              index( schema, "child_item", "IX_Child_Code", null, "Code", "Position" ),
+              "CREATE UNIQUE INDEX \"UX_Child\" ON x.child_item (\"Position\" DESC)",
+              "CREATE INDEX \"IX_Child_Lower\" ON x.child_item (lower(\"Code\")) WHERE \"Position\" > 0",
+              "CREATE VIEW x.\"ParentView\" AS SELECT \"ID\", \"Name\" FROM x.\"Parent\"",
+              "COMMENT ON COLUMN x.\"Parent\".\"Name\" IS 'The name'",
+              "GRANT SELECT, UPDATE ON x.\"Parent\" TO PUBLIC",
+              "GRANT SELECT ON x.\"ParentView\" TO PUBLIC" );
+  }
+
+  interface DumperConfiguration
+  {
+    void configure( DatabaseDumper dumper );
+  }
+
+  /**
+   * Return the lines of a dump of the schema, with the dumper configured before the dump.
+   */
+  private List<String> dump( final String database, final String schema, final DumperConfiguration configuration )
+    throws Exception
+  {
+    try ( final Connection connection = getDriver().connect( database, getDbProperties() ) )
+    {
+      final DatabaseDumper dumper = new DatabaseDumper( connection, getDialect(), new String[]{ schema } );
+      configuration.configure( dumper );
+      final StringWriter writer = new StringWriter();
+      dumper.dump( writer );
+      return Arrays.asList( writer.toString().split( "\n" ) );
+    }
+  }
+
+  /**
+   * Return the lines of the table in the dump, starting with the line that names the table.
+   */
+  private List<String> tableLines( final List<String> lines, final String table )
+  {
+    final int start = lines.indexOf( table );
+    assertTrue( -1 != start, table + " in " + lines );
+    int end = start + 1;
+    while ( end < lines.size() && lines.get( end ).startsWith( "\t\t" ) )
+    {
+      end++;
+    }
+    return lines.subList( start, end );
+  }
+
+  private List<String> withoutTable( final List<String> lines, final String table )
+  {
+    final ArrayList<String> results = new ArrayList<>( lines );
+    final int start = lines.indexOf( table );
+    results.subList( start, start + tableLines( lines, table ).size() ).clear();
+    return results;
+  }
+
+  private int countOpenCursors( final Connection connection )
+    throws SQLException
+  {
+    try ( final Statement statement = connection.createStatement();
+          final ResultSet resultSet = statement.executeQuery( "SELECT COUNT(*) FROM pg_catalog.pg_cursors" ) )
+    {
+      resultSet.next();
+      return resultSet.getInt( 1 );
+    }
+  }
+
+  @Test
+  public void tablesSelectedByFilter()
+    throws Exception
+  {
+    getTableFilter().include( "my*" );
+    getTableFilter().exclude( "regex:.*_archive" );
+    assertFilteredTablesCompared();
+  }
+
+  @Test
+  public void tablesSelectedByFilterNativeCatalog()
+    throws Exception
+  {
+    getTableFilter().include( "my*" );
+    getTableFilter().exclude( "regex:.*_archive" );
+    setNativeCatalog( true );
+    assertFilteredTablesCompared();
+  }
+
+  @Test
+  public void skippedKindsAreNotCompared()
+    throws Exception
+  {
+    final String schema = "x";
+    final String table = "myTable";
+    final String ddl1 =
+      s( schema( schema ),
+         table( schema, table, column( "ID", "integer" ), column( "Name", "varchar(10)" ) ) );
+    final String ddl2 =
+      s( schema( schema ),
+         table( schema, table, column( "ID", "integer" ), column( "Name", "varchar(10)" ) ),
+         index( schema, table, "IX_MyIndex", null, "ID" ),
+         "GRANT SELECT ON x.\"myTable\" TO PUBLIC" );
+    getObjectKinds().removeAll( EnumSet.of( ObjectKind.indexes, ObjectKind.privileges ) );
+    assertMatch( schema, ddl1, ddl2 );
+    assertNoDiffOutput( ".*PRIV.*" );
+  }
+
+  @Test
+  public void onlySelectedKindsAreCompared()
+    throws Exception
+  {
+    final String schema = "x";
+    final String table = "myTable";
+    final String ddl1 =
+      s( schema( schema ),
+         table( schema, table, column( "ID", "integer" ), column( "Name", "varchar(10)" ) ) );
+    final String ddl2 =
+      s( schema( schema ),
+         table( schema, table, column( "ID", "integer" ), column( "Name", "text" ) ),
+         index( schema, table, "IX_MyIndex", null, "ID" ) );
+    getObjectKinds().retainAll( EnumSet.of( ObjectKind.tables, ObjectKind.columns ) );
+    setNativeCatalog( true );
+    assertNotMatch( schema, ddl1, ddl2 );
+    assertDiffOutput( "\\-\t\tCOLUMN  \\: Name\\: .* type_name=varchar, .*",
+                      "\\+\t\tCOLUMN  \\: Name\\: .* type_name=text, .*" );
+    assertNoDiffOutput( ".*(PRIV|IX|PK|GEN) .*" );
+  }
+
+  private void assertFilteredTablesCompared()
+    throws Exception
+  {
+    final String schema = "x";
+    final String ddl1 =
+      s( schema( schema ),
+         table( schema, "myTable1", column( "ID", "integer" ) ),
+         table( schema, "myTable2", column( "ID", "integer" ) ),
+         table( schema, "myTable_archive", column( "ID", "integer" ) ),
+         table( schema, "other", column( "ID", "integer" ) ) );
+    final String ddl2 =
+      s( schema( schema ),
+         table( schema, "myTable1", column( "ID", "integer" ) ),
+         table( schema, "myTable2", column( "ID", "text" ) ),
+         table( schema, "myTable_archive", column( "ID", "text" ) ),
+         table( schema, "other", column( "ID", "text" ) ) );
+    assertNotMatch( schema, ddl1, ddl2 );
+    assertDiffOutput( "^ \tTABLE\\: myTable2$",
+                      "\\-\t\tCOLUMN  \\: ID\\: .* type_name=int4, .*",
+                      "\\+\t\tCOLUMN  \\: ID\\: .* type_name=text, .*" );
+    assertNoDiffOutput( ".*TABLE\\: (myTable_archive|other)$" );
+    assertNoDiffOutput( "^[-+]\tTABLE.*" );
+  }
+
+  @Test
+  public void watchReportsDriftAsObjectsChange()
+    throws Exception
+  {
+    final String schema = "x";
+    final String ddl =
+      s( schema( schema ),
+         table( schema, "t1", column( "ID", "integer" ) ),
+         table( schema, "t2", column( "ID", "integer" ) ) );
+    final DatabaseWatcher watcher = newWatcher( schema, ddl, ddl );
+    try
+    {
+      assertEquals( watcher.poll(), 0 );
+      assertEquals( watcher.poll(), 0 );
+
+      executeSQL( "ALTER TABLE x.t2 ADD COLUMN Name varchar(10)", getDatabase2() );
+      assertEquals( watcher.poll(), 1 );
+      assertDiffOutput( "^Drift detected in x\\.t2", "^\\+\t\tCOLUMN  : name: .*" );
+      assertNoDiffOutput( "^Drift .* in x\\.t1" );
+      assertEquals( watcher.poll(), 0 );
+
+      purgeDiffOutput();
+      executeSQL( "ALTER TABLE x.t2 ALTER COLUMN Name TYPE text", getDatabase2() );
+      assertEquals( watcher.poll(), 1 );
+      assertDiffOutput( "^Drift changed in x\\.t2", "^\\+\t\tCOLUMN  : name: .*type_name=text.*" );
+
+      purgeDiffOutput();
+      executeSQL( "ALTER TABLE x.t2 ADD COLUMN Name text", getDatabase1() );
+      assertEquals( watcher.poll(), 1 );
+      assertDiffOutput( "^Drift resolved in x\\.t2" );
+
+      executeSQL( "CREATE TABLE x.t3(ID integer)", getDatabase1() );
+      assertEquals( watcher.poll(), 1 );
+      assertDiffOutput( "^Drift detected in x\\.t3", "^-\tTABLE: t3" );
+      executeSQL( "DROP TABLE x.t3", getDatabase1() );
+      assertEquals( watcher.poll(), 1 );
+      assertDiffOutput( "^Drift resolved in x\\.t3" );
+
+      executeSQL( "DROP SCHEMA x CASCADE", getDatabase2() );
+      watcher.poll();
+      assertDiffOutput( "^Drift detected in schema x", "^\\+Missing Schema: x" );
+    }
+    finally
+    {
+      watcher.close();
+      tearDownDatabases();
+    }
+  }
+
+  @Test
+  public void watchConnectsViaConnectionSupplier()
+    throws Exception
+  {
+    setConnectionSupplier( database -> getDriver().connect( database, getDbProperties() ) );
+    final String schema = "x";
+    final String ddl = s( schema( schema ), table( schema, "t1", column( "ID", "integer" ) ) );
+    final DatabaseWatcher watcher = newWatcher( schema, ddl, ddl );
+    try
+    {
+      assertEquals( watcher.poll(), 0 );
+      executeSQL( "ALTER TABLE x.t1 ADD COLUMN Name varchar(10)", getDatabase2() );
+      assertEquals( watcher.poll(), 1 );
+      assertDiffOutput( "^Drift detected in x\\.t1", "^\\+\t\tCOLUMN  : name: .*" );
+    }
+    finally
+    {
+      watcher.close();
+      tearDownDatabases();
+    }
+  }
+
   protected final String schema( final String schema )
   {
     return "CREATE SCHEMA \"" + schema + "\"";
@@ -0,0 +1,106 @@
+package org.realityforge.dbdiff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class SnapshotTest
+{
+  private static final List<String> DUMP =
+    Arrays.asList( "Schema: x",
+                   "\tTABLE: t",
+                   "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4}",
+                   "\t\tCOLUMN  : Name: {ordinal_position=2, type_name=varchar, remarks=\u00dcn\u00efc\u00f6d\u00e9}",
+                   "\tPROCEDURE: p: {procedure_type=1}",
+                   "Missing Schema: y",
+                   "Schema: z",
+                   "\tTABLE: u" );
+
+  @Test
+  public void fileRoundTrip()
+    throws Exception
+  {
+    final File file = writeSnapshot( DUMP );
+    assertEquals( SnapshotReader.readFile( file, Collections.<String>emptyList() ), DUMP );
+  }
+
+  @Test
+  public void streamRoundTrip()
+    throws Exception
+  {
+    final byte[] bytes = toSnapshot( DUMP );
+    assertEquals( SnapshotReader.readStream( new ByteArrayInputStream( bytes ), Collections.<String>emptyList() ),
+                  DUMP );
+  }
+
+  @Test
+  public void selectedSchemasReturnedInRequestedOrder()
+    throws Exception
+  {
+    final File file = writeSnapshot( DUMP );
+    final List<String> expected = new ArrayList<>();
+    expected.addAll( DUMP.subList( 6, 8 ) );
+    expected.addAll( DUMP.subList( 0, 5 ) );
+    assertEquals( SnapshotReader.readFile( file, Arrays.asList( "z", "x" ) ), expected );
+    assertEquals( SnapshotReader.readStream( new ByteArrayInputStream( toSnapshot( DUMP ) ),
+                                             Arrays.asList( "z", "x" ) ),
+                  expected );
+  }
+
+  @Test( expectedExceptions = IllegalStateException.class )
+  public void schemaNotInSnapshot()
+    throws Exception
+  {
+    SnapshotReader.readFile( writeSnapshot( DUMP ), Collections.singletonList( "other" ) );
+  }
+
+  @Test( expectedExceptions = IOException.class )
+  public void notASnapshot()
+    throws Exception
+  {
+    SnapshotReader.readStream( new ByteArrayInputStream( "Schema: x\n".getBytes( "UTF-8" ) ),
+                               Collections.<String>emptyList() );
+  }
+
+  @Test
+  public void isSnapshot()
+  {
+    assertTrue( SnapshotReader.isSnapshot( "/tmp/db.snapshot" ) );
+    assertTrue( SnapshotReader.isSnapshot( SnapshotReader.STANDARD_STREAM ) );
+    assertFalse( SnapshotReader.isSnapshot( "jdbc:postgresql://127.0.0.1:5432/db" ) );
+  }
+
+  private File writeSnapshot( final List<String> lines )
+    throws IOException
+  {
+    final File file = File.createTempFile( "dbdiff", ".snapshot" );
+    file.deleteOnExit();
+    try ( final FileOutputStream output = new FileOutputStream( file ) )
+    {
+      output.write( toSnapshot( lines ) );
+    }
+    return file;
+  }
+
+  private byte[] toSnapshot( final List<String> lines )
+    throws IOException
+  {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try ( final SnapshotWriter writer = new SnapshotWriter( output ) )
+    {
+      for ( final String line : lines )
+      {
+        writer.handle( line );
+      }
+    }
+    return output.toByteArray();
+  }
+}
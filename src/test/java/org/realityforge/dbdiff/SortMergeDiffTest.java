@@ -0,0 +1,217 @@
+package org.realityforge.dbdiff;
+
+import difflib.DiffUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class SortMergeDiffTest
+{
+  @Test
+  public void identicalDumpsMatch()
+    throws IOException
+  {
+    assertTrue( diff( dump( 5, -1 ), dump( 5, -1 ), Long.MAX_VALUE, 3 ).isEmpty() );
+  }
+
+  @Test
+  public void changedColumnHeadedBySchema()
+    throws IOException
+  {
+    final String name = "\t\tCOLUMN  : Name: {ordinal_position=2, type_name=varchar, is_nullable=";
+    assertEquals( diff( dump( 20, -1 ), dump( 20, 7 ), Long.MAX_VALUE, 1 ),
+                  Arrays.asList( "--- db1",
+                                 "+++ db2",
+                                 "@@ -24,2 +24,2 @@ Schema: x",
+                                 " \t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4, is_nullable=NO}",
+                                 "-" + name + "NO}",
+                                 "+" + name + "YES}" ) );
+  }
+
+  @Test
+  public void spilledRecordsReportSameChangesAsLineDiff()
+    throws IOException
+  {
+    final List<String> dump1 = dump( 10, -1 );
+    final List<String> dump2 = dump( 10, 2 );
+    dump2.subList( 13, 19 ).clear();
+    dump2.add( "\tPROC    : p: {procedure_type=1}" );
+    dump2.add( "Missing Schema: y" );
+    assertSameChanges( dump1, dump2 );
+    assertSameChanges( dump2, dump1 );
+    assertSameChanges( dump1, new ArrayList<>() );
+  }
+
+  @Test
+  public void structuralDiffOfRecordsMatchesStructuralDiff()
+    throws IOException
+  {
+    final List<String> dump1 = dump( 10, -1 );
+    dump1.addAll( dump( "y", 3, -1 ) );
+    final List<String> dump2 = dump( 10, 2 );
+    dump2.subList( 13, 19 ).clear();
+    dump2.add( "\tPROC    : p: {procedure_type=1}" );
+    dump2.add( "Missing Schema: y" );
+    assertSameEntries( dump1, dump2 );
+    assertSameEntries( dump2, dump1 );
+  }
+
+  @Test
+  public void runsMergedInMultiplePasses()
+    throws IOException
+  {
+    final File directory = Files.createTempDirectory( "dbdiff" ).toFile();
+    try
+    {
+      // The tables in reverse order
+      final List<String> dump = dump( 200, -1 );
+      final ArrayList<String> lines = new ArrayList<>( dump.subList( 0, 1 ) );
+      for ( int i = 199; i >= 0; i-- )
+      {
+        lines.addAll( dump.subList( 1 + i * 3, 4 + i * 3 ) );
+      }
+      final ArrayList<String> keys = new ArrayList<>();
+      try ( final SortMergeDiff.RecordSorter sorter = new SortMergeDiff.RecordSorter( 0, directory ) )
+      {
+        for ( final String line : lines )
+        {
+          sorter.handle( line );
+        }
+        try ( final SortMergeDiff.RecordSource source = sorter.sort() )
+        {
+          // A run per record, merged 64 at a time until at most 64 runs remain
+          assertEquals( sorter.getRunCount(), 12 );
+          SortMergeDiff.Record record;
+          while ( null != ( record = source.next() ) )
+          {
+            assertEquals( record.getLines().size(), keys.isEmpty() ? 1 : 3 );
+            keys.add( record.getKey() );
+          }
+        }
+      }
+      final ArrayList<String> sorted = new ArrayList<>( keys );
+      Collections.sort( sorted );
+      assertEquals( keys, sorted );
+      assertEquals( keys.size(), 201 );
+      assertEquals( keys.get( 0 ), "x\t" );
+      assertEquals( keys.get( 1 ), "x\tTABLE: t0" );
+      assertEquals( directory.list(), new String[ 0 ] );
+    }
+    finally
+    {
+      Files.delete( directory.toPath() );
+    }
+  }
+
+  /**
+   * Assert that the lines added and removed by a sort-merge diff that spills every record are those
+   * added and removed by a line diff of the dumps.
+   */
+  private void assertSameChanges( final List<String> lines1, final List<String> lines2 )
+    throws IOException
+  {
+    final List<String> expected = changes(
+      DiffUtils.generateUnifiedDiff( "db1", "db2", lines1, DiffUtils.diff( lines1, lines2 ), 3 ) );
+    final List<String> actual = changes( diff( lines1, lines2, 0, 3 ) );
+    assertFalse( actual.isEmpty() );
+    assertEquals( actual, expected );
+  }
+
+  /**
+   * Assert that the records compared structurally, with every record spilled, produce the entries of a structural
+   * diff of the dumps.
+   */
+  private void assertSameEntries( final List<String> lines1, final List<String> lines2 )
+    throws IOException
+  {
+    final ArrayList<String> expected = new ArrayList<>();
+    for ( final DiffEntry entry : StructuralDiff.diff( DumpNode.parse( lines1 ), DumpNode.parse( lines2 ) ) )
+    {
+      expected.add( entry.toString() );
+    }
+    final ArrayList<String> actual = new ArrayList<>();
+    try ( final SortMergeDiff.RecordSorter sorter1 = new SortMergeDiff.RecordSorter( 0, null );
+          final SortMergeDiff.RecordSorter sorter2 = new SortMergeDiff.RecordSorter( 0, null ) )
+    {
+      for ( final String line : lines1 )
+      {
+        sorter1.handle( line );
+      }
+      for ( final String line : lines2 )
+      {
+        sorter2.handle( line );
+      }
+      assertTrue( SortMergeDiff.structuralDiff( sorter1, sorter2, entry -> actual.add( entry.toString() ) ) );
+    }
+    Collections.sort( expected );
+    Collections.sort( actual );
+    assertFalse( actual.isEmpty() );
+    assertEquals( actual, expected );
+  }
+
+  private List<String> changes( final List<String> diff )
+  {
+    final ArrayList<String> changes = new ArrayList<>();
+    for ( final String line : diff.subList( 2, diff.size() ) )
+    {
+      if ( line.startsWith( "-" ) || line.startsWith( "+" ) )
+      {
+        changes.add( line );
+      }
+    }
+    Collections.sort( changes );
+    return changes;
+  }
+
+  private List<String> diff( final List<String> lines1,
+                             final List<String> lines2,
+                             final long memoryBudget,
+                             final int contextSize )
+    throws IOException
+  {
+    try ( final SortMergeDiff.RecordSorter sorter1 = new SortMergeDiff.RecordSorter( memoryBudget, null );
+          final SortMergeDiff.RecordSorter sorter2 = new SortMergeDiff.RecordSorter( memoryBudget, null ) )
+    {
+      for ( final String line : lines1 )
+      {
+        sorter1.handle( line );
+      }
+      for ( final String line : lines2 )
+      {
+        sorter2.handle( line );
+      }
+      final ArrayList<String> output = new ArrayList<>();
+      assertEquals( SortMergeDiff.diff( "db1", "db2", sorter1, sorter2, contextSize, output::add ),
+                    !output.isEmpty() );
+      return output;
+    }
+  }
+
+  /**
+   * Create a dump of a schema with the specified number of tables, changing the nullability of a
+   * column in the table with the specified index.
+   */
+  private List<String> dump( final int tableCount, final int changedTable )
+  {
+    return dump( "x", tableCount, changedTable );
+  }
+
+  private List<String> dump( final String schema, final int tableCount, final int changedTable )
+  {
+    final ArrayList<String> lines = new ArrayList<>( Arrays.asList( "Schema: " + schema ) );
+    for ( int i = 0; i < tableCount; i++ )
+    {
+      lines.add( "\tTABLE: t" + i );
+      lines.add( "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4, is_nullable=NO}" );
+      lines.add( "\t\tCOLUMN  : Name: {ordinal_position=2, type_name=varchar, is_nullable=" +
+                 ( i == changedTable ? "YES" : "NO" ) + "}" );
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,107 @@
+package org.realityforge.dbdiff;
+
+import java.util.Arrays;
+import java.util.List;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class StructuralDiffTest
+{
+  @Test
+  public void identicalDumps()
+  {
+    final List<String> dump =
+      Arrays.asList( "Schema: x",
+                     "\tTABLE: t",
+                     "\t\tPK      : PK_t: {column_name=ID, key_seq=1}",
+                     "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4}" );
+    assertTrue( diff( dump, dump ).isEmpty() );
+  }
+
+  @Test
+  public void addedRemovedAndChangedObjects()
+  {
+    final List<String> dump1 =
+      Arrays.asList( "Schema: x",
+                     "\tTABLE: t",
+                     "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4, is_nullable=NO}",
+                     "\t\tCOLUMN  : TS: {ordinal_position=2, type_name=timestamp}",
+                     "\tTABLE: removed",
+                     "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4}" );
+    final List<String> dump2 =
+      Arrays.asList( "Schema: x",
+                     "\tTABLE: t",
+                     "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4, is_nullable=YES}",
+                     "\t\tCOLUMN  : NewOne: {ordinal_position=2, type_name=int4}",
+                     "\t\tCOLUMN  : TS: {ordinal_position=3, type_name=timestamp}" );
+
+    final List<DiffEntry> entries = diff( dump1, dump2 );
+    assertEquals( entries.size(), 4 );
+
+    assertEntry( entries.get( 0 ), DiffEntry.Type.CHANGED, "COLUMN", "Schema: x", "TABLE: t", "COLUMN: ID" );
+    assertEquals( entries.get( 0 ).getDeltas().size(), 1 );
+    assertEquals( entries.get( 0 ).getDeltas().get( 0 ).getName(), "is_nullable" );
+    assertEquals( entries.get( 0 ).getDeltas().get( 0 ).getOldValue(), "NO" );
+    assertEquals( entries.get( 0 ).getDeltas().get( 0 ).getNewValue(), "YES" );
+
+    assertEntry( entries.get( 1 ), DiffEntry.Type.CHANGED, "COLUMN", "Schema: x", "TABLE: t", "COLUMN: TS" );
+    assertEquals( entries.get( 1 ).getDeltas().get( 0 ).toString(), "ordinal_position: 2 -> 3" );
+
+    assertEntry( entries.get( 2 ), DiffEntry.Type.ADDED, "COLUMN", "Schema: x", "TABLE: t", "COLUMN: NewOne" );
+    assertEntry( entries.get( 3 ), DiffEntry.Type.REMOVED, "TABLE", "Schema: x", "TABLE: removed" );
+  }
+
+  @Test
+  public void missingSchemaReportedAsRemoved()
+  {
+    final List<DiffEntry> entries =
+      diff( Arrays.asList( "Schema: x", "\tTABLE: t" ), Arrays.asList( "Missing Schema: x" ) );
+    assertEquals( entries.size(), 1 );
+    assertEntry( entries.get( 0 ), DiffEntry.Type.REMOVED, "Schema", "Schema: x" );
+  }
+
+  @Test
+  public void repeatedNamesMatchedByOccurrence()
+  {
+    final List<String> dump1 =
+      Arrays.asList( "Schema: x",
+                     "\tTABLE: t",
+                     "\t\tIX      : IX_a: {ordinal_position=1, column_name=A}",
+                     "\t\tIX      : IX_a: {ordinal_position=2, column_name=B}" );
+    final List<String> dump2 =
+      Arrays.asList( "Schema: x",
+                     "\tTABLE: t",
+                     "\t\tIX      : IX_a: {ordinal_position=1, column_name=A}",
+                     "\t\tIX      : IX_a: {ordinal_position=2, column_name=C}" );
+    final List<DiffEntry> entries = diff( dump1, dump2 );
+    assertEquals( entries.size(), 1 );
+    assertEntry( entries.get( 0 ), DiffEntry.Type.CHANGED, "IX", "Schema: x", "TABLE: t", "IX: IX_a" );
+    assertEquals( entries.get( 0 ).getDeltas().get( 0 ).toString(), "column_name: B -> C" );
+  }
+
+  @Test
+  public void attributeValuesContainingSeparators()
+  {
+    final List<DiffEntry> entries =
+      diff( Arrays.asList( "Schema: x", "\tTABLE: t", "\t\tCOLUMN  : ID: {column_def=f(1, 2), type_name=int4}" ),
+            Arrays.asList( "Schema: x", "\tTABLE: t", "\t\tCOLUMN  : ID: {column_def=f(1, 3), type_name=int4}" ) );
+    assertEquals( entries.size(), 1 );
+    assertEquals( entries.get( 0 ).getDeltas().size(), 1 );
+    assertEquals( entries.get( 0 ).getDeltas().get( 0 ).toString(), "column_def: f(1, 2) -> f(1, 3)" );
+  }
+
+  private List<DiffEntry> diff( final List<String> dump1, final List<String> dump2 )
+  {
+    return StructuralDiff.diff( DumpNode.parse( dump1 ), DumpNode.parse( dump2 ) );
+  }
+
+  private void assertEntry( final DiffEntry entry,
+                            final DiffEntry.Type type,
+                            final String kind,
+                            final String... path )
+  {
+    assertEquals( entry.getType(), type );
+    assertEquals( entry.getKind(), kind );
+    assertEquals( entry.getPath(), Arrays.asList( path ) );
+  }
+}
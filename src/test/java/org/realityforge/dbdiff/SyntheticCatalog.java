@@ -0,0 +1,494 @@
+package org.realityforge.dbdiff;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * An in-memory catalog whose DatabaseMetaData describes generated schemas in the same shape as the
+ * postgres driver. The size of the catalog is controlled by the following properties, each of which
+ * defaults to the value in brackets:
+ *
+ * <ul>
+ * <li>schemas (1): the number of schemas, named schema0, schema1 etc.</li>
+ * <li>tables (10): the number of tables in each schema.</li>
+ * <li>columns (5): the number of columns in each table. The first column is the primary key.</li>
+ * <li>indexes (2): the number of indexes on each table, including the primary key index.</li>
+ * <li>foreignKeys (1): the number of foreign keys from each table to the preceding tables.</li>
+ * <li>grants (1): the number of users granted privileges on each table and column in addition to the owner.</li>
+ * <li>routines (0): the number of procedures in each schema.</li>
+ * <li>drift (0): the percentage of tables in which the type of the second column differs from the
+ * type in a catalog without drift.</li>
+ * <li>latency (0): the number of milliseconds that each DatabaseMetaData call is delayed to simulate
+ * the round trip to a database server.</li>
+ * </ul>
+ */
+final class SyntheticCatalog
+{
+  private static final List<String> SCHEMA_COLUMNS = Arrays.asList( "TABLE_SCHEM", "TABLE_CATALOG" );
+  private static final List<String> TABLE_COLUMNS =
+    Arrays.asList( "TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME", "TABLE_TYPE", "REMARKS" );
+  private static final List<String> COLUMN_COLUMNS =
+    Arrays.asList( "TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME", "DATA_TYPE", "TYPE_NAME", "COLUMN_SIZE",
+                   "BUFFER_LENGTH", "DECIMAL_DIGITS", "NUM_PREC_RADIX", "NULLABLE", "REMARKS", "COLUMN_DEF",
+                   "SQL_DATA_TYPE", "SQL_DATETIME_SUB", "CHAR_OCTET_LENGTH", "ORDINAL_POSITION", "IS_NULLABLE",
+                   "SCOPE_SCHEMA", "SCOPE_TABLE", "SOURCE_DATA_TYPE", "IS_AUTOINCREMENT" );
+  private static final List<String> PRIVILEGE_COLUMNS =
+    Arrays.asList( "TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME", "GRANTOR", "GRANTEE", "PRIVILEGE", "IS_GRANTABLE" );
+  private static final List<String> PRIMARY_KEY_COLUMNS =
+    Arrays.asList( "TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME", "KEY_SEQ", "PK_NAME" );
+  private static final List<String> VERSION_COLUMN_COLUMNS =
+    Arrays.asList( "SCOPE", "COLUMN_NAME", "DATA_TYPE", "TYPE_NAME", "COLUMN_SIZE", "BUFFER_LENGTH",
+                   "DECIMAL_DIGITS", "PSEUDO_COLUMN" );
+  private static final List<String> IMPORTED_KEY_COLUMNS =
+    Arrays.asList( "PKTABLE_SCHEM", "PKTABLE_NAME", "PKCOLUMN_NAME", "FKTABLE_SCHEM", "FKTABLE_NAME",
+                   "FKCOLUMN_NAME", "KEY_SEQ", "UPDATE_RULE", "DELETE_RULE", "FK_NAME", "PK_NAME",
+                   "DEFERRABILITY" );
+  private static final List<String> INDEX_COLUMNS =
+    Arrays.asList( "TABLE_SCHEM", "TABLE_NAME", "NON_UNIQUE", "INDEX_QUALIFIER", "INDEX_NAME", "TYPE",
+                   "ORDINAL_POSITION", "COLUMN_NAME", "ASC_OR_DESC", "CARDINALITY", "PAGES", "FILTER_CONDITION" );
+  private static final List<String> PROCEDURE_COLUMNS =
+    Arrays.asList( "PROCEDURE_SCHEM", "PROCEDURE_NAME", "REMARKS", "PROCEDURE_TYPE", "SPECIFIC_NAME" );
+  private static final List<String> PROCEDURE_COLUMN_COLUMNS =
+    Arrays.asList( "PROCEDURE_SCHEM", "PROCEDURE_NAME", "COLUMN_NAME", "COLUMN_TYPE", "DATA_TYPE", "TYPE_NAME",
+                   "PRECISION", "LENGTH", "SCALE", "RADIX", "NULLABLE", "REMARKS" );
+  private static final List<String> UDT_COLUMNS =
+    Arrays.asList( "TYPE_SCHEM", "TYPE_NAME", "CLASS_NAME", "DATA_TYPE", "REMARKS", "BASE_TYPE" );
+  private static final List<String> PRIVILEGES = Arrays.asList( "DELETE", "INSERT", "SELECT", "UPDATE" );
+  private static final String OWNER = "owner";
+
+  private final int _schemaCount;
+  private final int _tableCount;
+  private final int _columnCount;
+  private final int _indexCount;
+  private final int _foreignKeyCount;
+  private final int _grantCount;
+  private final int _routineCount;
+  private final int _drift;
+  private final long _latency;
+
+  SyntheticCatalog( final Properties properties )
+  {
+    _schemaCount = intProperty( properties, "schemas", 1 );
+    _tableCount = intProperty( properties, "tables", 10 );
+    _columnCount = Math.max( 1, intProperty( properties, "columns", 5 ) );
+    _indexCount = Math.min( _columnCount, intProperty( properties, "indexes", 2 ) );
+    _foreignKeyCount = intProperty( properties, "foreignKeys", 1 );
+    _grantCount = intProperty( properties, "grants", 1 );
+    _routineCount = intProperty( properties, "routines", 0 );
+    _drift = intProperty( properties, "drift", 0 );
+    _latency = intProperty( properties, "latency", 0 );
+  }
+
+  private static int intProperty( final Properties properties, final String key, final int defaultValue )
+  {
+    final String value = properties.getProperty( key );
+    if ( null == value )
+    {
+      return defaultValue;
+    }
+    final int result = Integer.parseInt( value );
+    if ( result < 0 )
+    {
+      throw new IllegalArgumentException( "Property " + key + " must not be negative but is " + value );
+    }
+    return result;
+  }
+
+  static String schemaName( final int index )
+  {
+    return "schema" + index;
+  }
+
+  static String tableName( final int index )
+  {
+    return "table" + index;
+  }
+
+  static String columnName( final int index )
+  {
+    return 0 == index ? "ID" : "Column" + index;
+  }
+
+  /**
+   * Return true if the table has drifted from the table in a catalog without drift.
+   */
+  boolean isDrifted( final int table )
+  {
+    return table % 100 < _drift;
+  }
+
+  Connection newConnection()
+  {
+    final boolean[] autoCommit = new boolean[]{ true };
+    final int[] transactionIsolation = new int[]{ Connection.TRANSACTION_READ_COMMITTED };
+    final Connection[] connection = new Connection[ 1 ];
+    final DatabaseMetaData metaData = proxy( DatabaseMetaData.class, ( method, args ) -> {
+      switch ( method.getName() )
+      {
+        case "getConnection":
+          return connection[ 0 ];
+        case "getDatabaseProductName":
+          return "Synthetic";
+        case "getDatabaseProductVersion":
+          return "9.1";
+        case "getDatabaseMajorVersion":
+          return 9;
+        case "getDatabaseMinorVersion":
+          return 1;
+        case "getSearchStringEscape":
+          return "\\";
+        default:
+          if ( _latency > 0 )
+          {
+            Thread.sleep( _latency );
+          }
+          return invokeMetaData( method, args );
+      }
+    } );
+    connection[ 0 ] = proxy( Connection.class, ( method, args ) -> {
+      switch ( method.getName() )
+      {
+        case "getMetaData":
+          return metaData;
+        case "getAutoCommit":
+          return autoCommit[ 0 ];
+        case "setAutoCommit":
+          autoCommit[ 0 ] = (Boolean) args[ 0 ];
+          return null;
+        case "getTransactionIsolation":
+          return transactionIsolation[ 0 ];
+        case "setTransactionIsolation":
+          transactionIsolation[ 0 ] = (Integer) args[ 0 ];
+          return null;
+        case "isClosed":
+          return false;
+        case "isValid":
+          return true;
+        case "commit":
+        case "rollback":
+        case "close":
+          return null;
+        default:
+          throw new UnsupportedOperationException( method.getName() );
+      }
+    } );
+    return connection[ 0 ];
+  }
+
+  private Object invokeMetaData( final Method method, final Object[] args )
+  {
+    switch ( method.getName() )
+    {
+      case "getSchemas":
+        return getSchemas();
+      case "getTableTypes":
+        return resultSet( Collections.singletonList( "TABLE_TYPE" ),
+                          Arrays.asList( new Object[]{ "TABLE" }, new Object[]{ "VIEW" } ) );
+      case "getTables":
+        return getTables( (String) args[ 1 ], (String) args[ 2 ] );
+      case "getColumns":
+        return getColumns( (String) args[ 1 ], (String) args[ 2 ] );
+      case "getTablePrivileges":
+        return getPrivileges( (String) args[ 1 ], (String) args[ 2 ], false );
+      case "getColumnPrivileges":
+        return getPrivileges( (String) args[ 1 ], (String) args[ 2 ], true );
+      case "getPrimaryKeys":
+        return getPrimaryKeys( (String) args[ 1 ], (String) args[ 2 ] );
+      case "getVersionColumns":
+        return resultSet( VERSION_COLUMN_COLUMNS,
+                          Collections.singletonList( new Object[]{ null, "ctid", Types.OTHER, "tid", null, null, null,
+                                                                   DatabaseMetaData.versionColumnPseudo } ) );
+      case "getImportedKeys":
+        return getImportedKeys( (String) args[ 1 ], (String) args[ 2 ] );
+      case "getIndexInfo":
+        return getIndexInfo( (String) args[ 1 ], (String) args[ 2 ] );
+      case "getProcedures":
+        return getProcedures( (String) args[ 1 ] );
+      case "getProcedureColumns":
+        return getProcedureColumns( (String) args[ 1 ], (String) args[ 2 ] );
+      case "getUDTs":
+        return resultSet( UDT_COLUMNS, Collections.emptyList() );
+      default:
+        throw new UnsupportedOperationException( method.getName() );
+    }
+  }
+
+  private ResultSet getSchemas()
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < _schemaCount; i++ )
+    {
+      rows.add( new Object[]{ schemaName( i ), null } );
+    }
+    return resultSet( SCHEMA_COLUMNS, rows );
+  }
+
+  private ResultSet getTables( final String schema, final String tablePattern )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( final int table : tables( schema, tablePattern ) )
+    {
+      rows.add( new Object[]{ null, schema, tableName( table ), "TABLE", null } );
+    }
+    return resultSet( TABLE_COLUMNS, rows );
+  }
+
+  private ResultSet getColumns( final String schema, final String tablePattern )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( final int table : tables( schema, tablePattern ) )
+    {
+      for ( int i = 0; i < _columnCount; i++ )
+      {
+        final boolean id = 0 == i;
+        final boolean text = 1 == i && isDrifted( table );
+        final int size = id ? 10 : text ? Integer.MAX_VALUE : 255;
+        rows.add( new Object[]{ schema, tableName( table ), columnName( i ),
+                                id ? Types.INTEGER : Types.VARCHAR, id ? "int4" : text ? "text" : "varchar",
+                                size, null, 0, 10, id ? 0 : 1, null, null, null, null, String.valueOf( size ),
+                                i + 1, id ? "NO" : "YES", null, null, null, "NO" } );
+      }
+    }
+    return resultSet( COLUMN_COLUMNS, rows );
+  }
+
+  private ResultSet getPrivileges( final String schema, final String tablePattern, final boolean columns )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( final int table : tables( schema, tablePattern ) )
+    {
+      for ( int i = 0; i < ( columns ? _columnCount : 1 ); i++ )
+      {
+        final String column = columns ? columnName( i ) : null;
+        for ( final String privilege : PRIVILEGES )
+        {
+          rows.add( new Object[]{ schema, tableName( table ), column, OWNER, OWNER, privilege, "YES" } );
+          if ( "SELECT".equals( privilege ) )
+          {
+            for ( int j = 0; j < _grantCount; j++ )
+            {
+              rows.add( new Object[]{ schema, tableName( table ), column, OWNER, "user" + j, privilege, "NO" } );
+            }
+          }
+        }
+      }
+    }
+    return resultSet( PRIVILEGE_COLUMNS, rows );
+  }
+
+  private ResultSet getPrimaryKeys( final String schema, final String tablePattern )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( final int table : tables( schema, tablePattern ) )
+    {
+      rows.add( new Object[]{ schema, tableName( table ), columnName( 0 ), 1, "PK_" + tableName( table ) } );
+    }
+    return resultSet( PRIMARY_KEY_COLUMNS, rows );
+  }
+
+  private ResultSet getImportedKeys( final String schema, final String tablePattern )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( final int table : tables( schema, tablePattern ) )
+    {
+      for ( int i = 0; i < _foreignKeyCount && i < table; i++ )
+      {
+        final String pkTable = tableName( table - i - 1 );
+        rows.add( new Object[]{ schema, pkTable, columnName( 0 ), schema, tableName( table ), columnName( 0 ), 1,
+                                DatabaseMetaData.importedKeyNoAction, DatabaseMetaData.importedKeyNoAction,
+                                "FK_" + tableName( table ) + "_" + i, "PK_" + pkTable,
+                                DatabaseMetaData.importedKeyNotDeferrable } );
+      }
+    }
+    return resultSet( IMPORTED_KEY_COLUMNS, rows );
+  }
+
+  private ResultSet getIndexInfo( final String schema, final String tablePattern )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( final int table : tables( schema, tablePattern ) )
+    {
+      for ( int i = 0; i < _indexCount; i++ )
+      {
+        final String name = 0 == i ? "PK_" + tableName( table ) : "IX_" + tableName( table ) + "_" + i;
+        rows.add( new Object[]{ schema, tableName( table ), 0 != i, null, name, DatabaseMetaData.tableIndexOther,
+                                1, columnName( i ), "A", 0.0F, 0, null } );
+      }
+    }
+    return resultSet( INDEX_COLUMNS, rows );
+  }
+
+  private ResultSet getProcedures( final String schema )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < ( isSchema( schema ) ? _routineCount : 0 ); i++ )
+    {
+      rows.add( new Object[]{ schema, "procedure" + i, null, DatabaseMetaData.procedureReturnsResult, null } );
+    }
+    return resultSet( PROCEDURE_COLUMNS, rows );
+  }
+
+  private ResultSet getProcedureColumns( final String schema, final String procedurePattern )
+  {
+    final ArrayList<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < ( isSchema( schema ) ? _routineCount : 0 ); i++ )
+    {
+      final String procedure = "procedure" + i;
+      if ( "%".equals( procedurePattern ) || procedure.equals( procedurePattern ) )
+      {
+        rows.add( new Object[]{ schema, procedure, "id", DatabaseMetaData.procedureColumnIn, Types.INTEGER, "int4",
+                                null, null, null, null, DatabaseMetaData.procedureNullable, null } );
+        rows.add( new Object[]{ schema, procedure, "returnValue", DatabaseMetaData.procedureColumnReturn,
+                                Types.VARCHAR, "varchar", null, null, null, null, DatabaseMetaData.procedureNullable,
+                                null } );
+      }
+    }
+    return resultSet( PROCEDURE_COLUMN_COLUMNS, rows );
+  }
+
+  private boolean isSchema( final String schema )
+  {
+    for ( int i = 0; i < _schemaCount; i++ )
+    {
+      if ( schemaName( i ).equals( schema ) )
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return the indexes of the tables in the schema matching the pattern. Only the "%" pattern, null and
+   * exact names are used when dumping.
+   */
+  private int[] tables( final String schema, final String tablePattern )
+  {
+    if ( !isSchema( schema ) )
+    {
+      return new int[ 0 ];
+    }
+    else if ( null == tablePattern || "%".equals( tablePattern ) )
+    {
+      final int[] tables = new int[ _tableCount ];
+      for ( int i = 0; i < tables.length; i++ )
+      {
+        tables[ i ] = i;
+      }
+      return tables;
+    }
+    else if ( tablePattern.matches( "table[0-9]+" ) )
+    {
+      return new int[]{ Integer.parseInt( tablePattern.substring( "table".length() ) ) };
+    }
+    else
+    {
+      final Pattern pattern = Pattern.compile( toRegex( tablePattern ) );
+      return IntStream.range( 0, _tableCount ).filter( i -> pattern.matcher( tableName( i ) ).matches() ).toArray();
+    }
+  }
+
+  /**
+   * Translate a DatabaseMetaData name pattern, with a backslash as the search string escape, to a regular expression.
+   */
+  private static String toRegex( final String namePattern )
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < namePattern.length(); i++ )
+    {
+      final char c = namePattern.charAt( i );
+      if ( '\\' == c && i + 1 < namePattern.length() )
+      {
+        sb.append( Pattern.quote( String.valueOf( namePattern.charAt( ++i ) ) ) );
+      }
+      else if ( '%' == c || '_' == c )
+      {
+        sb.append( '%' == c ? ".*" : "." );
+      }
+      else
+      {
+        sb.append( Pattern.quote( String.valueOf( c ) ) );
+      }
+    }
+    return sb.toString();
+  }
+
+  private static ResultSet resultSet( final List<String> columns, final List<Object[]> rows )
+  {
+    final ResultSetMetaData metaData = proxy( ResultSetMetaData.class, ( method, args ) -> {
+      switch ( method.getName() )
+      {
+        case "getColumnCount":
+          return columns.size();
+        case "getColumnName":
+        case "getColumnLabel":
+          return columns.get( (Integer) args[ 0 ] - 1 ).toLowerCase();
+        default:
+          throw new UnsupportedOperationException( method.getName() );
+      }
+    } );
+    final int[] position = new int[]{ -1 };
+    return proxy( ResultSet.class, ( method, args ) -> {
+      switch ( method.getName() )
+      {
+        case "next":
+          return ++position[ 0 ] < rows.size();
+        case "getObject":
+        case "getString":
+          final int column = args[ 0 ] instanceof Integer ?
+                             (Integer) args[ 0 ] :
+                             columns.indexOf( args[ 0 ].toString().toUpperCase() ) + 1;
+          final Object value = rows.get( position[ 0 ] )[ column - 1 ];
+          return "getString".equals( method.getName() ) && null != value ? value.toString() : value;
+        case "getMetaData":
+          return metaData;
+        case "setFetchSize":
+        case "close":
+          return null;
+        default:
+          throw new UnsupportedOperationException( method.getName() );
+      }
+    } );
+  }
+
+  interface Handler
+  {
+    Object invoke( Method method, Object[] args )
+      throws Exception;
+  }
+
+  private static <T> T proxy( final Class<T> type, final Handler handler )
+  {
+    final InvocationHandler invocationHandler = ( proxy, method, args ) -> {
+      if ( Object.class == method.getDeclaringClass() )
+      {
+        try
+        {
+          return method.invoke( handler, args );
+        }
+        catch ( final InvocationTargetException ite )
+        {
+          throw ite.getCause();
+        }
+      }
+      return handler.invoke( method, args );
+    };
+    return type.cast( Proxy.newProxyInstance( SyntheticCatalog.class.getClassLoader(),
+                                              new Class<?>[]{ type },
+                                              invocationHandler ) );
+  }
+}
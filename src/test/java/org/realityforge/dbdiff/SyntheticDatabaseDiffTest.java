@@ -0,0 +1,392 @@
+package org.realityforge.dbdiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+/**
+ * Diffs databases served by the {@link SyntheticDriver} so that catalogs far larger than the fixture
+ * databases can be compared without a database server.
+ */
+public class SyntheticDatabaseDiffTest
+{
+  private final ArrayList<String> _output = new ArrayList<>();
+
+  @Test
+  public void identicalLargeCatalogsMatch()
+    throws Exception
+  {
+    // 10000 tables with 8 columns, 2 indexes, a primary key and a foreign key each, i.e. over 100k objects
+    final String database = "jdbc:synthetic:tables=10000;columns=8;indexes=2;foreignKeys=1;grants=1;routines=100";
+    final DatabaseDiff dd = newDatabaseDiff( database, database );
+    dd.setBulkFetch( true );
+    assertFalse( dd.diff() );
+  }
+
+  @Test
+  public void driftIsReported()
+    throws Exception
+  {
+    final DatabaseDiff dd = newDatabaseDiff( "jdbc:synthetic:tables=300", "jdbc:synthetic:tables=300;drift=1" );
+    dd.setDiffThreads( 4 );
+    assertTrue( dd.diff() );
+    // The pool created for the diff is shut down once the diff completes
+    assertNull( dd.getDiffPool() );
+    final List<String> removed = matching( "-\t\tCOLUMN  : Column1: .*type_name=varchar.*" );
+    final List<String> added = matching( "\\+\t\tCOLUMN  : Column1: .*type_name=text.*" );
+    // tables 0, 100 and 200 drift
+    assertEquals( removed.size(), 3, String.valueOf( _output ) );
+    assertEquals( added.size(), 3, String.valueOf( _output ) );
+  }
+
+  @Test
+  public void driftReportedWithinMemoryBudget()
+    throws Exception
+  {
+    final File directory = Files.createTempDirectory( "dbdiff" ).toFile();
+    try
+    {
+      final DatabaseDiff dd =
+        newDatabaseDiff( "jdbc:synthetic:tables=300;routines=5", "jdbc:synthetic:tables=301;routines=5;drift=1" );
+      dd.setMemoryBudget( 64 * 1024 );
+      dd.setSpillDirectory( directory );
+      assertTrue( dd.diff() );
+      assertEquals( matching( "-\t\tCOLUMN  : Column1: .*type_name=varchar.*" ).size(), 3, String.valueOf( _output ) );
+      // tables 0, 100, 200 and the added table 300 drift
+      assertEquals( matching( "\\+\t\tCOLUMN  : Column1: .*type_name=text.*" ).size(), 4, String.valueOf( _output ) );
+      assertEquals( matching( "\\+\tTABLE: table300" ).size(), 1 );
+      assertEquals( matching( "@@ .* @@ Schema: " + SyntheticCatalog.schemaName( 0 ) ).size(), 4 );
+      // The runs are deleted once the diff completes
+      assertEquals( directory.list(), new String[ 0 ] );
+
+      final String database = "jdbc:synthetic:tables=300;routines=5";
+      final DatabaseDiff identical = newDatabaseDiff( database, database );
+      identical.setMemoryBudget( 64 * 1024 );
+      identical.setSpillDirectory( directory );
+      assertFalse( identical.diff() );
+      assertEquals( directory.list(), new String[ 0 ] );
+    }
+    finally
+    {
+      Files.delete( directory.toPath() );
+    }
+  }
+
+  @Test
+  public void driftWrittenAsNdjson()
+    throws Exception
+  {
+    final List<String> inMemory = ndjsonDiff( 0 );
+    final List<String> sorted = ndjsonDiff( 64 * 1024 );
+    assertEquals( inMemory.size(), 4, String.valueOf( inMemory ) );
+    assertEquals( inMemory.get( 0 ),
+                  "{\"change\":\"changed\",\"kind\":\"COLUMN\",\"name\":\"schema0.table0.Column1\",\"side\":\"both\"," +
+                  "\"path\":[\"Schema: schema0\",\"TABLE: table0\",\"COLUMN: Column1\"]," +
+                  "\"deltas\":[{\"attribute\":\"column_size\",\"from\":\"255\",\"to\":\"2147483647\"}," +
+                  "{\"attribute\":\"type_name\",\"from\":\"varchar\",\"to\":\"text\"}," +
+                  "{\"attribute\":\"char_octet_length\",\"from\":\"255\",\"to\":\"2147483647\"}]}" );
+    assertEquals( inMemory.get( 3 ),
+                  "{\"change\":\"added\",\"kind\":\"TABLE\",\"name\":\"schema0.table300\",\"side\":\"second\"," +
+                  "\"path\":[\"Schema: schema0\",\"TABLE: table300\"]}" );
+    // The sorted objects are compared in name order, i.e. table100 before table2
+    Collections.sort( inMemory );
+    Collections.sort( sorted );
+    assertEquals( sorted, inMemory );
+    // Nothing is logged as the differences are written to the output
+    assertTrue( _output.isEmpty(), String.valueOf( _output ) );
+
+    final DatabaseDiff dd = newDatabaseDiff( "jdbc:synthetic:tables=1", "jdbc:synthetic:tables=1;drift=1" );
+    dd.setDiffFormat( DiffFormat.ndjson );
+    dd.setOutput( new ByteArrayOutputStream() );
+    dd.setFailFast( true );
+    try
+    {
+      dd.diff();
+      fail( "Expected failing fast to be rejected by the ndjson diff format" );
+    }
+    catch ( final IllegalStateException ise )
+    {
+      assertEquals( ise.getMessage(), "The ndjson diff format is not supported when failing fast" );
+    }
+  }
+
+  private List<String> ndjsonDiff( final long memoryBudget )
+    throws Exception
+  {
+    final DatabaseDiff dd =
+      newDatabaseDiff( "jdbc:synthetic:tables=300;routines=5", "jdbc:synthetic:tables=301;routines=5;drift=1" );
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    dd.setDiffFormat( DiffFormat.ndjson );
+    dd.setMemoryBudget( memoryBudget );
+    dd.setOutput( output );
+    assertTrue( dd.diff() );
+    final String text = new String( output.toByteArray(), StandardCharsets.UTF_8 );
+    assertTrue( text.endsWith( "\n" ) );
+    return new ArrayList<>( Arrays.asList( text.split( "\n" ) ) );
+  }
+
+  @Test
+  public void multipleSchemasAndConnectionsWithLatency()
+    throws Exception
+  {
+    final String database = "jdbc:synthetic:schemas=2;tables=20;routines=2;latency=1";
+    final DatabaseDiff dd = newDatabaseDiff( database, database );
+    dd.getSchemas().add( SyntheticCatalog.schemaName( 1 ) );
+    dd.setConnectionsPerDatabase( 4 );
+    assertFalse( dd.diff() );
+  }
+
+  @Test
+  public void nativeCatalogRejectedForMssql()
+    throws Exception
+  {
+    final DatabaseDiff dd = newDatabaseDiff( "jdbc:synthetic:tables=5", "jdbc:synthetic:tables=5" );
+    dd.setDialect( Dialect.mssql );
+    dd.setNativeCatalog( true );
+    try
+    {
+      dd.diff();
+      fail( "Expected the native catalog to be rejected for the mssql dialect" );
+    }
+    catch ( final IllegalStateException ise )
+    {
+      assertEquals( ise.getMessage(), "Native catalog extraction is not supported for the mssql dialect" );
+    }
+  }
+
+  @Test
+  public void noTransactionWithoutSharedSnapshot()
+    throws Exception
+  {
+    final String database = "jdbc:synthetic:tables=40";
+    final ArrayList<String> calls = new ArrayList<>();
+    final DatabaseDiff dd = newDatabaseDiff( database, database );
+    // The synthetic database reports postgres 9.1 which can not export snapshots
+    dd.setConnectionsPerDatabase( 3 );
+    dd.setDriver( new SyntheticDriver()
+    {
+      @Override
+      public Connection connect( final String url, final Properties info )
+        throws SQLException
+      {
+        final Connection connection = super.connect( url, info );
+        return proxy( Connection.class, ( method, args ) -> {
+          if ( method.getName().startsWith( "set" ) )
+          {
+            synchronized ( calls )
+            {
+              calls.add( method.getName() );
+            }
+          }
+          return method.invoke( connection, args );
+        } );
+      }
+    } );
+    assertFalse( dd.diff() );
+    // The connections are left in auto commit mode as the snapshot can not be shared
+    assertTrue( calls.isEmpty(), String.valueOf( calls ) );
+  }
+
+  @Test
+  public void connectionPropertiesOverrideUrl()
+    throws Exception
+  {
+    final DatabaseDiff dd = newDatabaseDiff( "jdbc:synthetic:tables=5", "jdbc:synthetic:tables=5" );
+    dd.getDbProperties().setProperty( "tables", "6" );
+    assertFalse( dd.diff() );
+    final SyntheticDriver driver = new SyntheticDriver();
+    assertNull( driver.connect( "jdbc:postgresql://127.0.0.1/db", null ) );
+    assertFalse( driver.acceptsURL( "jdbc:postgresql://127.0.0.1/db" ) );
+    assertTrue( driver.acceptsURL( "jdbc:synthetic:" ) );
+  }
+
+  @Test
+  public void baselineComparedWithManyTargets()
+    throws Exception
+  {
+    final String baseline = "jdbc:synthetic:tables=300";
+    final DatabaseDiff dd = newDatabaseDiff( baseline, null );
+    dd.setTargetConcurrency( 2 );
+    final List<TargetResult> results =
+      dd.diffTargets( Arrays.asList( baseline,
+                                     "jdbc:synthetic:tables=300;drift=1",
+                                     "jdbc:synthetic:tables=x",
+                                     "jdbc:synthetic:tables=301" ) );
+    assertEquals( results.size(), 4 );
+    assertResult( results.get( 0 ), baseline, false, false );
+    assertResult( results.get( 1 ), "jdbc:synthetic:tables=300;drift=1", true, false );
+    assertResult( results.get( 2 ), "jdbc:synthetic:tables=x", false, true );
+    assertResult( results.get( 3 ), "jdbc:synthetic:tables=301", true, false );
+    assertEquals( matching( "\\+\t\tCOLUMN  : Column1: .*type_name=text.*" ).size(), 3 );
+    assertEquals( matching( "\\+\tTABLE: table300" ).size(), 1 );
+  }
+
+  @Test
+  public void manyTargetsFailFast()
+    throws Exception
+  {
+    final String baseline = "jdbc:synthetic:tables=300";
+    final DatabaseDiff dd = newDatabaseDiff( baseline, null );
+    dd.setFailFast( true );
+    final List<TargetResult> results =
+      dd.diffTargets( Arrays.asList( baseline,
+                                     "jdbc:synthetic:tables=300;drift=1",
+                                     "jdbc:synthetic:tables=299" ) );
+    assertResult( results.get( 0 ), baseline, false, false );
+    assertResult( results.get( 1 ), "jdbc:synthetic:tables=300;drift=1", true, false );
+    assertResult( results.get( 2 ), "jdbc:synthetic:tables=299", true, false );
+    // Only the first difference of each target is reported
+    assertEquals( matching( "\\+\t\tCOLUMN  : Column1: .*type_name=text.*" ).size(), 1 );
+    assertEquals( matching( "-\tTABLE: table299" ).size(), 1 );
+  }
+
+  @Test
+  public void failFastStopsRetrievingMetadata()
+    throws Exception
+  {
+    // table0 drifts so the first difference is within the first table of the 400 tables
+    final String database1 = "jdbc:synthetic:tables=400";
+    final String database2 = "jdbc:synthetic:tables=400;drift=1";
+    final AtomicInteger calls = new AtomicInteger();
+
+    final DatabaseDiff full = newDatabaseDiff( database1, database2 );
+    full.setDriver( newCountingDriver( calls ) );
+    assertTrue( full.diff() );
+    final int fullCalls = calls.getAndSet( 0 );
+
+    final DatabaseDiff failFast = newDatabaseDiff( database1, database2 );
+    failFast.setDriver( newCountingDriver( calls ) );
+    failFast.setFailFast( true );
+    assertTrue( failFast.diff() );
+    assertEquals( matching( "\\+\t\tCOLUMN  : Column1: .*type_name=text.*" ).size(), 1, String.valueOf( _output ) );
+    // The dumps stop once the comparison stops, within the lines that are queued ahead of the comparison
+    assertTrue( calls.get() * 10 < fullCalls, calls.get() + " of " + fullCalls + " metadata calls" );
+  }
+
+  /**
+   * Return a driver whose connections count the calls made on their metadata.
+   */
+  private SyntheticDriver newCountingDriver( final AtomicInteger calls )
+  {
+    return new SyntheticDriver()
+    {
+      @Override
+      public Connection connect( final String url, final Properties info )
+        throws SQLException
+      {
+        final Connection connection = super.connect( url, info );
+        final DatabaseMetaData metaData = connection.getMetaData();
+        final DatabaseMetaData counting = proxy( DatabaseMetaData.class, ( method, args ) -> {
+          calls.incrementAndGet();
+          return method.invoke( metaData, args );
+        } );
+        return proxy( Connection.class, ( method, args ) ->
+          "getMetaData".equals( method.getName() ) ? counting : method.invoke( connection, args ) );
+      }
+    };
+  }
+
+  interface Invoker
+  {
+    Object invoke( Method method, Object[] args )
+      throws Exception;
+  }
+
+  private static <T> T proxy( final Class<T> type, final Invoker invoker )
+  {
+    return type.cast( Proxy.newProxyInstance( SyntheticDatabaseDiffTest.class.getClassLoader(),
+                                              new Class<?>[]{ type },
+                                              ( proxy, method, args ) -> {
+                                                try
+                                                {
+                                                  return invoker.invoke( method, args );
+                                                }
+                                                catch ( final InvocationTargetException ite )
+                                                {
+                                                  throw ite.getCause();
+                                                }
+                                              } ) );
+  }
+
+  private void assertResult( final TargetResult result,
+                             final String database,
+                             final boolean different,
+                             final boolean failed )
+  {
+    assertEquals( result.getDatabase(), database );
+    assertEquals( result.isDifferent(), different, database );
+    assertEquals( result.isFailed(), failed, database );
+  }
+
+  private List<String> matching( final String regex )
+  {
+    final ArrayList<String> lines = new ArrayList<>();
+    for ( final String message : _output )
+    {
+      for ( final String line : message.split( "\n" ) )
+      {
+        if ( line.matches( regex ) )
+        {
+          lines.add( line );
+        }
+      }
+    }
+    return lines;
+  }
+
+  private DatabaseDiff newDatabaseDiff( final String database1, final String database2 )
+  {
+    _output.clear();
+    final DatabaseDiff dd = new DatabaseDiff();
+    dd.setDialect( Dialect.postgresql );
+    dd.setDriver( new SyntheticDriver() );
+    dd.setDatabase1( database1 );
+    dd.setDatabase2( database2 );
+    dd.getSchemas().add( SyntheticCatalog.schemaName( 0 ) );
+    dd.setLogger( newLogger() );
+    return dd;
+  }
+
+  private Logger newLogger()
+  {
+    final Logger logger = Logger.getAnonymousLogger();
+    logger.setUseParentHandlers( false );
+    logger.addHandler( new Handler()
+    {
+      @Override
+      public void publish( final LogRecord record )
+      {
+        _output.add( record.getMessage() );
+      }
+
+      @Override
+      public void flush()
+      {
+      }
+
+      @Override
+      public void close()
+      {
+      }
+    } );
+    return logger;
+  }
+}
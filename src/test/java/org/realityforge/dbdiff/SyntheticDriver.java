@@ -0,0 +1,104 @@
+package org.realityforge.dbdiff;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A driver that connects to an in-process {@link SyntheticCatalog}, allowing the dump and diff of very
+ * large databases to be tested and profiled without a database server. The catalog is described by the
+ * url, e.g. "jdbc:synthetic:tables=100000;columns=5;drift=1;latency=2", and any property passed when
+ * connecting overrides the property in the url. See {@link SyntheticCatalog} for the supported properties.
+ */
+public class SyntheticDriver
+  implements Driver
+{
+  static final String URL_PREFIX = "jdbc:synthetic:";
+
+  @Override
+  public Connection connect( final String url, final Properties info )
+    throws SQLException
+  {
+    if ( !acceptsURL( url ) )
+    {
+      return null;
+    }
+    final Properties properties = parse( url );
+    if ( null != info )
+    {
+      for ( final String key : info.stringPropertyNames() )
+      {
+        properties.setProperty( key, info.getProperty( key ) );
+      }
+    }
+    try
+    {
+      return new SyntheticCatalog( properties ).newConnection();
+    }
+    catch ( final IllegalArgumentException iae )
+    {
+      throw new SQLException( "Invalid synthetic database url " + url, iae );
+    }
+  }
+
+  private static Properties parse( final String url )
+    throws SQLException
+  {
+    final Properties properties = new Properties();
+    for ( final String parameter : url.substring( URL_PREFIX.length() ).split( ";" ) )
+    {
+      if ( parameter.isEmpty() )
+      {
+        continue;
+      }
+      final int separator = parameter.indexOf( '=' );
+      if ( -1 == separator )
+      {
+        throw new SQLException( "Invalid parameter " + parameter + " in synthetic database url " + url );
+      }
+      properties.setProperty( parameter.substring( 0, separator ), parameter.substring( separator + 1 ) );
+    }
+    return properties;
+  }
+
+  @Override
+  public boolean acceptsURL( final String url )
+  {
+    return null != url && url.startsWith( URL_PREFIX );
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo( final String url, final Properties info )
+  {
+    return new DriverPropertyInfo[ 0 ];
+  }
+
+  @Override
+  public int getMajorVersion()
+  {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion()
+  {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant()
+  {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger()
+    throws SQLFeatureNotSupportedException
+  {
+    throw new SQLFeatureNotSupportedException();
+  }
+}
@@ -0,0 +1,150 @@
+package org.realityforge.dbdiff;
+
+import difflib.DiffUtils;
+import difflib.Patch;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+public class UnifiedDiffTest
+{
+  @Test
+  public void identicalDumpsHaveSameDigests()
+  {
+    final DigestTree tree1 = DigestTree.build( dump( 5, -1 ) );
+    final DigestTree tree2 = DigestTree.build( dump( 5, -1 ) );
+    assertTrue( tree1.getRoot().hasSameContent( tree2.getRoot() ) );
+    assertTrue( UnifiedDiff.diff( "db1", "db2", tree1, tree2, 3 ).isEmpty() );
+  }
+
+  @Test
+  public void digestsOnlyDifferAlongPathToChange()
+  {
+    final DigestTree tree1 = DigestTree.build( dump( 5, -1 ) );
+    final DigestTree tree2 = DigestTree.build( dump( 5, 3 ) );
+    final DigestTree.Node schema1 = tree1.getRoot().getChildren().get( 0 );
+    final DigestTree.Node schema2 = tree2.getRoot().getChildren().get( 0 );
+    assertFalse( tree1.getRoot().hasSameContent( tree2.getRoot() ) );
+    assertFalse( schema1.hasSameContent( schema2 ) );
+    for ( int i = 0; i < 5; i++ )
+    {
+      assertEquals( schema1.getChildren().get( i ).hasSameContent( schema2.getChildren().get( i ) ), 3 != i );
+    }
+    final DigestTree.Node table = schema1.getChildren().get( 3 );
+    assertEquals( tree1.getLines().get( table.getLine() ), "\tTABLE: t3" );
+    assertEquals( table.getEnd(), table.getLine() + 3 );
+  }
+
+  @Test
+  public void changedColumn()
+  {
+    assertSameAsLineDiff( dump( 20, -1 ), dump( 20, 7 ), 3 );
+    assertSameAsLineDiff( dump( 20, 0 ), dump( 20, 19 ), 0 );
+  }
+
+  @Test
+  public void addedAndRemovedObjects()
+  {
+    final List<String> dump1 = dump( 10, -1 );
+    final List<String> dump2 = dump( 10, -1 );
+    dump2.subList( 4, 7 ).clear();
+    dump2.add( "\tPROC    : p: {procedure_type=1}" );
+    dump2.add( "Missing Schema: y" );
+    assertSameAsLineDiff( dump1, dump2, 3 );
+    assertSameAsLineDiff( dump2, dump1, 3 );
+    assertSameAsLineDiff( dump1, new ArrayList<>(), 3 );
+  }
+
+  @Test
+  public void sectionsOfManySchemasDiffedInParallel()
+  {
+    final ArrayList<String> dump1 = new ArrayList<>();
+    final ArrayList<String> dump2 = new ArrayList<>();
+    for ( int i = 0; i < 8; i++ )
+    {
+      dump1.addAll( dump( "s" + i, 50, -1 ) );
+      final List<String> schema = dump( "s" + i, 50, i * 6 + 1 );
+      // Remove a table from every other schema and change the nullability of another
+      if ( 0 == i % 2 )
+      {
+        schema.subList( 1 + i * 3, 4 + i * 3 ).clear();
+      }
+      dump2.addAll( schema );
+    }
+    dump2.add( "Schema: s8" );
+    assertSameAsLineDiff( dump1, dump2, 3 );
+    assertSameAsLineDiff( dump2, dump1, 0 );
+  }
+
+  @Test
+  public void reorderedAndRepeatedObjectsPatched()
+    throws Exception
+  {
+    final List<String> dump1 = dump( 10, -1 );
+    final List<String> dump2 = dump( 10, 5 );
+    // Move table t8 before t2 so that its pair would cross the pairs of the tables in between
+    final List<String> moved = new ArrayList<>( dump2.subList( 25, 28 ) );
+    dump2.subList( 25, 28 ).clear();
+    dump2.addAll( 7, moved );
+    // Repeat a column line within a table and a table within the schema
+    dump1.add( 3, "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4, is_nullable=NO}" );
+    dump2.addAll( dump2.subList( 1, 4 ) );
+    for ( final int contextSize : new int[]{ 0, 3 } )
+    {
+      final Patch patch = UnifiedDiff.patch( DigestTree.build( dump1 ), DigestTree.build( dump2 ) );
+      assertEquals( DiffUtils.patch( dump1, patch ), dump2 );
+      final List<String> diff =
+        UnifiedDiff.diff( "db1", "db2", DigestTree.build( dump1 ), DigestTree.build( dump2 ), contextSize );
+      assertEquals( DiffUtils.patch( dump1, DiffUtils.parseUnifiedDiff( diff ) ), dump2 );
+    }
+  }
+
+  private void assertSameAsLineDiff( final List<String> lines1, final List<String> lines2, final int contextSize )
+  {
+    final List<String> expected =
+      DiffUtils.generateUnifiedDiff( "db1", "db2", lines1, DiffUtils.diff( lines1, lines2 ), contextSize );
+    final List<String> actual =
+      UnifiedDiff.diff( "db1", "db2", DigestTree.build( lines1 ), DigestTree.build( lines2 ), contextSize );
+    assertFalse( actual.isEmpty() );
+    assertEquals( actual, expected );
+    final ForkJoinPool pool = new ForkJoinPool( 4 );
+    try
+    {
+      assertEquals( UnifiedDiff.diff( "db1",
+                                      "db2",
+                                      DigestTree.build( lines1 ),
+                                      DigestTree.build( lines2 ),
+                                      contextSize,
+                                      pool ), expected );
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Create a dump of a schema with the specified number of tables, changing the nullability of a
+   * column in the table with the specified index.
+   */
+  private List<String> dump( final int tableCount, final int changedTable )
+  {
+    return dump( "x", tableCount, changedTable );
+  }
+
+  private List<String> dump( final String schema, final int tableCount, final int changedTable )
+  {
+    final ArrayList<String> lines = new ArrayList<>( Arrays.asList( "Schema: " + schema ) );
+    for ( int i = 0; i < tableCount; i++ )
+    {
+      lines.add( "\tTABLE: t" + i );
+      lines.add( "\t\tCOLUMN  : ID: {ordinal_position=1, type_name=int4, is_nullable=NO}" );
+      lines.add( "\t\tCOLUMN  : Name: {ordinal_position=2, type_name=varchar, is_nullable=" +
+                 ( i == changedTable ? "YES" : "NO" ) + "}" );
+    }
+    return lines;
+  }
+}